@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.tuple.AddressedTuple;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding a {@link MessageBatch} of batchSize messages of payloadSize bytes in either frame version, and decoding it again with
+ * {@link MessageDecoder}, either into TaskMessages or in place. Lives in the netty package because both are package private or protected.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBatchBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    @Param({"1", "2"})
+    public int frameVersion;
+
+    private TaskMessage[] messages;
+    private ChannelBuffer encoded;
+    private MessageDecoder decoder;
+    private MessageDecoder inPlaceDecoder;
+
+    /**
+     * Build the messages and one encoded batch of them.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random rand = new Random(42);
+        messages = new TaskMessage[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            byte[] payload = new byte[payloadSize];
+            rand.nextBytes(payload);
+            messages[i] = new TaskMessage(i % 128, payload);
+        }
+        encoded = encode();
+        decoder = new MessageDecoder();
+        // Stands in for deserializing, reads nothing but the task
+        IConnectionCallback callback = new IConnectionCallback() {
+            @Override
+            public void recv(List<TaskMessage> batch) {
+            }
+
+            @Override
+            public boolean canDeserialize() {
+                return true;
+            }
+
+            @Override
+            public AddressedTuple deserialize(int task, ByteBuffer payload) {
+                return new AddressedTuple(task, null);
+            }
+        };
+        inPlaceDecoder = new MessageDecoder(() -> callback, false);
+    }
+
+    @Benchmark
+    public ChannelBuffer encode() throws Exception {
+        MessageBatch batch = new MessageBatch(Integer.MAX_VALUE);
+        batch.setFrameVersion(frameVersion);
+        for (TaskMessage message : messages) {
+            batch.add(message);
+        }
+        return batch.buffer();
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return decoder.decode(null, null, encoded.duplicate());
+    }
+
+    /**
+     * Decoding for a callback that deserializes straight from the buffer, without a byte[] per message.
+     */
+    @Benchmark
+    public Object decodeInPlace() throws Exception {
+        return inPlaceDecoder.decode(null, null, encoded.duplicate());
+    }
+}
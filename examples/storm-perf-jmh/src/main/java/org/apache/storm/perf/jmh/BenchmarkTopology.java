@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.topology.BasicOutputCollector;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.topology.base.BaseBasicBolt;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+
+/**
+ * A spout feeding a bolt with a configurable number of tasks, all in one worker, for the benchmarks that need a
+ * real topology context. The spout is task 1 and emits (key, payload) on the default stream, the bolt tasks
+ * follow it.
+ */
+final class BenchmarkTopology {
+    static final String SPOUT = "spout";
+    static final String BOLT = "bolt";
+    static final int SPOUT_TASK = 1;
+    static final Fields FIELDS = new Fields("key", "payload");
+    static final String HOST = "localhost";
+    static final int PORT = 6700;
+
+    private BenchmarkTopology() {
+    }
+
+    static Map<String, Object> conf() {
+        return Utils.readDefaultConfig();
+    }
+
+    static WorkerTopologyContext context(Map<String, Object> conf, int boltTasks) {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout(SPOUT, new Spout());
+        builder.setBolt(BOLT, new Bolt(), boltTasks).shuffleGrouping(SPOUT);
+
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        taskToComponent.put(SPOUT_TASK, SPOUT);
+        for (int task : boltTasks(boltTasks)) {
+            taskToComponent.put(task, BOLT);
+        }
+        Map<String, List<Integer>> componentToSortedTasks = Utils.reverseMap(taskToComponent);
+        componentToSortedTasks.values().forEach(Collections::sort);
+
+        Map<String, Map<String, Fields>> componentToStreamToFields = new HashMap<>();
+        componentToStreamToFields.put(SPOUT, Collections.singletonMap(Utils.DEFAULT_STREAM_ID, FIELDS));
+        componentToStreamToFields.put(BOLT, Collections.emptyMap());
+
+        NodeInfo nodeInfo = new NodeInfo(HOST, new HashSet<>(Collections.singletonList((long) PORT)));
+        Map<Integer, NodeInfo> taskToNodePort = new HashMap<>();
+        for (int task : taskToComponent.keySet()) {
+            taskToNodePort.put(task, nodeInfo);
+        }
+
+        return new WorkerTopologyContext(builder.createTopology(), conf, taskToComponent, componentToSortedTasks,
+            componentToStreamToFields, "benchmark-1-1", null, null, PORT, new ArrayList<>(taskToComponent.keySet()),
+            new HashMap<>(), new HashMap<>(), new AtomicReference<>(taskToNodePort), HOST);
+    }
+
+    static List<Integer> boltTasks(int boltTasks) {
+        List<Integer> ret = new ArrayList<>(boltTasks);
+        for (int i = 0; i < boltTasks; i++) {
+            ret.add(SPOUT_TASK + 1 + i);
+        }
+        return ret;
+    }
+
+    /**
+     * numKeys distinct keys, so groupings on the key see a realistic spread.
+     */
+    static String[] keys(Random rand, int numKeys) {
+        String[] ret = new String[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            ret[i] = "key-" + rand.nextInt();
+        }
+        return ret;
+    }
+
+    static Values values(Random rand, String key, int payloadSize) {
+        byte[] payload = new byte[payloadSize];
+        rand.nextBytes(payload);
+        return new Values(key, payload);
+    }
+
+    private static class Spout extends BaseRichSpout {
+        @Override
+        public void open(Map<String, Object> conf, TopologyContext context, SpoutOutputCollector collector) {
+        }
+
+        @Override
+        public void nextTuple() {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+            declarer.declare(FIELDS);
+        }
+    }
+
+    private static class Bolt extends BaseBasicBolt {
+        @Override
+        public void execute(Tuple input, BasicOutputCollector collector) {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.daemon.GrouperFactory;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.generated.Grouping;
+import org.apache.storm.grouping.ConsistentHashGrouping;
+import org.apache.storm.grouping.LoadAwareShuffleGrouping;
+import org.apache.storm.grouping.PartialKeyGrouping;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Choosing the destination of one tuple with {@link LoadAwareShuffleGrouping}, {@link PartialKeyGrouping}, a fields
+ * grouping and {@link ConsistentHashGrouping}, for fanOut target tasks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GroupingBenchmark {
+    private static final int NUM_KEYS = 1024;
+
+    @Param({"2", "16", "128"})
+    public int fanOut;
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    private LoadAwareShuffleGrouping shuffle;
+    private PartialKeyGrouping partialKey;
+    private GrouperFactory.FieldsGrouper fields;
+    private ConsistentHashGrouping consistentHash;
+    private List<Object>[] values;
+    private int next = 0;
+
+    /**
+     * Prepare the groupings against fanOut bolt tasks and NUM_KEYS tuples to cycle through.
+     */
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        WorkerTopologyContext context = BenchmarkTopology.context(BenchmarkTopology.conf(), fanOut);
+        GlobalStreamId stream = new GlobalStreamId(BenchmarkTopology.SPOUT, Utils.DEFAULT_STREAM_ID);
+        List<Integer> targets = BenchmarkTopology.boltTasks(fanOut);
+        shuffle = new LoadAwareShuffleGrouping();
+        shuffle.prepare(context, stream, targets);
+        partialKey = new PartialKeyGrouping(new Fields("key"));
+        partialKey.prepare(context, stream, targets);
+        fields = new GrouperFactory.FieldsGrouper(BenchmarkTopology.FIELDS, Grouping.fields(Collections.singletonList("key")));
+        fields.prepare(context, stream, targets);
+        consistentHash = new ConsistentHashGrouping(new Fields("key"));
+        consistentHash.prepare(context, stream, targets);
+
+        Random rand = new Random(42);
+        String[] keys = BenchmarkTopology.keys(rand, NUM_KEYS);
+        values = new List[NUM_KEYS];
+        for (int i = 0; i < NUM_KEYS; i++) {
+            values[i] = BenchmarkTopology.values(rand, keys[i], payloadSize);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> loadAwareShuffle() {
+        return shuffle.chooseTasks(BenchmarkTopology.SPOUT_TASK, nextValues());
+    }
+
+    @Benchmark
+    public List<Integer> partialKey() {
+        return partialKey.chooseTasks(BenchmarkTopology.SPOUT_TASK, nextValues());
+    }
+
+    @Benchmark
+    public List<Integer> fields() {
+        return fields.chooseTasks(BenchmarkTopology.SPOUT_TASK, nextValues());
+    }
+
+    @Benchmark
+    public List<Integer> consistentHash() {
+        return consistentHash.chooseTasks(BenchmarkTopology.SPOUT_TASK, nextValues());
+    }
+
+    private List<Object> nextValues() {
+        List<Object> ret = values[next];
+        next = (next + 1) & (NUM_KEYS - 1);
+        return ret;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.RotatingPendingMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the acker bookkeeping of {@link RotatingMap} with {@link RotatingPendingMap}.
+ *
+ * <p>Each invocation walks one tuple tree through the acker the way Acker does: the init from the spout, an ack
+ * per edge and the final lookup that completes the tree, while inFlight other trees stay pending. Run with
+ * {@code -prof gc} to see the allocation rate per tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PendingMapBenchmark {
+    private static final int BUCKETS = 3;
+
+    @Param({"1000", "100000", "1000000"})
+    public int inFlight;
+
+    @Param({"2", "8"})
+    public int edges;
+
+    private RotatingMap<Object, AckObject> rotatingMap;
+    private RotatingPendingMap<Void> pendingMap;
+    private long[] edgeIds;
+    private long nextRoot;
+
+    private static class AckObject {
+        public long val = 0L;
+        public Integer spoutTask = null;
+        public boolean failed = false;
+        public long startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Fill both maps with inFlight pending trees.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rand = new Random(42);
+        edgeIds = new long[edges];
+        for (int i = 0; i < edges; i++) {
+            edgeIds[i] = rand.nextLong();
+        }
+        rotatingMap = new RotatingMap<>(BUCKETS);
+        pendingMap = new RotatingPendingMap<>(BUCKETS, false);
+        for (int i = 0; i < inFlight; i++) {
+            long root = rand.nextLong();
+            AckObject ack = new AckObject();
+            ack.val = root;
+            ack.spoutTask = 1;
+            rotatingMap.put(root, ack);
+            int handle = pendingMap.insert(root);
+            pendingMap.setVal(handle, root);
+            pendingMap.setTask(handle, 1);
+        }
+        nextRoot = rand.nextLong();
+    }
+
+    /**
+     * One tuple tree through a RotatingMap of AckObjects.
+     */
+    @Benchmark
+    public boolean rotatingMap() {
+        Long root = nextRoot++;
+        AckObject curr = new AckObject();
+        curr.val = xorAll();
+        curr.spoutTask = 1;
+        rotatingMap.put(root, curr);
+        for (long edge : edgeIds) {
+            curr = rotatingMap.get(root);
+            curr.val ^= edge;
+        }
+        boolean done = rotatingMap.get(root).val == 0;
+        rotatingMap.remove(root);
+        return done;
+    }
+
+    /**
+     * One tuple tree through a RotatingPendingMap.
+     */
+    @Benchmark
+    public boolean rotatingPendingMap() {
+        long root = nextRoot++;
+        int handle = pendingMap.insert(root);
+        pendingMap.setVal(handle, xorAll());
+        pendingMap.setTask(handle, 1);
+        pendingMap.setStartTime(handle, System.currentTimeMillis());
+        for (long edge : edgeIds) {
+            pendingMap.xorVal(pendingMap.find(root), edge);
+        }
+        handle = pendingMap.find(root);
+        boolean done = pendingMap.getVal(handle) == 0;
+        pendingMap.remove(handle);
+        return done;
+    }
+
+    private long xorAll() {
+        long ret = 0;
+        for (long edge : edgeIds) {
+            ret ^= edge;
+        }
+        return ret;
+    }
+}
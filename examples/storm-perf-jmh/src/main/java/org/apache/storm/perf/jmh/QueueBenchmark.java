@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import com.lmax.disruptor.EventHandler;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.Config;
+import org.apache.storm.utils.ISingleConsumerQueue;
+import org.apache.storm.utils.QueueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Handing objects from producers to the single consumer of a receive queue, the way executors hand tuples to each
+ * other. The score of the publish method is the rate at which objects make it through the queue; the producers
+ * back off while the queue is full so the overflow does not grow without bound.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class QueueBenchmark {
+    private static final int QUEUE_SIZE = 1024;
+    private static final Object EVENT = new Object();
+
+    @Param({"disruptor", "mpsc"})
+    public String implementation;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private ISingleConsumerQueue queue;
+    private final EventHandler<Object> handler = (event, sequence, endOfBatch) -> { };
+
+    /**
+     * Create the queue under test.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, Object> conf = BenchmarkTopology.conf();
+        conf.put(Config.TOPOLOGY_QUEUE_IMPLEMENTATION, implementation);
+        conf.put(Config.TOPOLOGY_DISRUPTOR_BATCH_SIZE, batchSize);
+        queue = QueueFactory.mkQueue(conf, "benchmark-queue", QUEUE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.haltWithInterrupt();
+    }
+
+    /**
+     * One producer publishing.
+     */
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void publish(Control control) {
+        while (queue.isFull() && !control.stopMeasurement) {
+            Thread.yield();
+        }
+        queue.publish(EVENT);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void consume() {
+        queue.consumeBatch(handler);
+    }
+
+    /**
+     * Several producers publishing at once.
+     */
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(3)
+    public void publishContended(Control control) {
+        while (queue.isFull() && !control.stopMeasurement) {
+            Thread.yield();
+        }
+        queue.publish(EVENT);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public void consumeContended() {
+        queue.consumeBatch(handler);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.Config;
+import org.apache.storm.serialization.KryoTupleDeserializer;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.MessageId;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing a tuple for another worker with {@link KryoTupleSerializer} and turning it back into a tuple with
+ * {@link KryoTupleDeserializer}, for a (key, payload) tuple with a payload of payloadSize bytes that is anchored to
+ * a single root, in each version of topology.tuple.serialization.version.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    @Param({"1", "2"})
+    public int serializationVersion;
+
+    private KryoTupleSerializer serializer;
+    private KryoTupleDeserializer deserializer;
+    private Tuple tuple;
+    private byte[] serialized;
+
+    /**
+     * Build the serializers and one tuple of payloadSize bytes.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, Object> conf = BenchmarkTopology.conf();
+        conf.put(Config.TOPOLOGY_TUPLE_SERIALIZATION_VERSION, serializationVersion);
+        WorkerTopologyContext context = BenchmarkTopology.context(conf, 1);
+        serializer = new KryoTupleSerializer(conf, context);
+        deserializer = new KryoTupleDeserializer(conf, context);
+        Random rand = new Random(42);
+        tuple = new TupleImpl(context, BenchmarkTopology.values(rand, "key", payloadSize),
+            BenchmarkTopology.SPOUT_TASK, Utils.DEFAULT_STREAM_ID,
+            MessageId.makeRootId(rand.nextLong(), rand.nextLong()));
+        serialized = serializer.serialize(tuple);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(tuple);
+    }
+
+    @Benchmark
+    public Tuple deserialize() {
+        return deserializer.deserialize(serialized);
+    }
+}
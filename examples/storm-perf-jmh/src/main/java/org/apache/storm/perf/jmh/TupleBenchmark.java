@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.perf.jmh;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.tuple.MessageId;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Creating the tuples an emit hands to the transfer: one {@link TupleImpl} and {@link AddressedTuple} per
+ * destination task, fanOut of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TupleBenchmark {
+    @Param({"1", "8"})
+    public int fanOut;
+
+    private WorkerTopologyContext context;
+    private List<Integer> targets;
+    private Values values;
+    private long nextEdgeId = 1;
+
+    /**
+     * Build the topology context and the values every tuple carries.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkTopology.context(BenchmarkTopology.conf(), fanOut);
+        targets = BenchmarkTopology.boltTasks(fanOut);
+        values = BenchmarkTopology.values(new Random(42), "key", 16);
+    }
+
+    /**
+     * An unanchored emit.
+     */
+    @Benchmark
+    public void createTuples(Blackhole bh) {
+        for (Integer target : targets) {
+            TupleImpl tuple = new TupleImpl(context, values, BenchmarkTopology.SPOUT_TASK, Utils.DEFAULT_STREAM_ID);
+            bh.consume(new AddressedTuple(target, tuple));
+        }
+    }
+
+    /**
+     * A spout emit with a message id, so each destination gets its own edge id.
+     */
+    @Benchmark
+    public void createAnchoredTuples(Blackhole bh) {
+        for (Integer target : targets) {
+            MessageId id = MessageId.makeRootId(42L, nextEdgeId++);
+            TupleImpl tuple = new TupleImpl(context, values, BenchmarkTopology.SPOUT_TASK, Utils.DEFAULT_STREAM_ID,
+                id);
+            bh.consume(new AddressedTuple(target, tuple));
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.rocksdb.state;
+
+import com.google.common.collect.Maps;
+import com.google.common.primitives.UnsignedBytes;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.storm.state.DefaultStateEncoder;
+import org.apache.storm.state.DefaultStateSerializer;
+import org.apache.storm.state.KeyValueState;
+import org.apache.storm.state.Serializer;
+import org.apache.storm.state.SnapshotState;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link KeyValueState} implementation that persists the state in an embedded RocksDB instance on the local disk.
+ *
+ * <p>Committed entries, the entries of a prepared (not yet committed) transaction and the transaction ids are kept
+ * in the same database under different key prefixes, so that each step of the checkpoint protocol is applied as a
+ * single atomic {@link WriteBatch}. The prepared entries are captured in memory by {@link #snapshot(long)}, so they can
+ * be written in the background while the state keeps taking updates.
+ */
+public class RocksDbKeyValueState<K, V> implements KeyValueState<K, V>, SnapshotState, AutoCloseable {
+    public static final int ITERATOR_CHUNK_SIZE = 100;
+    public static final NavigableMap<byte[], byte[]> EMPTY_PENDING_COMMIT_MAP = Maps.unmodifiableNavigableMap(
+            new TreeMap<byte[], byte[]>(UnsignedBytes.lexicographicalComparator()));
+
+    static final byte DATA_PREFIX = 'd';
+    static final byte PREPARE_PREFIX = 'p';
+    static final byte TXID_PREFIX = 't';
+
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDbKeyValueState.class);
+    private static final String COMMIT_TXID_KEY = "commit";
+    private static final String PREPARE_TXID_KEY = "prepare";
+
+    private final String namespace;
+    private final DefaultStateEncoder<K, V> encoder;
+    private final RocksDB db;
+    private final WriteOptions writeOptions;
+    private final Runnable onClose;
+    private boolean closed;
+    private ConcurrentNavigableMap<byte[], byte[]> pendingPrepare;
+    private NavigableMap<byte[], byte[]> pendingCommit;
+
+    private Map<String, Long> txIds;
+
+    public RocksDbKeyValueState(String namespace, RocksDB db) {
+        this(namespace, db, new DefaultStateSerializer<K>(), new DefaultStateSerializer<V>());
+    }
+
+    /**
+     * Creates a state backed by the given database. The database is expected to be used by this state only.
+     *
+     * @param namespace the namespace of the state
+     * @param db the open RocksDB instance
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public RocksDbKeyValueState(String namespace, RocksDB db, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(namespace, db, keySerializer, valueSerializer, null);
+    }
+
+    /**
+     * Creates a state backed by the given database, running onClose when the state is closed.
+     */
+    RocksDbKeyValueState(String namespace, RocksDB db, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                         Runnable onClose) {
+        this.namespace = namespace;
+        this.onClose = onClose;
+        this.db = db;
+        this.encoder = new DefaultStateEncoder<K, V>(keySerializer, valueSerializer);
+        this.writeOptions = new WriteOptions().setSync(true);
+        this.pendingPrepare = createPendingPrepareMap();
+        initTxids();
+        initPendingCommit();
+    }
+
+    private void initTxids() {
+        txIds = new HashMap<>();
+        for (String key : Arrays.asList(COMMIT_TXID_KEY, PREPARE_TXID_KEY)) {
+            byte[] value = dbGet(txidKey(key));
+            if (value != null) {
+                txIds.put(key, Long.valueOf(new String(value, StandardCharsets.UTF_8)));
+            }
+        }
+        LOG.debug("initTxids, namespace {}, txIds {}", namespace, txIds);
+    }
+
+    private void initPendingCommit() {
+        NavigableMap<byte[], byte[]> pendingCommitMap = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+        try (RocksIterator iterator = db.newIterator()) {
+            for (iterator.seek(new byte[]{PREPARE_PREFIX}); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (key.length == 0 || key[0] != PREPARE_PREFIX) {
+                    break;
+                }
+                pendingCommitMap.put(stripPrefix(key), iterator.value());
+            }
+        }
+        if (pendingCommitMap.isEmpty()) {
+            LOG.debug("No previously prepared commits.");
+            pendingCommit = EMPTY_PENDING_COMMIT_MAP;
+        } else {
+            LOG.debug("Loaded {} previously prepared entries for namespace {}", pendingCommitMap.size(), namespace);
+            pendingCommit = Maps.unmodifiableNavigableMap(pendingCommitMap);
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        LOG.debug("put key '{}', value '{}'", key, value);
+        pendingPrepare.put(encoder.encodeKey(key), encoder.encodeValue(value));
+    }
+
+    @Override
+    public V get(K key) {
+        LOG.debug("get key '{}'", key);
+        byte[] rawKey = encoder.encodeKey(key);
+        byte[] rawValue;
+        if (pendingPrepare.containsKey(rawKey)) {
+            rawValue = pendingPrepare.get(rawKey);
+        } else if (pendingCommit.containsKey(rawKey)) {
+            rawValue = pendingCommit.get(rawKey);
+        } else {
+            rawValue = dbGet(withPrefix(DATA_PREFIX, rawKey));
+        }
+        V value = null;
+        if (rawValue != null) {
+            value = encoder.decodeValue(rawValue);
+        }
+        LOG.debug("Value for key '{}' is '{}'", key, value);
+        return value;
+    }
+
+    @Override
+    public V get(K key, V defaultValue) {
+        V val = get(key);
+        return val != null ? val : defaultValue;
+    }
+
+    @Override
+    public V delete(K key) {
+        LOG.debug("delete key '{}'", key);
+        V curr = get(key);
+        pendingPrepare.put(encoder.encodeKey(key), encoder.getTombstoneValue());
+        return curr;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new RocksDbKeyValueStateIterator<K, V>(db, pendingPrepare.entrySet().iterator(), pendingCommit.entrySet().iterator(),
+                ITERATOR_CHUNK_SIZE, encoder.getKeySerializer(), encoder.getValueSerializer());
+    }
+
+    @Override
+    public void prepareCommit(long txid) {
+        LOG.debug("prepareCommit txid {}", txid);
+        snapshot(txid).persist();
+    }
+
+    @Override
+    public Snapshot snapshot(long txid) {
+        LOG.debug("snapshot txid {}", txid);
+        validatePrepareTxid(txid);
+        ConcurrentNavigableMap<byte[], byte[]> currentPending = pendingPrepare;
+        pendingPrepare = createPendingPrepareMap();
+        if (!pendingCommit.isEmpty()) {
+            LOG.debug("Prepared txn already exists, will merge", txid);
+            for (Map.Entry<byte[], byte[]> e : pendingCommit.entrySet()) {
+                if (!currentPending.containsKey(e.getKey())) {
+                    currentPending.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        txIds.put(PREPARE_TXID_KEY, txid);
+        pendingCommit = Maps.unmodifiableNavigableMap(currentPending);
+        return () -> persistPrepared(currentPending, txid);
+    }
+
+    private long persistPrepared(Map<byte[], byte[]> prepared, long txid) {
+        long bytesWritten = 0;
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<byte[], byte[]> e : prepared.entrySet()) {
+                batch.put(withPrefix(PREPARE_PREFIX, e.getKey()), e.getValue());
+                bytesWritten += e.getKey().length + 1 + e.getValue().length;
+            }
+            byte[] txidKey = txidKey(PREPARE_TXID_KEY);
+            byte[] txidValue = txidValue(txid);
+            batch.put(txidKey, txidValue);
+            bytesWritten += txidKey.length + txidValue.length;
+            dbWrite(batch);
+        }
+        LOG.debug("Persisted {} prepared entries for txid {}", prepared.size(), txid);
+        return bytesWritten;
+    }
+
+    @Override
+    public void commit(long txid) {
+        LOG.debug("commit txid {}", txid);
+        validateCommitTxid(txid);
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<byte[], byte[]> e : pendingCommit.entrySet()) {
+                addToData(batch, e.getKey(), e.getValue());
+                batch.remove(withPrefix(PREPARE_PREFIX, e.getKey()));
+            }
+            batch.put(txidKey(COMMIT_TXID_KEY), txidValue(txid));
+            dbWrite(batch);
+        }
+        txIds.put(COMMIT_TXID_KEY, txid);
+        pendingCommit = EMPTY_PENDING_COMMIT_MAP;
+    }
+
+    @Override
+    public void commit() {
+        if (!pendingPrepare.isEmpty()) {
+            try (WriteBatch batch = new WriteBatch()) {
+                for (Map.Entry<byte[], byte[]> e : pendingPrepare.entrySet()) {
+                    addToData(batch, e.getKey(), e.getValue());
+                }
+                dbWrite(batch);
+            }
+        } else {
+            LOG.debug("Nothing to save for commit");
+        }
+        pendingPrepare = createPendingPrepareMap();
+    }
+
+    @Override
+    public void rollback() {
+        LOG.debug("rollback");
+        try (WriteBatch batch = new WriteBatch()) {
+            for (byte[] key : pendingCommit.keySet()) {
+                batch.remove(withPrefix(PREPARE_PREFIX, key));
+            }
+            Long lastCommittedId = lastCommittedTxid();
+            if (lastCommittedId != null) {
+                batch.put(txidKey(PREPARE_TXID_KEY), txidValue(lastCommittedId));
+                txIds.put(PREPARE_TXID_KEY, lastCommittedId);
+            } else {
+                batch.remove(txidKey(PREPARE_TXID_KEY));
+                txIds.remove(PREPARE_TXID_KEY);
+            }
+            dbWrite(batch);
+        }
+        pendingCommit = EMPTY_PENDING_COMMIT_MAP;
+        pendingPrepare = createPendingPrepareMap();
+    }
+
+    /**
+     * Release the database. Uncommitted updates are dropped, the same as when the worker dies. A database that was
+     * passed in by the caller is left open.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeOptions.close();
+        if (onClose != null) {
+            onClose.run();
+        }
+    }
+
+    /*
+     * Same txid can be prepared again, but the next txid cannot be prepared
+     * when previous one is not committed yet.
+     */
+    private void validatePrepareTxid(long txid) {
+        Long committedTxid = lastCommittedTxid();
+        if (committedTxid != null) {
+            if (txid <= committedTxid) {
+                throw new RuntimeException("Invalid txid '" + txid + "' for prepare. Txid '" + committedTxid
+                        + "' is already committed");
+            }
+        }
+    }
+
+    /*
+     * Same txid can be committed again but the
+     * txid to be committed must be the last prepared one.
+     */
+    private void validateCommitTxid(long txid) {
+        Long committedTxid = lastCommittedTxid();
+        if (committedTxid != null) {
+            if (txid < committedTxid) {
+                throw new RuntimeException("Invalid txid '" + txid + "' txid '" + committedTxid + "' is already committed");
+            }
+        }
+        Long preparedTxid = lastPreparedTxid();
+        if (preparedTxid != null) {
+            if (txid != preparedTxid) {
+                throw new RuntimeException("Invalid txid '" + txid + "' not same as prepared txid '" + preparedTxid + "'");
+            }
+        }
+    }
+
+    private Long lastCommittedTxid() {
+        return txIds.get(COMMIT_TXID_KEY);
+    }
+
+    private Long lastPreparedTxid() {
+        return txIds.get(PREPARE_TXID_KEY);
+    }
+
+    private void addToData(WriteBatch batch, byte[] key, byte[] value) {
+        if (Arrays.equals(encoder.getTombstoneValue(), value)) {
+            batch.remove(withPrefix(DATA_PREFIX, key));
+        } else {
+            batch.put(withPrefix(DATA_PREFIX, key), value);
+        }
+    }
+
+    private byte[] dbGet(byte[] key) {
+        try {
+            return db.get(key);
+        } catch (RocksDBException ex) {
+            throw new RuntimeException("Error reading state for namespace " + namespace, ex);
+        }
+    }
+
+    private void dbWrite(WriteBatch batch) {
+        try {
+            db.write(writeOptions, batch);
+        } catch (RocksDBException ex) {
+            throw new RuntimeException("Error writing state for namespace " + namespace, ex);
+        }
+    }
+
+    private ConcurrentNavigableMap<byte[], byte[]> createPendingPrepareMap() {
+        return new ConcurrentSkipListMap<>(UnsignedBytes.lexicographicalComparator());
+    }
+
+    private static byte[] txidKey(String key) {
+        return withPrefix(TXID_PREFIX, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] txidValue(long txid) {
+        return String.valueOf(txid).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] withPrefix(byte prefix, byte[] key) {
+        byte[] result = new byte[key.length + 1];
+        result[0] = prefix;
+        System.arraycopy(key, 0, result, 1, key.length);
+        return result;
+    }
+
+    static byte[] stripPrefix(byte[] key) {
+        return Arrays.copyOfRange(key, 1, key.length);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.rocksdb.state;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.state.BaseBinaryStateIterator;
+import org.apache.storm.state.DefaultStateEncoder;
+import org.apache.storm.state.Serializer;
+import org.apache.storm.state.StateEncoder;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+
+/**
+ * An iterator over {@link RocksDbKeyValueState}.
+ *
+ * <p>Committed entries are read in chunks; a native iterator is opened for each chunk and closed before the chunk is
+ * returned, so an abandoned iterator does not hold any native resources.
+ */
+public class RocksDbKeyValueStateIterator<K, V> extends BaseBinaryStateIterator<K, V> {
+
+    private final RocksDB db;
+    private final StateEncoder<K, V, byte[], byte[]> encoder;
+    private final int chunkSize;
+
+    private byte[] lastKey;
+    private boolean endOfData;
+
+    /**
+     * Constructor.
+     *
+     * @param db The RocksDB instance of State
+     * @param pendingPrepareIterator The iterator of pendingPrepare
+     * @param pendingCommitIterator The iterator of pendingCommit
+     * @param chunkSize The size of chunk to get entries from RocksDB
+     * @param keySerializer The serializer of key
+     * @param valueSerializer The serializer of value
+     */
+    public RocksDbKeyValueStateIterator(RocksDB db,
+                                        Iterator<Map.Entry<byte[], byte[]>> pendingPrepareIterator,
+                                        Iterator<Map.Entry<byte[], byte[]>> pendingCommitIterator,
+                                        int chunkSize, Serializer<K> keySerializer,
+                                        Serializer<V> valueSerializer) {
+        super(pendingPrepareIterator, pendingCommitIterator);
+        this.db = db;
+        this.encoder = new DefaultStateEncoder<K, V>(keySerializer, valueSerializer);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected Iterator<Map.Entry<byte[], byte[]>> loadChunkFromStateStorage() {
+        List<Map.Entry<byte[], byte[]>> chunk = new ArrayList<>(chunkSize);
+        try (RocksIterator iterator = db.newIterator()) {
+            if (lastKey == null) {
+                iterator.seek(new byte[]{RocksDbKeyValueState.DATA_PREFIX});
+            } else {
+                iterator.seek(lastKey);
+                if (iterator.isValid() && Arrays.equals(iterator.key(), lastKey)) {
+                    iterator.next();
+                }
+            }
+            while (chunk.size() < chunkSize && iterator.isValid()) {
+                byte[] key = iterator.key();
+                if (key.length == 0 || key[0] != RocksDbKeyValueState.DATA_PREFIX) {
+                    break;
+                }
+                chunk.add(new AbstractMap.SimpleImmutableEntry<>(RocksDbKeyValueState.stripPrefix(key), iterator.value()));
+                lastKey = key;
+                iterator.next();
+            }
+        }
+        endOfData = chunk.size() < chunkSize;
+        return chunk.iterator();
+    }
+
+    @Override
+    protected boolean isEndOfDataFromStorage() {
+        return endOfData;
+    }
+
+    @Override
+    protected K decodeKey(byte[] key) {
+        return encoder.decodeKey(key);
+    }
+
+    @Override
+    protected V decodeValue(byte[] value) {
+        return encoder.decodeValue(value);
+    }
+
+    @Override
+    protected boolean isTombstoneValue(byte[] value) {
+        return Arrays.equals(value, encoder.getTombstoneValue());
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.rocksdb.state;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.state.DefaultStateSerializer;
+import org.apache.storm.state.Serializer;
+import org.apache.storm.state.State;
+import org.apache.storm.state.StateProvider;
+import org.apache.storm.task.TopologyContext;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides {@link RocksDbKeyValueState}.
+ *
+ * <p>Each namespace gets its own database under the configured directory, which defaults to
+ * {@code <storm.local.dir>/state/<topology-id>}. Databases are opened once per worker and shared by the states that
+ * are created for the same namespace. A database is closed once every state using it has been closed, see
+ * {@link org.apache.storm.state.StateFactory#close(State)}.
+ */
+public class RocksDbKeyValueStateProvider implements StateProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDbKeyValueStateProvider.class);
+    // Guarded by itself
+    private static final Map<String, SharedDatabase> OPEN_DATABASES = new HashMap<>();
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    @Override
+    public State newState(String namespace, Map<String, Object> topoConf, TopologyContext context) {
+        try {
+            return getRocksDbKeyValueState(namespace, topoConf, context, getStateConfig(topoConf));
+        } catch (Exception ex) {
+            LOG.error("Error loading config from storm conf {}", topoConf);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    StateConfig getStateConfig(Map<String, Object> topoConf) throws Exception {
+        StateConfig stateConfig;
+        String providerConfig;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        if (topoConf.containsKey(Config.TOPOLOGY_STATE_PROVIDER_CONFIG)) {
+            providerConfig = (String) topoConf.get(Config.TOPOLOGY_STATE_PROVIDER_CONFIG);
+            stateConfig = mapper.readValue(providerConfig, StateConfig.class);
+        } else {
+            stateConfig = new StateConfig();
+        }
+        return stateConfig;
+    }
+
+    private RocksDbKeyValueState getRocksDbKeyValueState(String namespace, Map<String, Object> topoConf, TopologyContext context,
+                                                         StateConfig config) throws Exception {
+        File dbDir = new File(getBaseDir(topoConf, context, config), namespace);
+        Serializer keySerializer = getKeySerializer(topoConf, context, config);
+        Serializer valueSerializer = getValueSerializer(topoConf, context, config);
+        RocksDB db = openDatabase(dbDir);
+        try {
+            return new RocksDbKeyValueState(namespace, db, keySerializer, valueSerializer, () -> releaseDatabase(dbDir));
+        } catch (RuntimeException ex) {
+            releaseDatabase(dbDir);
+            throw ex;
+        }
+    }
+
+    private File getBaseDir(Map<String, Object> topoConf, TopologyContext context, StateConfig config) {
+        if (config.rocksDbDir != null) {
+            return new File(config.rocksDbDir);
+        }
+        return new File(new File((String) topoConf.get(Config.STORM_LOCAL_DIR), "state"), context.getStormId());
+    }
+
+    /**
+     * Open the database in dbDir, or share it if it is already open. Every call has to be matched by a call to
+     * {@link #releaseDatabase(File)}.
+     */
+    static RocksDB openDatabase(File dbDir) {
+        String path = dbDir.getAbsolutePath();
+        synchronized (OPEN_DATABASES) {
+            SharedDatabase shared = OPEN_DATABASES.get(path);
+            if (shared == null) {
+                LOG.info("Opening RocksDB state at {}", path);
+                if (!dbDir.isDirectory() && !dbDir.mkdirs()) {
+                    throw new RuntimeException("Could not create state directory " + path);
+                }
+                Options options = new Options().setCreateIfMissing(true);
+                try {
+                    shared = new SharedDatabase(RocksDB.open(options, path), options);
+                } catch (RocksDBException ex) {
+                    options.close();
+                    throw new RuntimeException("Could not open RocksDB state at " + path, ex);
+                }
+                OPEN_DATABASES.put(path, shared);
+            }
+            shared.references++;
+            return shared.db;
+        }
+    }
+
+    /**
+     * Drop a reference taken by {@link #openDatabase(File)}, closing the database when it was the last one.
+     */
+    static void releaseDatabase(File dbDir) {
+        String path = dbDir.getAbsolutePath();
+        synchronized (OPEN_DATABASES) {
+            SharedDatabase shared = OPEN_DATABASES.get(path);
+            if (shared == null) {
+                LOG.warn("RocksDB state at {} released but not open", path);
+                return;
+            }
+            if (--shared.references == 0) {
+                LOG.info("Closing RocksDB state at {}", path);
+                OPEN_DATABASES.remove(path);
+                shared.db.close();
+                shared.options.close();
+            }
+        }
+    }
+
+    static boolean isOpen(File dbDir) {
+        synchronized (OPEN_DATABASES) {
+            return OPEN_DATABASES.containsKey(dbDir.getAbsolutePath());
+        }
+    }
+
+    private static class SharedDatabase {
+        private final RocksDB db;
+        private final Options options;
+        private int references;
+
+        SharedDatabase(RocksDB db, Options options) {
+            this.db = db;
+            this.options = options;
+        }
+    }
+
+    private Serializer getKeySerializer(Map<String, Object> topoConf, TopologyContext context, StateConfig config) throws Exception {
+        Serializer serializer;
+        if (config.keySerializerClass != null) {
+            Class<?> klass = (Class<?>) Class.forName(config.keySerializerClass);
+            serializer = (Serializer) klass.newInstance();
+        } else if (config.keyClass != null) {
+            serializer = new DefaultStateSerializer(topoConf, context, Collections.singletonList(Class.forName(config.keyClass)));
+        } else {
+            serializer = new DefaultStateSerializer(topoConf, context);
+        }
+        return serializer;
+    }
+
+    private Serializer getValueSerializer(Map<String, Object> topoConf, TopologyContext context, StateConfig config) throws Exception {
+        Serializer serializer;
+        if (config.valueSerializerClass != null) {
+            Class<?> klass = (Class<?>) Class.forName(config.valueSerializerClass);
+            serializer = (Serializer) klass.newInstance();
+        } else if (config.valueClass != null) {
+            serializer = new DefaultStateSerializer(topoConf, context, Collections.singletonList(Class.forName(config.valueClass)));
+        } else {
+            serializer = new DefaultStateSerializer(topoConf, context);
+        }
+        return serializer;
+    }
+
+    public static class StateConfig {
+        public String keyClass;
+        public String valueClass;
+        public String keySerializerClass;
+        public String valueSerializerClass;
+        public String rocksDbDir;
+
+        @Override
+        public String toString() {
+            return "StateConfig{"
+                + "keyClass='" + keyClass + '\''
+                + ", valueClass='" + valueClass + '\''
+                + ", keySerializerClass='" + keySerializerClass + '\''
+                + ", valueSerializerClass='" + valueSerializerClass + '\''
+                + ", rocksDbDir='" + rocksDbDir + '\''
+                + '}';
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.rocksdb.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.storm.state.DefaultStateSerializer;
+import org.apache.storm.state.SnapshotState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+/**
+ * Unit tests for {@link RocksDbKeyValueState}.
+ */
+public class RocksDbKeyValueStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RocksDB db;
+    private RocksDbKeyValueState<String, String> keyValueState;
+
+    @Before
+    public void setUp() throws Exception {
+        RocksDB.loadLibrary();
+        db = openDb();
+        keyValueState = new RocksDbKeyValueState<>("test", db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        keyValueState.put("a", "1");
+        keyValueState.put("b", "2");
+        assertEquals("1", keyValueState.get("a"));
+        assertEquals("2", keyValueState.get("b"));
+        assertEquals(null, keyValueState.get("c"));
+    }
+
+    @Test
+    public void testPutAndDelete() throws Exception {
+        keyValueState.put("a", "1");
+        keyValueState.put("b", "2");
+        assertEquals("1", keyValueState.get("a"));
+        assertEquals("1", keyValueState.delete("a"));
+        assertEquals(null, keyValueState.get("a"));
+        assertEquals("2", keyValueState.get("b"));
+    }
+
+    @Test
+    public void testPrepareCommitRollback() throws Exception {
+        keyValueState.put("a", "1");
+        keyValueState.put("b", "2");
+        keyValueState.prepareCommit(1);
+        keyValueState.put("c", "3");
+        keyValueState.rollback();
+        assertEquals(null, keyValueState.get("a"));
+        assertEquals(null, keyValueState.get("b"));
+        assertEquals(null, keyValueState.get("c"));
+
+        keyValueState.put("a", "1");
+        keyValueState.put("b", "2");
+        keyValueState.prepareCommit(1);
+        keyValueState.commit(1);
+        keyValueState.put("c", "3");
+        keyValueState.rollback();
+        assertEquals("1", keyValueState.get("a"));
+        assertEquals("2", keyValueState.get("b"));
+        assertEquals(null, keyValueState.get("c"));
+
+        keyValueState.delete("b");
+        keyValueState.prepareCommit(2);
+        keyValueState.commit(2);
+        assertEquals("1", keyValueState.get("a"));
+        assertEquals(null, keyValueState.get("b"));
+    }
+
+    @Test
+    public void testRecoverCommittedAndPreparedState() throws Exception {
+        keyValueState.put("a", "1");
+        keyValueState.prepareCommit(1);
+        keyValueState.commit(1);
+        keyValueState.put("b", "2");
+        keyValueState.delete("a");
+        keyValueState.prepareCommit(2);
+        keyValueState.put("c", "3");
+
+        db.close();
+        db = openDb();
+        keyValueState = new RocksDbKeyValueState<>("test", db);
+
+        // the prepared transaction is visible and can still be committed, un-prepared updates are lost
+        assertNull(keyValueState.get("a"));
+        assertEquals("2", keyValueState.get("b"));
+        assertNull(keyValueState.get("c"));
+        keyValueState.commit(2);
+
+        db.close();
+        db = openDb();
+        keyValueState = new RocksDbKeyValueState<>("test", db);
+        assertNull(keyValueState.get("a"));
+        assertEquals("2", keyValueState.get("b"));
+    }
+
+    @Test
+    public void testSnapshotAndPersist() throws Exception {
+        keyValueState.put("a", "1");
+        SnapshotState.Snapshot snapshot = keyValueState.snapshot(1);
+        // updates after the snapshot belong to the next transaction
+        keyValueState.put("b", "2");
+        assertEquals("1", keyValueState.get("a"));
+        assertTrue(snapshot.persist() > 0);
+        keyValueState.commit(1);
+        keyValueState.rollback();
+        assertEquals("1", keyValueState.get("a"));
+        assertNull(keyValueState.get("b"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testPrepareCommittedTxid() throws Exception {
+        keyValueState.put("a", "1");
+        keyValueState.prepareCommit(1);
+        keyValueState.commit(1);
+        keyValueState.prepareCommit(1);
+    }
+
+    @Test
+    public void testIteratorAcrossChunks() throws Exception {
+        int count = RocksDbKeyValueState.ITERATOR_CHUNK_SIZE * 2 + 5;
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            keyValueState.put("k" + i, "v" + i);
+            expected.put("k" + i, "v" + i);
+        }
+        keyValueState.prepareCommit(1);
+        keyValueState.commit(1);
+
+        // shadow a committed entry with a pending update and a pending delete
+        keyValueState.put("k0", "updated");
+        keyValueState.delete("k1");
+        expected.put("k0", "updated");
+        expected.remove("k1");
+
+        Map<String, String> actual = new HashMap<>();
+        Iterator<Map.Entry<String, String>> it = keyValueState.iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> e = it.next();
+            assertNull("duplicate key " + e.getKey(), actual.put(e.getKey(), e.getValue()));
+        }
+        assertEquals(expected, actual);
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testSharedDatabaseClosedWithLastState() throws Exception {
+        File dir = folder.newFolder("shared");
+        RocksDbKeyValueState<String, String> first = new RocksDbKeyValueState<>("first",
+            RocksDbKeyValueStateProvider.openDatabase(dir), new DefaultStateSerializer<String>(),
+            new DefaultStateSerializer<String>(), () -> RocksDbKeyValueStateProvider.releaseDatabase(dir));
+        RocksDbKeyValueState<String, String> second = new RocksDbKeyValueState<>("second",
+            RocksDbKeyValueStateProvider.openDatabase(dir), new DefaultStateSerializer<String>(),
+            new DefaultStateSerializer<String>(), () -> RocksDbKeyValueStateProvider.releaseDatabase(dir));
+        first.close();
+        first.close();
+        assertTrue(RocksDbKeyValueStateProvider.isOpen(dir));
+        second.put("a", "1");
+        second.prepareCommit(1);
+        second.commit(1);
+        second.close();
+        assertFalse(RocksDbKeyValueStateProvider.isOpen(dir));
+
+        RocksDbKeyValueState<String, String> reopened = new RocksDbKeyValueState<>("second",
+            RocksDbKeyValueStateProvider.openDatabase(dir), new DefaultStateSerializer<String>(),
+            new DefaultStateSerializer<String>(), () -> RocksDbKeyValueStateProvider.releaseDatabase(dir));
+        assertEquals("1", reopened.get("a"));
+        reopened.close();
+        assertFalse(RocksDbKeyValueStateProvider.isOpen(dir));
+    }
+
+    private RocksDB openDb() throws Exception {
+        return RocksDB.open(new Options().setCreateIfMissing(true), folder.getRoot().getAbsolutePath());
+    }
+}
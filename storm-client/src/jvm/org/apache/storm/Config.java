@@ -129,6 +129,26 @@ public class Config extends HashMap<String, Object> {
     @isBoolean
     public static final String TOPOLOGY_BACKPRESSURE_ENABLE = "topology.backpressure.enable";
 
+    /**
+     * When backpressure is enabled, track congestion per task instead of throttling every spout in the topology.
+     * Each worker tells the workers sending to it which of its tasks have a receive queue over the high water mark,
+     * over the same connections load metrics go over. Spouts only stop emitting while a task they send to is
+     * congested, and bolts hold off emitting to a congested task for up to
+     * topology.backpressure.fine.grained.max.wait.millis. Nothing goes through ZooKeeper in this mode.
+     * The congestion status is a new message on the worker connections that older workers fail on, so only turn
+     * this on once every supervisor in the cluster has been upgraded.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_BACKPRESSURE_FINE_GRAINED = "topology.backpressure.fine.grained";
+
+    /**
+     * The longest a bolt waits for a congested task to clear before emitting to it anyway, with fine grained
+     * backpressure. Bounding the wait keeps topologies with cycles from deadlocking.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_BACKPRESSURE_FINE_GRAINED_MAX_WAIT_MILLIS = "topology.backpressure.fine.grained.max.wait.millis";
+
     /**
      * This signifies the tuple congestion in a disruptor queue.
      * When the used ratio of a disruptor queue is higher than the high watermark,
@@ -330,6 +350,15 @@ public class Config extends HashMap<String, Object> {
     @isPositiveNumber
     public static final String TOPOLOGY_STATE_CHECKPOINT_INTERVAL = "topology.state.checkpoint.interval.ms";
 
+    /**
+     * Whether the {@link org.apache.storm.topology.IStatefulBolt} bolts persist the prepared state in a background thread.
+     * When enabled, a state that implements {@link org.apache.storm.state.SnapshotState} is only snapshotted by the
+     * executor thread on a prepare, and the bolt keeps processing tuples while the snapshot is saved. Other states are
+     * still prepared synchronously. This can be overridden at the component level.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_STATE_CHECKPOINT_ASYNC = "topology.state.checkpoint.async";
+
     /**
      * A per topology config that specifies the maximum amount of memory a worker can use for that specific topology
      */
@@ -371,6 +400,29 @@ public class Config extends HashMap<String, Object> {
     @isPositiveNumber(includeZero = true)
     public static final String TOPOLOGY_ACKER_EXECUTORS = "topology.acker.executors";
 
+    /**
+     * When true, executors coalesce the (root, ack val) pairs they send to the ackers into one tuple per acker task
+     * instead of sending a tuple per anchor root, and the ackers answer the spouts the same way. A batch is sent
+     * once it holds topology.acker.batch.size entries, once its oldest entry is topology.acker.batch.timeout.millis
+     * old, or once the executor has caught up with its input.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_ACKER_BATCH_ENABLE = "topology.acker.batch.enable";
+
+    /**
+     * The most entries sent in one acker batch. See topology.acker.batch.enable.
+     */
+    @isInteger
+    @isPositiveNumber
+    public static final String TOPOLOGY_ACKER_BATCH_SIZE = "topology.acker.batch.size";
+
+    /**
+     * The longest an entry waits in an acker batch before the batch is sent. See topology.acker.batch.enable.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_ACKER_BATCH_TIMEOUT_MILLIS = "topology.acker.batch.timeout.millis";
+
     /**
      * How many executors to spawn for event logger.
      *
@@ -486,11 +538,51 @@ public class Config extends HashMap<String, Object> {
      * triggered in one of two conditions:
      *
      * 1. nextTuple emits no tuples
-     * 2. The spout has hit maxSpoutPending and can't emit any more tuples
+     * 2. The spout has hit maxSpoutPending, back pressure or a full send queue and can't emit any more tuples
+     *
+     * The class can implement either org.apache.storm.spout.ISpoutWaitStrategy or
+     * org.apache.storm.policy.IWaitStrategy, which is also told why the spout is waiting.
      */
     @isString
     public static final String TOPOLOGY_SPOUT_WAIT_STRATEGY="topology.spout.wait.strategy";
 
+    /**
+     * An org.apache.storm.policy.IWaitStrategy for bolts to use when their receive queue is empty. When not set
+     * bolts block on the receive queue until tuples show up, up to topology.disruptor.wait.timeout.millis.
+     */
+    @isString
+    public static final String TOPOLOGY_BOLT_WAIT_STRATEGY="topology.bolt.wait.strategy";
+
+    /**
+     * How many idle iterations in a row WaitStrategyProgressive busy spins for before it starts yielding.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_WAIT_PROGRESSIVE_LEVEL1_COUNT="topology.wait.progressive.level1.count";
+
+    /**
+     * How many idle iterations in a row WaitStrategyProgressive yields for, after spinning, before it starts
+     * sleeping.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_WAIT_PROGRESSIVE_LEVEL2_COUNT="topology.wait.progressive.level2.count";
+
+    /**
+     * How long WaitStrategyProgressive sleeps for each idle iteration once it is done spinning and yielding.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_SLEEP_MILLIS="topology.wait.progressive.level3.sleep.millis";
+
+    /**
+     * The longest WaitStrategyProgressive sleeps for when the executor has nothing in flight and nothing to do. The
+     * sleep doubles from topology.wait.progressive.level3.sleep.millis up to this.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_MAX_SLEEP_MILLIS="topology.wait.progressive.level3.max.sleep.millis";
+
     /**
      * The amount of milliseconds the SleepEmptyEmitStrategy should sleep for.
      */
@@ -513,6 +605,16 @@ public class Config extends HashMap<String, Object> {
     @isPositiveNumber
     public static final String TOPOLOGY_STATS_SAMPLE_RATE="topology.stats.sample.rate";
 
+    /**
+     * Whether executors should also track execute, process and complete latencies
+     * in HdrHistograms, so that percentiles (p50, p99, p99.9) are reported for a
+     * component and not just averages. Each histogram tracks up to one hour with two
+     * significant digits, which costs about 210KB of heap per latency per executor
+     * (two latencies for a bolt, one for a spout).
+     */
+    @isBoolean
+    public static final String TOPOLOGY_STATS_LATENCY_HISTOGRAMS="topology.stats.latency.histograms";
+
     /**
      * The time period that builtin metrics data in bucketed into.
      */
@@ -525,6 +627,15 @@ public class Config extends HashMap<String, Object> {
     @isBoolean
     public static final String TOPOLOGY_FALL_BACK_ON_JAVA_SERIALIZATION="topology.fall.back.on.java.serialization";
 
+    /**
+     * The encoding of tuples sent between workers. Version 1 is the original encoding. Version 2 packs the number of
+     * anchors into the stream id, saving a byte for tuples with no or one anchor. Every worker of the topology has to
+     * support the version, so only raise it once the whole cluster runs a Storm release that knows about it.
+     */
+    @isInteger
+    @isPositiveNumber
+    public static final String TOPOLOGY_TUPLE_SERIALIZATION_VERSION="topology.tuple.serialization.version";
+
     /**
      * Topology-specific options for the worker child process. This is used in addition to WORKER_CHILDOPTS.
      */
@@ -857,6 +968,65 @@ public class Config extends HashMap<String, Object> {
     @NotNull
     public static final String TOPOLOGY_DISRUPTOR_BATCH_TIMEOUT_MILLIS="topology.disruptor.batch.timeout.millis";
 
+    /**
+     * The queue implementation used for the executor receive/send queues and the worker transfer queue.
+     * "disruptor" uses the LMAX Disruptor with a shared background flusher. "mpsc" uses a lock-free array backed
+     * queue where each producer batches locally and the consumer picks up partial batches itself, so there is no
+     * flusher thread. Both honor topology.disruptor.batch.size, topology.disruptor.batch.timeout.millis and
+     * topology.disruptor.wait.timeout.millis.
+     */
+    @isString(acceptedValues = {"disruptor", "mpsc"})
+    public static final String TOPOLOGY_QUEUE_IMPLEMENTATION="topology.queue.implementation";
+
+    /**
+     * When true, tuples going to other workers are serialized by the executor send thread straight into pooled
+     * direct buffers that are handed to the messaging layer as is, instead of into a fresh byte[] per tuple that
+     * is copied again into the netty batch. The buffers hold task ids as a short, so this is ignored for topologies
+     * with task ids above Short.MAX_VALUE. Connections that negotiated frame version 2 transcode the buffers when
+     * writing them, and those that compress batches copy the messages into a batch.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_TRANSFER_DIRECT_BUFFERS="topology.transfer.direct.buffers";
+
+    /**
+     * The most direct buffers kept around per worker for topology.transfer.direct.buffers. Each buffer is
+     * storm.messaging.netty.transfer.batch.size bytes.
+     */
+    @isInteger
+    @isPositiveNumber
+    public static final String TOPOLOGY_TRANSFER_DIRECT_BUFFERS_POOL_SIZE="topology.transfer.direct.buffers.pool.size";
+
+    /**
+     * When true, tuples going to a task in the same worker are published by the emitting executor straight into
+     * the receive queue of the destination executor, instead of going through the executor send thread first.
+     * Spouts hold off on nextTuple while any receive queue they publish to this way is full, as they do for their
+     * send queue. Ignored when topology.testing.always.try.serialize is set.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_TRANSFER_LOCAL_SHORT_CIRCUIT="topology.transfer.local.short.circuit";
+
+    /**
+     * When true, executors recycle the tuples they emit and receive through a pool instead of allocating new ones.
+     * Bolts must not use a tuple once they returned from execute for it and acked or failed it; see
+     * org.apache.storm.tuple.TuplePool for the details.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_TUPLE_POOLING="topology.tuple.pooling";
+
+    /**
+     * How many free tuples each pool of topology.tuple.pooling keeps around at most.
+     */
+    @isInteger
+    @isPositiveNumber
+    public static final String TOPOLOGY_TUPLE_POOL_SIZE="topology.tuple.pool.size";
+
+    /**
+     * When true, tuples released to a pool of topology.tuple.pooling are never reused, and any later use of them
+     * throws. Meant for checking that a topology is safe to run with pooling, not for production.
+     */
+    @isBoolean
+    public static final String TOPOLOGY_TUPLE_POOLING_DEBUG="topology.tuple.pooling.debug";
+
     /**
      * Minimum number of nimbus hosts where the code must be replicated before leader nimbus
      * is allowed to perform topology activation tasks like setting up heartbeats/assignments
@@ -1283,7 +1453,9 @@ public class Config extends HashMap<String, Object> {
     public static final String STORM_LOCAL_MODE_ZMQ = "storm.local.mode.zmq";
 
     /**
-     * The transporter for communication among Storm tasks
+     * The transporter for communication among Storm tasks. org.apache.storm.messaging.netty.Context is built on
+     * Netty 3, org.apache.storm.messaging.netty4.Context speaks the same protocol on Netty 4, with pooled buffers
+     * and the native epoll transport where available. Both read the storm.messaging.netty.* settings.
      */
     @isString
     public static final String STORM_MESSAGING_TRANSPORT = "storm.messaging.transport";
@@ -1321,6 +1493,44 @@ public class Config extends HashMap<String, Object> {
     @isInteger
     public static final String STORM_NETTY_MESSAGE_BATCH_SIZE = "storm.messaging.netty.transfer.batch.size";
 
+    /**
+     * Netty based messaging: The class name of the org.apache.storm.messaging.netty.IBatchCodec clients compress
+     * message batches with, for example org.apache.storm.messaging.netty.DeflateBatchCodec. Each connection only
+     * compresses once the server agreed to the same codec. Not set means no compression.
+     */
+    @isString
+    public static final String STORM_MESSAGING_NETTY_COMPRESSION_CODEC = "storm.messaging.netty.compression.codec";
+
+    /**
+     * Netty based messaging: Batches smaller than this many bytes are sent uncompressed.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String STORM_MESSAGING_NETTY_COMPRESSION_THRESHOLD = "storm.messaging.netty.compression.threshold";
+
+    /**
+     * Netty based messaging: How many bytes of messages a client holds in memory while its connection is down, to
+     * send them once it is back instead of dropping them. 0 turns the buffer off.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String STORM_MESSAGING_NETTY_RESEND_BUFFER_BYTES = "storm.messaging.netty.resend.buffer.bytes";
+
+    /**
+     * Netty based messaging: The size of the memory-mapped file a client puts the messages in that did not fit in
+     * storm.messaging.netty.resend.buffer.bytes. 0 means no file, and such messages are dropped.
+     */
+    @isInteger
+    @isPositiveNumber(includeZero = true)
+    public static final String STORM_MESSAGING_NETTY_RESEND_BUFFER_SPILL_BYTES = "storm.messaging.netty.resend.buffer.spill.bytes";
+
+    /**
+     * Netty based messaging: The directory for the files of storm.messaging.netty.resend.buffer.spill.bytes. Defaults
+     * to java.io.tmpdir.
+     */
+    @isString
+    public static final String STORM_MESSAGING_NETTY_RESEND_BUFFER_SPILL_DIR = "storm.messaging.netty.resend.buffer.spill.dir";
+
     /**
      * Netty based messaging: The max # of retries that a peer will perform when a remote is not accessible
      *@deprecated "Since netty clients should never stop reconnecting - this does not make sense anymore.
@@ -6,22 +6,29 @@
  * to you under the Apache License, Version 2.0 (the
  * "License"); you may not use this file except in compliance
  * with the License.  You may obtain a copy of the License at
- * <p/>
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * <p/>
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.apache.storm.metric.internal;
 
-import java.util.Timer;
+package org.apache.storm;
+
+import java.util.Map;
 
 /**
- * Just holds a singleton metric/stat timer for use by metric/stat calculations
+ * Allows a bolt to get tick tuples when {@link Config#TOPOLOGY_TICK_TUPLE_FREQ_SECS} is not set for it, for work it
+ * has to do on the executor thread even if no tuples come in.
  */
-class MetricStatTimer {
-    static Timer _timer = new Timer("metric/stat timer", true);
+public interface IDefaultTicks {
+    /**
+     * Called when the executor sets up its tick tuples and no tick tuple frequency is configured.
+     * @param topoConf the configuration of the component
+     * @return the tick tuple frequency in seconds, or null if no tick tuples are needed.
+     */
+    public Integer getDefaultTickFreqSecs(Map<String, Object> topoConf);
 }
@@ -22,12 +22,13 @@ import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
-import org.apache.storm.utils.Utils;
-import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.RotatingPendingMap;
 import org.apache.storm.utils.TupleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Acker implements IBolt {
@@ -40,92 +41,179 @@ public class Acker implements IBolt {
     public static final String ACKER_ACK_STREAM_ID = "__ack_ack";
     public static final String ACKER_FAIL_STREAM_ID = "__ack_fail";
     public static final String ACKER_RESET_TIMEOUT_STREAM_ID = "__ack_reset_timeout";
+    /**
+     * Carries a long[] of entries, BATCH_RECORD_SIZE longs each: root id, value and code. Towards the acker the value
+     * is the ack val and the code is the spout task for an init, or BATCH_ACK, BATCH_FAIL or BATCH_RESET_TIMEOUT.
+     * Towards the spout the value is the time delta in ms and the code is BATCH_ACK, BATCH_FAIL or BATCH_RESET_TIMEOUT.
+     */
+    public static final String ACKER_BATCH_STREAM_ID = "__ack_batch";
+
+    public static final int BATCH_RECORD_SIZE = 3;
+    public static final long BATCH_ACK = -1;
+    public static final long BATCH_FAIL = -2;
+    public static final long BATCH_RESET_TIMEOUT = -3;
 
     public static final int TIMEOUT_BUCKET_NUM = 3;
 
     private OutputCollector collector;
-    private RotatingMap<Object, AckObject> pending;
-
-    private class AckObject {
-        public long val = 0L;
-        public Integer spoutTask = null;
-        public boolean failed = false;
-        public long startTime = System.currentTimeMillis();
-
-        // val xor value
-        public void updateAck(Long value) {
-            val = Utils.bitXor(val, value);
+    private RotatingPendingMap<Void> pending;
+    // Replies to the spouts for the batch being processed, by spout task
+    private final Map<Integer, ReplyBatch> replies = new HashMap<>();
+
+    private static class ReplyBatch {
+        long[] records = new long[16 * BATCH_RECORD_SIZE];
+        int size = 0;
+
+        void add(long root, long timeDelta, long code) {
+            int offset = size * BATCH_RECORD_SIZE;
+            if (offset + BATCH_RECORD_SIZE > records.length) {
+                records = Arrays.copyOf(records, records.length * 2);
+            }
+            records[offset] = root;
+            records[offset + 1] = timeDelta;
+            records[offset + 2] = code;
+            size++;
         }
     }
 
+    /**
+     * The index of the acker task, in the sorted acker tasks, that the fields grouping on "id" picks for root.
+     * Executors batching their acker messages use this to send them to the same acker as the unbatched streams would.
+     */
+    public static int ackerTaskIndex(long root, int numAckers) {
+        // Same as TupleUtils.chooseTaskIndex(Arrays.asList(root), numAckers)
+        return Math.abs(31 + Long.hashCode(root)) % numAckers;
+    }
+
     @Override
     public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
-        this.pending = new RotatingMap<Object, AckObject>(TIMEOUT_BUCKET_NUM);
+        this.pending = new RotatingPendingMap<>(TIMEOUT_BUCKET_NUM, false);
     }
 
     @Override
     public void execute(Tuple input) {
         if (TupleUtils.isTick(input)) {
-            Map<Object, AckObject> tmp = pending.rotate();
-            LOG.debug("Number of timeout tuples:{}", tmp.size());
+            int timedOut = pending.rotate();
+            LOG.debug("Number of timeout tuples:{}", timedOut);
             return;
         }
 
         String streamId = input.getSourceStreamId();
-        Object id = input.getValue(0);
-        AckObject curr = pending.get(id);
+        if (ACKER_BATCH_STREAM_ID.equals(streamId)) {
+            executeBatch(input);
+            collector.ack(input);
+            return;
+        }
+
+        long id = input.getLong(0);
+        long code;
         if (ACKER_INIT_STREAM_ID.equals(streamId)) {
-            if (curr == null) {
-                curr = new AckObject();
-                curr.val = input.getLong(1);
-                curr.spoutTask = input.getInteger(2);
-                pending.put(id, curr);
+            code = input.getInteger(2);
+        } else if (ACKER_ACK_STREAM_ID.equals(streamId)) {
+            code = BATCH_ACK;
+        } else if (ACKER_FAIL_STREAM_ID.equals(streamId)) {
+            code = BATCH_FAIL;
+        } else if (ACKER_RESET_TIMEOUT_STREAM_ID.equals(streamId)) {
+            code = BATCH_RESET_TIMEOUT;
+        } else {
+            LOG.warn("Unknown source stream {} from task-{}", streamId, input.getSourceTask());
+            return;
+        }
+        long val = (code >= 0 || code == BATCH_ACK) ? input.getLong(1) : 0;
+        update(id, val, code, false);
+
+        collector.ack(input);
+    }
+
+    private void executeBatch(Tuple input) {
+        long[] batch = (long[]) input.getValue(0);
+        for (int i = 0; i + BATCH_RECORD_SIZE <= batch.length; i += BATCH_RECORD_SIZE) {
+            long code = batch[i + 2];
+            if (code < BATCH_RESET_TIMEOUT) {
+                LOG.warn("Unknown batch entry code {} from task-{}", code, input.getSourceTask());
+                continue;
+            }
+            update(batch[i], batch[i + 1], code, true);
+        }
+        for (Map.Entry<Integer, ReplyBatch> entry : replies.entrySet()) {
+            ReplyBatch reply = entry.getValue();
+            if (reply.size > 0) {
+                collector.emitDirect(entry.getKey(), ACKER_BATCH_STREAM_ID,
+                    new Values(Arrays.copyOf(reply.records, reply.size * BATCH_RECORD_SIZE)));
+                reply.size = 0;
+            }
+        }
+    }
+
+    private void update(long id, long val, long code, boolean batched) {
+        int curr = pending.find(id);
+        if (code >= 0) {
+            // init
+            if (curr == RotatingPendingMap.NOT_FOUND) {
+                curr = newPending(id);
+                pending.setVal(curr, val);
             } else {
                 // If receiving bolt's ack before the init message from spout, just update the xor value.
-                curr.updateAck(input.getLong(1));
-                curr.spoutTask = input.getInteger(2);
+                pending.xorVal(curr, val);
             }
-        } else if (ACKER_ACK_STREAM_ID.equals(streamId)) {
-            if (curr != null) {
-                curr.updateAck(input.getLong(1));
+            pending.setTask(curr, (int) code);
+        } else if (code == BATCH_ACK) {
+            if (curr != RotatingPendingMap.NOT_FOUND) {
+                pending.xorVal(curr, val);
             } else {
-                curr = new AckObject();
-                curr.val = input.getLong(1);
-                pending.put(id, curr);
+                curr = newPending(id);
+                pending.setVal(curr, val);
             }
-        } else if (ACKER_FAIL_STREAM_ID.equals(streamId)) {
+        } else if (code == BATCH_FAIL) {
             // For the case that ack_fail message arrives before ack_init
-            if (curr == null) {
-                curr = new AckObject();
-            }
-            curr.failed = true;
-            pending.put(id, curr);
-        } else if (ACKER_RESET_TIMEOUT_STREAM_ID.equals(streamId)) {
-            if (curr == null) {
-                curr = new AckObject();
-            }
-            pending.put(id, curr);
+            curr = (curr == RotatingPendingMap.NOT_FOUND) ? newPending(id) : pending.touch(curr);
+            pending.setFailed(curr, true);
         } else {
-            LOG.warn("Unknown source stream {} from task-{}", streamId, input.getSourceTask());
-            return;
+            curr = (curr == RotatingPendingMap.NOT_FOUND) ? newPending(id) : pending.touch(curr);
         }
 
-        Integer task = curr.spoutTask;
-        if (curr != null && task != null) {
-            Values tuple = new Values(id, getTimeDeltaMillis(curr.startTime));
-            if (curr.val == 0) {
-                pending.remove(id);
-                collector.emitDirect(task, ACKER_ACK_STREAM_ID, tuple);
-            } else if (curr.failed) {
-                pending.remove(id);
-                collector.emitDirect(task, ACKER_FAIL_STREAM_ID, tuple);
-            } else if(ACKER_RESET_TIMEOUT_STREAM_ID.equals(streamId)) {
-                collector.emitDirect(task, ACKER_RESET_TIMEOUT_STREAM_ID, tuple);
+        int task = pending.getTask(curr);
+        if (task != RotatingPendingMap.NO_TASK) {
+            long timeDelta = getTimeDeltaMillis(pending.getStartTime(curr));
+            long reply;
+            if (pending.getVal(curr) == 0) {
+                pending.remove(curr);
+                reply = BATCH_ACK;
+            } else if (pending.isFailed(curr)) {
+                pending.remove(curr);
+                reply = BATCH_FAIL;
+            } else if (code == BATCH_RESET_TIMEOUT) {
+                reply = BATCH_RESET_TIMEOUT;
+            } else {
+                return;
+            }
+            if (batched) {
+                ReplyBatch replyBatch = replies.get(task);
+                if (replyBatch == null) {
+                    replyBatch = new ReplyBatch();
+                    replies.put(task, replyBatch);
+                }
+                replyBatch.add(id, timeDelta, reply);
+            } else {
+                collector.emitDirect(task, replyStream(reply), new Values(id, timeDelta));
             }
         }
+    }
 
-        collector.ack(input);
+    private static String replyStream(long reply) {
+        if (reply == BATCH_ACK) {
+            return ACKER_ACK_STREAM_ID;
+        } else if (reply == BATCH_FAIL) {
+            return ACKER_FAIL_STREAM_ID;
+        }
+        return ACKER_RESET_TIMEOUT_STREAM_ID;
+    }
+
+    private int newPending(long id) {
+        int handle = pending.insert(id);
+        pending.setStartTime(handle, System.currentTimeMillis());
+        return handle;
     }
 
     @Override
@@ -272,11 +272,23 @@ public class StormCommon {
     public static void addAcker(Map<String, Object> conf, StormTopology topology) {
         int ackerNum = ObjectReader.getInt(conf.get(Config.TOPOLOGY_ACKER_EXECUTORS), ObjectReader.getInt(conf.get(Config.TOPOLOGY_WORKERS)));
         Map<GlobalStreamId, Grouping> inputs = ackerInputs(topology);
+        boolean batchAcks = ObjectReader.getBoolean(conf.get(Config.TOPOLOGY_ACKER_BATCH_ENABLE), false);
+        if (batchAcks) {
+            for (String id : topology.get_bolts().keySet()) {
+                inputs.put(Utils.getGlobalStreamId(id, Acker.ACKER_BATCH_STREAM_ID), Thrift.prepareDirectGrouping());
+            }
+            for (String id : topology.get_spouts().keySet()) {
+                inputs.put(Utils.getGlobalStreamId(id, Acker.ACKER_BATCH_STREAM_ID), Thrift.prepareDirectGrouping());
+            }
+        }
 
         Map<String, StreamInfo> outputStreams = new HashMap<String, StreamInfo>();
         outputStreams.put(Acker.ACKER_ACK_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
         outputStreams.put(Acker.ACKER_FAIL_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
         outputStreams.put(Acker.ACKER_RESET_TIMEOUT_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
+        if (batchAcks) {
+            outputStreams.put(Acker.ACKER_BATCH_STREAM_ID, Thrift.directOutputFields(Arrays.asList("batch")));
+        }
 
         Map<String, Object> ackerConf = new HashMap<>();
         ackerConf.put(Config.TOPOLOGY_TASKS, ackerNum);
@@ -289,6 +301,9 @@ public class StormCommon {
             common.put_to_streams(Acker.ACKER_ACK_STREAM_ID, Thrift.outputFields(Arrays.asList("id", "ack-val")));
             common.put_to_streams(Acker.ACKER_FAIL_STREAM_ID, Thrift.outputFields(Arrays.asList("id")));
             common.put_to_streams(Acker.ACKER_RESET_TIMEOUT_STREAM_ID, Thrift.outputFields(Arrays.asList("id")));
+            if (batchAcks) {
+                common.put_to_streams(Acker.ACKER_BATCH_STREAM_ID, Thrift.directOutputFields(Arrays.asList("batch")));
+            }
         }
 
         for (SpoutSpec spout : topology.get_spouts().values()) {
@@ -305,6 +320,11 @@ public class StormCommon {
                     Thrift.prepareDirectGrouping());
             common.put_to_inputs(Utils.getGlobalStreamId(Acker.ACKER_COMPONENT_ID, Acker.ACKER_RESET_TIMEOUT_STREAM_ID),
                     Thrift.prepareDirectGrouping());
+            if (batchAcks) {
+                common.put_to_streams(Acker.ACKER_BATCH_STREAM_ID, Thrift.directOutputFields(Arrays.asList("batch")));
+                common.put_to_inputs(Utils.getGlobalStreamId(Acker.ACKER_COMPONENT_ID, Acker.ACKER_BATCH_STREAM_ID),
+                        Thrift.prepareDirectGrouping());
+            }
         }
 
         topology.put_to_bolts(Acker.ACKER_COMPONENT_ID, acker);
@@ -17,6 +17,7 @@
  */
 package org.apache.storm.daemon.metrics;
 
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.metric.internal.MultiCountStatAndMetric;
 import org.apache.storm.metric.internal.MultiLatencyStatAndMetric;
 import org.apache.storm.stats.BoltExecutorStats;
@@ -46,6 +47,15 @@ public class BuiltinBoltMetrics extends BuiltinMetrics {
         this.metricMap.put("execute-count", executeCount);
         this.metricMap.put("process-latency", processLatency);
         this.metricMap.put("execute-latency", executeLatency);
+
+        LatencyHistogramStatAndMetric processLatencyHistogram = stats.getProcessLatencyHistogram();
+        if (processLatencyHistogram != null) {
+            this.metricMap.put("process-latency-percentiles", processLatencyHistogram);
+        }
+        LatencyHistogramStatAndMetric executeLatencyHistogram = stats.getExecuteLatencyHistogram();
+        if (executeLatencyHistogram != null) {
+            this.metricMap.put("execute-latency-percentiles", executeLatencyHistogram);
+        }
     }
 
     public MultiCountStatAndMetric getAckCount() {
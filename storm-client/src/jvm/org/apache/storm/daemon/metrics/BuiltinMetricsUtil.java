@@ -18,6 +18,7 @@
 package org.apache.storm.daemon.metrics;
 
 import org.apache.storm.Config;
+import org.apache.storm.grouping.LoadAwareCustomStreamGrouping;
 import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.metric.api.IStatefulObject;
 import org.apache.storm.metric.api.StateMetric;
@@ -74,6 +75,21 @@ public class BuiltinMetricsUtil {
         }
     }
 
+    public static void registerGroupingMetrics(Map<String, Map<String, LoadAwareCustomStreamGrouping>> streamToComponentToGrouper,
+                                               Map<String, Object> topoConf, TopologyContext context) {
+        if (streamToComponentToGrouper == null) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, LoadAwareCustomStreamGrouping>> streamEntry : streamToComponentToGrouper.entrySet()) {
+            for (Map.Entry<String, LoadAwareCustomStreamGrouping> entry : streamEntry.getValue().entrySet()) {
+                if (entry.getValue() instanceof IStatefulObject) {
+                    String name = "__grouping-" + streamEntry.getKey() + "-" + entry.getKey();
+                    registerMetric(name, new StateMetric((IStatefulObject) entry.getValue()), topoConf, context);
+                }
+            }
+        }
+    }
+
     public static void registerMetric(String name, IMetric metric, Map<String, Object> topoConf, TopologyContext context) {
         int bucketSize = ((Number) topoConf.get(Config.TOPOLOGY_BUILTIN_METRICS_BUCKET_SIZE_SECS)).intValue();
         context.registerMetric(name, metric, bucketSize);
@@ -17,6 +17,7 @@
  */
 package org.apache.storm.daemon.metrics;
 
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.metric.internal.MultiCountStatAndMetric;
 import org.apache.storm.metric.internal.MultiLatencyStatAndMetric;
 import org.apache.storm.stats.SpoutExecutorStats;
@@ -40,6 +41,11 @@ public class BuiltinSpoutMetrics extends BuiltinMetrics {
         this.metricMap.put("emit-count", emitCount);
         this.metricMap.put("transfer-count", transferCount);
         this.metricMap.put("complete-latency", completeLatency);
+
+        LatencyHistogramStatAndMetric completeLatencyHistogram = stats.getCompleteLatencyHistogram();
+        if (completeLatencyHistogram != null) {
+            this.metricMap.put("complete-latency-percentiles", completeLatencyHistogram);
+        }
     }
 
     public MultiCountStatAndMetric getAckCount() {
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.storm.daemon.worker;
+
+import org.apache.storm.daemon.StormCommon;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.utils.ISingleConsumerQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The receive queues of the tasks running in a worker, kept in an array indexed by task id minus the lowest local
+ * task id. The tasks of a worker are mostly contiguous, so this is a lot cheaper to look up than a map.
+ */
+class LocalTaskQueues {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalTaskQueues.class);
+
+    // null for the gaps
+    private final ISingleConsumerQueue[] queues;
+    private final int offset;
+
+    LocalTaskQueues(Map<List<Long>, ISingleConsumerQueue> executorReceiveQueues) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (List<Long> executor : executorReceiveQueues.keySet()) {
+            min = Math.min(min, executor.get(0).intValue());
+            max = Math.max(max, executor.get(1).intValue());
+        }
+        this.offset = executorReceiveQueues.isEmpty() ? 0 : min;
+        this.queues = new ISingleConsumerQueue[executorReceiveQueues.isEmpty() ? 0 : max - min + 1];
+        for (Map.Entry<List<Long>, ISingleConsumerQueue> entry : executorReceiveQueues.entrySet()) {
+            for (Integer task : StormCommon.executorIdToTasks(entry.getKey())) {
+                queues[task - offset] = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * @return the receive queue of the executor running task, or null if the task does not run in this worker.
+     */
+    ISingleConsumerQueue get(int task) {
+        int index = task - offset;
+        if (index < 0 || index >= queues.length) {
+            return null;
+        }
+        return queues[index];
+    }
+
+    /**
+     * Publish each tuple to the receive queue of its destination, one batch per queue. Tuples for tasks that do not
+     * run in this worker are dropped.
+     */
+    void publish(List<AddressedTuple> tupleBatch) {
+        // Batches are usually for a handful of executors, so a linear scan beats hashing every tuple
+        List<ISingleConsumerQueue> targets = new ArrayList<>();
+        List<List<AddressedTuple>> grouped = new ArrayList<>();
+        for (AddressedTuple tuple : tupleBatch) {
+            ISingleConsumerQueue queue = get(tuple.dest);
+            if (null == queue) {
+                LOG.warn("Received invalid messages for unknown tasks. Dropping... ");
+                WorkerState.releaseTuple(tuple);
+                continue;
+            }
+            int index = targets.indexOf(queue);
+            if (index < 0) {
+                index = targets.size();
+                targets.add(queue);
+                grouped.add(new ArrayList<>());
+            }
+            grouped.get(index).add(tuple);
+        }
+
+        for (int i = 0; i < targets.size(); i++) {
+            targets.get(i).publish(grouped.get(i));
+        }
+    }
+}
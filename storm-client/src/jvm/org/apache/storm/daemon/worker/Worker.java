@@ -57,6 +57,7 @@ import org.apache.storm.generated.LSWorkerHeartbeat;
 import org.apache.storm.generated.LogConfig;
 import org.apache.storm.messaging.IConnection;
 import org.apache.storm.messaging.IContext;
+import org.apache.storm.messaging.EncodedTaskMessages;
 import org.apache.storm.messaging.TaskMessage;
 import org.apache.storm.security.auth.AuthUtils;
 import org.apache.storm.security.auth.IAutoCredentials;
@@ -207,8 +208,13 @@ public class Worker implements Shutdownable, DaemonCommon {
                 }
                 executorsAtom.set(newExecutors);
 
-                EventHandler<Object> tupleHandler = (packets, seqId, batchEnd) -> workerState
-                    .sendTuplesToRemoteWorker((HashMap<Integer, ArrayList<TaskMessage>>) packets, seqId, batchEnd);
+                EventHandler<Object> tupleHandler = (packets, seqId, batchEnd) -> {
+                    if (packets instanceof List) {
+                        workerState.sendEncodedToRemoteWorker((List<EncodedTaskMessages>) packets, seqId, batchEnd);
+                    } else {
+                        workerState.sendTuplesToRemoteWorker((HashMap<Integer, ArrayList<TaskMessage>>) packets, seqId, batchEnd);
+                    }
+                };
 
                 // This thread will publish the messages destined for remote tasks to remote connections
                 transferThread = Utils.asyncLoop(() -> {
@@ -228,7 +234,8 @@ public class Worker implements Shutdownable, DaemonCommon {
 
                 WorkerBackpressureCallback backpressureCallback = mkBackpressureHandler(topologyConf);
                 backpressureThread = new WorkerBackpressureThread(workerState.backpressureTrigger, workerState, backpressureCallback);
-                if ((Boolean) topologyConf.get(Config.TOPOLOGY_BACKPRESSURE_ENABLE)) {
+                if ((Boolean) topologyConf.get(Config.TOPOLOGY_BACKPRESSURE_ENABLE)
+                    && !workerState.isFineGrainedBackpressure()) {
                     backpressureThread.start();
                     stormClusterState.topologyBackpressure(topologyId, backpressureZnodeTimeoutMs, workerState::refreshThrottle);
                     
@@ -28,6 +28,7 @@ import org.apache.storm.cluster.IStormClusterState;
 import org.apache.storm.cluster.VersionedData;
 import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.daemon.supervisor.AdvancedFSOps;
+import org.apache.storm.executor.DirectSendBuffers;
 import org.apache.storm.executor.IRunningExecutor;
 import org.apache.storm.generated.Assignment;
 import org.apache.storm.generated.DebugOptions;
@@ -43,6 +44,7 @@ import org.apache.storm.grouping.LoadMapping;
 import org.apache.storm.hooks.BaseWorkerHook;
 import org.apache.storm.messaging.ConnectionWithStatus;
 import org.apache.storm.messaging.DeserializingConnectionCallback;
+import org.apache.storm.messaging.EncodedTaskMessages;
 import org.apache.storm.messaging.IConnection;
 import org.apache.storm.messaging.IContext;
 import org.apache.storm.messaging.TaskMessage;
@@ -51,10 +53,13 @@ import org.apache.storm.serialization.KryoTupleSerializer;
 import org.apache.storm.task.WorkerTopologyContext;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.utils.ConfigUtils;
+import org.apache.storm.utils.DirectBufferPool;
 import org.apache.storm.utils.Utils;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
 import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.QueueFactory;
 import org.apache.storm.utils.ThriftTopologyUtils;
 import org.apache.storm.utils.TransferDrainer;
 import org.slf4j.Logger;
@@ -151,7 +156,7 @@ public class WorkerState {
         return cachedNodeToPortSocket;
     }
 
-    public Map<List<Long>, DisruptorQueue> getExecutorReceiveQueueMap() {
+    public Map<List<Long>, ISingleConsumerQueue> getExecutorReceiveQueueMap() {
         return executorReceiveQueueMap;
     }
 
@@ -200,11 +205,8 @@ public class WorkerState {
     final ReentrantReadWriteLock endpointSocketLock;
     final AtomicReference<Map<Integer, NodeInfo>> cachedTaskToNodePort;
     final AtomicReference<Map<NodeInfo, IConnection>> cachedNodeToPortSocket;
-    final Map<List<Long>, DisruptorQueue> executorReceiveQueueMap;
-    // executor id is in form [start_task_id end_task_id]
-    // short executor id is start_task_id
-    final Map<Integer, DisruptorQueue> shortExecutorReceiveQueueMap;
-    final Map<Integer, Integer> taskToShortExecutor;
+    final Map<List<Long>, ISingleConsumerQueue> executorReceiveQueueMap;
+    private final LocalTaskQueues localTaskQueues;
     final Runnable suicideCallback;
     final Utils.UptimeComputer uptime;
     final Map<String, Object> defaultSharedResources;
@@ -238,7 +240,7 @@ public class WorkerState {
         return throttleOn;
     }
 
-    public DisruptorQueue getTransferQueue() {
+    public ISingleConsumerQueue getTransferQueue() {
         return transferQueue;
     }
 
@@ -246,7 +248,7 @@ public class WorkerState {
         return userTimer;
     }
 
-    final DisruptorQueue transferQueue;
+    final ISingleConsumerQueue transferQueue;
 
     // Timers
     final StormTimer heartbeatTimer = mkHaltingTimer("heartbeat-timer");
@@ -265,6 +267,11 @@ public class WorkerState {
     private final AtomicLong nextUpdate = new AtomicLong(0);
     private final boolean trySerializeLocal;
     private final TransferDrainer drainer;
+    private final DirectBufferPool directBufferPool;
+    private final boolean fineGrainedBackpressure;
+    // Every task this worker knows to be congested, local or remote, rebuilt whenever that changes
+    private volatile Set<Integer> congestedTasks = Collections.emptySet();
+    private final AtomicLong congestionVersion = new AtomicLong(0);
 
     private static final long LOAD_REFRESH_INTERVAL_MS = 5000L;
 
@@ -272,11 +279,8 @@ public class WorkerState {
         Map<String, Object> topologyConf, IStateStorage stateStorage, IStormClusterState stormClusterState)
         throws IOException, InvalidTopologyException {
         this.executors = new HashSet<>(readWorkerExecutors(stormClusterState, topologyId, assignmentId, port));
-        this.transferQueue = new DisruptorQueue("worker-transfer-queue",
-            ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_BUFFER_SIZE)),
-            (long) topologyConf.get(Config.TOPOLOGY_DISRUPTOR_WAIT_TIMEOUT_MILLIS),
-            ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_SIZE)),
-            (long) topologyConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_TIMEOUT_MILLIS));
+        this.transferQueue = QueueFactory.mkQueue(topologyConf, "worker-transfer-queue",
+            ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_BUFFER_SIZE)));
 
         this.conf = conf;
         this.mqContext = (null != mqContext) ? mqContext : TransportFactory.makeContext(topologyConf);
@@ -291,14 +295,13 @@ public class WorkerState {
         this.isTopologyActive = new AtomicBoolean(false);
         this.stormComponentToDebug = new AtomicReference<>();
         this.executorReceiveQueueMap = mkReceiveQueueMap(topologyConf, executors);
-        this.shortExecutorReceiveQueueMap = new HashMap<>();
         this.taskIds = new ArrayList<>();
         this.blobToLastKnownVersion = new ConcurrentHashMap<>();
-        for (Map.Entry<List<Long>, DisruptorQueue> entry : executorReceiveQueueMap.entrySet()) {
-            this.shortExecutorReceiveQueueMap.put(entry.getKey().get(0).intValue(), entry.getValue());
+        for (Map.Entry<List<Long>, ISingleConsumerQueue> entry : executorReceiveQueueMap.entrySet()) {
             this.taskIds.addAll(StormCommon.executorIdToTasks(entry.getKey()));
         }
         Collections.sort(taskIds);
+        this.localTaskQueues = new LocalTaskQueues(executorReceiveQueueMap);
         this.topologyConf = topologyConf;
         this.backpressureZnodeTimeoutMs = ObjectReader.getInt(topologyConf.get(Config.BACKPRESSURE_ZNODE_TIMEOUT_SECS)) * 1000;
         this.topology = ConfigUtils.readSupervisorTopology(conf, topologyId, AdvancedFSOps.make(conf));
@@ -317,12 +320,6 @@ public class WorkerState {
         this.endpointSocketLock = new ReentrantReadWriteLock();
         this.cachedNodeToPortSocket = new AtomicReference<>(new HashMap<>());
         this.cachedTaskToNodePort = new AtomicReference<>(new HashMap<>());
-        this.taskToShortExecutor = new HashMap<>();
-        for (List<Long> executor : this.executors) {
-            for (Integer task : StormCommon.executorIdToTasks(executor)) {
-                taskToShortExecutor.put(task, executor.get(0).intValue());
-            }
-        }
         this.suicideCallback = Utils.mkSuicideFn();
         this.uptime = Utils.makeUptimeComputer();
         this.defaultSharedResources = makeDefaultResources();
@@ -336,7 +333,22 @@ public class WorkerState {
             LOG.warn("WILL TRY TO SERIALIZE ALL TUPLES (Turn off {} for production", Config.TOPOLOGY_TESTING_ALWAYS_TRY_SERIALIZE);
         }
         this.drainer = new TransferDrainer();
-
+        this.fineGrainedBackpressure = ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_BACKPRESSURE_ENABLE), false)
+            && ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_BACKPRESSURE_FINE_GRAINED), false);
+        boolean directBuffers = ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_TRANSFER_DIRECT_BUFFERS), false);
+        if (directBuffers && !taskToComponent.isEmpty() && Collections.max(taskToComponent.keySet()) > Short.MAX_VALUE) {
+            // The buffers hold task ids as a short, like frame version 1
+            LOG.warn("Not using {} because the topology has task ids above {}", Config.TOPOLOGY_TRANSFER_DIRECT_BUFFERS,
+                Short.MAX_VALUE);
+            directBuffers = false;
+        }
+        if (directBuffers) {
+            this.directBufferPool = new DirectBufferPool(
+                ObjectReader.getInt(topologyConf.get(Config.STORM_NETTY_MESSAGE_BATCH_SIZE), 262144),
+                ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_DIRECT_BUFFERS_POOL_SIZE), 64));
+        } else {
+            this.directBufferPool = null;
+        }
     }
 
     public void refreshConnections() {
@@ -389,11 +401,14 @@ public class WorkerState {
         cachedNodeToPortSocket.getAndUpdate(prev -> {
             Map<NodeInfo, IConnection> next = new HashMap<>(prev);
             for (NodeInfo nodeInfo : newConnections) {
-                next.put(nodeInfo,
-                    mqContext.connect(
-                        topologyId,
-                        assignment.get_node_host().get(nodeInfo.get_node()),    // Host
-                        nodeInfo.get_port().iterator().next().intValue()));     // Port
+                IConnection conn = mqContext.connect(
+                    topologyId,
+                    assignment.get_node_host().get(nodeInfo.get_node()),    // Host
+                    nodeInfo.get_port().iterator().next().intValue());      // Port
+                if (fineGrainedBackpressure) {
+                    conn.setCongestionListener(this::updateCongestedTasks);
+                }
+                next.put(nodeInfo, conn);
             }
             return next;
         });
@@ -416,6 +431,10 @@ public class WorkerState {
             removeConnections.forEach(next::remove);
             return next;
         });
+        if (fineGrainedBackpressure) {
+            // Tasks may have moved to other workers
+            updateCongestedTasks();
+        }
 
     }
 
@@ -449,8 +468,8 @@ public class WorkerState {
         this.throttleOn.set(backpressure);
     }
 
-    private static double getQueueLoad(DisruptorQueue q) {
-        DisruptorQueue.QueueMetrics qMetrics = q.getMetrics();
+    private static double getQueueLoad(ISingleConsumerQueue q) {
+        ISingleConsumerQueue.Metrics qMetrics = q.getMetrics();
         return ((double) qMetrics.population()) / qMetrics.capacity();
     }
 
@@ -473,6 +492,67 @@ public class WorkerState {
             receiver.sendLoadMetrics(localLoad);
             nextUpdate.set(now + LOAD_REFRESH_INTERVAL_MS);
         }
+        if (fineGrainedBackpressure) {
+            // Changes are sent as they happen, this is for workers that connected since
+            sendBackPressureStatus();
+        }
+    }
+
+    public boolean isFineGrainedBackpressure() {
+        return fineGrainedBackpressure;
+    }
+
+    /**
+     * Tell the workers sending to this one which of its tasks are congested, for fine grained backpressure.
+     */
+    public void sendBackPressureStatus() {
+        receiver.sendBackPressureStatus(localCongestedTasks());
+        updateCongestedTasks();
+    }
+
+    private List<Integer> localCongestedTasks() {
+        List<Integer> congested = new ArrayList<>();
+        for (Map.Entry<List<Long>, ISingleConsumerQueue> entry : executorReceiveQueueMap.entrySet()) {
+            if (entry.getValue().getThrottleOn()) {
+                congested.addAll(StormCommon.executorIdToTasks(entry.getKey()));
+            }
+        }
+        return congested;
+    }
+
+    /**
+     * Rebuild the set of congested tasks. Called when a local receive queue crosses a water mark, when a
+     * connection reports a new status and when connections come and go, so readers never have to scan.
+     */
+    private synchronized void updateCongestedTasks() {
+        Set<Integer> congested = new HashSet<>(localCongestedTasks());
+        Map<Integer, NodeInfo> taskToNodePort = cachedTaskToNodePort.get();
+        for (Map.Entry<NodeInfo, IConnection> entry : cachedNodeToPortSocket.get().entrySet()) {
+            for (Integer task : entry.getValue().getCongestedTasks()) {
+                // Only trust a connection about the tasks that are currently assigned behind it
+                if (entry.getKey().equals(taskToNodePort.get(task))) {
+                    congested.add(task);
+                }
+            }
+        }
+        congestedTasks = congested.isEmpty() ? Collections.emptySet() : congested;
+        congestionVersion.incrementAndGet();
+    }
+
+    /**
+     * @return true if the receive queue of task is over the high water mark, as far as this worker knows.
+     */
+    public boolean isCongested(int task) {
+        Set<Integer> congested = congestedTasks;
+        return !congested.isEmpty() && congested.contains(task);
+    }
+
+    /**
+     * @return a number that changes every time the set of congested tasks may have changed, so callers can cache
+     *     what they derive from {@link #isCongested(int)} until it does.
+     */
+    public long getCongestionVersion() {
+        return congestionVersion.get();
     }
 
     /**
@@ -501,30 +581,19 @@ public class WorkerState {
             this::transferLocal));
     }
 
-    public void transferLocal(List<AddressedTuple> tupleBatch) {
-        Map<Integer, List<AddressedTuple>> grouped = new HashMap<>();
-        for (AddressedTuple tuple : tupleBatch) {
-            Integer executor = taskToShortExecutor.get(tuple.dest);
-            if (null == executor) {
-                LOG.warn("Received invalid messages for unknown tasks. Dropping... ");
-                continue;
-            }
-            List<AddressedTuple> current = grouped.get(executor);
-            if (null == current) {
-                current = new ArrayList<>();
-                grouped.put(executor, current);
-            }
-            current.add(tuple);
-        }
+    /**
+     * @return the receive queue of the executor running task, or null if the task does not run in this worker.
+     */
+    public ISingleConsumerQueue getLocalReceiveQueue(int task) {
+        return localTaskQueues.get(task);
+    }
 
-        for (Map.Entry<Integer, List<AddressedTuple>> entry : grouped.entrySet()) {
-            DisruptorQueue queue = shortExecutorReceiveQueueMap.get(entry.getKey());
-            if (null != queue) {
-                queue.publish(entry.getValue());
-            } else {
-                LOG.warn("Received invalid messages for unknown tasks. Dropping... ");
-            }
-        }
+    public boolean isTrySerializeLocal() {
+        return trySerializeLocal;
+    }
+
+    public void transferLocal(List<AddressedTuple> tupleBatch) {
+        localTaskQueues.publish(tupleBatch);
     }
 
     public void transfer(KryoTupleSerializer serializer, List<AddressedTuple> tupleBatch) {
@@ -535,7 +604,7 @@ public class WorkerState {
         Map<Integer, List<TaskMessage>> remoteMap = new HashMap<>();
         for (AddressedTuple addressedTuple : tupleBatch) {
             int destTask = addressedTuple.getDest();
-            if (taskIds.contains(destTask)) {
+            if (getLocalReceiveQueue(destTask) != null) {
                 // Local task
                 local.add(addressedTuple);
             } else {
@@ -544,6 +613,7 @@ public class WorkerState {
                     remoteMap.put(destTask, new ArrayList<>());
                 }
                 remoteMap.get(destTask).add(new TaskMessage(destTask, serializer.serialize(addressedTuple.getTuple())));
+                releaseTuple(addressedTuple);
             }
         }
 
@@ -555,21 +625,102 @@ public class WorkerState {
         }
     }
 
+    /**
+     * Like {@link #transfer(KryoTupleSerializer, List)}, but remote tuples are serialized straight into the pooled
+     * buffers of directSend, grouped by destination worker.
+     */
+    public void transfer(KryoTupleSerializer serializer, DirectSendBuffers directSend, List<AddressedTuple> tupleBatch) {
+        if (trySerializeLocal) {
+            assertCanSerialize(serializer, tupleBatch);
+        }
+        List<AddressedTuple> local = new ArrayList<>();
+        Map<Integer, NodeInfo> taskToNodePort = cachedTaskToNodePort.get();
+        for (AddressedTuple addressedTuple : tupleBatch) {
+            int destTask = addressedTuple.getDest();
+            if (getLocalReceiveQueue(destTask) != null) {
+                // Local task
+                local.add(addressedTuple);
+            } else {
+                NodeInfo nodePort = taskToNodePort.get(destTask);
+                if (null == nodePort) {
+                    LOG.warn("No remote destination available for task {}", destTask);
+                } else {
+                    directSend.add(nodePort, destTask, addressedTuple.getTuple());
+                }
+                releaseTuple(addressedTuple);
+            }
+        }
+
+        if (!local.isEmpty()) {
+            transferLocal(local);
+        }
+        if (!directSend.isEmpty()) {
+            transferQueue.publish(directSend.drain());
+        }
+    }
+
     // TODO: consider having a max batch size besides what disruptor does automagically to prevent latency issues
     public void sendTuplesToRemoteWorker(HashMap<Integer, ArrayList<TaskMessage>> packets, long seqId, boolean batchEnd) {
         drainer.add(packets);
         if (batchEnd) {
-            ReentrantReadWriteLock.ReadLock readLock = endpointSocketLock.readLock();
-            try {
-                readLock.lock();
-                drainer.send(cachedTaskToNodePort.get(), cachedNodeToPortSocket.get());
-            } finally {
-                readLock.unlock();
+            flushDrainer();
+        }
+    }
+
+    /**
+     * Send messages that were already encoded for their destination worker. They are written out right away, as
+     * they are batched already.
+     */
+    public void sendEncodedToRemoteWorker(List<EncodedTaskMessages> packets, long seqId, boolean batchEnd) {
+        ReentrantReadWriteLock.ReadLock readLock = endpointSocketLock.readLock();
+        try {
+            readLock.lock();
+            Map<NodeInfo, IConnection> connections = cachedNodeToPortSocket.get();
+            for (EncodedTaskMessages msgs : packets) {
+                IConnection conn = connections.get(msgs.getDestination());
+                if (null != conn) {
+                    conn.send(msgs);
+                } else {
+                    LOG.warn("Connection is not available for hostPort {}", msgs.getDestination());
+                    msgs.release();
+                }
             }
-            drainer.clear();
+        } finally {
+            readLock.unlock();
+        }
+        if (batchEnd) {
+            flushDrainer();
         }
     }
 
+    private void flushDrainer() {
+        ReentrantReadWriteLock.ReadLock readLock = endpointSocketLock.readLock();
+        try {
+            readLock.lock();
+            drainer.send(cachedTaskToNodePort.get(), cachedNodeToPortSocket.get());
+        } finally {
+            readLock.unlock();
+        }
+        drainer.clear();
+    }
+
+    /**
+     * @return the pool backing {@link Config#TOPOLOGY_TRANSFER_DIRECT_BUFFERS}, or null if it is turned off.
+     */
+    public DirectBufferPool getDirectBufferPool() {
+        return directBufferPool;
+    }
+
+
+    /**
+     * Tuples are done with once they are serialized for, or dropped on the way to, another worker. Pooled tuples go
+     * back to their pool then.
+     */
+    static void releaseTuple(AddressedTuple addressedTuple) {
+        if (addressedTuple.getTuple() instanceof TupleImpl) {
+            ((TupleImpl) addressedTuple.getTuple()).release();
+        }
+    }
 
     private void assertCanSerialize(KryoTupleSerializer serializer, List<AddressedTuple> tuples) {
         // Check that all of the tuples can be serialized by serializing them
@@ -647,14 +798,11 @@ public class WorkerState {
         return executorsAssignedToThisWorker;
     }
 
-    private Map<List<Long>, DisruptorQueue> mkReceiveQueueMap(Map<String, Object> topologyConf, Set<List<Long>> executors) {
-        Map<List<Long>, DisruptorQueue> receiveQueueMap = new HashMap<>();
+    private Map<List<Long>, ISingleConsumerQueue> mkReceiveQueueMap(Map<String, Object> topologyConf, Set<List<Long>> executors) {
+        Map<List<Long>, ISingleConsumerQueue> receiveQueueMap = new HashMap<>();
         for (List<Long> executor : executors) {
-            receiveQueueMap.put(executor, new DisruptorQueue("receive-queue",
-                ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_RECEIVE_BUFFER_SIZE)),
-                (long) topologyConf.get(Config.TOPOLOGY_DISRUPTOR_WAIT_TIMEOUT_MILLIS),
-                ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_SIZE)),
-                (long) topologyConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_TIMEOUT_MILLIS)));
+            receiveQueueMap.put(executor, QueueFactory.mkQueue(topologyConf, "receive-queue",
+                ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_RECEIVE_BUFFER_SIZE))));
         }
         return receiveQueueMap;
     }
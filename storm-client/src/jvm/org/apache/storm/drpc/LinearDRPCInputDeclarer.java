@@ -46,6 +46,9 @@ public interface LinearDRPCInputDeclarer extends ComponentConfigurationDeclarer<
     public LinearDRPCInputDeclarer partialKeyGrouping(Fields fields);
     public LinearDRPCInputDeclarer partialKeyGrouping(String streamId, Fields fields);
 
+    public LinearDRPCInputDeclarer consistentHashGrouping(Fields fields);
+    public LinearDRPCInputDeclarer consistentHashGrouping(String streamId, Fields fields);
+
     public LinearDRPCInputDeclarer customGrouping(CustomStreamGrouping grouping);
     public LinearDRPCInputDeclarer customGrouping(String streamId, CustomStreamGrouping grouping);
     
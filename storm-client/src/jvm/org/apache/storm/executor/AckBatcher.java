@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor;
+
+import org.apache.storm.daemon.Acker;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coalesces the messages an executor sends to the ackers into one tuple per acker task on
+ * {@link Acker#ACKER_BATCH_STREAM_ID}. Entries are routed to the acker the fields grouping on the root id would
+ * pick, so batched and unbatched messages for the same tuple tree meet at the same acker.
+ * Bolts may ack from threads of their own (window triggers, background checkpoints), so the methods are
+ * synchronized; the executor thread is the only one that normally touches the batcher, so the lock is uncontended.
+ */
+public class AckBatcher {
+    private final Executor executor;
+    private final int sourceTask;
+    private final int batchSize;
+    private final long timeoutMs;
+    private final List<Integer> ackerTasks;
+    private final long[][] records;
+    private final int[] sizes;
+    private final long[] firstAddedMs;
+
+    public AckBatcher(Executor executor, int sourceTask, int batchSize, long timeoutMs) {
+        this.executor = executor;
+        this.sourceTask = sourceTask;
+        this.batchSize = batchSize;
+        this.timeoutMs = timeoutMs;
+        List<Integer> tasks = new ArrayList<>(executor.getWorkerTopologyContext().getComponentTasks(Acker.ACKER_COMPONENT_ID));
+        Collections.sort(tasks);
+        this.ackerTasks = tasks;
+        this.records = new long[tasks.size()][batchSize * Acker.BATCH_RECORD_SIZE];
+        this.sizes = new int[tasks.size()];
+        this.firstAddedMs = new long[tasks.size()];
+    }
+
+    /**
+     * Queue an entry for the acker of root.
+     * @param code the spout task for an init, or one of the Acker.BATCH_* codes.
+     */
+    public synchronized void add(long root, long val, long code) {
+        if (ackerTasks.isEmpty()) {
+            return;
+        }
+        int index = Acker.ackerTaskIndex(root, ackerTasks.size());
+        long now = Time.currentTimeMillis();
+        int size = sizes[index];
+        if (size == 0) {
+            firstAddedMs[index] = now;
+        }
+        long[] batch = records[index];
+        int offset = size * Acker.BATCH_RECORD_SIZE;
+        batch[offset] = root;
+        batch[offset + 1] = val;
+        batch[offset + 2] = code;
+        sizes[index] = ++size;
+        if (size >= batchSize || now - firstAddedMs[index] >= timeoutMs) {
+            send(index);
+        }
+    }
+
+    /**
+     * Send every batch whose oldest entry has waited for the timeout.
+     */
+    public synchronized void flushExpired() {
+        long now = Time.currentTimeMillis();
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > 0 && now - firstAddedMs[i] >= timeoutMs) {
+                send(i);
+            }
+        }
+    }
+
+    /**
+     * Send everything that is queued.
+     */
+    public synchronized void flush() {
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > 0) {
+                send(i);
+            }
+        }
+    }
+
+    private void send(int index) {
+        long[] batch = Arrays.copyOf(records[index], sizes[index] * Acker.BATCH_RECORD_SIZE);
+        sizes[index] = 0;
+        TupleImpl tuple = new TupleImpl(executor.getWorkerTopologyContext(), new Values(batch), sourceTask,
+            Acker.ACKER_BATCH_STREAM_ID);
+        executor.getExecutorTransfer().transfer(ackerTasks.get(index), tuple);
+    }
+}
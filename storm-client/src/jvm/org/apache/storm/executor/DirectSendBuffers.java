@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor;
+
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.DirectBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the remote tuples of one transfer batch, serialized directly into pooled buffers grouped by
+ * destination worker. Only used from the executor send thread.
+ */
+public class DirectSendBuffers {
+    private final KryoTupleSerializer serializer;
+    private final DirectBufferPool pool;
+    private final ByteBufferOutput out = new ByteBufferOutput();
+    private final Map<NodeInfo, EncodedTaskMessages> current = new HashMap<>();
+    private final List<EncodedTaskMessages> ready = new ArrayList<>();
+
+    public DirectSendBuffers(KryoTupleSerializer serializer, DirectBufferPool pool) {
+        this.serializer = serializer;
+        this.pool = pool;
+    }
+
+    public void add(NodeInfo destination, int task, Tuple tuple) {
+        EncodedTaskMessages msgs = current.get(destination);
+        if (msgs == null) {
+            msgs = newMessages(destination);
+        }
+        if (msgs.add(task, tuple, serializer, out)) {
+            return;
+        }
+        if (!msgs.isEmpty()) {
+            // The buffer is full, start another one
+            msgs.seal();
+            ready.add(msgs);
+            msgs = newMessages(destination);
+            if (msgs.add(task, tuple, serializer, out)) {
+                return;
+            }
+        }
+        // Too big for a pooled buffer, give it a buffer of its own
+        byte[] payload = serializer.serialize(tuple);
+        EncodedTaskMessages large = new EncodedTaskMessages(destination,
+            ByteBuffer.allocate(EncodedTaskMessages.HEADER_SIZE + payload.length), null);
+        large.add(task, payload);
+        large.seal();
+        ready.add(large);
+    }
+
+    private EncodedTaskMessages newMessages(NodeInfo destination) {
+        EncodedTaskMessages msgs = new EncodedTaskMessages(destination, pool.acquire(), pool);
+        current.put(destination, msgs);
+        return msgs;
+    }
+
+    public boolean isEmpty() {
+        return current.isEmpty() && ready.isEmpty();
+    }
+
+    /**
+     * @return everything added since the last drain, ready to be sent. The caller owns the buffers.
+     */
+    public List<EncodedTaskMessages> drain() {
+        List<EncodedTaskMessages> ret = new ArrayList<>(ready.size() + current.size());
+        ret.addAll(ready);
+        for (EncodedTaskMessages msgs : current.values()) {
+            if (msgs.isEmpty()) {
+                msgs.release();
+            } else {
+                msgs.seal();
+                ret.add(msgs);
+            }
+        }
+        ready.clear();
+        current.clear();
+        return ret;
+    }
+}
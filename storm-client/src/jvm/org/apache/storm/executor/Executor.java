@@ -20,7 +20,6 @@ package org.apache.storm.executor;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.lmax.disruptor.EventHandler;
-import com.lmax.disruptor.dsl.ProducerType;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.UnknownHostException;
@@ -35,6 +34,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.storm.Config;
 import org.apache.storm.Constants;
+import org.apache.storm.IDefaultTicks;
 import org.apache.storm.StormTimer;
 import org.apache.storm.cluster.ClusterStateContext;
 import org.apache.storm.cluster.ClusterUtils;
@@ -68,12 +68,14 @@ import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TuplePool;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.ConfigUtils;
 import org.apache.storm.utils.Utils;
 import org.apache.storm.utils.DisruptorBackpressureCallback;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
 import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.QueueFactory;
 import org.apache.storm.utils.Time;
 import org.apache.storm.utils.WorkerBackpressureThread;
 import org.json.simple.JSONValue;
@@ -110,13 +112,15 @@ public abstract class Executor implements Callable, EventHandler<Object> {
     protected final ReportErrorAndDie reportErrorDie;
     protected final Callable<Boolean> sampler;
     protected ExecutorTransfer executorTransfer;
+    protected final AckBatcher ackBatcher;
+    protected final TuplePool tuplePool;
     protected final String type;
     protected final AtomicBoolean throttleOn;
 
     protected final IReportError reportError;
     protected final Random rand;
-    protected final DisruptorQueue sendQueue;
-    protected final DisruptorQueue receiveQueue;
+    protected final ISingleConsumerQueue sendQueue;
+    protected final ISingleConsumerQueue receiveQueue;
     protected Map<Integer, Task> idToTask;
     protected final Map<String, String> credentials;
     protected final Boolean isDebug;
@@ -142,6 +146,14 @@ public abstract class Executor implements Callable, EventHandler<Object> {
 
         this.sendQueue = mkExecutorBatchQueue(topoConf, executorId);
         this.executorTransfer = new ExecutorTransfer(workerData, sendQueue, topoConf);
+        if (ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_ACKER_BATCH_ENABLE), false) && StormCommon.hasAckers(topoConf)) {
+            this.ackBatcher = new AckBatcher(this, taskIds.get(0),
+                ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_ACKER_BATCH_SIZE), 100),
+                ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_ACKER_BATCH_TIMEOUT_MILLIS), 10));
+        } else {
+            this.ackBatcher = null;
+        }
+        this.tuplePool = TuplePool.make(topoConf);
 
         this.suicideFn = workerData.getSuicideCallback();
         try {
@@ -154,12 +166,15 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         StormTopology topology = workerTopologyContext.getRawTopology();
         Map<String, SpoutSpec> spouts = topology.get_spouts();
         Map<String, Bolt> bolts = topology.get_bolts();
+        boolean latencyHistograms = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_STATS_LATENCY_HISTOGRAMS), false);
         if (spouts.containsKey(componentId)) {
             this.type = StatsUtil.SPOUT;
-            this.stats = new SpoutExecutorStats(ConfigUtils.samplingRate(topoConf),ObjectReader.getInt(topoConf.get(Config.NUM_STAT_BUCKETS)));
+            this.stats = new SpoutExecutorStats(ConfigUtils.samplingRate(topoConf),ObjectReader.getInt(topoConf.get(Config.NUM_STAT_BUCKETS)),
+                latencyHistograms);
         } else if (bolts.containsKey(componentId)) {
             this.type = StatsUtil.BOLT;
-            this.stats = new BoltExecutorStats(ConfigUtils.samplingRate(topoConf),ObjectReader.getInt(topoConf.get(Config.NUM_STAT_BUCKETS)));
+            this.stats = new BoltExecutorStats(ConfigUtils.samplingRate(topoConf),ObjectReader.getInt(topoConf.get(Config.NUM_STAT_BUCKETS)),
+                latencyHistograms);
         } else {
             throw new RuntimeException("Could not find " + componentId + " in " + topology);
         }
@@ -202,10 +217,8 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         String type = getExecutorType(workerTopologyContext, componentId);
         if (StatsUtil.SPOUT.equals(type)) {
             executor = new SpoutExecutor(workerState, executorId, credentials);
-            executor.stats = new SpoutExecutorStats(ConfigUtils.samplingRate(executor.getStormConf()),ObjectReader.getInt(executor.getStormConf().get(Config.NUM_STAT_BUCKETS)));
         } else {
             executor = new BoltExecutor(workerState, executorId, credentials);
-            executor.stats = new BoltExecutorStats(ConfigUtils.samplingRate(executor.getStormConf()),ObjectReader.getInt(executor.getStormConf().get(Config.NUM_STAT_BUCKETS)));
         }
 
         Map<Integer, Task> idToTask = new HashMap<>();
@@ -261,21 +274,42 @@ public abstract class Executor implements Callable, EventHandler<Object> {
     @SuppressWarnings("unchecked")
     @Override
     public void onEvent(Object event, long seq, boolean endOfBatch) throws Exception {
-        ArrayList<AddressedTuple> addressedTuples = (ArrayList<AddressedTuple>) event;
-        for (AddressedTuple addressedTuple : addressedTuples) {
-            TupleImpl tuple = (TupleImpl) addressedTuple.getTuple();
-            int taskId = addressedTuple.getDest();
-            if (isDebug) {
-                LOG.info("Processing received message FOR {} TUPLE: {}", taskId, tuple);
+        if (event instanceof AddressedTuple) {
+            // Published straight from an executor in this worker
+            onTuple((AddressedTuple) event);
+        } else {
+            ArrayList<AddressedTuple> addressedTuples = (ArrayList<AddressedTuple>) event;
+            for (AddressedTuple addressedTuple : addressedTuples) {
+                onTuple(addressedTuple);
             }
-            if (taskId != AddressedTuple.BROADCAST_DEST) {
-                tupleActionFn(taskId, tuple);
-            } else {
-                for (Integer t : taskIds) {
-                    tupleActionFn(t, tuple);
-                }
+        }
+        if (endOfBatch && ackBatcher != null) {
+            // Caught up with the input, nothing more to coalesce for now
+            ackBatcher.flush();
+        }
+    }
+
+    private void onTuple(AddressedTuple addressedTuple) throws Exception {
+        TupleImpl tuple = (TupleImpl) addressedTuple.getTuple();
+        int taskId = addressedTuple.getDest();
+        if (isDebug) {
+            LOG.info("Processing received message FOR {} TUPLE: {}", taskId, tuple);
+        }
+        if (taskId != AddressedTuple.BROADCAST_DEST) {
+            tupleActionFn(taskId, tuple);
+        } else {
+            for (Integer t : taskIds) {
+                tupleActionFn(t, tuple);
             }
         }
+        tupleActionDone(tuple);
+    }
+
+    /**
+     * Called once a tuple has been handed to every task it was addressed to.
+     */
+    protected void tupleActionDone(TupleImpl tuple) {
+        //NOOP
     }
 
     public void metricsTick(Task taskData, TupleImpl tuple) {
@@ -363,13 +397,21 @@ public abstract class Executor implements Callable, EventHandler<Object> {
             @Override
             public void highWaterMark() throws Exception {
                 LOG.debug("executor " + executorId + " is congested, set backpressure flag true");
-                WorkerBackpressureThread.notifyBackpressureChecker(workerData.getBackpressureTrigger());
+                if (workerData.isFineGrainedBackpressure()) {
+                    workerData.sendBackPressureStatus();
+                } else {
+                    WorkerBackpressureThread.notifyBackpressureChecker(workerData.getBackpressureTrigger());
+                }
             }
 
             @Override
             public void lowWaterMark() throws Exception {
                 LOG.debug("executor " + executorId + " is not-congested, set backpressure flag false");
-                WorkerBackpressureThread.notifyBackpressureChecker(workerData.getBackpressureTrigger());
+                if (workerData.isFineGrainedBackpressure()) {
+                    workerData.sendBackPressureStatus();
+                } else {
+                    WorkerBackpressureThread.notifyBackpressureChecker(workerData.getBackpressureTrigger());
+                }
             }
         });
         receiveQueue.setHighWaterMark(ObjectReader.getDouble(topoConf.get(Config.BACKPRESSURE_DISRUPTOR_HIGH_WATERMARK)));
@@ -378,7 +420,8 @@ public abstract class Executor implements Callable, EventHandler<Object> {
     }
 
     protected void setupTicks(boolean isSpout) {
-        final Integer tickTimeSecs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS), null);
+        Integer configuredTickTimeSecs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS), null);
+        final Integer tickTimeSecs = (configuredTickTimeSecs != null) ? configuredTickTimeSecs : getDefaultTickTimeSecs();
         boolean enableMessageTimeout = (Boolean) topoConf.get(Config.TOPOLOGY_ENABLE_MESSAGE_TIMEOUTS);
         if (tickTimeSecs != null) {
             if (Utils.isSystemId(componentId) || (!enableMessageTimeout && isSpout)) {
@@ -399,14 +442,25 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         }
     }
 
+    /*
+     * The most frequent ticks asked for by the task objects that need them even when none are configured.
+     */
+    private Integer getDefaultTickTimeSecs() {
+        Integer tickTimeSecs = null;
+        for (Task task : idToTask.values()) {
+            if (task.getTaskObject() instanceof IDefaultTicks) {
+                Integer taskTickTimeSecs = ((IDefaultTicks) task.getTaskObject()).getDefaultTickFreqSecs(topoConf);
+                if (taskTickTimeSecs != null && (tickTimeSecs == null || taskTickTimeSecs < tickTimeSecs)) {
+                    tickTimeSecs = taskTickTimeSecs;
+                }
+            }
+        }
+        return tickTimeSecs;
+    }
 
-    private DisruptorQueue mkExecutorBatchQueue(Map<String, Object> topoConf, List<Long> executorId) {
+    private ISingleConsumerQueue mkExecutorBatchQueue(Map<String, Object> topoConf, List<Long> executorId) {
         int sendSize = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_EXECUTOR_SEND_BUFFER_SIZE));
-        int waitTimeOutMs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_WAIT_TIMEOUT_MILLIS));
-        int batchSize = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_SIZE));
-        int batchTimeOutMs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_TIMEOUT_MILLIS));
-        return new DisruptorQueue("executor" + executorId + "-send-queue", ProducerType.MULTI,
-                sendSize, waitTimeOutMs, batchSize, batchTimeOutMs);
+        return QueueFactory.mkQueue(topoConf, "executor" + executorId + "-send-queue", sendSize);
     }
 
     /**
@@ -461,6 +515,7 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         keysToRemove.remove(Config.TOPOLOGY_BOLTS_MESSAGE_ID_FIELD_NAME);
         keysToRemove.remove(Config.TOPOLOGY_STATE_PROVIDER);
         keysToRemove.remove(Config.TOPOLOGY_STATE_PROVIDER_CONFIG);
+        keysToRemove.remove(Config.TOPOLOGY_STATE_CHECKPOINT_ASYNC);
         keysToRemove.remove(Config.TOPOLOGY_BOLTS_LATE_TUPLE_STREAM);
 
         Map<Object, Object> componentConf;
@@ -533,6 +588,20 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         return executorTransfer;
     }
 
+    /**
+     * @return the batcher for the messages to the ackers, or null if topology.acker.batch.enable is off.
+     */
+    public AckBatcher getAckBatcher() {
+        return ackBatcher;
+    }
+
+    /**
+     * @return the pool the tuples emitted by this executor come from, or null if topology.tuple.pooling is off.
+     */
+    public TuplePool getTuplePool() {
+        return tuplePool;
+    }
+
     public IReportError getReportError() {
         return reportError;
     }
@@ -553,7 +622,7 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         return stormComponentDebug;
     }
 
-    public DisruptorQueue getReceiveQueue() {
+    public ISingleConsumerQueue getReceiveQueue() {
         return receiveQueue;
     }
 
@@ -561,7 +630,7 @@ public abstract class Executor implements Callable, EventHandler<Object> {
         return receiveQueue.getThrottleOn();
     }
 
-    public DisruptorQueue getTransferWorkerQueue() {
+    public ISingleConsumerQueue getTransferWorkerQueue() {
         return sendQueue;
     }
 
@@ -31,7 +31,7 @@ import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.tuple.Values;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
 import org.apache.storm.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,11 +45,11 @@ public class ExecutorShutdown implements Shutdownable, IRunningExecutor {
     private final Executor executor;
     private final List<Utils.SmartThread> threads;
     private final Map<Integer, Task> taskDatas;
-    private final DisruptorQueue receiveQueue;
-    private final DisruptorQueue sendQueue;
+    private final ISingleConsumerQueue receiveQueue;
+    private final ISingleConsumerQueue sendQueue;
 
     public ExecutorShutdown(Executor executor, List<Utils.SmartThread> threads, Map<Integer, Task> taskDatas,
-                            DisruptorQueue receiveQueue, DisruptorQueue sendQueue) {
+                            ISingleConsumerQueue receiveQueue, ISingleConsumerQueue sendQueue) {
         this.executor = executor;
         this.threads = threads;
         this.taskDatas = taskDatas;
@@ -86,12 +86,12 @@ public class ExecutorShutdown implements Shutdownable, IRunningExecutor {
     }
 
     @Override
-    public DisruptorQueue getReceiveQueue() {
+    public ISingleConsumerQueue getReceiveQueue() {
         return receiveQueue;
     }
 
     @Override
-    public DisruptorQueue getSendQueue() {
+    public ISingleConsumerQueue getSendQueue() {
         return sendQueue;
     }
 
@@ -21,48 +21,133 @@ import com.google.common.annotations.VisibleForTesting;
 import com.lmax.disruptor.EventHandler;
 import org.apache.storm.Config;
 import org.apache.storm.daemon.worker.WorkerState;
+import org.apache.storm.metric.api.IStatefulObject;
 import org.apache.storm.serialization.KryoTupleSerializer;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.Tuple;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.utils.DirectBufferPool;
+import org.apache.storm.utils.ISingleConsumerQueue;
 import org.apache.storm.utils.MutableObject;
 import org.apache.storm.utils.ObjectReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ExecutorTransfer implements EventHandler, Callable {
+public class ExecutorTransfer implements EventHandler, Callable, IStatefulObject {
     private static final Logger LOG = LoggerFactory.getLogger(ExecutorTransfer.class);
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = allocationTrackingBean();
 
     private final WorkerState workerData;
-    private final DisruptorQueue batchTransferQueue;
+    private final ISingleConsumerQueue batchTransferQueue;
     private final Map<String, Object> topoConf;
     private final KryoTupleSerializer serializer;
     private final MutableObject cachedEmit;
     private final boolean isDebug;
+    private final DirectSendBuffers directSend;
+    private final boolean shortCircuitLocal;
+    // Receive queues published to directly, which count towards isFull() like the send queue does
+    private volatile ISingleConsumerQueue[] shortCircuitQueues = new ISingleConsumerQueue[0];
+    private ISingleConsumerQueue lastShortCircuitQueue;
+    // Cumulative, so every task of the executor reporting them sees consistent values
+    private final AtomicLong tuplesTransferred = new AtomicLong(0);
+    private final AtomicLong bytesAllocated = new AtomicLong(0);
 
-    public ExecutorTransfer(WorkerState workerData, DisruptorQueue batchTransferQueue, Map<String, Object> topoConf) {
+    public ExecutorTransfer(WorkerState workerData, ISingleConsumerQueue batchTransferQueue, Map<String, Object> topoConf) {
         this.workerData = workerData;
         this.batchTransferQueue = batchTransferQueue;
         this.topoConf = topoConf;
         this.serializer = new KryoTupleSerializer(topoConf, workerData.getWorkerTopologyContext());
         this.cachedEmit = new MutableObject(new ArrayList<>());
         this.isDebug = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_DEBUG), false);
+        DirectBufferPool pool = workerData.getDirectBufferPool();
+        this.directSend = (pool == null) ? null : new DirectSendBuffers(serializer, pool);
+        this.shortCircuitLocal = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_TRANSFER_LOCAL_SHORT_CIRCUIT), false)
+            && !workerData.isTrySerializeLocal();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTrackingBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (Throwable t) {
+            LOG.debug("Thread allocation tracking is not available", t);
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        if (THREAD_MX_BEAN == null) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 
     public void transfer(int task, Tuple tuple) {
-        AddressedTuple val = new AddressedTuple(task, tuple);
+        AddressedTuple val = (tuple instanceof TupleImpl)
+            ? ((TupleImpl) tuple).addressedTo(task) : new AddressedTuple(task, tuple);
         if (isDebug) {
             LOG.info("TRANSFERRING tuple {}", val);
         }
+        if (shortCircuitLocal) {
+            ISingleConsumerQueue receiveQueue = workerData.getLocalReceiveQueue(task);
+            if (receiveQueue != null) {
+                if (receiveQueue != lastShortCircuitQueue) {
+                    trackShortCircuitQueue(receiveQueue);
+                }
+                receiveQueue.publish(val);
+                return;
+            }
+        }
         batchTransferQueue.publish(val);
     }
 
+    private synchronized void trackShortCircuitQueue(ISingleConsumerQueue receiveQueue) {
+        lastShortCircuitQueue = receiveQueue;
+        for (ISingleConsumerQueue queue : shortCircuitQueues) {
+            if (queue == receiveQueue) {
+                return;
+            }
+        }
+        ISingleConsumerQueue[] queues = Arrays.copyOf(shortCircuitQueues, shortCircuitQueues.length + 1);
+        queues[queues.length - 1] = receiveQueue;
+        shortCircuitQueues = queues;
+    }
+
+    /**
+     * Spouts stop calling nextTuple while this is true. Tuples short-circuited to a local task never pass through
+     * the send queue, so the receive queues they went to are checked as well; otherwise a spout could flood a local
+     * consumer.
+     *
+     * @return true if the send queue, or any receive queue this executor published to directly, is full.
+     */
+    public boolean isFull() {
+        if (batchTransferQueue.isFull()) {
+            return true;
+        }
+        for (ISingleConsumerQueue queue : shortCircuitQueues) {
+            if (queue.isFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @VisibleForTesting
-    public DisruptorQueue getBatchTransferQueue() {
+    public ISingleConsumerQueue getBatchTransferQueue() {
         return this.batchTransferQueue;
     }
 
@@ -81,8 +166,41 @@ public class ExecutorTransfer implements EventHandler, Callable {
         ArrayList cachedEvents = (ArrayList) cachedEmit.getObject();
         cachedEvents.add(event);
         if (endOfBatch) {
-            workerData.transfer(serializer, cachedEvents);
+            if (directSend != null) {
+                // Only measured in direct mode, to see what it saves, so the default path does not pay for the probe
+                long before = allocatedBytes();
+                workerData.transfer(serializer, directSend, cachedEvents);
+                long after = allocatedBytes();
+                if (before >= 0 && after >= before) {
+                    bytesAllocated.addAndGet(after - before);
+                }
+            } else {
+                workerData.transfer(serializer, cachedEvents);
+            }
+            tuplesTransferred.addAndGet(cachedEvents.size());
             cachedEmit.setObject(new ArrayList<>());
         }
     }
+
+    /**
+     * Reports how many tuples were transferred and, when serializing into direct buffers, how much the send thread
+     * allocates to serialize and route each of them.
+     */
+    @Override
+    public Object getState() {
+        long tuples = tuplesTransferred.get();
+        long bytes = bytesAllocated.get();
+        HashMap<String, Object> state = new HashMap<>();
+        state.put("tuples", tuples);
+        if (THREAD_MX_BEAN != null && directSend != null) {
+            state.put("allocated_bytes", bytes);
+            state.put("allocated_bytes_per_tuple", tuples == 0 ? 0.0 : (double) bytes / tuples);
+        }
+        DirectBufferPool pool = workerData.getDirectBufferPool();
+        if (pool != null) {
+            state.put("direct_buffers_acquired", pool.getAcquired());
+            state.put("direct_buffers_allocated", pool.getAllocated());
+        }
+        return state;
+    }
 }
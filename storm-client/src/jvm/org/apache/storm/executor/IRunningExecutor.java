@@ -22,7 +22,7 @@ import org.apache.storm.generated.ExecutorStats;
 import org.apache.storm.grouping.LoadMapping;
 
 import java.util.List;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
 
 public interface IRunningExecutor {
 
@@ -31,6 +31,6 @@ public interface IRunningExecutor {
     void credentialsChanged(Credentials credentials);
     void loadChanged(LoadMapping loadMapping);
     boolean getBackPressureFlag();
-    DisruptorQueue getReceiveQueue();
-    DisruptorQueue getSendQueue();
+    ISingleConsumerQueue getReceiveQueue();
+    ISingleConsumerQueue getSendQueue();
 }
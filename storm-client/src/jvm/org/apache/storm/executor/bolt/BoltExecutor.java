@@ -19,6 +19,7 @@ package org.apache.storm.executor.bolt;
 
 import com.google.common.collect.ImmutableMap;
 import java.util.List;
+import org.apache.storm.Config;
 import org.apache.storm.Constants;
 import org.apache.storm.ICredentialsListener;
 import org.apache.storm.daemon.Task;
@@ -26,6 +27,9 @@ import org.apache.storm.daemon.metrics.BuiltinMetricsUtil;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.executor.Executor;
 import org.apache.storm.hooks.info.BoltExecuteInfo;
+import org.apache.storm.metric.api.StateMetric;
+import org.apache.storm.policy.IWaitStrategy;
+import org.apache.storm.policy.WaitStrategyProgressive;
 import org.apache.storm.stats.BoltExecutorStats;
 import org.apache.storm.task.IBolt;
 import org.apache.storm.task.IOutputCollector;
@@ -34,7 +38,8 @@ import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.utils.ConfigUtils;
 import org.apache.storm.utils.Utils;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
+import org.apache.storm.utils.ReflectionUtils;
 import org.apache.storm.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,10 +52,29 @@ public class BoltExecutor extends Executor {
     private static final Logger LOG = LoggerFactory.getLogger(BoltExecutor.class);
 
     private final Callable<Boolean> executeSampler;
+    // null to block on the receive queue instead
+    private final IWaitStrategy waitStrategy;
+    // How to wait while holding off an emit to a congested task, with fine grained backpressure
+    private final IWaitStrategy backPressureWaitStrategy;
+    private long tuplesReceived = 0;
+    private long idleStreak = 0;
 
     public BoltExecutor(WorkerState workerData, List<Long> executorId, Map<String, String> credentials) {
         super(workerData, executorId, credentials);
         this.executeSampler = ConfigUtils.mkStatsSampler(topoConf);
+        String waitStrategyClass = (String) topoConf.get(Config.TOPOLOGY_BOLT_WAIT_STRATEGY);
+        if (waitStrategyClass != null) {
+            this.waitStrategy = ReflectionUtils.newInstance(waitStrategyClass);
+            this.waitStrategy.prepare(topoConf);
+        } else {
+            this.waitStrategy = null;
+        }
+        if (waitStrategy != null) {
+            this.backPressureWaitStrategy = waitStrategy;
+        } else {
+            this.backPressureWaitStrategy = new WaitStrategyProgressive();
+            this.backPressureWaitStrategy.prepare(topoConf);
+        }
     }
 
     public void init(Map<Integer, Task> idToTask) {
@@ -59,6 +83,9 @@ public class BoltExecutor extends Executor {
         }
 
         this.errorReportingMetrics.registerAll(topoConf, idToTask.values().iterator().next().getUserContext());
+        //The groupers are shared by all the tasks of this executor, so only register them once
+        BuiltinMetricsUtil.registerGroupingMetrics(streamToComponentToGrouper, topoConf,
+                idToTask.values().iterator().next().getUserContext());
 
         LOG.info("Preparing bolt {}:{}", componentId, idToTask.keySet());
         for (Map.Entry<Integer, Task> entry : idToTask.entrySet()) {
@@ -70,7 +97,7 @@ public class BoltExecutor extends Executor {
                 ((ICredentialsListener) boltObject).setCredentials(credentials);
             }
             if (Constants.SYSTEM_COMPONENT_ID.equals(componentId)) {
-                Map<String, DisruptorQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue,
+                Map<String, ISingleConsumerQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue,
                         "transfer", workerData.getTransferQueue());
                 BuiltinMetricsUtil.registerQueueMetrics(map, topoConf, userContext);
 
@@ -78,9 +105,10 @@ public class BoltExecutor extends Executor {
                 BuiltinMetricsUtil.registerIconnectionClientMetrics(cachedNodePortToSocket, topoConf, userContext);
                 BuiltinMetricsUtil.registerIconnectionServerMetric(workerData.getReceiver(), topoConf, userContext);
             } else {
-                Map<String, DisruptorQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue);
+                Map<String, ISingleConsumerQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue);
                 BuiltinMetricsUtil.registerQueueMetrics(map, topoConf, userContext);
             }
+            BuiltinMetricsUtil.registerMetric("__transfer-allocation", new StateMetric(executorTransfer), topoConf, userContext);
 
             IOutputCollector outputCollector = new BoltOutputCollectorImpl(this, taskData, entry.getKey(), rand, hasEventLoggers, isDebug);
             boltObject.prepare(topoConf, userContext, new OutputCollector(outputCollector));
@@ -97,14 +125,45 @@ public class BoltExecutor extends Executor {
         return new Callable<Object>() {
             @Override
             public Object call() throws Exception {
-                receiveQueue.consumeBatchWhenAvailable(BoltExecutor.this);
+                if (waitStrategy == null) {
+                    receiveQueue.consumeBatchWhenAvailable(BoltExecutor.this);
+                    flushExpiredAcks();
+                    return 0L;
+                }
+                long before = tuplesReceived;
+                receiveQueue.consumeBatch(BoltExecutor.this);
+                flushExpiredAcks();
+                if (tuplesReceived == before) {
+                    idleStreak++;
+                    waitStrategy.idle(idleStreak, IWaitStrategy.IdleReason.NO_INPUT, sendQueue.getMetrics().pctFull(), 0);
+                } else {
+                    idleStreak = 0;
+                }
                 return 0L;
             }
         };
     }
 
+    public IWaitStrategy getBackPressureWaitStrategy() {
+        return backPressureWaitStrategy;
+    }
+
+    public float getSendQueuePctFull() {
+        return sendQueue.getMetrics().pctFull();
+    }
+
+    /**
+     * Acks made off the executor thread are not followed by an end of batch, so send them once they time out.
+     */
+    private void flushExpiredAcks() {
+        if (ackBatcher != null) {
+            ackBatcher.flushExpired();
+        }
+    }
+
     @Override
     public void tupleActionFn(int taskId, TupleImpl tuple) throws Exception {
+        tuplesReceived++;
         String streamId = tuple.getSourceStreamId();
         if (Constants.CREDENTIALS_CHANGED_STREAM_ID.equals(streamId)) {
             Object taskObject = idToTask.get(taskId).getTaskObject();
@@ -135,6 +194,7 @@ public class BoltExecutor extends Executor {
             if (delta >= 0) {
                 ((BoltExecutorStats) stats).boltExecuteTuple(tuple.getSourceComponent(), tuple.getSourceStreamId(), delta);
             }
+            tuple.markExecuted();
         }
     }
 
@@ -23,16 +23,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import org.apache.storm.Config;
 import org.apache.storm.daemon.Acker;
 import org.apache.storm.daemon.Task;
+import org.apache.storm.daemon.worker.WorkerState;
+import org.apache.storm.executor.AckBatcher;
 import org.apache.storm.hooks.info.BoltAckInfo;
 import org.apache.storm.hooks.info.BoltFailInfo;
+import org.apache.storm.policy.IWaitStrategy;
 import org.apache.storm.stats.BoltExecutorStats;
 import org.apache.storm.task.IOutputCollector;
 import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TuplePool;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.ObjectReader;
 import org.apache.storm.utils.Utils;
 import org.apache.storm.utils.Time;
 import org.slf4j.Logger;
@@ -48,6 +54,8 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
     private final Random random;
     private final boolean isEventLoggers;
     private final boolean isDebug;
+    // How long to hold off emitting to a congested task, 0 unless fine grained backpressure is on
+    private final long maxCongestedWaitMs;
 
     public BoltOutputCollectorImpl(BoltExecutor executor, Task taskData, int taskId, Random random,
                                    boolean isEventLoggers, boolean isDebug) {
@@ -57,6 +65,12 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
         this.random = random;
         this.isEventLoggers = isEventLoggers;
         this.isDebug = isDebug;
+        if (executor.getWorkerData().isFineGrainedBackpressure()) {
+            this.maxCongestedWaitMs = ObjectReader.getInt(
+                executor.getStormConf().get(Config.TOPOLOGY_BACKPRESSURE_FINE_GRAINED_MAX_WAIT_MILLIS), 100);
+        } else {
+            this.maxCongestedWaitMs = 0;
+        }
     }
 
     public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
@@ -76,22 +90,20 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
             outTasks = taskData.getOutgoingTasks(streamId, values);
         }
 
+        TuplePool pool = executor.getTuplePool();
         for (Integer t : outTasks) {
-            Map<Long, Long> anchorsToIds = new HashMap<>();
-            if (anchors != null) {
-                for (Tuple a : anchors) {
-                    Set<Long> rootIds = a.getMessageId().getAnchorsToIds().keySet();
-                    if (rootIds.size() > 0) {
-                        long edgeId = MessageId.generateId(random);
-                        ((TupleImpl) a).updateAckVal(edgeId);
-                        for (Long root_id : rootIds) {
-                            putXor(anchorsToIds, root_id, edgeId);
-                        }
-                    }
-                }
+            TupleImpl tupleExt;
+            if (pool != null) {
+                tupleExt = pool.acquire();
+                anchor(anchors, tupleExt.getMessageId());
+                tupleExt.reset(executor.getWorkerTopologyContext(), values, taskId, streamId);
+            } else {
+                tupleExt = new TupleImpl(executor.getWorkerTopologyContext(), values, taskId, streamId,
+                    anchor(anchors, null));
+            }
+            if (maxCongestedWaitMs > 0) {
+                awaitUncongested(t);
             }
-            MessageId msgId = MessageId.makeId(anchorsToIds);
-            TupleImpl tupleExt = new TupleImpl(executor.getWorkerTopologyContext(), values, taskId, streamId, msgId);
             executor.getExecutorTransfer().transfer(t, tupleExt);
         }
         if (isEventLoggers) {
@@ -100,14 +112,85 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
         return outTasks;
     }
 
+    /**
+     * Add a new tuple to the tuple trees of its anchors, with a fresh edge id for each anchor.
+     * @param pooledId the id of a pooled tuple to put the anchors into, or null to make a new id
+     * @return the id of the new tuple
+     */
+    private MessageId anchor(Collection<Tuple> anchors, MessageId pooledId) {
+        // Most tuples have a single root, so a map is only made once there is a second one
+        Map<Long, Long> anchorsToIds = (pooledId != null) ? pooledId.getAnchorsToIds() : null;
+        boolean hasRoot = false;
+        long root = 0;
+        long rootVal = 0;
+        if (anchors != null) {
+            for (Tuple a : anchors) {
+                Set<Long> rootIds = a.getMessageId().getAnchors();
+                if (rootIds.size() > 0) {
+                    long edgeId = MessageId.generateId(random);
+                    ((TupleImpl) a).updateAckVal(edgeId);
+                    for (Long root_id : rootIds) {
+                        if (anchorsToIds != null) {
+                            putXor(anchorsToIds, root_id, edgeId);
+                        } else if (!hasRoot) {
+                            hasRoot = true;
+                            root = root_id;
+                            rootVal = edgeId;
+                        } else if (root == root_id) {
+                            rootVal ^= edgeId;
+                        } else {
+                            anchorsToIds = new HashMap<>();
+                            anchorsToIds.put(root, rootVal);
+                            putXor(anchorsToIds, root_id, edgeId);
+                        }
+                    }
+                }
+            }
+        }
+        if (pooledId != null) {
+            return pooledId;
+        } else if (anchorsToIds != null) {
+            return MessageId.makeId(anchorsToIds);
+        } else if (hasRoot) {
+            return MessageId.makeRootId(root, rootVal);
+        }
+        return MessageId.makeUnanchored();
+    }
+
+    /**
+     * Hold off while the destination is congested, so this bolt's own receive queue fills up and the congestion
+     * moves upstream towards the spouts, one hop at a time.
+     */
+    private void awaitUncongested(int destTask) {
+        WorkerState workerData = executor.getWorkerData();
+        if (!workerData.isCongested(destTask)) {
+            return;
+        }
+        IWaitStrategy waitStrategy = executor.getBackPressureWaitStrategy();
+        long start = Time.currentTimeMillis();
+        long streak = 0;
+        try {
+            while (workerData.isCongested(destTask) && Time.currentTimeMillis() - start < maxCongestedWaitMs) {
+                waitStrategy.idle(++streak, IWaitStrategy.IdleReason.BACK_PRESSURE, executor.getSendQueuePctFull(), 0);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void ack(Tuple input) {
         long ackValue = ((TupleImpl) input).getAckVal();
         Map<Long, Long> anchorsToIds = input.getMessageId().getAnchorsToIds();
+        AckBatcher ackBatcher = executor.getAckBatcher();
         for (Map.Entry<Long, Long> entry : anchorsToIds.entrySet()) {
-            executor.sendUnanchored(taskData, Acker.ACKER_ACK_STREAM_ID,
-                    new Values(entry.getKey(), Utils.bitXor(entry.getValue(), ackValue)),
-                    executor.getExecutorTransfer());
+            if (ackBatcher != null) {
+                ackBatcher.add(entry.getKey(), Utils.bitXor(entry.getValue(), ackValue), Acker.BATCH_ACK);
+            } else {
+                executor.sendUnanchored(taskData, Acker.ACKER_ACK_STREAM_ID,
+                        new Values(entry.getKey(), Utils.bitXor(entry.getValue(), ackValue)),
+                        executor.getExecutorTransfer());
+            }
         }
         long delta = tupleTimeDelta((TupleImpl) input);
         if (isDebug) {
@@ -119,14 +202,20 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
             ((BoltExecutorStats) executor.getStats()).boltAckedTuple(
                     input.getSourceComponent(), input.getSourceStreamId(), delta);
         }
+        ((TupleImpl) input).markAcked();
     }
 
     @Override
     public void fail(Tuple input) {
         Set<Long> roots = input.getMessageId().getAnchors();
+        AckBatcher ackBatcher = executor.getAckBatcher();
         for (Long root : roots) {
-            executor.sendUnanchored(taskData, Acker.ACKER_FAIL_STREAM_ID,
-                    new Values(root), executor.getExecutorTransfer());
+            if (ackBatcher != null) {
+                ackBatcher.add(root, 0, Acker.BATCH_FAIL);
+            } else {
+                executor.sendUnanchored(taskData, Acker.ACKER_FAIL_STREAM_ID,
+                        new Values(root), executor.getExecutorTransfer());
+            }
         }
         long delta = tupleTimeDelta((TupleImpl) input);
         if (isDebug) {
@@ -138,14 +227,20 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
             ((BoltExecutorStats) executor.getStats()).boltFailedTuple(
                     input.getSourceComponent(), input.getSourceStreamId(), delta);
         }
+        ((TupleImpl) input).markAcked();
     }
 
     @Override
     public void resetTimeout(Tuple input) {
         Set<Long> roots = input.getMessageId().getAnchors();
+        AckBatcher ackBatcher = executor.getAckBatcher();
         for (Long root : roots) {
-            executor.sendUnanchored(taskData, Acker.ACKER_RESET_TIMEOUT_STREAM_ID,
-                    new Values(root), executor.getExecutorTransfer());
+            if (ackBatcher != null) {
+                ackBatcher.add(root, 0, Acker.BATCH_RESET_TIMEOUT);
+            } else {
+                executor.sendUnanchored(taskData, Acker.ACKER_RESET_TIMEOUT_STREAM_ID,
+                        new Values(root), executor.getExecutorTransfer());
+            }
         }
     }
 
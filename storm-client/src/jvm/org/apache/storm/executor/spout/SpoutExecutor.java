@@ -30,19 +30,22 @@ import org.apache.storm.daemon.metrics.SpoutThrottlingMetrics;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.executor.Executor;
 import org.apache.storm.executor.TupleInfo;
+import org.apache.storm.generated.Grouping;
 import org.apache.storm.hooks.info.SpoutAckInfo;
 import org.apache.storm.hooks.info.SpoutFailInfo;
+import org.apache.storm.metric.api.StateMetric;
+import org.apache.storm.policy.IWaitStrategy;
+import org.apache.storm.policy.SpoutWaitStrategyAdapter;
 import org.apache.storm.spout.ISpout;
-import org.apache.storm.spout.ISpoutWaitStrategy;
 import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.WorkerTopologyContext;
 import org.apache.storm.stats.SpoutExecutorStats;
 import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.utils.Utils;
-import org.apache.storm.utils.DisruptorQueue;
+import org.apache.storm.utils.ISingleConsumerQueue;
 import org.apache.storm.utils.MutableLong;
 import org.apache.storm.utils.ObjectReader;
-import org.apache.storm.utils.ReflectionUtils;
-import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.RotatingPendingMap;
 import org.apache.storm.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +53,15 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SpoutExecutor extends Executor {
 
     private static final Logger LOG = LoggerFactory.getLogger(SpoutExecutor.class);
 
-    private final ISpoutWaitStrategy spoutWaitStrategy;
+    private final IWaitStrategy spoutWaitStrategy;
     private Integer maxSpoutPending;
     private final AtomicBoolean lastActive;
     private List<ISpout> spouts;
@@ -65,15 +70,20 @@ public class SpoutExecutor extends Executor {
     private final MutableLong emptyEmitStreak;
     private final SpoutThrottlingMetrics spoutThrottlingMetrics;
     private final boolean hasAckers;
-    private RotatingMap<Long, TupleInfo> pending;
+    private RotatingPendingMap<TupleInfo> pending;
     private final boolean backPressureEnabled;
+    private final boolean fineGrainedBackpressure;
+    // Whether a task this spout sends to is congested, with fine grained backpressure
+    private final DownstreamCongestion downstreamCongestion;
 
     public SpoutExecutor(final WorkerState workerData, final List<Long> executorId, Map<String, String> credentials) {
         super(workerData, executorId, credentials);
-        this.spoutWaitStrategy = ReflectionUtils.newInstance((String) topoConf.get(Config.TOPOLOGY_SPOUT_WAIT_STRATEGY));
+        this.spoutWaitStrategy = SpoutWaitStrategyAdapter.make((String) topoConf.get(Config.TOPOLOGY_SPOUT_WAIT_STRATEGY));
         this.spoutWaitStrategy.prepare(topoConf);
 
         this.backPressureEnabled = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_BACKPRESSURE_ENABLE), false);
+        this.fineGrainedBackpressure = workerData.isFineGrainedBackpressure();
+        this.downstreamCongestion = new DownstreamCongestion(workerData, downstreamTasks(workerTopologyContext, componentId));
 
         this.lastActive = new AtomicBoolean(false);
         this.hasAckers = StormCommon.hasAckers(topoConf);
@@ -94,9 +104,10 @@ public class SpoutExecutor extends Executor {
         for (Task task : idToTask.values()) {
             this.spouts.add((ISpout) task.getTaskObject());
         }
-        this.pending = new RotatingMap<>(2, new RotatingMap.ExpiredCallback<Long, TupleInfo>() {
+        this.pending = new RotatingPendingMap<>(2, true, new RotatingPendingMap.ExpiredCallback() {
             @Override
-            public void expire(Long key, TupleInfo tupleInfo) {
+            public void expire(long key, int handle) {
+                TupleInfo tupleInfo = pending.getAttachment(handle);
                 Long timeDelta = null;
                 if (tupleInfo.getTimestamp() != 0) {
                     timeDelta = Time.deltaMs(tupleInfo.getTimestamp());
@@ -107,6 +118,9 @@ public class SpoutExecutor extends Executor {
 
         this.spoutThrottlingMetrics.registerAll(topoConf, idToTask.values().iterator().next().getUserContext());
         this.errorReportingMetrics.registerAll(topoConf, idToTask.values().iterator().next().getUserContext());
+        //The groupers are shared by all the tasks of this executor, so only register them once
+        BuiltinMetricsUtil.registerGroupingMetrics(streamToComponentToGrouper, topoConf,
+                idToTask.values().iterator().next().getUserContext());
         this.outputCollectors = new ArrayList<>();
         for (Map.Entry<Integer, Task> entry : idToTask.entrySet()) {
             Task taskData = entry.getValue();
@@ -118,8 +132,10 @@ public class SpoutExecutor extends Executor {
             this.outputCollectors.add(outputCollector);
 
             taskData.getBuiltInMetrics().registerAll(topoConf, taskData.getUserContext());
-            Map<String, DisruptorQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue);
+            Map<String, ISingleConsumerQueue> map = ImmutableMap.of("sendqueue", sendQueue, "receive", receiveQueue);
             BuiltinMetricsUtil.registerQueueMetrics(map, topoConf, taskData.getUserContext());
+            BuiltinMetricsUtil.registerMetric("__transfer-allocation", new StateMetric(executorTransfer), topoConf,
+                    taskData.getUserContext());
 
             if (spoutObject instanceof ICredentialsListener) {
                 ((ICredentialsListener) spoutObject).setCredentials(credentials);
@@ -141,9 +157,11 @@ public class SpoutExecutor extends Executor {
                 receiveQueue.consumeBatch(SpoutExecutor.this);
 
                 final long currCount = emittedCount.get();
-                final boolean throttleOn = backPressureEnabled && SpoutExecutor.this.throttleOn.get();
+                final boolean throttleOn = backPressureEnabled
+                    && (fineGrainedBackpressure ? downstreamCongestion.isCongested() : SpoutExecutor.this.throttleOn.get());
                 final boolean reachedMaxSpoutPending = (maxSpoutPending != 0) && (pending.size() >= maxSpoutPending);
                 final boolean isActive = stormActive.get();
+                final boolean sendQueueFull = executorTransfer.isFull();
                 if (isActive) {
                     if (!lastActive.get()) {
                         lastActive.set(true);
@@ -152,7 +170,7 @@ public class SpoutExecutor extends Executor {
                             spout.activate();
                         }
                     }
-                    if (!sendQueue.isFull() && !throttleOn && !reachedMaxSpoutPending) {
+                    if (!sendQueueFull && !throttleOn && !reachedMaxSpoutPending) {
                         for (ISpout spout : spouts) {
                             spout.nextTuple();
                         }
@@ -169,10 +187,27 @@ public class SpoutExecutor extends Executor {
                     Time.sleep(100);
                     spoutThrottlingMetrics.skippedInactiveMs(Time.currentTimeMillis() - start);
                 }
+                if (ackBatcher != null) {
+                    if (currCount == emittedCount.get()) {
+                        ackBatcher.flush();
+                    } else {
+                        ackBatcher.flushExpired();
+                    }
+                }
                 if (currCount == emittedCount.get() && isActive) {
                     emptyEmitStreak.increment();
+                    IWaitStrategy.IdleReason reason;
+                    if (throttleOn) {
+                        reason = IWaitStrategy.IdleReason.BACK_PRESSURE;
+                    } else if (reachedMaxSpoutPending) {
+                        reason = IWaitStrategy.IdleReason.MAX_SPOUT_PENDING;
+                    } else if (sendQueueFull) {
+                        reason = IWaitStrategy.IdleReason.SEND_QUEUE_FULL;
+                    } else {
+                        reason = IWaitStrategy.IdleReason.NO_EMIT;
+                    }
                     long start = Time.currentTimeMillis();
-                    spoutWaitStrategy.emptyEmit(emptyEmitStreak.get());
+                    spoutWaitStrategy.idle(emptyEmitStreak.get(), reason, sendQueue.getMetrics().pctFull(), pending.size());
                     if (throttleOn) {
                         spoutThrottlingMetrics.skippedThrottleMs(Time.currentTimeMillis() - start);
                     } else if (reachedMaxSpoutPending) {
@@ -186,6 +221,47 @@ public class SpoutExecutor extends Executor {
         };
     }
 
+    private static int[] downstreamTasks(WorkerTopologyContext context, String componentId) {
+        Set<Integer> tasks = new TreeSet<>();
+        for (Map<String, Grouping> targets : context.getTargets(componentId).values()) {
+            for (String target : targets.keySet()) {
+                tasks.addAll(context.getComponentTasks(target));
+            }
+        }
+        return tasks.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Checks the tasks a spout sends to for congestion. What it finds is good until the worker's congestion version
+     * changes, so the spout loop does not look at every task each time around.
+     */
+    static class DownstreamCongestion {
+        private final WorkerState workerData;
+        private final int[] tasks;
+        private long seenVersion = -1;
+        private boolean congested = false;
+
+        DownstreamCongestion(WorkerState workerData, int[] tasks) {
+            this.workerData = workerData;
+            this.tasks = tasks;
+        }
+
+        boolean isCongested() {
+            long version = workerData.getCongestionVersion();
+            if (version != seenVersion) {
+                seenVersion = version;
+                congested = false;
+                for (int task : tasks) {
+                    if (workerData.isCongested(task)) {
+                        congested = true;
+                        break;
+                    }
+                }
+            }
+            return congested;
+        }
+    }
+
     @Override
     public void tupleActionFn(int taskId, TupleImpl tuple) throws Exception {
         String streamId = tuple.getSourceStreamId();
@@ -199,29 +275,45 @@ public class SpoutExecutor extends Executor {
                 ((ICredentialsListener) spoutObj).setCredentials((Map<String, String>) tuple.getValue(0));
             }
         } else if (streamId.equals(Acker.ACKER_RESET_TIMEOUT_STREAM_ID)) {
-            Long id = (Long) tuple.getValue(0);
-            TupleInfo pendingForId = pending.get(id);
-            if (pendingForId != null) {
-                pending.put(id, pendingForId);
+            pending.refresh(tuple.getLong(0));
+        } else if (streamId.equals(Acker.ACKER_BATCH_STREAM_ID)) {
+            long[] batch = (long[]) tuple.getValue(0);
+            for (int i = 0; i + Acker.BATCH_RECORD_SIZE <= batch.length; i += Acker.BATCH_RECORD_SIZE) {
+                long code = batch[i + 2];
+                if (code == Acker.BATCH_RESET_TIMEOUT) {
+                    pending.refresh(batch[i]);
+                } else if (code == Acker.BATCH_ACK) {
+                    completeSpoutMsg(taskId, batch[i], batch[i + 1], Acker.ACKER_ACK_STREAM_ID);
+                } else if (code == Acker.BATCH_FAIL) {
+                    completeSpoutMsg(taskId, batch[i], batch[i + 1], Acker.ACKER_FAIL_STREAM_ID);
+                }
             }
         } else {
-            Long id = (Long) tuple.getValue(0);
-            Long timeDeltaMs = (Long) tuple.getValue(1);
-            TupleInfo tupleInfo = (TupleInfo) pending.remove(id);
-            if (tupleInfo != null && tupleInfo.getMessageId() != null) {
-                if (taskId != tupleInfo.getTaskId()) {
-                    throw new RuntimeException("Fatal error, mismatched task ids: " + taskId + " " + tupleInfo.getTaskId());
-                }
-                long startTimeMs = tupleInfo.getTimestamp();
-                Long timeDelta = null;
-                if (startTimeMs != 0) {
-                    timeDelta = timeDeltaMs;
-                }
-                if (streamId.equals(Acker.ACKER_ACK_STREAM_ID)) {
-                    ackSpoutMsg(this, idToTask.get(taskId), timeDelta, tupleInfo);
-                } else if (streamId.equals(Acker.ACKER_FAIL_STREAM_ID)) {
-                    failSpoutMsg(this, idToTask.get(taskId), timeDelta, tupleInfo, "FAIL-STREAM");
-                }
+            completeSpoutMsg(taskId, tuple.getLong(0), (Long) tuple.getValue(1), streamId);
+        }
+    }
+
+    @Override
+    protected void tupleActionDone(TupleImpl tuple) {
+        // Nothing acks the tuples a spout receives, and a broadcast one has been through every task by now
+        tuple.release();
+    }
+
+    private void completeSpoutMsg(int taskId, long id, Long timeDeltaMs, String streamId) {
+        TupleInfo tupleInfo = pending.remove(id);
+        if (tupleInfo != null && tupleInfo.getMessageId() != null) {
+            if (taskId != tupleInfo.getTaskId()) {
+                throw new RuntimeException("Fatal error, mismatched task ids: " + taskId + " " + tupleInfo.getTaskId());
+            }
+            long startTimeMs = tupleInfo.getTimestamp();
+            Long timeDelta = null;
+            if (startTimeMs != 0) {
+                timeDelta = timeDeltaMs;
+            }
+            if (streamId.equals(Acker.ACKER_ACK_STREAM_ID)) {
+                ackSpoutMsg(this, idToTask.get(taskId), timeDelta, tupleInfo);
+            } else if (streamId.equals(Acker.ACKER_FAIL_STREAM_ID)) {
+                failSpoutMsg(this, idToTask.get(taskId), timeDelta, tupleInfo, "FAIL-STREAM");
             }
         }
     }
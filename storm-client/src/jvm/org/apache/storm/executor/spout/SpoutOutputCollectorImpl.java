@@ -19,15 +19,17 @@ package org.apache.storm.executor.spout;
 
 import org.apache.storm.daemon.Acker;
 import org.apache.storm.daemon.Task;
+import org.apache.storm.executor.AckBatcher;
 import org.apache.storm.executor.TupleInfo;
 import org.apache.storm.spout.ISpout;
 import org.apache.storm.spout.ISpoutOutputCollector;
 import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TuplePool;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.Utils;
 import org.apache.storm.utils.MutableLong;
-import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.RotatingPendingMap;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -43,12 +45,12 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
     private final Random random;
     private final Boolean isEventLoggers;
     private final Boolean isDebug;
-    private final RotatingMap<Long, TupleInfo> pending;
+    private final RotatingPendingMap<TupleInfo> pending;
 
     @SuppressWarnings("unused")
     public SpoutOutputCollectorImpl(ISpout spout, SpoutExecutor executor, Task taskData, int taskId,
                                     MutableLong emittedCount, boolean hasAckers, Random random,
-                                    Boolean isEventLoggers, Boolean isDebug, RotatingMap<Long, TupleInfo> pending) {
+                                    Boolean isEventLoggers, Boolean isDebug, RotatingPendingMap<TupleInfo> pending) {
         this.executor = executor;
         this.taskData = taskData;
         this.taskId = taskId;
@@ -95,17 +97,25 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
         boolean needAck = (messageId != null) && hasAckers;
 
         long rootId = MessageId.generateId(random);
+        TuplePool pool = executor.getTuplePool();
         for (Integer t : outTasks) {
-            MessageId msgId;
+            TupleImpl tuple = (pool != null) ? pool.acquire() : null;
+            MessageId msgId = (tuple != null) ? tuple.getMessageId() : MessageId.makeUnanchored();
             if (needAck) {
                 long as = MessageId.generateId(random);
-                msgId = MessageId.makeRootId(rootId, as);
+                if (tuple != null) {
+                    msgId.getAnchorsToIds().put(rootId, as);
+                } else {
+                    msgId = MessageId.makeRootId(rootId, as);
+                }
                 ackSeq.add(as);
-            } else {
-                msgId = MessageId.makeUnanchored();
             }
 
-            TupleImpl tuple = new TupleImpl(executor.getWorkerTopologyContext(), values, this.taskId, stream, msgId);
+            if (tuple != null) {
+                tuple.reset(executor.getWorkerTopologyContext(), values, this.taskId, stream);
+            } else {
+                tuple = new TupleImpl(executor.getWorkerTopologyContext(), values, this.taskId, stream, msgId);
+            }
             executor.getExecutorTransfer().transfer(t, tuple);
         }
         if (isEventLoggers) {
@@ -130,8 +140,13 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
             }
 
             pending.put(rootId, info);
-            List<Object> ackInitTuple = new Values(rootId, Utils.bitXorVals(ackSeq), this.taskId);
-            executor.sendUnanchored(taskData, Acker.ACKER_INIT_STREAM_ID, ackInitTuple, executor.getExecutorTransfer());
+            AckBatcher ackBatcher = executor.getAckBatcher();
+            if (ackBatcher != null) {
+                ackBatcher.add(rootId, Utils.bitXorVals(ackSeq), this.taskId);
+            } else {
+                List<Object> ackInitTuple = new Values(rootId, Utils.bitXorVals(ackSeq), this.taskId);
+                executor.sendUnanchored(taskData, Acker.ACKER_INIT_STREAM_ID, ackInitTuple, executor.getExecutorTransfer());
+            }
         } else if (messageId != null) {
             TupleInfo info = new TupleInfo();
             info.setStream(stream);
@@ -59,6 +59,7 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
   private static final org.apache.thrift.protocol.TField COMMON_STATS_FIELD_DESC = new org.apache.thrift.protocol.TField("common_stats", org.apache.thrift.protocol.TType.STRUCT, (short)2);
   private static final org.apache.thrift.protocol.TField SPECIFIC_STATS_FIELD_DESC = new org.apache.thrift.protocol.TField("specific_stats", org.apache.thrift.protocol.TType.STRUCT, (short)3);
   private static final org.apache.thrift.protocol.TField LAST_ERROR_FIELD_DESC = new org.apache.thrift.protocol.TField("last_error", org.apache.thrift.protocol.TType.STRUCT, (short)4);
+  private static final org.apache.thrift.protocol.TField LATENCY_PERCENTILES_MS_FIELD_DESC = new org.apache.thrift.protocol.TField("latency_percentiles_ms", org.apache.thrift.protocol.TType.MAP, (short)5);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -70,6 +71,7 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
   private CommonAggregateStats common_stats; // optional
   private SpecificAggregateStats specific_stats; // optional
   private ErrorInfo last_error; // optional
+  private Map<String,Map<String,Double>> latency_percentiles_ms; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -80,7 +82,8 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     TYPE((short)1, "type"),
     COMMON_STATS((short)2, "common_stats"),
     SPECIFIC_STATS((short)3, "specific_stats"),
-    LAST_ERROR((short)4, "last_error");
+    LAST_ERROR((short)4, "last_error"),
+    LATENCY_PERCENTILES_MS((short)5, "latency_percentiles_ms");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -103,6 +106,8 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
           return SPECIFIC_STATS;
         case 4: // LAST_ERROR
           return LAST_ERROR;
+        case 5: // LATENCY_PERCENTILES_MS
+          return LATENCY_PERCENTILES_MS;
         default:
           return null;
       }
@@ -143,7 +148,7 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
   }
 
   // isset id assignments
-  private static final _Fields optionals[] = {_Fields.TYPE,_Fields.COMMON_STATS,_Fields.SPECIFIC_STATS,_Fields.LAST_ERROR};
+  private static final _Fields optionals[] = {_Fields.TYPE,_Fields.COMMON_STATS,_Fields.SPECIFIC_STATS,_Fields.LAST_ERROR,_Fields.LATENCY_PERCENTILES_MS};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -155,6 +160,12 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, SpecificAggregateStats.class)));
     tmpMap.put(_Fields.LAST_ERROR, new org.apache.thrift.meta_data.FieldMetaData("last_error", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, ErrorInfo.class)));
+    tmpMap.put(_Fields.LATENCY_PERCENTILES_MS, new org.apache.thrift.meta_data.FieldMetaData("latency_percentiles_ms", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.MapMetaData(org.apache.thrift.protocol.TType.MAP, 
+            new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING), 
+            new org.apache.thrift.meta_data.MapMetaData(org.apache.thrift.protocol.TType.MAP, 
+                new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING), 
+                new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.DOUBLE)))));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(ComponentAggregateStats.class, metaDataMap);
   }
@@ -178,6 +189,21 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     if (other.is_set_last_error()) {
       this.last_error = new ErrorInfo(other.last_error);
     }
+    if (other.is_set_latency_percentiles_ms()) {
+      Map<String,Map<String,Double>> __this__latency_percentiles_ms = new HashMap<String,Map<String,Double>>(other.latency_percentiles_ms.size());
+      for (Map.Entry<String, Map<String,Double>> other_element : other.latency_percentiles_ms.entrySet()) {
+
+        String other_element_key = other_element.getKey();
+        Map<String,Double> other_element_value = other_element.getValue();
+
+        String __this__latency_percentiles_ms_copy_key = other_element_key;
+
+        Map<String,Double> __this__latency_percentiles_ms_copy_value = new HashMap<String,Double>(other_element_value);
+
+        __this__latency_percentiles_ms.put(__this__latency_percentiles_ms_copy_key, __this__latency_percentiles_ms_copy_value);
+      }
+      this.latency_percentiles_ms = __this__latency_percentiles_ms;
+    }
   }
 
   public ComponentAggregateStats deepCopy() {
@@ -190,6 +216,7 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     this.common_stats = null;
     this.specific_stats = null;
     this.last_error = null;
+    this.latency_percentiles_ms = null;
   }
 
   /**
@@ -292,6 +319,40 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     }
   }
 
+  public int get_latency_percentiles_ms_size() {
+    return (this.latency_percentiles_ms == null) ? 0 : this.latency_percentiles_ms.size();
+  }
+
+  public void put_to_latency_percentiles_ms(String key, Map<String,Double> val) {
+    if (this.latency_percentiles_ms == null) {
+      this.latency_percentiles_ms = new HashMap<String,Map<String,Double>>();
+    }
+    this.latency_percentiles_ms.put(key, val);
+  }
+
+  public Map<String,Map<String,Double>> get_latency_percentiles_ms() {
+    return this.latency_percentiles_ms;
+  }
+
+  public void set_latency_percentiles_ms(Map<String,Map<String,Double>> latency_percentiles_ms) {
+    this.latency_percentiles_ms = latency_percentiles_ms;
+  }
+
+  public void unset_latency_percentiles_ms() {
+    this.latency_percentiles_ms = null;
+  }
+
+  /** Returns true if field latency_percentiles_ms is set (has been assigned a value) and false otherwise */
+  public boolean is_set_latency_percentiles_ms() {
+    return this.latency_percentiles_ms != null;
+  }
+
+  public void set_latency_percentiles_ms_isSet(boolean value) {
+    if (!value) {
+      this.latency_percentiles_ms = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case TYPE:
@@ -326,6 +387,14 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
       }
       break;
 
+    case LATENCY_PERCENTILES_MS:
+      if (value == null) {
+        unset_latency_percentiles_ms();
+      } else {
+        set_latency_percentiles_ms((Map<String,Map<String,Double>>)value);
+      }
+      break;
+
     }
   }
 
@@ -343,6 +412,9 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     case LAST_ERROR:
       return get_last_error();
 
+    case LATENCY_PERCENTILES_MS:
+      return get_latency_percentiles_ms();
+
     }
     throw new IllegalStateException();
   }
@@ -362,6 +434,8 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
       return is_set_specific_stats();
     case LAST_ERROR:
       return is_set_last_error();
+    case LATENCY_PERCENTILES_MS:
+      return is_set_latency_percentiles_ms();
     }
     throw new IllegalStateException();
   }
@@ -415,6 +489,15 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
         return false;
     }
 
+    boolean this_present_latency_percentiles_ms = true && this.is_set_latency_percentiles_ms();
+    boolean that_present_latency_percentiles_ms = true && that.is_set_latency_percentiles_ms();
+    if (this_present_latency_percentiles_ms || that_present_latency_percentiles_ms) {
+      if (!(this_present_latency_percentiles_ms && that_present_latency_percentiles_ms))
+        return false;
+      if (!this.latency_percentiles_ms.equals(that.latency_percentiles_ms))
+        return false;
+    }
+
     return true;
   }
 
@@ -442,6 +525,11 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
     if (present_last_error)
       list.add(last_error);
 
+    boolean present_latency_percentiles_ms = true && (is_set_latency_percentiles_ms());
+    list.add(present_latency_percentiles_ms);
+    if (present_latency_percentiles_ms)
+      list.add(latency_percentiles_ms);
+
     return list.hashCode();
   }
 
@@ -493,6 +581,16 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(is_set_latency_percentiles_ms()).compareTo(other.is_set_latency_percentiles_ms());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (is_set_latency_percentiles_ms()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.latency_percentiles_ms, other.latency_percentiles_ms);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -552,6 +650,16 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
       }
       first = false;
     }
+    if (is_set_latency_percentiles_ms()) {
+      if (!first) sb.append(", ");
+      sb.append("latency_percentiles_ms:");
+      if (this.latency_percentiles_ms == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.latency_percentiles_ms);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -636,6 +744,38 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 5: // LATENCY_PERCENTILES_MS
+            if (schemeField.type == org.apache.thrift.protocol.TType.MAP) {
+              {
+                org.apache.thrift.protocol.TMap _map410 = iprot.readMapBegin();
+                struct.latency_percentiles_ms = new HashMap<String,Map<String,Double>>(2*_map410.size);
+                String _key411;
+                Map<String,Double> _val412;
+                for (int _i413 = 0; _i413 < _map410.size; ++_i413)
+                {
+                  _key411 = iprot.readString();
+                  {
+                    org.apache.thrift.protocol.TMap _map414 = iprot.readMapBegin();
+                    _val412 = new HashMap<String,Double>(2*_map414.size);
+                    String _key415;
+                    double _val416;
+                    for (int _i417 = 0; _i417 < _map414.size; ++_i417)
+                    {
+                      _key415 = iprot.readString();
+                      _val416 = iprot.readDouble();
+                      _val412.put(_key415, _val416);
+                    }
+                    iprot.readMapEnd();
+                  }
+                  struct.latency_percentiles_ms.put(_key411, _val412);
+                }
+                iprot.readMapEnd();
+              }
+              struct.set_latency_percentiles_ms_isSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -677,6 +817,29 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
           oprot.writeFieldEnd();
         }
       }
+      if (struct.latency_percentiles_ms != null) {
+        if (struct.is_set_latency_percentiles_ms()) {
+          oprot.writeFieldBegin(LATENCY_PERCENTILES_MS_FIELD_DESC);
+          {
+            oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.MAP, struct.latency_percentiles_ms.size()));
+            for (Map.Entry<String, Map<String,Double>> _iter418 : struct.latency_percentiles_ms.entrySet())
+            {
+              oprot.writeString(_iter418.getKey());
+              {
+                oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.DOUBLE, _iter418.getValue().size()));
+                for (Map.Entry<String, Double> _iter419 : _iter418.getValue().entrySet())
+                {
+                  oprot.writeString(_iter419.getKey());
+                  oprot.writeDouble(_iter419.getValue());
+                }
+                oprot.writeMapEnd();
+              }
+            }
+            oprot.writeMapEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -707,7 +870,10 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
       if (struct.is_set_last_error()) {
         optionals.set(3);
       }
-      oprot.writeBitSet(optionals, 4);
+      if (struct.is_set_latency_percentiles_ms()) {
+        optionals.set(4);
+      }
+      oprot.writeBitSet(optionals, 5);
       if (struct.is_set_type()) {
         oprot.writeI32(struct.type.getValue());
       }
@@ -720,12 +886,29 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
       if (struct.is_set_last_error()) {
         struct.last_error.write(oprot);
       }
+      if (struct.is_set_latency_percentiles_ms()) {
+        {
+          oprot.writeI32(struct.latency_percentiles_ms.size());
+          for (Map.Entry<String, Map<String,Double>> _iter420 : struct.latency_percentiles_ms.entrySet())
+          {
+            oprot.writeString(_iter420.getKey());
+            {
+              oprot.writeI32(_iter420.getValue().size());
+              for (Map.Entry<String, Double> _iter421 : _iter420.getValue().entrySet())
+              {
+                oprot.writeString(_iter421.getKey());
+                oprot.writeDouble(_iter421.getValue());
+              }
+            }
+          }
+        }
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, ComponentAggregateStats struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(4);
+      BitSet incoming = iprot.readBitSet(5);
       if (incoming.get(0)) {
         struct.type = org.apache.storm.generated.ComponentType.findByValue(iprot.readI32());
         struct.set_type_isSet(true);
@@ -745,6 +928,32 @@ public class ComponentAggregateStats implements org.apache.thrift.TBase<Componen
         struct.last_error.read(iprot);
         struct.set_last_error_isSet(true);
       }
+      if (incoming.get(4)) {
+        {
+          org.apache.thrift.protocol.TMap _map422 = new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.MAP, iprot.readI32());
+          struct.latency_percentiles_ms = new HashMap<String,Map<String,Double>>(2*_map422.size);
+          String _key423;
+          Map<String,Double> _val424;
+          for (int _i425 = 0; _i425 < _map422.size; ++_i425)
+          {
+            _key423 = iprot.readString();
+            {
+              org.apache.thrift.protocol.TMap _map426 = new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.DOUBLE, iprot.readI32());
+              _val424 = new HashMap<String,Double>(2*_map426.size);
+              String _key427;
+              double _val428;
+              for (int _i429 = 0; _i429 < _map426.size; ++_i429)
+              {
+                _key427 = iprot.readString();
+                _val428 = iprot.readDouble();
+                _val424.put(_key427, _val428);
+              }
+            }
+            struct.latency_percentiles_ms.put(_key423, _val424);
+          }
+        }
+        struct.set_latency_percentiles_ms_isSet(true);
+      }
     }
   }
 
@@ -59,6 +59,7 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
   private static final org.apache.thrift.protocol.TField TRANSFERRED_FIELD_DESC = new org.apache.thrift.protocol.TField("transferred", org.apache.thrift.protocol.TType.MAP, (short)2);
   private static final org.apache.thrift.protocol.TField SPECIFIC_FIELD_DESC = new org.apache.thrift.protocol.TField("specific", org.apache.thrift.protocol.TType.STRUCT, (short)3);
   private static final org.apache.thrift.protocol.TField RATE_FIELD_DESC = new org.apache.thrift.protocol.TField("rate", org.apache.thrift.protocol.TType.DOUBLE, (short)4);
+  private static final org.apache.thrift.protocol.TField LATENCY_HISTOGRAMS_FIELD_DESC = new org.apache.thrift.protocol.TField("latency_histograms", org.apache.thrift.protocol.TType.MAP, (short)5);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -70,13 +71,15 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
   private Map<String,Map<String,Long>> transferred; // required
   private ExecutorSpecificStats specific; // required
   private double rate; // required
+  private Map<String,Map<String,ByteBuffer>> latency_histograms; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     EMITTED((short)1, "emitted"),
     TRANSFERRED((short)2, "transferred"),
     SPECIFIC((short)3, "specific"),
-    RATE((short)4, "rate");
+    RATE((short)4, "rate"),
+    LATENCY_HISTOGRAMS((short)5, "latency_histograms");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -99,6 +102,8 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
           return SPECIFIC;
         case 4: // RATE
           return RATE;
+        case 5: // LATENCY_HISTOGRAMS
+          return LATENCY_HISTOGRAMS;
         default:
           return null;
       }
@@ -141,6 +146,7 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
   // isset id assignments
   private static final int __RATE_ISSET_ID = 0;
   private byte __isset_bitfield = 0;
+  private static final _Fields optionals[] = {_Fields.LATENCY_HISTOGRAMS};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -160,6 +166,12 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, ExecutorSpecificStats.class)));
     tmpMap.put(_Fields.RATE, new org.apache.thrift.meta_data.FieldMetaData("rate", org.apache.thrift.TFieldRequirementType.REQUIRED, 
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.DOUBLE)));
+    tmpMap.put(_Fields.LATENCY_HISTOGRAMS, new org.apache.thrift.meta_data.FieldMetaData("latency_histograms", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.MapMetaData(org.apache.thrift.protocol.TType.MAP, 
+            new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING), 
+            new org.apache.thrift.meta_data.MapMetaData(org.apache.thrift.protocol.TType.MAP, 
+                new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING), 
+                new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)))));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(ExecutorStats.class, metaDataMap);
   }
@@ -220,6 +232,32 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       this.specific = new ExecutorSpecificStats(other.specific);
     }
     this.rate = other.rate;
+    if (other.is_set_latency_histograms()) {
+      Map<String,Map<String,ByteBuffer>> __this__latency_histograms = new HashMap<String,Map<String,ByteBuffer>>(other.latency_histograms.size());
+      for (Map.Entry<String, Map<String,ByteBuffer>> other_element : other.latency_histograms.entrySet()) {
+
+        String other_element_key = other_element.getKey();
+        Map<String,ByteBuffer> other_element_value = other_element.getValue();
+
+        String __this__latency_histograms_copy_key = other_element_key;
+
+        Map<String,ByteBuffer> __this__latency_histograms_copy_value = new HashMap<String,ByteBuffer>(other_element_value.size());
+        for (Map.Entry<String, ByteBuffer> other_element_value_element : other_element_value.entrySet()) {
+
+          String other_element_value_element_key = other_element_value_element.getKey();
+          ByteBuffer other_element_value_element_value = other_element_value_element.getValue();
+
+          String __this__latency_histograms_copy_value_copy_key = other_element_value_element_key;
+
+          ByteBuffer __this__latency_histograms_copy_value_copy_value = org.apache.thrift.TBaseHelper.copyBinary(other_element_value_element_value);
+
+          __this__latency_histograms_copy_value.put(__this__latency_histograms_copy_value_copy_key, __this__latency_histograms_copy_value_copy_value);
+        }
+
+        __this__latency_histograms.put(__this__latency_histograms_copy_key, __this__latency_histograms_copy_value);
+      }
+      this.latency_histograms = __this__latency_histograms;
+    }
   }
 
   public ExecutorStats deepCopy() {
@@ -233,6 +271,7 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
     this.specific = null;
     set_rate_isSet(false);
     this.rate = 0.0;
+    this.latency_histograms = null;
   }
 
   public int get_emitted_size() {
@@ -348,6 +387,40 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
     __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __RATE_ISSET_ID, value);
   }
 
+  public int get_latency_histograms_size() {
+    return (this.latency_histograms == null) ? 0 : this.latency_histograms.size();
+  }
+
+  public void put_to_latency_histograms(String key, Map<String,ByteBuffer> val) {
+    if (this.latency_histograms == null) {
+      this.latency_histograms = new HashMap<String,Map<String,ByteBuffer>>();
+    }
+    this.latency_histograms.put(key, val);
+  }
+
+  public Map<String,Map<String,ByteBuffer>> get_latency_histograms() {
+    return this.latency_histograms;
+  }
+
+  public void set_latency_histograms(Map<String,Map<String,ByteBuffer>> latency_histograms) {
+    this.latency_histograms = latency_histograms;
+  }
+
+  public void unset_latency_histograms() {
+    this.latency_histograms = null;
+  }
+
+  /** Returns true if field latency_histograms is set (has been assigned a value) and false otherwise */
+  public boolean is_set_latency_histograms() {
+    return this.latency_histograms != null;
+  }
+
+  public void set_latency_histograms_isSet(boolean value) {
+    if (!value) {
+      this.latency_histograms = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case EMITTED:
@@ -382,6 +455,14 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       }
       break;
 
+    case LATENCY_HISTOGRAMS:
+      if (value == null) {
+        unset_latency_histograms();
+      } else {
+        set_latency_histograms((Map<String,Map<String,ByteBuffer>>)value);
+      }
+      break;
+
     }
   }
 
@@ -399,6 +480,9 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
     case RATE:
       return get_rate();
 
+    case LATENCY_HISTOGRAMS:
+      return get_latency_histograms();
+
     }
     throw new IllegalStateException();
   }
@@ -418,6 +502,8 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       return is_set_specific();
     case RATE:
       return is_set_rate();
+    case LATENCY_HISTOGRAMS:
+      return is_set_latency_histograms();
     }
     throw new IllegalStateException();
   }
@@ -471,6 +557,15 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
         return false;
     }
 
+    boolean this_present_latency_histograms = true && this.is_set_latency_histograms();
+    boolean that_present_latency_histograms = true && that.is_set_latency_histograms();
+    if (this_present_latency_histograms || that_present_latency_histograms) {
+      if (!(this_present_latency_histograms && that_present_latency_histograms))
+        return false;
+      if (!this.latency_histograms.equals(that.latency_histograms))
+        return false;
+    }
+
     return true;
   }
 
@@ -498,6 +593,11 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
     if (present_rate)
       list.add(rate);
 
+    boolean present_latency_histograms = true && (is_set_latency_histograms());
+    list.add(present_latency_histograms);
+    if (present_latency_histograms)
+      list.add(latency_histograms);
+
     return list.hashCode();
   }
 
@@ -549,6 +649,16 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(is_set_latency_histograms()).compareTo(other.is_set_latency_histograms());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (is_set_latency_histograms()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.latency_histograms, other.latency_histograms);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -596,6 +706,16 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
     sb.append("rate:");
     sb.append(this.rate);
     first = false;
+    if (is_set_latency_histograms()) {
+      if (!first) sb.append(", ");
+      sb.append("latency_histograms:");
+      if (this.latency_histograms == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.latency_histograms);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -738,6 +858,38 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 5: // LATENCY_HISTOGRAMS
+            if (schemeField.type == org.apache.thrift.protocol.TType.MAP) {
+              {
+                org.apache.thrift.protocol.TMap _map360 = iprot.readMapBegin();
+                struct.latency_histograms = new HashMap<String,Map<String,ByteBuffer>>(2*_map360.size);
+                String _key361;
+                Map<String,ByteBuffer> _val362;
+                for (int _i363 = 0; _i363 < _map360.size; ++_i363)
+                {
+                  _key361 = iprot.readString();
+                  {
+                    org.apache.thrift.protocol.TMap _map364 = iprot.readMapBegin();
+                    _val362 = new HashMap<String,ByteBuffer>(2*_map364.size);
+                    String _key365;
+                    ByteBuffer _val366;
+                    for (int _i367 = 0; _i367 < _map364.size; ++_i367)
+                    {
+                      _key365 = iprot.readString();
+                      _val366 = iprot.readBinary();
+                      _val362.put(_key365, _val366);
+                    }
+                    iprot.readMapEnd();
+                  }
+                  struct.latency_histograms.put(_key361, _val362);
+                }
+                iprot.readMapEnd();
+              }
+              struct.set_latency_histograms_isSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -801,6 +953,29 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       oprot.writeFieldBegin(RATE_FIELD_DESC);
       oprot.writeDouble(struct.rate);
       oprot.writeFieldEnd();
+      if (struct.latency_histograms != null) {
+        if (struct.is_set_latency_histograms()) {
+          oprot.writeFieldBegin(LATENCY_HISTOGRAMS_FIELD_DESC);
+          {
+            oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.MAP, struct.latency_histograms.size()));
+            for (Map.Entry<String, Map<String,ByteBuffer>> _iter368 : struct.latency_histograms.entrySet())
+            {
+              oprot.writeString(_iter368.getKey());
+              {
+                oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.STRING, _iter368.getValue().size()));
+                for (Map.Entry<String, ByteBuffer> _iter369 : _iter368.getValue().entrySet())
+                {
+                  oprot.writeString(_iter369.getKey());
+                  oprot.writeBinary(_iter369.getValue());
+                }
+                oprot.writeMapEnd();
+              }
+            }
+            oprot.writeMapEnd();
+          }
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -850,6 +1025,28 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       }
       struct.specific.write(oprot);
       oprot.writeDouble(struct.rate);
+      BitSet optionals = new BitSet();
+      if (struct.is_set_latency_histograms()) {
+        optionals.set(0);
+      }
+      oprot.writeBitSet(optionals, 1);
+      if (struct.is_set_latency_histograms()) {
+        {
+          oprot.writeI32(struct.latency_histograms.size());
+          for (Map.Entry<String, Map<String,ByteBuffer>> _iter370 : struct.latency_histograms.entrySet())
+          {
+            oprot.writeString(_iter370.getKey());
+            {
+              oprot.writeI32(_iter370.getValue().size());
+              for (Map.Entry<String, ByteBuffer> _iter371 : _iter370.getValue().entrySet())
+              {
+                oprot.writeString(_iter371.getKey());
+                oprot.writeBinary(_iter371.getValue());
+              }
+            }
+          }
+        }
+      }
     }
 
     @Override
@@ -908,6 +1105,33 @@ public class ExecutorStats implements org.apache.thrift.TBase<ExecutorStats, Exe
       struct.set_specific_isSet(true);
       struct.rate = iprot.readDouble();
       struct.set_rate_isSet(true);
+      BitSet incoming = iprot.readBitSet(1);
+      if (incoming.get(0)) {
+        {
+          org.apache.thrift.protocol.TMap _map372 = new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.MAP, iprot.readI32());
+          struct.latency_histograms = new HashMap<String,Map<String,ByteBuffer>>(2*_map372.size);
+          String _key373;
+          Map<String,ByteBuffer> _val374;
+          for (int _i375 = 0; _i375 < _map372.size; ++_i375)
+          {
+            _key373 = iprot.readString();
+            {
+              org.apache.thrift.protocol.TMap _map376 = new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.STRING, org.apache.thrift.protocol.TType.STRING, iprot.readI32());
+              _val374 = new HashMap<String,ByteBuffer>(2*_map376.size);
+              String _key377;
+              ByteBuffer _val378;
+              for (int _i379 = 0; _i379 < _map376.size; ++_i379)
+              {
+                _key377 = iprot.readString();
+                _val378 = iprot.readBinary();
+                _val374.put(_key377, _val378);
+              }
+            }
+            struct.latency_histograms.put(_key373, _val374);
+          }
+        }
+        struct.set_latency_histograms_isSet(true);
+      }
     }
   }
 
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.grouping;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.utils.TupleUtils;
+
+/**
+ * A fields grouping that keeps most keys on the same target when the number of target tasks changes.
+ *
+ * A fields grouping picks the target as the key hash modulo the number of tasks, so going from N to
+ * N + 1 tasks sends almost every key somewhere else.  This grouping uses jump consistent hashing
+ * (Lamping and Veach) over the index in the target task list instead, so only about 1/(N + 1) of the
+ * keys move, all of them to the new task, and no key moves between the tasks that stay.  Choosing a
+ * target takes O(ln N) steps on top of hashing the fields.
+ *
+ * The task count of a component only changes when the topology is submitted again, a rebalance only
+ * moves tasks between executors.  This grouping is for stateful bolts whose state is restored per
+ * task in that case.  The keys are hashed the same way as a fields grouping, so the hash code of the
+ * values has to be stable across JVMs.
+ * @see <a href="https://arxiv.org/abs/1406.2294">A Fast, Minimal Memory, Consistent Hash Algorithm</a>
+ */
+public class ConsistentHashGrouping implements CustomStreamGrouping, Serializable {
+    private static final long serialVersionUID = 3580126546018393582L;
+    private final Fields fields;
+    private Fields outFields;
+    private List<List<Integer>> targets;
+
+    /**
+     * @param fields the fields to group by.
+     */
+    public ConsistentHashGrouping(Fields fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        this.outFields = context.getComponentOutputFields(stream);
+        this.targets = new ArrayList<>(targetTasks.size());
+        for (Integer task : targetTasks) {
+            this.targets.add(Collections.singletonList(task));
+        }
+    }
+
+    @Override
+    public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        int hash = TupleUtils.listHashCode(outFields.select(fields, values));
+        return targets.get(jumpConsistentHash(hash, targets.size()));
+    }
+
+    /**
+     * Map a key hash to a bucket so that going from numBuckets to numBuckets + 1 only moves
+     * about 1/(numBuckets + 1) of the hashes, all into the new bucket.
+     * @param hash the hash of the key.
+     * @param numBuckets the number of buckets, at least 1.
+     * @return the bucket in [0, numBuckets).
+     */
+    static int jumpConsistentHash(int hash, int numBuckets) {
+        //Spread the 32 bit hash over 64 bits first, the jumps are driven by its high bits
+        long key = hash;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        long bucket = -1;
+        long next = 0;
+        while (next < numBuckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / ((double) ((key >>> 33) + 1))));
+        }
+        return (int) bucket;
+    }
+}
@@ -18,26 +18,34 @@
 package org.apache.storm.grouping;
 
 import java.io.Serializable;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.storm.generated.GlobalStreamId;
 import org.apache.storm.task.WorkerTopologyContext;
 import org.apache.storm.tuple.Fields;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-
+/**
+ * Sends each key to the less loaded of two candidate tasks, picked by two hash functions.
+ *
+ * Choosing a task does not allocate.  The hash codes of the grouped values are run through
+ * 128 bit murmur3 with two seeds directly, which gives the same candidates as hashing the
+ * big-endian bytes of those hash codes, and the chosen task is returned as a cached list.
+ */
 public class PartialKeyGrouping implements CustomStreamGrouping, Serializable {
     private static final long serialVersionUID = -447379837314000353L;
-    private List<Integer> targetTasks;
+    private static final int SEED_1 = 13;
+    private static final int SEED_2 = 17;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private List<List<Integer>> targets;
     private long[] targetTaskStats;
-    private HashFunction h1 = Hashing.murmur3_128(13);
-    private HashFunction h2 = Hashing.murmur3_128(17);
     private Fields fields = null;
-    private Fields outFields = null;
+    private int[] fieldIndexes;
+    private int[] hashes;
 
     public PartialKeyGrouping() {
         //Empty
@@ -49,58 +57,133 @@ public class PartialKeyGrouping implements CustomStreamGrouping, Serializable {
 
     @Override
     public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
-        this.targetTasks = targetTasks;
-        targetTaskStats = new long[this.targetTasks.size()];
+        targets = new ArrayList<>(targetTasks.size());
+        for (Integer task : targetTasks) {
+            targets.add(Collections.singletonList(task));
+        }
+        targetTaskStats = new long[targetTasks.size()];
         if (this.fields != null) {
-            this.outFields = context.getComponentOutputFields(stream);
+            Fields outFields = context.getComponentOutputFields(stream);
+            fieldIndexes = new int[fields.size()];
+            for (int i = 0; i < fieldIndexes.length; i++) {
+                fieldIndexes[i] = outFields.fieldIndex(fields.get(i));
+            }
+        } else {
+            // assume key is the first field
+            fieldIndexes = new int[] {0};
         }
+        hashes = new int[fieldIndexes.length];
     }
 
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> values) {
-        List<Integer> boltIds = new ArrayList<>(1);
-        if (values.size() > 0) {
-            byte[] raw;
-            if (fields != null) {
-                List<Object> selectedFields = outFields.select(fields, values);
-                ByteBuffer out = ByteBuffer.allocate(selectedFields.size() * 4);
-                for (Object o: selectedFields) {
-                    if (o instanceof List) {
-                        out.putInt(Arrays.deepHashCode(((List)o).toArray()));
-                    } else if (o instanceof Object[]) {
-                        out.putInt(Arrays.deepHashCode((Object[])o));
-                    } else if (o instanceof byte[]) {
-                        out.putInt(Arrays.hashCode((byte[]) o));
-                    } else if (o instanceof short[]) {
-                        out.putInt(Arrays.hashCode((short[]) o));
-                    } else if (o instanceof int[]) {
-                        out.putInt(Arrays.hashCode((int[]) o));
-                    } else if (o instanceof long[]) {
-                        out.putInt(Arrays.hashCode((long[]) o));
-                    } else if (o instanceof char[]) {
-                        out.putInt(Arrays.hashCode((char[]) o));
-                    } else if (o instanceof float[]) {
-                        out.putInt(Arrays.hashCode((float[]) o));
-                    } else if (o instanceof double[]) {
-                        out.putInt(Arrays.hashCode((double[]) o));
-                    } else if (o instanceof boolean[]) {
-                        out.putInt(Arrays.hashCode((boolean[]) o));
-                    } else if (o != null) {
-                        out.putInt(o.hashCode());
-                    } else {
-                      out.putInt(0);
-                    }
-                }
-                raw = out.array();
-            } else {
-                raw = values.get(0).toString().getBytes(); // assume key is the first field
-            }
-            int firstChoice = (int) (Math.abs(h1.hashBytes(raw).asLong()) % this.targetTasks.size());
-            int secondChoice = (int) (Math.abs(h2.hashBytes(raw).asLong()) % this.targetTasks.size());
-            int selected = targetTaskStats[firstChoice] > targetTaskStats[secondChoice] ? secondChoice : firstChoice;
-            boltIds.add(targetTasks.get(selected));
-            targetTaskStats[selected]++;
+        if (values.size() == 0) {
+            return Collections.emptyList();
+        }
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            hashes[i] = hashOf(values.get(fieldIndexes[i]));
+        }
+        int firstChoice = (int) (Math.abs(murmur3(hashes, SEED_1)) % targets.size());
+        int secondChoice = (int) (Math.abs(murmur3(hashes, SEED_2)) % targets.size());
+        int selected = targetTaskStats[firstChoice] > targetTaskStats[secondChoice] ? secondChoice : firstChoice;
+        targetTaskStats[selected]++;
+        return targets.get(selected);
+    }
+
+    static int hashOf(Object o) {
+        if (o instanceof List) {
+            return Arrays.deepHashCode(((List)o).toArray());
+        } else if (o instanceof Object[]) {
+            return Arrays.deepHashCode((Object[])o);
+        } else if (o instanceof byte[]) {
+            return Arrays.hashCode((byte[]) o);
+        } else if (o instanceof short[]) {
+            return Arrays.hashCode((short[]) o);
+        } else if (o instanceof int[]) {
+            return Arrays.hashCode((int[]) o);
+        } else if (o instanceof long[]) {
+            return Arrays.hashCode((long[]) o);
+        } else if (o instanceof char[]) {
+            return Arrays.hashCode((char[]) o);
+        } else if (o instanceof float[]) {
+            return Arrays.hashCode((float[]) o);
+        } else if (o instanceof double[]) {
+            return Arrays.hashCode((double[]) o);
+        } else if (o instanceof boolean[]) {
+            return Arrays.hashCode((boolean[]) o);
+        } else if (o != null) {
+            return o.hashCode();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * The first 64 bits of the x64 128 bit murmur3 hash of the big-endian bytes of the given ints,
+     * the same as Guava's {@code Hashing.murmur3_128(seed).hashBytes(bytes).asLong()}.
+     */
+    static long murmur3(int[] data, int seed) {
+        long h1 = seed;
+        long h2 = seed;
+        int i = 0;
+        for (; i + 4 <= data.length; i += 4) {
+            long k1 = littleEndian(data[i], data[i + 1]);
+            long k2 = littleEndian(data[i + 2], data[i + 3]);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
         }
-        return boltIds;
+        int remaining = data.length - i;
+        if (remaining > 0) {
+            long k1 = remaining >= 2 ? littleEndian(data[i], data[i + 1]) : littleEndian(data[i]);
+            long k2 = remaining == 3 ? littleEndian(data[i + 2]) : 0;
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+        }
+        long length = data.length * 4L;
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        return h1;
+    }
+
+    private static long littleEndian(int first) {
+        return Integer.reverseBytes(first) & 0xffffffffL;
+    }
+
+    private static long littleEndian(int first, int second) {
+        return littleEndian(first) | ((long) Integer.reverseBytes(second) << 32);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
     }
 }
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.grouping;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.metric.api.IStatefulObject;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+
+/**
+ * A fields grouping that spreads the heaviest keys over several tasks.
+ *
+ * The frequency of every key is estimated online with a Count-Min sketch.  The sketch and the
+ * tuple counts per task are halved every {@link #DECAY_INTERVAL} tuples so that they follow
+ * changes in the key distribution.  A cold key
+ * always goes to the same single task, like with a fields grouping.  A key that makes up more than
+ * 1/(5 * number of tasks) of the recent tuples is hot, once at least {@link #MIN_HOT_SAMPLE} tuples were
+ * counted so that the first few keys seen are not all hot, and each of its tuples goes to the least
+ * loaded of d candidate tasks (D-Choices), or of all the tasks (W-Choices) when d is not given or
+ * not smaller than the number of tasks.  The load of a task is the number of tuples sent to it,
+ * scaled up by the load reported through {@link #refreshLoad(LoadMapping)}.
+ *
+ * Like with {@link PartialKeyGrouping} a downstream bolt sees a hot key on more than one task, so
+ * it has to be able to merge partial results per key.  The imbalance of the tuples sent to each
+ * task is reported as the {@code __grouping-<stream>-<component>} built-in metric.
+ * @see <a href="https://arxiv.org/abs/1510.05714">When Two Choices Are not Enough: Balancing at Scale in Distributed Stream Processing</a>
+ */
+public class SkewAwareGrouping implements LoadAwareCustomStreamGrouping, IStatefulObject, Serializable {
+    private static final long serialVersionUID = 6137529834717201183L;
+    static final int SKETCH_DEPTH = 4;
+    static final int SKETCH_WIDTH = 2048;
+    static final int DECAY_INTERVAL = 100000;
+    static final int MIN_HOT_SAMPLE = 1000;
+    private static final int SEED_1 = 13;
+    private static final int SEED_2 = 17;
+
+    private final Fields fields;
+    private final int choices;
+    private List<List<Integer>> targets;
+    private List<Integer> targetTasks;
+    private int[] fieldIndexes;
+    private int[] hashes;
+    private int[][] sketch;
+    private long sketchTotal;
+    private long[] sent;
+    private volatile double[] loads;
+    private long[] sentSinceReport;
+    private long hotSinceReport;
+
+    /**
+     * Send the tuples of hot keys to the least loaded of all the tasks.
+     * @param fields the fields to group by.
+     */
+    public SkewAwareGrouping(Fields fields) {
+        this(fields, 0);
+    }
+
+    /**
+     * Send the tuples of hot keys to the least loaded of choices candidate tasks.
+     * @param fields the fields to group by.
+     * @param choices the number of candidate tasks for a hot key, 0 or less for all of them.
+     */
+    public SkewAwareGrouping(Fields fields, int choices) {
+        this.fields = fields;
+        this.choices = choices;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        this.targetTasks = targetTasks;
+        targets = new ArrayList<>(targetTasks.size());
+        for (Integer task : targetTasks) {
+            targets.add(Collections.singletonList(task));
+        }
+        Fields outFields = context.getComponentOutputFields(stream);
+        fieldIndexes = new int[fields.size()];
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            fieldIndexes[i] = outFields.fieldIndex(fields.get(i));
+        }
+        hashes = new int[fieldIndexes.length];
+        sketch = new int[SKETCH_DEPTH][SKETCH_WIDTH];
+        sketchTotal = 0;
+        sent = new long[targetTasks.size()];
+        loads = new double[targetTasks.size()];
+        sentSinceReport = new long[targetTasks.size()];
+        hotSinceReport = 0;
+    }
+
+    @Override
+    public void refreshLoad(LoadMapping loadMapping) {
+        double[] newLoads = new double[targetTasks.size()];
+        for (int i = 0; i < newLoads.length; i++) {
+            newLoads[i] = loadMapping.get(targetTasks.get(i));
+        }
+        loads = newLoads;
+    }
+
+    @Override
+    public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        if (values.size() == 0) {
+            return Collections.emptyList();
+        }
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            hashes[i] = PartialKeyGrouping.hashOf(values.get(fieldIndexes[i]));
+        }
+        long h1 = PartialKeyGrouping.murmur3(hashes, SEED_1);
+        long h2 = PartialKeyGrouping.murmur3(hashes, SEED_2);
+        int numTasks = targets.size();
+        int selected = (int) (Math.abs(h1) % numTasks);
+        if (numTasks > 1 && isHot(h1, h2, numTasks)) {
+            double[] currentLoads = loads;
+            double selectedCost = cost(selected, currentLoads);
+            int numChoices = choices > 0 && choices < numTasks ? choices : numTasks;
+            for (int i = 1; i < numChoices; i++) {
+                int candidate = numChoices == numTasks ? (selected + i) % numTasks : (int) Math.floorMod(h1 + i * h2, (long) numTasks);
+                double candidateCost = cost(candidate, currentLoads);
+                if (candidateCost < selectedCost) {
+                    selected = candidate;
+                    selectedCost = candidateCost;
+                }
+            }
+            hotSinceReport++;
+        }
+        sent[selected]++;
+        sentSinceReport[selected]++;
+        return targets.get(selected);
+    }
+
+    /**
+     * Count the key in the sketch and check if its estimated share of the recent tuples makes it hot.
+     */
+    private boolean isHot(long h1, long h2, int numTasks) {
+        if (++sketchTotal > DECAY_INTERVAL) {
+            for (int[] row : sketch) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            sketchTotal >>>= 1;
+            for (int i = 0; i < sent.length; i++) {
+                sent[i] >>>= 1;
+            }
+        }
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            int index = (int) ((h1 + (i + 1) * h2) & (SKETCH_WIDTH - 1));
+            estimate = Math.min(estimate, ++sketch[i][index]);
+        }
+        return sketchTotal >= MIN_HOT_SAMPLE && estimate * 5L * numTasks > sketchTotal;
+    }
+
+    private double cost(int index, double[] currentLoads) {
+        return sent[index] * (1.0 + currentLoads[index]);
+    }
+
+    /**
+     * @return the imbalance of the tuples sent to the tasks since the last call, as the difference between
+     *     the most loaded task and the average over the average, and the fraction of them that had a hot key.
+     */
+    @Override
+    public Object getState() {
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < sentSinceReport.length; i++) {
+            total += sentSinceReport[i];
+            max = Math.max(max, sentSinceReport[i]);
+            sentSinceReport[i] = 0;
+        }
+        Map<String, Double> ret = new HashMap<>();
+        if (total > 0) {
+            double avg = ((double) total) / sentSinceReport.length;
+            ret.put("load-imbalance", (max - avg) / avg);
+            ret.put("hot-key-fraction", ((double) hotSinceReport) / total);
+        } else {
+            ret.put("load-imbalance", 0.0);
+            ret.put("hot-key-fraction", 0.0);
+        }
+        hotSinceReport = 0;
+        return ret;
+    }
+}
@@ -20,8 +20,12 @@ package org.apache.storm.messaging;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.task.GeneralTopologyContext;
 import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TuplePool;
 import org.apache.storm.serialization.KryoTupleDeserializer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -33,11 +37,13 @@ public class DeserializingConnectionCallback implements IConnectionCallback {
     private final WorkerState.ILocalTransferCallback _cb;
     private final Map _conf;
     private final GeneralTopologyContext _context;
+    // Shared by the deserializers of all threads, tuples go back to it once the receiving executor is done with them
+    private final TuplePool _pool;
     private final ThreadLocal<KryoTupleDeserializer> _des =
          new ThreadLocal<KryoTupleDeserializer>() {
              @Override
              protected KryoTupleDeserializer initialValue() {
-                 return new KryoTupleDeserializer(_conf, _context);
+                 return new KryoTupleDeserializer(_conf, _context, _pool);
              }
          };
 
@@ -45,6 +51,7 @@ public class DeserializingConnectionCallback implements IConnectionCallback {
         _conf = conf;
         _context = context;
         _cb = callback;
+        _pool = TuplePool.make(conf);
     }
 
     @Override
@@ -52,9 +59,31 @@ public class DeserializingConnectionCallback implements IConnectionCallback {
         KryoTupleDeserializer des = _des.get();
         ArrayList<AddressedTuple> ret = new ArrayList<>(batch.size());
         for (TaskMessage message: batch) {
-            ret.add(new AddressedTuple(message.task(), des.deserialize(message.message())));
+            ret.add(address(message.task(), des.deserialize(message.message())));
         }
         _cb.transfer(ret);
     }
 
+    @Override
+    public boolean canDeserialize() {
+        return true;
+    }
+
+    @Override
+    public AddressedTuple deserialize(int task, ByteBuffer payload) {
+        return address(task, _des.get().deserialize(payload));
+    }
+
+    @Override
+    public void recvTuples(List<AddressedTuple> batch) {
+        _cb.transfer(batch);
+    }
+
+    private static AddressedTuple address(int task, Tuple tuple) {
+        if (tuple instanceof TupleImpl) {
+            return ((TupleImpl) tuple).addressedTo(task);
+        }
+        return new AddressedTuple(task, tuple);
+    }
+
 }
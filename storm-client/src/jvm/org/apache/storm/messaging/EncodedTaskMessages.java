@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.DirectBufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A run of task messages for a single destination worker that were serialized straight into a (usually pooled)
+ * buffer. Each message is encoded the same way a netty MessageBatch encodes it:
+ *  task ... short(2)
+ *  len ... int(4)
+ *  payload ... byte[]
+ *
+ * That is frame version 1, which limits task ids to Short.MAX_VALUE. A connection that negotiated another frame
+ * version sets it with {@link #setFrameVersion(int)}, and the messages are transcoded when they are written.
+ *
+ * Whoever ends up holding the messages last must call {@link #release()}.
+ */
+public class EncodedTaskMessages {
+    public static final int HEADER_SIZE = 6; //SHORT + INT
+
+    private final NodeInfo destination;
+    private final ByteBuffer buffer;
+    private final DirectBufferPool pool;
+    private int count = 0;
+    private boolean sealed = false;
+    private int frameVersion = 1;
+
+    public EncodedTaskMessages(NodeInfo destination, ByteBuffer buffer, DirectBufferPool pool) {
+        this.destination = destination;
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * Serialize the tuple directly after the messages already in the buffer.
+     * @return false if the tuple did not fit, in which case the buffer is left as it was.
+     */
+    public boolean add(int task, Tuple tuple, KryoTupleSerializer serializer, ByteBufferOutput out) {
+        checkTask(task);
+        int start = buffer.position();
+        if (buffer.remaining() <= HEADER_SIZE) {
+            return false;
+        }
+        int payloadStart = start + HEADER_SIZE;
+        buffer.position(payloadStart);
+        try {
+            out.setBuffer(buffer, buffer.capacity());
+            out.setPosition(payloadStart);
+            serializer.serialize(tuple, out);
+        } catch (KryoException e) {
+            // Buffer overflow
+            buffer.position(start);
+            return false;
+        } catch (IOException e) {
+            buffer.position(start);
+            throw new RuntimeException(e);
+        }
+        int end = out.position();
+        buffer.putShort(start, (short) task);
+        buffer.putInt(start + 2, end - payloadStart);
+        buffer.position(end);
+        count++;
+        return true;
+    }
+
+    /**
+     * Add an already serialized message.
+     * @return false if the message did not fit.
+     */
+    public boolean add(int task, byte[] payload) {
+        checkTask(task);
+        if (buffer.remaining() < HEADER_SIZE + payload.length) {
+            return false;
+        }
+        buffer.putShort((short) task);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        count++;
+        return true;
+    }
+
+    private static void checkTask(int task) {
+        if (task > Short.MAX_VALUE) {
+            throw new RuntimeException("Task ID should not exceed " + Short.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Stop adding messages and get the buffer ready to be read.
+     */
+    public void seal() {
+        if (!sealed) {
+            buffer.flip();
+            sealed = true;
+        }
+    }
+
+    /**
+     * @return a view of the encoded messages. Only valid after {@link #seal()} and until {@link #release()}.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * @param frameVersion the frame version to write the messages in, see netty's MessageBatch
+     */
+    public void setFrameVersion(int frameVersion) {
+        this.frameVersion = frameVersion;
+    }
+
+    public int getFrameVersion() {
+        return frameVersion;
+    }
+
+    public NodeInfo getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return the number of messages in the buffer.
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Copy the messages back out into TaskMessages, for connections that cannot write the buffer as is.
+     */
+    public Iterator<TaskMessage> toTaskMessages() {
+        ByteBuffer read = getBuffer();
+        List<TaskMessage> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int task = read.getShort();
+            byte[] payload = new byte[read.getInt()];
+            read.get(payload);
+            ret.add(new TaskMessage(task, payload));
+        }
+        return ret.iterator();
+    }
+
+    /**
+     * Hand the buffer back to the pool it came from.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(buffer);
+        }
+    }
+}
@@ -19,8 +19,10 @@ package org.apache.storm.messaging;
 
 import org.apache.storm.grouping.Load;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public interface IConnection {
     /**
@@ -48,6 +50,19 @@ public interface IConnection {
      */
 
     public void send(Iterator<TaskMessage> msgs);
+
+    /**
+     * send messages that were already encoded into a buffer. The connection takes ownership of the messages and
+     * releases them once they are no longer needed.
+     * @param msgs
+     */
+    default void send(EncodedTaskMessages msgs) {
+        try {
+            send(msgs.toTaskMessages());
+        } finally {
+            msgs.release();
+        }
+    }
     
     /**
      * Get the current load for the given tasks
@@ -56,6 +71,32 @@ public interface IConnection {
      */
     public Map<Integer, Load> getLoad(Collection<Integer> tasks);
     
+    /**
+     * Tell all upstream connections which tasks behind this server are congested, for fine grained back pressure.
+     * Connections that do not support it ignore this.
+     * @param congestedTasks the tasks whose receive queues are over the high water mark
+     */
+    default void sendBackPressureStatus(Collection<Integer> congestedTasks) {
+        //NOOP
+    }
+
+    /**
+     * Get the tasks behind the other end of this connection that last reported themselves as congested.
+     * @return the congested tasks, never null.
+     */
+    default Set<Integer> getCongestedTasks() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Register a callback to run whenever the tasks returned by {@link #getCongestedTasks()} change.
+     * Connections that do not support fine grained back pressure ignore this.
+     * @param listener the callback, run on whatever thread got the new status.
+     */
+    default void setCongestionListener(Runnable listener) {
+        //NOOP
+    }
+
     /**
      * Get the port for this connection
      * @return The port this connection is using
@@ -17,6 +17,9 @@
  */
 package org.apache.storm.messaging;
 
+import org.apache.storm.tuple.AddressedTuple;
+
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -28,4 +31,29 @@ public interface IConnectionCallback {
      * @param batch the messages to be processed
      */
     public void recv(List<TaskMessage> batch);
+
+    /**
+     * @return true if this callback can deserialize messages with {@link #deserialize(int, ByteBuffer)}, so a
+     * connection can read them straight out of its receive buffer instead of copying each one into a TaskMessage.
+     */
+    default boolean canDeserialize() {
+        return false;
+    }
+
+    /**
+     * Deserialize a message while it is still in the receive buffer. Called on the thread reading from the
+     * connection, the payload is only valid for the duration of the call.
+     * @param task the task the message is for
+     * @param payload the serialized message, between position and limit
+     */
+    default AddressedTuple deserialize(int task, ByteBuffer payload) {
+        throw new UnsupportedOperationException("This callback does not deserialize messages");
+    }
+
+    /**
+     * A batch of messages that came out of {@link #deserialize(int, ByteBuffer)} has arrived to be processed.
+     */
+    default void recvTuples(List<AddressedTuple> batch) {
+        throw new UnsupportedOperationException("This callback does not deserialize messages");
+    }
 }
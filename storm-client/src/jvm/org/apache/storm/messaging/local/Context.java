@@ -23,10 +23,14 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 
 import java.util.concurrent.LinkedBlockingQueue;
@@ -45,6 +49,8 @@ public class Context implements IContext {
     private static class LocalServer implements IConnection {
         volatile IConnectionCallback _cb;
         final ConcurrentHashMap<Integer, Double> _load = new ConcurrentHashMap<>();
+        volatile Set<Integer> _congested = Collections.emptySet();
+        final CopyOnWriteArrayList<Runnable> _congestionListeners = new CopyOnWriteArrayList<>();
         final int port;
         
         public LocalServer(int port) {
@@ -83,6 +89,23 @@ public class Context implements IContext {
             _load.putAll(taskToLoad);
         }
 
+        @Override
+        public void sendBackPressureStatus(Collection<Integer> congestedTasks) {
+            Set<Integer> congested = new HashSet<>(congestedTasks);
+            boolean changed = !congested.equals(_congested);
+            _congested = congested;
+            if (changed) {
+                for (Runnable listener : _congestionListeners) {
+                    listener.run();
+                }
+            }
+        }
+
+        @Override
+        public Set<Integer> getCongestedTasks() {
+            return _congested;
+        }
+
         @Override
         public int getPort() {
             return port;
@@ -99,6 +122,7 @@ public class Context implements IContext {
         //Messages sent before the server registered a callback
         private final LinkedBlockingQueue<TaskMessage> _pendingDueToUnregisteredServer;
         private final ScheduledExecutorService _pendingFlusher;
+        private volatile Runnable _congestionListener;
 
         public LocalClient(LocalServer server) {
             _server = server;
@@ -179,6 +203,21 @@ public class Context implements IContext {
             _server.sendLoadMetrics(taskToLoad);
         }
 
+        @Override
+        public Set<Integer> getCongestedTasks() {
+            return _server.getCongestedTasks();
+        }
+
+        @Override
+        public void setCongestionListener(Runnable listener) {
+            Runnable old = _congestionListener;
+            if (old != null) {
+                _server._congestionListeners.remove(old);
+            }
+            _congestionListener = listener;
+            _server._congestionListeners.add(listener);
+        }
+
         @Override
         public int getPort() {
             return _server.getPort();
@@ -186,6 +225,10 @@ public class Context implements IContext {
  
         @Override
         public void close() {
+            Runnable listener = _congestionListener;
+            if (listener != null) {
+                _server._congestionListeners.remove(listener);
+            }
             _pendingFlusher.shutdown();
             try{
                 _pendingFlusher.awaitTermination(5, TimeUnit.SECONDS);
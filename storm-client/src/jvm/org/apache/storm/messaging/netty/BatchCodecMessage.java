@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Negotiates batch compression. A client that is configured with a codec sends one, naming it, once the server said
+ * it can read frame version 2, so never to servers that do not know this message. The server answers with the same
+ * codec if it is the one it is configured with too, or with none, and the client only compresses once it got the
+ * codec back.
+ */
+public class BatchCodecMessage implements INettySerializable {
+    public static final short IDENTIFIER = -501;
+
+    private final String codec;
+
+    /**
+     * @param codec the class name of the IBatchCodec, or null for none
+     */
+    public BatchCodecMessage(String codec) {
+        this.codec = codec;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the codec name the way it is written after the identifier and length
+     */
+    public byte[] getCodecBytes() {
+        return codec == null ? new byte[0] : codec.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param bytes the codec name as read from the wire, null or empty for none
+     */
+    public static BatchCodecMessage read(byte[] bytes) {
+        return new BatchCodecMessage(bytes == null || bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int encodeLength() {
+        return 2 + 4 + getCodecBytes().length;
+    }
+
+    /**
+     * Encoded as:
+     *  identifier ... short(2)
+     *  codec length ... int(4)
+     *  codec class name ... UTF-8 byte[]
+     */
+    @Override
+    public ChannelBuffer buffer() throws IOException {
+        byte[] name = getCodecBytes();
+        ChannelBufferOutputStream bout = new ChannelBufferOutputStream(ChannelBuffers.directBuffer(6 + name.length));
+        bout.writeShort(IDENTIFIER);
+        bout.writeInt(name.length);
+        bout.write(name);
+        bout.close();
+        return bout.buffer();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchCodecMessage(" + codec + ")";
+    }
+}
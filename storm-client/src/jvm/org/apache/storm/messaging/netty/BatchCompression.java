@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.ReflectionUtils;
+
+/**
+ * The sending side of batch compression on one client: which codec, which batches are worth compressing, and how
+ * much it saved. A compressed batch goes on the wire as:
+ *  COMPRESSED_BATCH ... short(2)
+ *  compressed len ... int(4)
+ *  uncompressed len ... int(4)
+ *  the compressed encoding of a whole batch ... byte[]
+ */
+public class BatchCompression {
+    public static final int HEADER_SIZE = 10;
+
+    private final String codecName;
+    private final IBatchCodec codec;
+    private final int threshold;
+
+    private long compressedBatches = 0;
+    private long compressCalls = 0;
+    private long bytes = 0;
+    private long bytesOnWire = 0;
+    private long compressNanos = 0;
+
+    public BatchCompression(String codecName, int threshold) {
+        this.codecName = codecName;
+        this.codec = newCodec(codecName);
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return compression as configured by storm.messaging.netty.compression.*, or null if no codec is configured
+     */
+    public static BatchCompression fromConf(Map<String, Object> topoConf) {
+        String codecName = (String) topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_CODEC);
+        if (codecName == null || codecName.isEmpty()) {
+            return null;
+        }
+        return new BatchCompression(codecName,
+            ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_THRESHOLD), 0));
+    }
+
+    public static IBatchCodec newCodec(String codecName) {
+        return ReflectionUtils.newInstance(codecName);
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    /**
+     * @return whether a batch of this many bytes should be compressed at all
+     */
+    public boolean accepts(int length) {
+        return length >= threshold;
+    }
+
+    /**
+     * Write a compressed frame for length bytes of an encoded batch into frame at frameOffset, which must have room
+     * for length bytes.
+     * @return the length of the frame, or -1 if compressing did not make the batch smaller and it should be sent as is
+     */
+    public synchronized int compress(byte[] batch, int offset, int length, byte[] frame, int frameOffset) {
+        int compressed = -1;
+        if (length > HEADER_SIZE) {
+            long start = System.nanoTime();
+            compressed = codec.compress(batch, offset, length, frame, frameOffset + HEADER_SIZE, length - HEADER_SIZE);
+            compressNanos += System.nanoTime() - start;
+            compressCalls++;
+        }
+        if (compressed < 0) {
+            sent(length);
+            return -1;
+        }
+        writeShort(frame, frameOffset, ControlMessage.COMPRESSED_BATCH.getCode());
+        writeInt(frame, frameOffset + 2, compressed);
+        writeInt(frame, frameOffset + 6, length);
+        compressedBatches++;
+        bytes += length;
+        bytesOnWire += HEADER_SIZE + compressed;
+        return HEADER_SIZE + compressed;
+    }
+
+    /**
+     * Count a batch that was sent without compressing it.
+     */
+    public synchronized void sent(int length) {
+        bytes += length;
+        bytesOnWire += length;
+    }
+
+    /**
+     * @return the metrics since the last call, to add to the state of the client
+     */
+    public synchronized Map<String, Object> getState() {
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("compressionCodec", codecName);
+        ret.put("batchBytes", bytes);
+        ret.put("batchBytesOnWire", bytesOnWire);
+        ret.put("compressedBatches", compressedBatches);
+        ret.put("compressionRatio", bytesOnWire == 0 ? 1.0 : (double) bytes / bytesOnWire);
+        ret.put("compressNanosPerBatch", compressCalls == 0 ? 0 : compressNanos / compressCalls);
+        compressedBatches = 0;
+        compressCalls = 0;
+        bytes = 0;
+        bytesOnWire = 0;
+        compressNanos = 0;
+        return ret;
+    }
+
+    private static void writeShort(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 8);
+        dst[offset + 1] = (byte) value;
+    }
+
+    private static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+}
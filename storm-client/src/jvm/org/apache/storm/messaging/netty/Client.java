@@ -21,8 +21,10 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Iterator;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.Timer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -32,6 +34,7 @@ import java.lang.InterruptedException;
 import org.apache.storm.Config;
 import org.apache.storm.grouping.Load;
 import org.apache.storm.messaging.ConnectionWithStatus;
+import org.apache.storm.messaging.EncodedTaskMessages;
 import org.apache.storm.messaging.TaskMessage;
 import org.apache.storm.messaging.IConnectionCallback;
 import org.apache.storm.metric.api.IStatefulObject;
@@ -66,7 +69,8 @@ import static com.google.common.base.Preconditions.checkState;
  *   batch size is configurable.
  * - Connecting and reconnecting are performed asynchronously.
  *     - Note: The current implementation drops any messages that are being enqueued for sending if the connection to
- *       the remote destination is currently unavailable.
+ *       the remote destination is currently unavailable, unless storm.messaging.netty.resend.buffer.* give it a
+ *       {@link ResendBuffer} to hold them in.
  */
 public class Client extends ConnectionWithStatus implements IStatefulObject, ISaslClient {
     private static final long PENDING_MESSAGES_FLUSH_TIMEOUT_MS = 600000L;
@@ -83,6 +87,8 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
     private final InetSocketAddress dstAddress;
     protected final String dstAddressPrefixedName;
     private volatile Map<Integer, Double> serverLoad = null;
+    private volatile Set<Integer> congestedTasks = Collections.emptySet();
+    private volatile Runnable congestionListener = null;
 
     /**
      * The channel used for all write operations from this client to the remote destination.
@@ -125,6 +131,21 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
      */
     private final AtomicBoolean saslChannelReady = new AtomicBoolean(false);
 
+    /**
+     * The channel whose server said it can read frame version 2, so batches written to it may use it.
+     */
+    private volatile Channel frameV2Channel = null;
+
+    /**
+     * Batch compression as configured, null if no codec is.
+     */
+    private final BatchCompression compression;
+
+    /**
+     * The channel whose server accepted the codec of compression, so batches written to it may be compressed.
+     */
+    private volatile Channel compressionChannel = null;
+
     /**
      * This flag is set to true if and only if a client instance is being closed.
      */
@@ -138,6 +159,17 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
 
     private final Object writeLock = new Object();
 
+    /**
+     * Holds messages while the connection is down, null if storm.messaging.netty.resend.buffer.* turn it off.
+     * Guarded by writeLock.
+     */
+    private final ResendBuffer resendBuffer;
+
+    /**
+     * Number of messages that were dropped because the resend buffer was full.
+     */
+    private final AtomicInteger resendBufferDropped = new AtomicInteger(0);
+
     @SuppressWarnings("rawtypes")
     Client(Map<String, Object> topoConf, ChannelFactory factory, HashedWheelTimer scheduler, String host, int port, Context context) {
         this.topoConf = topoConf;
@@ -154,6 +186,8 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         int minWaitMs = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_MIN_SLEEP_MS));
         int maxWaitMs = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_MAX_SLEEP_MS));
         retryPolicy = new StormBoundedExponentialBackoffRetry(minWaitMs, maxWaitMs, maxReconnectionAttempts);
+        resendBuffer = ResendBuffer.fromConf(topoConf);
+        compression = BatchCompression.fromConf(topoConf);
 
         // Initiate connection to remote destination
         bootstrap = createClientBootstrap(factory, bufferSize, topoConf);
@@ -288,17 +322,23 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         Channel channel = getConnectedChannel();
         if (channel == null) {
             /*
-             * Connection is unavailable. We will drop pending messages and let at-least-once message replay kick in.
+             * Connection is unavailable. Unless the resend buffer can hold them we will drop pending messages and let
+             * at-least-once message replay kick in.
              *
-             * Another option would be to buffer the messages in memory.  But this option has the risk of causing OOM errors,
-             * especially for topologies that disable message acking because we don't know whether the connection recovery will
-             * succeed  or not, and how long the recovery will take.
+             * The resend buffer is bounded, because we don't know whether the connection recovery will succeed or not,
+             * and how long the recovery will take.
              */
-            dropMessages(msgs);
+            if (resendBuffer != null) {
+                bufferMessages(msgs);
+            } else {
+                dropMessages(msgs);
+            }
             return;
         }
 
         synchronized (writeLock) {
+            // Anything buffered while the connection was down goes first
+            resendBufferedMessages(channel);
             while (msgs.hasNext()) {
                 TaskMessage message = msgs.next();
                 MessageBatch full = batcher.add(message);
@@ -325,6 +365,81 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         }
     }
 
+    /**
+     * Write messages that were already encoded into a buffer straight to the channel, without copying them into a
+     * MessageBatch. The buffer is written as is to a server that reads frame version 1, and transcoded into frame
+     * version 2 for one that negotiated it. The messages only go into a MessageBatch if the batches to the server are
+     * compressed. The buffer is released once the write completes.
+     */
+    @Override
+    public void send(final EncodedTaskMessages msgs) {
+        if (closing) {
+            LOG.error("discarding {} messages because the Netty client to {} is being closed", msgs.size(),
+                    dstAddressPrefixedName);
+            msgs.release();
+            return;
+        }
+
+        if (msgs.isEmpty()) {
+            msgs.release();
+            return;
+        }
+
+        Channel channel = getConnectedChannel();
+        if (channel == null) {
+            // Same as for TaskMessages, buffer or drop and let at-least-once message replay kick in.
+            if (resendBuffer != null) {
+                bufferMessages(msgs.toTaskMessages());
+            } else {
+                messagesLost.getAndAdd(msgs.size());
+            }
+            msgs.release();
+            return;
+        }
+
+        if (channel == compressionChannel) {
+            // Compression works on whole batches, so the messages go into one like any others
+            try {
+                send(msgs.toTaskMessages());
+            } finally {
+                msgs.release();
+            }
+            return;
+        }
+        if (channel == frameV2Channel) {
+            msgs.setFrameVersion(2);
+        }
+
+        synchronized (writeLock) {
+            // Anything still sitting in the resend buffer or the batcher was sent before these messages
+            resendBufferedMessages(channel);
+            MessageBatch batch = batcher.drain();
+            if (batch != null) {
+                flushMessages(channel, batch);
+            }
+
+            final int numMessages = msgs.size();
+            LOG.debug("writing {} encoded messages to channel {}", numMessages, channel.toString());
+            pendingMessages.addAndGet(numMessages);
+            ChannelFuture future = channel.write(msgs);
+            future.addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    msgs.release();
+                    pendingMessages.addAndGet(0 - numMessages);
+                    if (future.isSuccess()) {
+                        LOG.debug("sent {} messages to {}", numMessages, dstAddressPrefixedName);
+                        messagesSent.getAndAdd(numMessages);
+                    } else {
+                        LOG.error("failed to send {} messages to {}: {}", numMessages, dstAddressPrefixedName,
+                                future.getCause());
+                        closeChannelAndReconnect(future.getChannel());
+                        messagesLost.getAndAdd(numMessages);
+                    }
+                }
+            });
+        }
+    }
+
     private Channel getConnectedChannel() {
         Channel channel = channelRef.get();
         if (connectionEstablished(channel)) {
@@ -354,6 +469,39 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         messagesLost.getAndAdd(msgCount);
     }
 
+    private void bufferMessages(Iterator<TaskMessage> msgs) {
+        int dropped = 0;
+        synchronized (writeLock) {
+            while (msgs.hasNext()) {
+                if (!resendBuffer.add(msgs.next())) {
+                    dropped++;
+                }
+            }
+        }
+        if (dropped > 0) {
+            resendBufferDropped.getAndAdd(dropped);
+            messagesLost.getAndAdd(dropped);
+        }
+    }
+
+    /**
+     * Write out everything in the resend buffer, in the order it was buffered. Must hold writeLock.
+     */
+    private void resendBufferedMessages(Channel channel) {
+        if (resendBuffer == null || resendBuffer.isEmpty()) {
+            return;
+        }
+        LOG.info("sending {} messages buffered while the connection to {} was unavailable", resendBuffer.size(),
+                dstAddressPrefixedName);
+        resendBuffer.drainTo(message -> {
+            MessageBatch full = batcher.add(message);
+            if (full != null) {
+                flushMessages(channel, full);
+            }
+        });
+        flushMessages(channel, batcher.drain());
+    }
+
     private int iteratorSize(Iterator<TaskMessage> msgs) {
         int size = 0;
         if (msgs != null) {
@@ -378,6 +526,12 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         final int numMessages = batch.size();
         LOG.debug("writing {} messages to channel {}", batch.size(), channel.toString());
         pendingMessages.addAndGet(numMessages);
+        if (channel == frameV2Channel) {
+            batch.setFrameVersion(2);
+        }
+        if (channel == compressionChannel) {
+            batch.setCompression(compression);
+        }
 
         ChannelFuture future = channel.write(batch);
         future.addListener(new ChannelFutureListener() {
@@ -429,6 +583,18 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
             context.removeClient(dstAddress.getHostName(),dstAddress.getPort());
             // Set closing to true to prevent any further reconnection attempts.
             closing = true;
+            if (resendBuffer != null) {
+                synchronized (writeLock) {
+                    Channel channel = channelRef.get();
+                    if (connectionEstablished(channel)) {
+                        resendBufferedMessages(channel);
+                    } else if (!resendBuffer.isEmpty()) {
+                        LOG.error("discarding {} buffered messages because the Netty client to {} is being closed",
+                                resendBuffer.size(), dstAddressPrefixedName);
+                        messagesLost.getAndAdd(resendBuffer.clear());
+                    }
+                }
+            }
             waitForPendingMessagesToBeSent();
             closeChannel();
         }
@@ -467,6 +633,26 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         this.serverLoad = taskToLoad;
     }
 
+    void setCongestedTasks(Set<Integer> congestedTasks) {
+        // The status is re-sent periodically, only a change is worth telling the worker about
+        boolean changed = !congestedTasks.equals(this.congestedTasks);
+        this.congestedTasks = congestedTasks;
+        Runnable listener = congestionListener;
+        if (changed && listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public void setCongestionListener(Runnable listener) {
+        this.congestionListener = listener;
+    }
+
+    @Override
+    public Set<Integer> getCongestedTasks() {
+        return congestedTasks;
+    }
+
     @Override
     public Map<Integer, Load> getLoad(Collection<Integer> tasks) {
         Map<Integer, Double> loadCache = serverLoad;
@@ -491,6 +677,13 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         ret.put("sent", messagesSent.getAndSet(0));
         ret.put("pending", pendingMessages.get());
         ret.put("lostOnSend", messagesLost.getAndSet(0));
+        if (compression != null) {
+            ret.putAll(compression.getState());
+        }
+        if (resendBuffer != null) {
+            ret.put("resendBufferBytes", resendBuffer.bytes());
+            ret.put("resendBufferDropped", resendBufferDropped.getAndSet(0));
+        }
         ret.put("dest", dstAddress.toString());
         String src = srcAddressName();
         if (src != null) {
@@ -510,6 +703,7 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
 
     public void channelReady() {
         saslChannelReady.set(true);
+        resendOnConnect(channelRef.get());
     }
 
     public String name() {
@@ -538,6 +732,42 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
         return String.format("Netty client for connecting to %s", dstAddressPrefixedName);
     }
 
+    /**
+     * Called by Netty thread when the server on the other end of the channel said it can read frame version 2.
+     */
+    void frameV2Supported(Channel channel) {
+        LOG.debug("{} can read frame version 2", dstAddressPrefixedName);
+        frameV2Channel = channel;
+        if (compression != null) {
+            // Only servers that know frame version 2 know how to negotiate a codec
+            channel.write(new BatchCodecMessage(compression.getCodecName()));
+        }
+    }
+
+    /**
+     * Called by Netty thread when the server on the other end of the channel answered the codec we asked for.
+     */
+    void codecNegotiated(Channel channel, BatchCodecMessage answer) {
+        if (compression != null && compression.getCodecName().equals(answer.getCodec())) {
+            LOG.info("compressing batches to {} with {}", dstAddressPrefixedName, answer.getCodec());
+            compressionChannel = channel;
+        } else {
+            LOG.warn("{} does not accept compressing batches with {}, sending them uncompressed",
+                    dstAddressPrefixedName, compression == null ? null : compression.getCodecName());
+        }
+    }
+
+    /**
+     * Send the messages buffered while the connection was down without waiting for the next send call.
+     */
+    private void resendOnConnect(Channel channel) {
+        if (resendBuffer != null && connectionEstablished(channel)) {
+            synchronized (writeLock) {
+                resendBufferedMessages(channel);
+            }
+        }
+    }
+
     /**
      * Called by Netty thread on change in channel interest
      * @param channel
@@ -597,6 +827,9 @@ public class Client extends ConnectionWithStatus implements IStatefulObject, ISa
                             if (messagesLost.get() > 0) {
                                 LOG.warn("Re-connection to {} was successful but {} messages has been lost so far", address.toString(), messagesLost.get());
                             }
+                            if (saslChannelReady.get()) {
+                                resendOnConnect(newChannel);
+                            }
                         } else {
                             Throwable cause = future.getCause();
                             reschedule(cause);
@@ -29,7 +29,17 @@ public enum ControlMessage implements INettySerializable {
     OK_RESPONSE((short)-200),
     FAILURE_RESPONSE((short)-400),
     SASL_TOKEN_MESSAGE_REQUEST((short)-202),
-    SASL_COMPLETE_REQUEST((short)-203);
+    SASL_COMPLETE_REQUEST((short)-203),
+    /** Starts a batch of frame version 2, see {@link MessageDecoder}. */
+    BATCH_V2((short)-204),
+    /** Starts a compressed batch, see {@link BatchCompression}. */
+    COMPRESSED_BATCH((short)-205);
+
+    /**
+     * Sent by a server, on connect or once SASL authentication completed, when it can read frame version 2.
+     * Earlier servers never send OK_RESPONSE and earlier clients ignore it.
+     */
+    public static final ControlMessage FRAME_V2_SUPPORTED = OK_RESPONSE;
 
     private short code;
 
@@ -49,6 +59,13 @@ public enum ControlMessage implements INettySerializable {
         return null;
     }
 
+    /**
+     * @return the code this message is encoded as on the wire
+     */
+    public short getCode() {
+        return code;
+    }
+
     public int encodeLength() {
         return 2; //short
     }
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate at its fastest level, from java.util.zip so it needs nothing on the classpath.
+ */
+public class DeflateBatchCodec implements IBatchCodec {
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength) {
+        deflater.reset();
+        deflater.setInput(src, srcOffset, length);
+        deflater.finish();
+        int written = 0;
+        while (!deflater.finished() && written < maxLength) {
+            written += deflater.deflate(dst, dstOffset + written, maxLength - written);
+        }
+        return deflater.finished() ? written : -1;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int uncompressedLength) {
+        inflater.reset();
+        inflater.setInput(src, srcOffset, length);
+        try {
+            int read = 0;
+            while (read < uncompressedLength && !inflater.finished()) {
+                int n = inflater.inflate(dst, dstOffset + read, uncompressedLength - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != uncompressedLength) {
+                throw new RuntimeException("Compressed batch has " + read + " bytes instead of " + uncompressedLength);
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Malformed compressed batch", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.messaging.TaskMessage;
+
+/**
+ * Encodes batches of task messages for both the netty and the netty4 transports, so the two stay on the same wire
+ * format. See {@link FrameReader} for the format.
+ */
+public final class FrameCodec {
+    /**
+     * How many bytes a task message takes in frame version 1, apart from its payload: task short(2) + len int(4).
+     */
+    public static final int V1_HEADER_SIZE = 6;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * @param v1Length the length of the batch in frame version 1, including the EOB_MESSAGE
+     * @param numMessages the number of messages in the batch
+     * @param frameVersion the frame version to encode in
+     * @return how many bytes the batch takes up at most once encoded
+     */
+    public static int maxEncodeLength(int v1Length, int numMessages, int frameVersion) {
+        // The varints of frame version 2 take at most 4 bytes more per message than version 1
+        return frameVersion >= 2 ? v1Length + 4 * numMessages + 1 : v1Length;
+    }
+
+    /**
+     * @return how many bytes the already encoded messages take up at most once transcoded into frame version 2
+     */
+    public static int maxEncodeLengthV2(EncodedTaskMessages msgs) {
+        // BATCH_V2 and the closing 0 on top of the messages
+        return msgs.getBuffer().remaining() + 4 * msgs.size() + ControlMessage.BATCH_V2.encodeLength() + 1;
+    }
+
+    /**
+     * Write the batch into out, which must have room for {@link #maxEncodeLength(int, int, int)} bytes.
+     */
+    public static void writeBatch(List<TaskMessage> msgs, int frameVersion, ByteBuffer out) {
+        if (frameVersion >= 2) {
+            out.putShort(ControlMessage.BATCH_V2.getCode());
+            for (TaskMessage msg : msgs) {
+                byte[] payload = msg.message();
+                writeV2Header(out, msg.task(), payload == null ? 0 : payload.length);
+                if (payload != null) {
+                    out.put(payload);
+                }
+            }
+            out.put((byte) 0);
+            return;
+        }
+        for (TaskMessage msg : msgs) {
+            checkV1Task(msg.task());
+            byte[] payload = msg.message();
+            out.putShort((short) msg.task());
+            if (payload == null) {
+                out.putInt(0);
+            } else {
+                out.putInt(payload.length);
+                out.put(payload);
+            }
+        }
+        out.putShort(ControlMessage.EOB_MESSAGE.getCode());
+    }
+
+    /**
+     * Transcode messages that were encoded in frame version 1 into a batch of frame version 2, copying the payloads
+     * as they are. out must have room for {@link #maxEncodeLengthV2(EncodedTaskMessages)} bytes.
+     */
+    public static void writeBatchV2(EncodedTaskMessages msgs, ByteBuffer out) {
+        ByteBuffer in = msgs.getBuffer();
+        out.putShort(ControlMessage.BATCH_V2.getCode());
+        for (int i = 0; i < msgs.size(); i++) {
+            int task = in.getShort();
+            int length = in.getInt();
+            writeV2Header(out, task, length);
+            ByteBuffer payload = in.duplicate();
+            payload.limit(in.position() + length);
+            out.put(payload);
+            in.position(in.position() + length);
+        }
+        out.put((byte) 0);
+    }
+
+    private static void writeV2Header(ByteBuffer out, int task, int length) {
+        if (task < 0) {
+            throw new RuntimeException("Task ID should not be negative in frame version 2");
+        }
+        writeVarint(out, task + 1);
+        writeVarint(out, length);
+    }
+
+    /**
+     * Frame version 1 writes task ids as a short.
+     */
+    private static void checkV1Task(int task) {
+        if (task > Short.MAX_VALUE) {
+            throw new RuntimeException("Task ID should not exceed " + Short.MAX_VALUE);
+        }
+    }
+
+    private static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
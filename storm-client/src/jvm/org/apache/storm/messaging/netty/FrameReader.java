@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.TaskMessage;
+
+/**
+ * Decodes the frames sent by either transport, keeping the state that carries over from one read to the next. Used
+ * by the MessageDecoder of both the netty and the netty4 transports, each feeding it a view of its receive buffer.
+ *
+ * Each ControlMessage is encoded as:
+ *  code (<0) ... short(2)
+ * Each TaskMessage is encoded as:
+ *  task (>=0) ... short(2)
+ *  len ... int(4)
+ *  payload ... byte[]
+ * except within a batch of frame version 2, which starts with the BATCH_V2 control message and ends with a tag
+ * of 0. There each TaskMessage is encoded as:
+ *  task + 1 (>0) ... varint(1-5)
+ *  len ... varint(1-5)
+ *  payload ... byte[]
+ * A whole batch of either version may also come compressed, see BatchCompression.
+ */
+public class FrameReader {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** Whether the frames being read are part of a batch of frame version 2. */
+    private boolean inBatchV2 = false;
+    /** The codec compressed batches are read with, once negotiated. */
+    private volatile IBatchCodec codec = null;
+
+    /**
+     * Read compressed batches with this codec from now on. Called while handling the BatchCodecMessage that
+     * negotiated it, before any more frames are decoded.
+     */
+    public void setCodec(IBatchCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Decode frames until the buffer runs out, a frame is not complete yet, or a frame has to be passed on by itself.
+     * Task messages are added to ret, deserialized in place if cb is not null. A frame that is not a task message is
+     * only returned when ret is still empty, otherwise decoding stops in front of it.
+     * @param in the received bytes between position and limit. The position is left at the start of the first frame
+     *           not decoded.
+     * @return a control message or other frame that is not a task message, or null if there was none
+     */
+    public Object read(ByteBuffer in, IConnectionCallback cb, List<Object> ret) {
+        while (in.hasRemaining()) {
+            // The start of the frame, we go back to it if the whole frame is not in the buffer yet.
+            int start = in.position();
+
+            int task;
+            int length;
+            if (inBatchV2) {
+                int tag = readVarint(in);
+                if (tag == 0) {
+                    inBatchV2 = false;
+                    continue;
+                }
+                length = tag < 0 ? -1 : readVarint(in);
+                if (length < 0) {
+                    in.position(start);
+                    break;
+                }
+                task = tag - 1;
+            } else {
+                if (in.remaining() < 2) {
+                    break;
+                }
+                short code = in.getShort();
+
+                // case 1: Control message
+                ControlMessage ctrlMsg = ControlMessage.mkMessage(code);
+                if (ctrlMsg == ControlMessage.EOB_MESSAGE) {
+                    continue;
+                }
+                if (ctrlMsg == ControlMessage.BATCH_V2) {
+                    inBatchV2 = true;
+                    continue;
+                }
+                if (ctrlMsg == ControlMessage.COMPRESSED_BATCH) {
+                    if (!decompress(in, cb, ret)) {
+                        in.position(start);
+                        break;
+                    }
+                    continue;
+                }
+                if (ctrlMsg != null) {
+                    return single(in, start, ctrlMsg, ret);
+                }
+
+                // The length field follows for SASL tokens, codec messages and task messages
+                if (in.remaining() < 4) {
+                    in.position(start);
+                    break;
+                }
+                length = in.getInt();
+
+                // case 2: SaslTokenMessageRequest or BatchCodecMessage
+                if (code == SaslMessageToken.IDENTIFIER || code == BatchCodecMessage.IDENTIFIER) {
+                    if (length > 0 && in.remaining() < length) {
+                        in.position(start);
+                        break;
+                    }
+                    byte[] bytes = null;
+                    if (length > 0) {
+                        bytes = new byte[length];
+                        in.get(bytes);
+                    }
+                    return single(in, start, code == SaslMessageToken.IDENTIFIER ? new SaslMessageToken(bytes)
+                        : BatchCodecMessage.read(bytes), ret);
+                }
+
+                // case 3: task Message
+                task = code;
+            }
+
+            if (length > 0 && in.remaining() < length) {
+                in.position(start);
+                break;
+            }
+            if (cb != null) {
+                ByteBuffer payload = EMPTY;
+                if (length > 0) {
+                    // Deserialize in place, the payload is only valid during the call
+                    payload = in.duplicate();
+                    payload.limit(in.position() + length);
+                    in.position(in.position() + length);
+                }
+                ret.add(cb.deserialize(task, payload));
+            } else {
+                byte[] payload = null;
+                if (length > 0) {
+                    payload = new byte[length];
+                    in.get(payload);
+                }
+                ret.add(new TaskMessage(task, payload));
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Pass on a frame that is not a task message by itself.
+     */
+    private static Object single(ByteBuffer in, int start, Object frame, List<Object> ret) {
+        if (ret.isEmpty()) {
+            return frame;
+        }
+        // Let the task messages that came before it go first, it is read again next time
+        in.position(start);
+        return null;
+    }
+
+    /**
+     * Decode the task messages of a compressed batch, whose COMPRESSED_BATCH code was just read.
+     * @return false if the whole batch was not received yet
+     */
+    private boolean decompress(ByteBuffer in, IConnectionCallback cb, List<Object> ret) {
+        if (in.remaining() < 8) {
+            return false;
+        }
+        int length = in.getInt();
+        int uncompressedLength = in.getInt();
+        if (in.remaining() < length) {
+            return false;
+        }
+        if (codec == null) {
+            throw new RuntimeException("Received a compressed batch without negotiating a codec");
+        }
+        byte[] compressed;
+        int offset;
+        if (in.hasArray()) {
+            compressed = in.array();
+            offset = in.arrayOffset() + in.position();
+        } else {
+            compressed = new byte[length];
+            offset = 0;
+            in.duplicate().get(compressed);
+        }
+        byte[] batch = new byte[uncompressedLength];
+        codec.decompress(compressed, offset, length, batch, 0, uncompressedLength);
+        in.position(in.position() + length);
+
+        ByteBuffer frames = ByteBuffer.wrap(batch);
+        if (read(frames, cb, ret) != null || frames.hasRemaining() || inBatchV2) {
+            throw new RuntimeException("Malformed compressed batch");
+        }
+        return true;
+    }
+
+    /**
+     * @return the unsigned varint at the position, or -1 if not all of it was received yet
+     */
+    private static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining()) {
+                return -1;
+            }
+            byte b = in.get();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (result < 0) {
+                    break;
+                }
+                return result;
+            }
+        }
+        throw new RuntimeException("Malformed varint in a batch of frame version 2");
+    }
+}
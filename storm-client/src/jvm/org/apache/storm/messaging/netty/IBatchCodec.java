@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+/**
+ * Compresses whole message batches on connections that negotiated it, see storm.messaging.netty.compression.codec.
+ * Implementations need a public no-argument constructor. Each connection gets its own instance and uses it from one
+ * thread at a time, so it may keep state such as a reusable compressor between calls.
+ */
+public interface IBatchCodec {
+    /**
+     * Compress length bytes of src starting at srcOffset into dst starting at dstOffset.
+     * @param maxLength how many bytes dst has room for
+     * @return the number of bytes written, or -1 if the result would not fit in maxLength bytes
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength);
+
+    /**
+     * Decompress length bytes of src starting at srcOffset into exactly uncompressedLength bytes of dst, starting at
+     * dstOffset.
+     */
+    void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int uncompressedLength);
+}
@@ -19,15 +19,17 @@ package org.apache.storm.messaging.netty;
 
 import org.apache.storm.messaging.TaskMessage;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 class MessageBatch {
     private int buffer_size;
     private ArrayList<TaskMessage> msgs;
     private int encoded_length;
+    private int frame_version = 1;
+    private BatchCompression compression = null;
 
     MessageBatch(int buffer_size) {
         this.buffer_size = buffer_size;
@@ -47,7 +49,7 @@ class MessageBatch {
     private int msgEncodeLength(TaskMessage taskMsg) {
         if (taskMsg == null) return 0;
 
-        int size = 6; //INT + SHORT
+        int size = FrameCodec.V1_HEADER_SIZE;
         if (taskMsg.message() != null) 
             size += taskMsg.message().length;
         return size;
@@ -75,44 +77,50 @@ class MessageBatch {
     }
 
     /**
-     * create a buffer containing the encoding of this batch
+     * @param frame_version 2 to encode task ids as varints, which also lifts the limit of Short.MAX_VALUE on them.
+     *                      Only for connections to servers that sent {@link ControlMessage#FRAME_V2_SUPPORTED}.
      */
-    ChannelBuffer buffer() throws Exception {
-        ChannelBufferOutputStream bout = new ChannelBufferOutputStream(ChannelBuffers.directBuffer(encoded_length));
-        
-        for (TaskMessage msg : msgs) {
-            writeTaskMessage(bout, msg);
-        }
-
-        //add a END_OF_BATCH indicator
-        ControlMessage.EOB_MESSAGE.write(bout);
-
-        bout.close();
+    void setFrameVersion(int frame_version) {
+        this.frame_version = frame_version;
+    }
 
-        return bout.buffer();
+    /**
+     * @param compression to compress the batch with if it is large enough. Only for connections to servers that
+     *                    accepted its codec.
+     */
+    void setCompression(BatchCompression compression) {
+        this.compression = compression;
     }
 
     /**
-     * write a TaskMessage into a stream
-     *
-     * Each TaskMessage is encoded as:
-     *  task ... short(2)
-     *  len ... int(4)
-     *  payload ... byte[]     *  
+     * create a buffer containing the encoding of this batch, see {@link FrameCodec}
      */
-    private void writeTaskMessage(ChannelBufferOutputStream bout, TaskMessage message) throws Exception {
-        int payload_len = 0;
-        if (message.message() != null)
-            payload_len =  message.message().length;
-
-        int task_id = message.task();
-        if (task_id > Short.MAX_VALUE)
-            throw new RuntimeException("Task ID should not exceed "+Short.MAX_VALUE);
-        
-        bout.writeShort((short)task_id);
-        bout.writeInt(payload_len);
-        if (payload_len >0)
-            bout.write(message.message());
+    ChannelBuffer buffer() throws Exception {
+        ChannelBuffer buf = encode();
+        if (compression == null) {
+            return buf;
+        }
+        int length = buf.readableBytes();
+        if (compression.accepts(length)) {
+            byte[] frame = new byte[length];
+            int frame_len = compression.compress(buf.array(), buf.arrayOffset() + buf.readerIndex(), length, frame, 0);
+            if (frame_len >= 0) {
+                return ChannelBuffers.wrappedBuffer(frame, 0, frame_len);
+            }
+        } else {
+            compression.sent(length);
+        }
+        return buf;
     }
 
+    private ChannelBuffer encode() {
+        int length = FrameCodec.maxEncodeLength(encoded_length, msgs.size(), frame_version);
+        // on the heap if it is going to be compressed
+        ChannelBuffer buf = compression == null ? ChannelBuffers.directBuffer(length) : ChannelBuffers.buffer(length);
+        ByteBuffer out = buf.toByteBuffer(0, length);
+        int start = out.position();
+        FrameCodec.writeBatch(msgs, frame_version, out);
+        buf.writerIndex(out.position() - start);
+        return buf;
+    }
 }
@@ -17,128 +17,71 @@
  */
 package org.apache.storm.messaging.netty;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
-import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.IConnectionCallback;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
 public class MessageDecoder extends FrameDecoder {    
-    /*
-     * Each ControlMessage is encoded as:
-     *  code (<0) ... short(2)
-     * Each TaskMessage is encoded as:
-     *  task (>=0) ... short(2)
-     *  len ... int(4)
-     *  payload ... byte[]     *  
-     */
-    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buf) throws Exception {
-        // Make sure that we have received at least a short 
-        long available = buf.readableBytes();
-        if (available < 2) {
-            //need more data
-            return null;
-        }
-
-        List<Object> ret = new ArrayList<>();
-
-        // Use while loop, try to decode as more messages as possible in single call
-        while (available >= 2) {
-
-            // Mark the current buffer position before reading task/len field
-            // because the whole frame might not be in the buffer yet.
-            // We will reset the buffer position to the marked position if
-            // there's not enough bytes in the buffer.
-            buf.markReaderIndex();
+    private final Supplier<IConnectionCallback> callback;
+    private final boolean authRequired;
+    private final FrameReader reader = new FrameReader();
 
-            // read the short field
-            short code = buf.readShort();
-            available -= 2;
-
-            // case 1: Control message
-            ControlMessage ctrl_msg = ControlMessage.mkMessage(code);
-            if (ctrl_msg != null) {
-
-                if (ctrl_msg == ControlMessage.EOB_MESSAGE) {
-                    continue;
-                } else {
-                    return ctrl_msg;
-                }
-            }
-            
-            //case 2: SaslTokenMessageRequest
-            if(code == SaslMessageToken.IDENTIFIER) {
-            	// Make sure that we have received at least an integer (length) 
-                if (buf.readableBytes() < 4) {
-                    //need more data
-                    buf.resetReaderIndex();
-                    return null;
-                }
-                
-                // Read the length field.
-                int length = buf.readInt();
-                if (length<=0) {
-                    return new SaslMessageToken(null);
-                }
-                
-                // Make sure if there's enough bytes in the buffer.
-                if (buf.readableBytes() < length) {
-                    // The whole bytes were not received yet - return null.
-                    buf.resetReaderIndex();
-                    return null;
-                }
-                
-                // There's enough bytes in the buffer. Read it.  
-                ChannelBuffer payload = buf.readBytes(length);
-                
-                // Successfully decoded a frame.
-                // Return a SaslTokenMessageRequest object
-                return new SaslMessageToken(payload.array());
-            }
-
-            // case 3: task Message
-
-            // Make sure that we have received at least an integer (length)
-            if (available < 4) {
-                // need more data
-                buf.resetReaderIndex();
-                break;
-            }
-
-            // Read the length field.
-            int length = buf.readInt();
+    public MessageDecoder() {
+        this(null, false);
+    }
 
-            available -= 4;
+    /**
+     * A decoder that deserializes task messages while they are still in the receive buffer, if the callback can,
+     * instead of copying each one into a TaskMessage. The result is then a List of AddressedTuple.
+     * @param callback the current callback of the server
+     * @param authRequired whether messages may only be deserialized once the channel passed SASL authentication
+     */
+    MessageDecoder(Supplier<IConnectionCallback> callback, boolean authRequired) {
+        this.callback = callback;
+        this.authRequired = authRequired;
+    }
 
-            if (length <= 0) {
-                ret.add(new TaskMessage(code, null));
-                break;
-            }
+    /**
+     * Read compressed batches with this codec from now on. Called while handling the BatchCodecMessage that
+     * negotiated it, before any more frames are decoded.
+     */
+    void setCodec(IBatchCodec codec) {
+        reader.setCodec(codec);
+    }
 
-            // Make sure if there's enough bytes in the buffer.
-            if (available < length) {
-                // The whole bytes were not received yet - return null.
-                buf.resetReaderIndex();
-                break;
+    private IConnectionCallback directCallback(Channel channel) {
+        IConnectionCallback cb = callback == null ? null : callback.get();
+        if (cb == null || !cb.canDeserialize()) {
+            return null;
+        }
+        if (authRequired) {
+            SaslNettyServer saslNettyServer = SaslNettyServerState.getSaslNettyServer.get(channel);
+            if (saslNettyServer == null || !saslNettyServer.isComplete()) {
+                // Leave it to the authorize handler
+                return null;
             }
-            available -= length;
-
-            // There's enough bytes in the buffer. Read it.
-            ChannelBuffer payload = buf.readBytes(length);
-
-
-            // Successfully decoded a frame.
-            // Return a TaskMessage object
-            ret.add(new TaskMessage(code, payload.array()));
         }
+        return cb;
+    }
 
-        if (ret.size() == 0) {
-            return null;
-        } else {
-            return ret;
-        }
+    /*
+     * See FrameReader for the wire format. Task messages are returned as a List of TaskMessage, or of AddressedTuple
+     * if they were deserialized in place, other frames by themselves.
+     */
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buf) throws Exception {
+        // A view of the readable bytes, the cumulation buffer is usually a heap buffer so this is not a copy
+        ByteBuffer in = buf.toByteBuffer();
+        int start = in.position();
+        List<Object> ret = new ArrayList<>();
+        Object single = reader.read(in, directCallback(channel), ret);
+        buf.skipBytes(in.position() - start);
+        return ret.isEmpty() ? single : ret;
     }
 }
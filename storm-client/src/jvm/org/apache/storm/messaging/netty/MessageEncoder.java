@@ -17,6 +17,11 @@
  */
 package org.apache.storm.messaging.netty;
 
+import java.nio.ByteBuffer;
+
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
@@ -31,10 +36,29 @@ public class MessageEncoder extends OneToOneEncoder {
         if (obj instanceof MessageBatch) {
             return ((MessageBatch)obj).buffer();
         } 
+
+        if (obj instanceof EncodedTaskMessages) {
+            EncodedTaskMessages msgs = (EncodedTaskMessages)obj;
+            if (msgs.getFrameVersion() >= 2) {
+                int length = FrameCodec.maxEncodeLengthV2(msgs);
+                ChannelBuffer buf = ChannelBuffers.directBuffer(length);
+                ByteBuffer out = buf.toByteBuffer(0, length);
+                int start = out.position();
+                FrameCodec.writeBatchV2(msgs, out);
+                buf.writerIndex(out.position() - start);
+                return buf;
+            }
+            // Already in wire format, write the buffer as is
+            return ChannelBuffers.wrappedBuffer(msgs.getBuffer());
+        }
         
         if (obj instanceof SaslMessageToken) {
         	return ((SaslMessageToken)obj).buffer();
         }
+
+        if (obj instanceof BatchCodecMessage) {
+            return ((BatchCodecMessage)obj).buffer();
+        }
         
         throw new RuntimeException("Unsupported encoding of object of class "+obj.getClass().getName());
     }
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.storm.Config;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.utils.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the messages a client is asked to send while its connection is down, so they can be sent in order once it
+ * is back instead of being dropped.
+ *
+ * Messages are kept in memory up to a number of bytes. Past that they can go to a memory-mapped file of a fixed
+ * size, created on first use. Once both are full further messages are rejected. The payload plus the 6 bytes of
+ * frame header counts against the limits.
+ */
+public class ResendBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(ResendBuffer.class);
+    private static final int HEADER_SIZE = 6; //INT + SHORT, as in a MessageBatch
+    private static final int SPILL_HEADER_SIZE = 8; //INT task + INT length
+
+    private final long maxMemoryBytes;
+    private final int maxSpillBytes;
+    private final File spillDir;
+    private final ArrayDeque<TaskMessage> memory = new ArrayDeque<>();
+    private long memoryBytes = 0;
+    private MappedByteBuffer spill = null;
+    private int spillCount = 0;
+    private long spillBytes = 0;
+    private volatile long bufferedBytes = 0;
+
+    /**
+     * @param maxMemoryBytes how many bytes of messages to hold in memory
+     * @param maxSpillBytes the size of the file messages that do not fit in memory go to, 0 for no file
+     * @param spillDir where to create the file, null for java.io.tmpdir
+     */
+    public ResendBuffer(long maxMemoryBytes, int maxSpillBytes, File spillDir) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxSpillBytes = maxSpillBytes;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * @return the buffer configured by storm.messaging.netty.resend.buffer.*, or null if it is turned off
+     */
+    public static ResendBuffer fromConf(Map<String, Object> topoConf) {
+        long maxMemoryBytes = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_RESEND_BUFFER_BYTES), 0);
+        int maxSpillBytes = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_RESEND_BUFFER_SPILL_BYTES), 0);
+        if (maxMemoryBytes <= 0 && maxSpillBytes <= 0) {
+            return null;
+        }
+        String dir = (String) topoConf.get(Config.STORM_MESSAGING_NETTY_RESEND_BUFFER_SPILL_DIR);
+        return new ResendBuffer(maxMemoryBytes, maxSpillBytes, dir == null ? null : new File(dir));
+    }
+
+    /**
+     * @return false if the message did not fit and was not buffered
+     */
+    public synchronized boolean add(TaskMessage msg) {
+        byte[] payload = msg.message();
+        int length = payload == null ? 0 : payload.length;
+        // Once anything went to the file the rest has to follow it, to keep the messages in order
+        if (spillCount == 0 && memoryBytes + length + HEADER_SIZE <= maxMemoryBytes) {
+            memory.add(msg);
+            memoryBytes += length + HEADER_SIZE;
+        } else if (!spill(msg.task(), payload)) {
+            return false;
+        }
+        bufferedBytes = memoryBytes + spillBytes;
+        return true;
+    }
+
+    private boolean spill(int task, byte[] payload) {
+        int length = payload == null ? 0 : payload.length;
+        if ((long) SPILL_HEADER_SIZE + length > maxSpillBytes - (spill == null ? 0 : spill.position())) {
+            return false;
+        }
+        if (spill == null && !openSpill()) {
+            return false;
+        }
+        spill.putInt(task);
+        spill.putInt(payload == null ? -1 : length);
+        if (payload != null) {
+            spill.put(payload);
+        }
+        spillCount++;
+        spillBytes += length + HEADER_SIZE;
+        return true;
+    }
+
+    private boolean openSpill() {
+        try {
+            File file = File.createTempFile("storm-resend-", ".buf", spillDir);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                spill = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxSpillBytes);
+            } finally {
+                // The mapping stays valid, and the space is given back once it is gone
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.error("Could not create a resend buffer file in {}, messages that do not fit in memory will be dropped",
+                spillDir, e);
+            return false;
+        }
+    }
+
+    /**
+     * Hand every buffered message to the consumer in the order they were added, and empty the buffer.
+     */
+    public synchronized void drainTo(Consumer<TaskMessage> consumer) {
+        TaskMessage msg;
+        while ((msg = memory.poll()) != null) {
+            consumer.accept(msg);
+        }
+        memoryBytes = 0;
+        if (spillCount > 0) {
+            spill.flip();
+            for (int i = 0; i < spillCount; i++) {
+                int task = spill.getInt();
+                int length = spill.getInt();
+                byte[] payload = null;
+                if (length >= 0) {
+                    payload = new byte[length];
+                    spill.get(payload);
+                }
+                consumer.accept(new TaskMessage(task, payload));
+            }
+            spill.clear();
+            spillCount = 0;
+            spillBytes = 0;
+        }
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Drop every buffered message.
+     * @return how many were dropped
+     */
+    public synchronized int clear() {
+        int dropped = size();
+        memory.clear();
+        memoryBytes = 0;
+        if (spill != null) {
+            spill.clear();
+        }
+        spillCount = 0;
+        spillBytes = 0;
+        bufferedBytes = 0;
+        return dropped;
+    }
+
+    public synchronized boolean isEmpty() {
+        return memory.isEmpty() && spillCount == 0;
+    }
+
+    public synchronized int size() {
+        return memory.size() + spillCount;
+    }
+
+    /**
+     * @return how many bytes of messages are buffered, without waiting for other calls to finish
+     */
+    public long bytes() {
+        return bufferedBytes;
+    }
+}
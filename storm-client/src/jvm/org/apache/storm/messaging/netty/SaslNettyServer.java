@@ -33,14 +33,14 @@ import javax.security.sasl.SaslServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class SaslNettyServer {
+public class SaslNettyServer {
 
     private static final Logger LOG = LoggerFactory
         .getLogger(SaslNettyServer.class);
 
         private SaslServer saslServer;
 
-    SaslNettyServer(String topologyName, byte[] token) throws IOException {
+    public SaslNettyServer(String topologyName, byte[] token) throws IOException {
         LOG.debug("SaslNettyServer: Topology token is: {} with authmethod {}",
                   topologyName, SaslUtils.AUTH_DIGEST_MD5);
 
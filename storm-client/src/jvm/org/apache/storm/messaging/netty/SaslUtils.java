@@ -27,7 +27,7 @@ import org.apache.commons.io.Charsets;
 
 import org.apache.storm.Config;
 
-class SaslUtils {
+public class SaslUtils {
     public static final String KERBEROS = "GSSAPI";
     public static final String AUTH_DIGEST_MD5 = "DIGEST-MD5";
     public static final String DEFAULT_REALM = "default";
@@ -61,7 +61,7 @@ class SaslUtils {
         return new String(Base64.encodeBase64(identifier), Charsets.UTF_8);
     }
 
-    static String getSecretKey(Map<String, Object> conf) {
+    public static String getSecretKey(Map<String, Object> conf) {
         return conf == null || conf.isEmpty() ? null : (String) conf.get(Config.STORM_ZOOKEEPER_TOPOLOGY_AUTH_PAYLOAD);
     }
 
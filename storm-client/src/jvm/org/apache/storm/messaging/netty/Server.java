@@ -24,10 +24,12 @@ import org.apache.storm.messaging.IConnectionCallback;
 import org.apache.storm.messaging.TaskMessage;
 import org.apache.storm.metric.api.IStatefulObject;
 import org.apache.storm.serialization.KryoValuesSerializer;
+import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.utils.ObjectReader;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -63,14 +65,16 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
     private volatile boolean closing = false;
     List<TaskMessage> closeMessage = Arrays.asList(new TaskMessage(-1, null));
     private KryoValuesSerializer _ser;
-    private IConnectionCallback _cb = null; 
+    private volatile IConnectionCallback _cb = null;
     private final int boundPort;
+    private final boolean authRequired;
     
     @SuppressWarnings("rawtypes")
     Server(Map<String, Object> topoConf, int port) {
         this.topoConf = topoConf;
         this.port = port;
         _ser = new KryoValuesSerializer(topoConf);
+        authRequired = ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_AUTHENTICATION), false);
 
         // Configure the server.
         int buffer_size = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_BUFFER_SIZE));
@@ -137,11 +141,26 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
         }
     }
 
+    /**
+     * enqueue messages the decoder already deserialized
+     */
+    protected void enqueueTuples(List<AddressedTuple> tuples, String from) {
+        if (null == tuples || tuples.size() == 0 || closing) {
+            return;
+        }
+        addReceiveCount(from, tuples.size());
+        _cb.recvTuples(tuples);
+    }
+
     @Override
     public void registerRecv(IConnectionCallback cb) {
         _cb = cb;
     }
 
+    IConnectionCallback getCallback() {
+        return _cb;
+    }
+
     /**
      * register a newly created channel
      * @param channel newly created channel
@@ -175,7 +194,7 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
     }
 
     @Override
-    public void sendLoadMetrics(Map<Integer, Double> taskToLoad) {
+    public synchronized void sendLoadMetrics(Map<Integer, Double> taskToLoad) {
         try {
             MessageBatch mb = new MessageBatch(1);
             mb.add(new TaskMessage(-1, _ser.serialize(Arrays.asList((Object)taskToLoad))));
@@ -185,6 +204,21 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
         }
     }
 
+    /**
+     * Sent like the load metrics, to the system task, but with a list of the congested tasks in place of the load
+     * map. Synchronized as it can be called from any thread that crosses a receive queue water mark.
+     */
+    @Override
+    public synchronized void sendBackPressureStatus(Collection<Integer> congestedTasks) {
+        try {
+            MessageBatch mb = new MessageBatch(1);
+            mb.add(new TaskMessage(-1, _ser.serialize(Arrays.asList((Object) new ArrayList<>(congestedTasks)))));
+            allChannels.write(mb);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Map<Integer, Load> getLoad(Collection<Integer> tasks) {
         throw new RuntimeException("Server connection cannot get load");
@@ -255,11 +289,37 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
     /** Implementing IServer. **/
     public void channelConnected(Channel c) {
         addChannel(c);
+        if (!authRequired) {
+            c.write(ControlMessage.FRAME_V2_SUPPORTED);
+        }
     }
 
     public void received(Object message, String remote, Channel channel)  throws InterruptedException {
-        List<TaskMessage>msgs = (List<TaskMessage>)message;
-        enqueue(msgs, remote);
+        if (message instanceof BatchCodecMessage) {
+            codecRequested(channel, (BatchCodecMessage) message);
+            return;
+        }
+        List<?> msgs = (List<?>) message;
+        if (!msgs.isEmpty() && msgs.get(0) instanceof AddressedTuple) {
+            enqueueTuples((List<AddressedTuple>) msgs, remote);
+        } else {
+            enqueue((List<TaskMessage>) msgs, remote);
+        }
+    }
+
+    /**
+     * Accept the codec a client asked for if it is the one this topology is configured with, and have the channel's
+     * decoder read compressed batches with it.
+     */
+    private void codecRequested(Channel channel, BatchCodecMessage request) {
+        String codec = (String) topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_CODEC);
+        if (codec != null && codec.equals(request.getCodec())) {
+            ((MessageDecoder) channel.getPipeline().get("decoder")).setCodec(BatchCompression.newCodec(codec));
+            channel.write(new BatchCodecMessage(codec));
+        } else {
+            LOG.warn("Not accepting batches compressed with {} from {}", request.getCodec(), channel.getRemoteAddress());
+            channel.write(new BatchCodecMessage(null));
+        }
     }
 
     public String name() {
@@ -271,7 +331,8 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
     }
 
     public void authenticated(Channel c) {
-        return;
+        // Only now, an earlier client would still be expecting SASL messages
+        c.write(ControlMessage.FRAME_V2_SUPPORTED);
     }
 
     @Override
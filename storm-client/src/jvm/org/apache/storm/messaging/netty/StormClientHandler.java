@@ -21,6 +21,7 @@ import org.apache.storm.messaging.TaskMessage;
 import org.apache.storm.serialization.KryoValuesDeserializer;
 
 import java.net.ConnectException;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.io.IOException;
@@ -54,7 +55,11 @@ public class StormClientHandler extends SimpleChannelUpstreamHandler  {
             ControlMessage msg = (ControlMessage)message;
             if (msg==ControlMessage.FAILURE_RESPONSE) {
                 LOG.info("failure response:{}", msg);
+            } else if (msg == ControlMessage.FRAME_V2_SUPPORTED) {
+                client.frameV2Supported(event.getChannel());
             }
+        } else if (message instanceof BatchCodecMessage) {
+            client.codecNegotiated(event.getChannel(), (BatchCodecMessage)message);
         } else if (message instanceof List) {
             try {
                 //This should be the metrics, and there should only be one of them
@@ -64,6 +69,11 @@ public class StormClientHandler extends SimpleChannelUpstreamHandler  {
                 if (tm.task() != -1) throw new RuntimeException("Metrics messages are sent to the system task ("+client.getDstAddress()+") "+tm);
                 List metrics = _des.deserialize(tm.message());
                 if (metrics.size() < 1) throw new RuntimeException("No metrics data in the metrics message ("+client.getDstAddress()+") "+metrics);
+                if (metrics.get(0) instanceof List) {
+                    // The tasks on the server that are congested, see Server.sendBackPressureStatus
+                    client.setCongestedTasks(new HashSet<>((List<Integer>) metrics.get(0)));
+                    return;
+                }
                 if (!(metrics.get(0) instanceof Map)) throw new RuntimeException("The metrics did not have a map in the first slot ("+client.getDstAddress()+") "+metrics);
                 client.setLoadMetrics((Map<Integer, Double>)metrics.get(0));
             } catch (IOException e) {
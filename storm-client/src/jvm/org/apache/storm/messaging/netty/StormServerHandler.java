@@ -47,7 +47,6 @@ public class StormServerHandler extends SimpleChannelUpstreamHandler  {
     
     @Override
     public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
-        server.channelConnected(e.getChannel());
         if(channel != null) {
             LOG.debug("Replacing channel with new channel: {} -> ",
                       channel, e.getChannel());
@@ -0,0 +1,710 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.apache.storm.Config;
+import org.apache.storm.grouping.Load;
+import org.apache.storm.messaging.ConnectionWithStatus;
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.messaging.netty.BatchCompression;
+import org.apache.storm.messaging.netty.ResendBuffer;
+import org.apache.storm.messaging.netty.SaslUtils;
+import org.apache.storm.metric.api.IStatefulObject;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.StormBoundedExponentialBackoffRetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A Netty 4 client for sending task messages to a remote destination. Behaves like the netty transport's Client:
+ *
+ * - Messages are batched up to storm.messaging.netty.transfer.batch.size bytes. While the channel is writable a
+ *   partial batch is written right away, once the channel goes over its write buffer high water mark the client keeps
+ *   filling the batch until the channel drains below the low water mark again.
+ * - Batches written by one send call are flushed together, one flush per call rather than one per batch.
+ * - Connecting and reconnecting are performed asynchronously, on the event loop. Messages sent while the connection
+ *   is unavailable are dropped, unless storm.messaging.netty.resend.buffer.* give the client a {@link ResendBuffer}
+ *   to hold them until it is back.
+ */
+public class Client extends ConnectionWithStatus implements IStatefulObject {
+    private static final long PENDING_MESSAGES_FLUSH_TIMEOUT_MS = 600000L;
+    private static final long PENDING_MESSAGES_FLUSH_INTERVAL_MS = 1000L;
+    private static final long CHANNEL_ALIVE_INTERVAL_MS = 30000L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(Client.class);
+    private static final String PREFIX = "Netty4-Client-";
+    private static final long NO_DELAY_MS = 0L;
+
+    private final Map<String, Object> topoConf;
+    private final StormBoundedExponentialBackoffRetry retryPolicy;
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    private final InetSocketAddress dstAddress;
+    private final String dstAddressPrefixedName;
+    private final Context context;
+    private final int messageBatchSize;
+    private volatile Map<Integer, Double> serverLoad = null;
+    private volatile Set<Integer> congestedTasks = Collections.emptySet();
+    private volatile Runnable congestionListener = null;
+
+    /**
+     * The channel used for all write operations from this client to the remote destination.
+     */
+    private final AtomicReference<Channel> channelRef = new AtomicReference<>();
+
+    private final AtomicInteger totalConnectionAttempts = new AtomicInteger(0);
+    private final AtomicInteger connectionAttempts = new AtomicInteger(0);
+    private final AtomicInteger messagesSent = new AtomicInteger(0);
+    private final AtomicInteger messagesLost = new AtomicInteger(0);
+
+    /**
+     * Number of messages written to the channel that did not complete yet.
+     */
+    private final AtomicLong pendingMessages = new AtomicLong(0);
+
+    private final AtomicBoolean saslChannelReady = new AtomicBoolean(false);
+
+    /**
+     * The channel whose server said it can read frame version 2, so batches written to it may use it.
+     */
+    private volatile Channel frameV2Channel = null;
+
+    /**
+     * Batch compression as configured, null if no codec is.
+     */
+    private final BatchCompression compression;
+
+    /**
+     * The channel whose server accepted the codec of compression, so batches written to it may be compressed.
+     */
+    private volatile Channel compressionChannel = null;
+
+    private volatile boolean closing = false;
+
+    private final ScheduledFuture<?> channelAlive;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * The batch being filled, guarded by writeLock.
+     */
+    private MessageBatch batch;
+
+    /**
+     * Holds messages while the connection is down, null if turned off. Guarded by writeLock.
+     */
+    private final ResendBuffer resendBuffer;
+
+    private final AtomicInteger resendBufferDropped = new AtomicInteger(0);
+
+    Client(Map<String, Object> topoConf, EventLoopGroup group, String host, int port, Context context) {
+        this.topoConf = topoConf;
+        this.group = group;
+        this.context = context;
+        int bufferSize = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_BUFFER_SIZE));
+        // if SASL authentication is disabled, saslChannelReady is initialized as true; otherwise false
+        saslChannelReady.set(!ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_AUTHENTICATION), false));
+        LOG.info("creating Netty4 Client, connecting to {}:{}, bufferSize: {}", host, port, bufferSize);
+        messageBatchSize = ObjectReader.getInt(topoConf.get(Config.STORM_NETTY_MESSAGE_BATCH_SIZE), 262144);
+        batch = new MessageBatch(messageBatchSize);
+
+        int maxReconnectionAttempts = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_MAX_RETRIES));
+        int minWaitMs = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_MIN_SLEEP_MS));
+        int maxWaitMs = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_MAX_SLEEP_MS));
+        retryPolicy = new StormBoundedExponentialBackoffRetry(minWaitMs, maxWaitMs, maxReconnectionAttempts);
+        resendBuffer = ResendBuffer.fromConf(topoConf);
+        compression = BatchCompression.fromConf(topoConf);
+
+        bootstrap = createBootstrap(bufferSize);
+        dstAddress = new InetSocketAddress(host, port);
+        dstAddressPrefixedName = PREFIX + dstAddress.toString();
+        // Periodically check the channel, so a dead one gets replaced even if nothing is sent on it
+        channelAlive = group.scheduleAtFixedRate(this::getConnectedChannel, CHANNEL_ALIVE_INTERVAL_MS,
+            CHANNEL_ALIVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduleConnect(NO_DELAY_MS);
+    }
+
+    private Bootstrap createBootstrap(int bufferSize) {
+        final boolean isNettyAuth = ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_AUTHENTICATION), false);
+        // Hold back a partial batch once a full batch is queued up behind the socket
+        WriteBufferWaterMark waterMark = new WriteBufferWaterMark(messageBatchSize / 2, messageBatchSize);
+        return new Bootstrap()
+            .group(group)
+            .channel(Context.socketChannelClass())
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.SO_SNDBUF, bufferSize)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+            .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark)
+            .handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    ChannelPipeline pipeline = ch.pipeline();
+                    pipeline.addLast("decoder", new MessageDecoder());
+                    pipeline.addLast("encoder", MessageEncoder.INSTANCE);
+                    if (isNettyAuth) {
+                        // Authenticate: Removed after authentication completes
+                        pipeline.addLast("saslClientHandler", new SaslStormClientHandler(Client.this));
+                    }
+                    pipeline.addLast("handler", new StormClientHandler(Client.this, topoConf));
+                }
+            });
+    }
+
+    private void scheduleConnect(long delayMs) {
+        group.schedule(new Connect(dstAddress), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean connectionEstablished(Channel channel) {
+        return channel != null && channel.isActive();
+    }
+
+    /**
+     * Note:  Storm will check via this method whether a worker can be activated safely during the initial startup of a
+     * topology.  The worker will only be activated once all of the its connections are ready.
+     */
+    @Override
+    public Status status() {
+        if (closing) {
+            return Status.Closed;
+        } else if (!connectionEstablished(channelRef.get())) {
+            return Status.Connecting;
+        } else if (saslChannelReady.get()) {
+            return Status.Ready;
+        } else {
+            return Status.Connecting; // need to wait until sasl channel is also ready
+        }
+    }
+
+    /**
+     * Receiving messages is not supported by a client.
+     *
+     * @throws java.lang.UnsupportedOperationException whenever this method is being called.
+     */
+    @Override
+    public void registerRecv(IConnectionCallback cb) {
+        throw new UnsupportedOperationException("Client connection should not receive any messages");
+    }
+
+    @Override
+    public void sendLoadMetrics(Map<Integer, Double> taskToLoad) {
+        throw new RuntimeException("Client connection should not send load metrics");
+    }
+
+    @Override
+    public void send(int taskId, byte[] payload) {
+        send(Collections.singletonList(new TaskMessage(taskId, payload)).iterator());
+    }
+
+    /**
+     * Enqueue task messages to be sent to the remote destination (cf. `host` and `port`).
+     */
+    @Override
+    public void send(Iterator<TaskMessage> msgs) {
+        if (closing) {
+            int numMessages = iteratorSize(msgs);
+            LOG.error("discarding {} messages because the Netty4 client to {} is being closed", numMessages,
+                dstAddressPrefixedName);
+            return;
+        }
+
+        if (msgs == null || !msgs.hasNext()) {
+            return;
+        }
+
+        Channel channel = getConnectedChannel();
+        if (channel == null) {
+            // Connection is unavailable. Buffer or drop the messages and let at-least-once message replay kick in.
+            if (resendBuffer != null) {
+                bufferMessages(msgs);
+            } else {
+                messagesLost.getAndAdd(iteratorSize(msgs));
+            }
+            return;
+        }
+
+        synchronized (writeLock) {
+            // Anything buffered while the connection was down goes first
+            boolean written = resendBufferedMessages(channel);
+            while (msgs.hasNext()) {
+                batch.add(msgs.next());
+                if (batch.isFull()) {
+                    written |= writeBatch(channel);
+                }
+            }
+            // If the channel is not writable keep filling the batch, channelWritabilityChanged writes it out
+            if (channel.isWritable()) {
+                written |= writeBatch(channel);
+            }
+            if (written) {
+                channel.flush();
+            }
+        }
+    }
+
+    /**
+     * Write messages that were already encoded into a buffer straight to the channel, without copying them into a
+     * MessageBatch. The buffer is written as is to a server that reads frame version 1, and transcoded into frame
+     * version 2 for one that negotiated it. The messages only go into a MessageBatch if the batches to the server are
+     * compressed. The buffer is released once the write completes.
+     */
+    @Override
+    public void send(final EncodedTaskMessages msgs) {
+        if (closing) {
+            LOG.error("discarding {} messages because the Netty4 client to {} is being closed", msgs.size(),
+                dstAddressPrefixedName);
+            msgs.release();
+            return;
+        }
+
+        if (msgs.isEmpty()) {
+            msgs.release();
+            return;
+        }
+
+        Channel channel = getConnectedChannel();
+        if (channel == null) {
+            if (resendBuffer != null) {
+                bufferMessages(msgs.toTaskMessages());
+            } else {
+                messagesLost.getAndAdd(msgs.size());
+            }
+            msgs.release();
+            return;
+        }
+
+        if (channel == compressionChannel) {
+            // Compression works on whole batches, so the messages go into one like any others
+            try {
+                send(msgs.toTaskMessages());
+            } finally {
+                msgs.release();
+            }
+            return;
+        }
+        if (channel == frameV2Channel) {
+            msgs.setFrameVersion(2);
+        }
+
+        synchronized (writeLock) {
+            // Anything still sitting in the resend buffer or the batch was sent before these messages
+            resendBufferedMessages(channel);
+            writeBatch(channel);
+            final int numMessages = msgs.size();
+            pendingMessages.addAndGet(numMessages);
+            channel.writeAndFlush(msgs).addListener((ChannelFutureListener) future -> {
+                msgs.release();
+                writeComplete(future, numMessages);
+            });
+        }
+    }
+
+    /**
+     * Write the current batch to the channel without flushing it. Must hold writeLock.
+     * @return true if there was anything to write
+     */
+    private boolean writeBatch(Channel channel) {
+        if (batch.isEmpty()) {
+            return false;
+        }
+        final int numMessages = batch.size();
+        LOG.debug("writing {} messages to channel {}", numMessages, channel);
+        pendingMessages.addAndGet(numMessages);
+        if (channel == frameV2Channel) {
+            batch.setFrameVersion(2);
+        }
+        if (channel == compressionChannel) {
+            batch.setCompression(compression);
+        }
+        channel.write(batch).addListener((ChannelFutureListener) future -> writeComplete(future, numMessages));
+        batch = new MessageBatch(messageBatchSize);
+        return true;
+    }
+
+    private void bufferMessages(Iterator<TaskMessage> msgs) {
+        int dropped = 0;
+        synchronized (writeLock) {
+            while (msgs.hasNext()) {
+                if (!resendBuffer.add(msgs.next())) {
+                    dropped++;
+                }
+            }
+        }
+        if (dropped > 0) {
+            resendBufferDropped.getAndAdd(dropped);
+            messagesLost.getAndAdd(dropped);
+        }
+    }
+
+    /**
+     * Write out everything in the resend buffer in the order it was buffered, without flushing it. Must hold
+     * writeLock.
+     * @return true if there was anything to write
+     */
+    private boolean resendBufferedMessages(Channel channel) {
+        if (resendBuffer == null || resendBuffer.isEmpty()) {
+            return false;
+        }
+        LOG.info("sending {} messages buffered while the connection to {} was unavailable", resendBuffer.size(),
+            dstAddressPrefixedName);
+        resendBuffer.drainTo(message -> {
+            batch.add(message);
+            if (batch.isFull()) {
+                writeBatch(channel);
+            }
+        });
+        writeBatch(channel);
+        return true;
+    }
+
+    /**
+     * Send the messages buffered while the connection was down without waiting for the next send call.
+     */
+    private void resendOnConnect(Channel channel) {
+        if (resendBuffer != null && connectionEstablished(channel)) {
+            synchronized (writeLock) {
+                if (resendBufferedMessages(channel)) {
+                    channel.flush();
+                }
+            }
+        }
+    }
+
+    private void writeComplete(ChannelFuture future, int numMessages) {
+        pendingMessages.addAndGet(0 - numMessages);
+        if (future.isSuccess()) {
+            LOG.debug("sent {} messages to {}", numMessages, dstAddressPrefixedName);
+            messagesSent.getAndAdd(numMessages);
+        } else {
+            LOG.error("failed to send {} messages to {}: {}", numMessages, dstAddressPrefixedName, future.cause());
+            closeChannelAndReconnect(future.channel());
+            messagesLost.getAndAdd(numMessages);
+        }
+    }
+
+    /**
+     * Called on the event loop when the channel crosses one of its write buffer water marks.
+     */
+    void notifyWritabilityChanged(Channel channel) {
+        if (channel.isWritable()) {
+            synchronized (writeLock) {
+                // Channel is writable again, write if there are any messages pending
+                if (writeBatch(channel)) {
+                    channel.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called on the event loop when the server on the other end of the channel said it can read frame version 2.
+     */
+    void frameV2Supported(Channel channel) {
+        LOG.debug("{} can read frame version 2", dstAddressPrefixedName);
+        frameV2Channel = channel;
+        if (compression != null) {
+            // Only servers that know frame version 2 know how to negotiate a codec
+            channel.writeAndFlush(new BatchCodecMessage(compression.getCodecName()));
+        }
+    }
+
+    /**
+     * Called on the event loop when the server on the other end of the channel answered the codec we asked for.
+     */
+    void codecNegotiated(Channel channel, BatchCodecMessage answer) {
+        if (compression != null && compression.getCodecName().equals(answer.getCodec())) {
+            LOG.info("compressing batches to {} with {}", dstAddressPrefixedName, answer.getCodec());
+            compressionChannel = channel;
+        } else {
+            LOG.warn("{} does not accept compressing batches with {}, sending them uncompressed",
+                dstAddressPrefixedName, compression == null ? null : compression.getCodecName());
+        }
+    }
+
+    private Channel getConnectedChannel() {
+        Channel channel = channelRef.get();
+        if (connectionEstablished(channel)) {
+            return channel;
+        }
+        // Closing the channel and reconnecting should be done before handling the messages.
+        if (closeChannelAndReconnect(channel)) {
+            // Log the connection error only once
+            LOG.error("connection to {} is unavailable", dstAddressPrefixedName);
+        }
+        return null;
+    }
+
+    /**
+     * Schedule a reconnect if we closed a non-null channel, and acquired the right to
+     * provide a replacement by successfully setting a null to the channel field.
+     * @return if the call scheduled a re-connect task
+     */
+    private boolean closeChannelAndReconnect(Channel channel) {
+        if (channel != null) {
+            channel.close();
+            if (channelRef.compareAndSet(channel, null)) {
+                if (!closing) {
+                    scheduleConnect(NO_DELAY_MS);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int iteratorSize(Iterator<TaskMessage> msgs) {
+        int size = 0;
+        if (msgs != null) {
+            while (msgs.hasNext()) {
+                size++;
+                msgs.next();
+            }
+        }
+        return size;
+    }
+
+    InetSocketAddress getDstAddress() {
+        return dstAddress;
+    }
+
+    @Override
+    public int getPort() {
+        return dstAddress.getPort();
+    }
+
+    /**
+     * Gracefully close this client.
+     */
+    @Override
+    public void close() {
+        if (!closing) {
+            LOG.info("closing Netty4 Client {}", dstAddressPrefixedName);
+            context.removeClient(dstAddress.getHostName(), dstAddress.getPort());
+            // Set closing to true to prevent any further reconnection attempts.
+            closing = true;
+            channelAlive.cancel(false);
+            synchronized (writeLock) {
+                Channel channel = channelRef.get();
+                if (connectionEstablished(channel)) {
+                    // Write out what was buffered while the connection was down or held back while the channel was
+                    // not writable, so that waiting for the pending messages covers it
+                    boolean written = resendBufferedMessages(channel);
+                    written |= writeBatch(channel);
+                    if (written) {
+                        channel.flush();
+                    }
+                } else {
+                    int discarded = batch.size() + (resendBuffer == null ? 0 : resendBuffer.size());
+                    if (discarded > 0) {
+                        LOG.error("discarding {} messages because the Netty4 client to {} is being closed", discarded,
+                            dstAddressPrefixedName);
+                    }
+                    messagesLost.getAndAdd(batch.size());
+                    batch = new MessageBatch(messageBatchSize);
+                    if (resendBuffer != null) {
+                        messagesLost.getAndAdd(resendBuffer.clear());
+                    }
+                }
+            }
+            waitForPendingMessagesToBeSent();
+            Channel channel = channelRef.get();
+            if (channel != null) {
+                channel.close();
+                LOG.debug("channel to {} closed", dstAddressPrefixedName);
+            }
+        }
+    }
+
+    private void waitForPendingMessagesToBeSent() {
+        long totalPendingMsgs = pendingMessages.get();
+        LOG.info("waiting up to {} ms to send {} pending messages to {}",
+            PENDING_MESSAGES_FLUSH_TIMEOUT_MS, totalPendingMsgs, dstAddressPrefixedName);
+        long startMs = System.currentTimeMillis();
+        while (pendingMessages.get() != 0) {
+            try {
+                long deltaMs = System.currentTimeMillis() - startMs;
+                if (deltaMs > PENDING_MESSAGES_FLUSH_TIMEOUT_MS) {
+                    LOG.error("failed to send all pending messages to {} within timeout, {} of {} messages were not "
+                        + "sent", dstAddressPrefixedName, pendingMessages.get(), totalPendingMsgs);
+                    break;
+                }
+                Thread.sleep(PENDING_MESSAGES_FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    void setLoadMetrics(Map<Integer, Double> taskToLoad) {
+        this.serverLoad = taskToLoad;
+    }
+
+    void setCongestedTasks(Set<Integer> congestedTasks) {
+        // The status is re-sent periodically, only a change is worth telling the worker about
+        boolean changed = !congestedTasks.equals(this.congestedTasks);
+        this.congestedTasks = congestedTasks;
+        Runnable listener = congestionListener;
+        if (changed && listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public void setCongestionListener(Runnable listener) {
+        this.congestionListener = listener;
+    }
+
+    @Override
+    public Set<Integer> getCongestedTasks() {
+        return congestedTasks;
+    }
+
+    @Override
+    public Map<Integer, Load> getLoad(Collection<Integer> tasks) {
+        Map<Integer, Double> loadCache = serverLoad;
+        Map<Integer, Load> ret = new HashMap<>();
+        if (loadCache != null) {
+            double clientLoad = Math.min(pendingMessages.get(), 1024) / 1024.0;
+            for (Integer task : tasks) {
+                Double found = loadCache.get(task);
+                if (found != null) {
+                    ret.put(task, new Load(true, found, clientLoad));
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public Object getState() {
+        LOG.debug("Getting metrics for client connection to {}", dstAddressPrefixedName);
+        HashMap<String, Object> ret = new HashMap<>();
+        ret.put("reconnects", totalConnectionAttempts.getAndSet(0));
+        ret.put("sent", messagesSent.getAndSet(0));
+        ret.put("pending", pendingMessages.get());
+        ret.put("lostOnSend", messagesLost.getAndSet(0));
+        if (compression != null) {
+            ret.putAll(compression.getState());
+        }
+        if (resendBuffer != null) {
+            ret.put("resendBufferBytes", resendBuffer.bytes());
+            ret.put("resendBufferDropped", resendBufferDropped.getAndSet(0));
+        }
+        ret.put("dest", dstAddress.toString());
+        Channel channel = channelRef.get();
+        if (channel != null) {
+            SocketAddress address = channel.localAddress();
+            if (address != null) {
+                ret.put("src", address.toString());
+            }
+        }
+        return ret;
+    }
+
+    void channelReady() {
+        saslChannelReady.set(true);
+        resendOnConnect(channelRef.get());
+    }
+
+    String name() {
+        return (String) topoConf.get(Config.TOPOLOGY_NAME);
+    }
+
+    String secretKey() {
+        return SaslUtils.getSecretKey(topoConf);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Netty4 client for connecting to %s", dstAddressPrefixedName);
+    }
+
+    /**
+     * Asynchronously establishes a connection to the remote address. Runs on the event loop, so it must not block.
+     */
+    private class Connect implements Runnable {
+        private final InetSocketAddress address;
+
+        Connect(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            if (closing) {
+                return;
+            }
+            final int connectionAttempt = connectionAttempts.getAndIncrement();
+            totalConnectionAttempts.getAndIncrement();
+            LOG.debug("connecting to {} [attempt {}]", address, connectionAttempt);
+            bootstrap.connect(address).addListener((ChannelFutureListener) future -> {
+                Channel newChannel = future.channel();
+                if (closing) {
+                    newChannel.close();
+                } else if (future.isSuccess() && connectionEstablished(newChannel)) {
+                    boolean setChannel = channelRef.compareAndSet(null, newChannel);
+                    checkState(setChannel);
+                    connectionAttempts.set(0);
+                    LOG.debug("successfully connected to {}, {} [attempt {}]", address, newChannel, connectionAttempt);
+                    if (messagesLost.get() > 0) {
+                        LOG.warn("Re-connection to {} was successful but {} messages has been lost so far", address,
+                            messagesLost.get());
+                    }
+                    if (saslChannelReady.get()) {
+                        resendOnConnect(newChannel);
+                    }
+                } else {
+                    LOG.error("connection attempt {} to {} failed: {}", connectionAttempt, dstAddressPrefixedName,
+                        future.cause());
+                    newChannel.close();
+                    scheduleConnect(retryPolicy.getSleepTimeMs(connectionAttempts.get(), 0));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.storm.Config;
+import org.apache.storm.messaging.IConnection;
+import org.apache.storm.messaging.IContext;
+import org.apache.storm.utils.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Worker to worker messaging on Netty 4, selected with
+ * storm.messaging.transport: "org.apache.storm.messaging.netty4.Context".
+ *
+ * It speaks the same protocol as org.apache.storm.messaging.netty.Context, SASL included, and reads the same
+ * storm.messaging.netty.* settings, so the two can be swapped to compare them on the same cluster. Buffers come from
+ * the pooled allocator, and on Linux the native epoll transport is used when it can be loaded, NIO otherwise.
+ */
+public class Context implements IContext {
+    private static final Logger LOG = LoggerFactory.getLogger(Context.class);
+
+    private Map<String, Object> topoConf;
+    private Map<String, IConnection> connections;
+    private EventLoopGroup clientGroup;
+
+    /**
+     * initialization per Storm configuration
+     */
+    @Override
+    public void prepare(Map<String, Object> topoConf) {
+        this.topoConf = topoConf;
+        connections = new HashMap<>();
+        if (Epoll.isAvailable()) {
+            LOG.info("Using the native epoll transport");
+        } else {
+            LOG.info("Using the NIO transport, native epoll is not available: {}", Epoll.unavailabilityCause().toString());
+        }
+        //each context will have a single client event loop group
+        int maxWorkers = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_CLIENT_WORKER_THREADS));
+        clientGroup = newEventLoopGroup(maxWorkers, "client-worker");
+    }
+
+    /**
+     * @param threads the number of event loops, 0 for Netty's default
+     */
+    static EventLoopGroup newEventLoopGroup(int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+        if (Epoll.isAvailable()) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    static Class<? extends SocketChannel> socketChannelClass() {
+        return Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    static Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * establish a server with a binding port
+     */
+    @Override
+    public synchronized IConnection bind(String stormId, int port) {
+        IConnection server = new Server(topoConf, port);
+        connections.put(key(stormId, server.getPort()), server);
+        return server;
+    }
+
+    /**
+     * establish a connection to a remote server
+     */
+    @Override
+    public synchronized IConnection connect(String stormId, String host, int port) {
+        IConnection connection = connections.get(key(host, port));
+        if (connection != null) {
+            return connection;
+        }
+        IConnection client = new Client(topoConf, clientGroup, host, port, this);
+        connections.put(key(host, client.getPort()), client);
+        return client;
+    }
+
+    synchronized void removeClient(String host, int port) {
+        if (connections != null) {
+            connections.remove(key(host, port));
+        }
+    }
+
+    /**
+     * terminate this context
+     */
+    @Override
+    public synchronized void term() {
+        // Closing a client removes it from connections
+        for (IConnection conn : new ArrayList<>(connections.values())) {
+            conn.close();
+        }
+        connections = null;
+        clientGroup.shutdownGracefully().awaitUninterruptibly();
+    }
+
+    private String key(String host, int port) {
+        return String.format("%s:%d", host, port);
+    }
+}
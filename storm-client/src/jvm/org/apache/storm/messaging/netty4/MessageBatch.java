@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCompression;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.FrameCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Task messages waiting to be written out together, followed by an end of batch marker. Encoded with the same
+ * {@link FrameCodec} as the netty transport's MessageBatch so either transport can talk to the other.
+ */
+class MessageBatch {
+    private final int bufferSize;
+    private final ArrayList<TaskMessage> msgs = new ArrayList<>();
+    private int encodedLength;
+    private int frameVersion = 1;
+    private BatchCompression compression = null;
+
+    MessageBatch(int bufferSize) {
+        this.bufferSize = bufferSize;
+        encodedLength = ControlMessage.EOB_MESSAGE.encodeLength();
+    }
+
+    void add(TaskMessage msg) {
+        if (msg == null) {
+            throw new RuntimeException("null object forbidden in message batch");
+        }
+        msgs.add(msg);
+        encodedLength += FrameCodec.V1_HEADER_SIZE;
+        if (msg.message() != null) {
+            encodedLength += msg.message().length;
+        }
+    }
+
+    /**
+     * @return true if this batch used up allowed buffer size
+     */
+    boolean isFull() {
+        return encodedLength >= bufferSize;
+    }
+
+    boolean isEmpty() {
+        return msgs.isEmpty();
+    }
+
+    int size() {
+        return msgs.size();
+    }
+
+    /**
+     * @param frameVersion 2 to encode task ids as varints, which also lifts the limit of Short.MAX_VALUE on them.
+     *                     Only for connections to servers that sent {@link ControlMessage#FRAME_V2_SUPPORTED}.
+     */
+    void setFrameVersion(int frameVersion) {
+        this.frameVersion = frameVersion;
+    }
+
+    /**
+     * @param compression to compress the batch with if it is large enough. Only for connections to servers that
+     *                    accepted its codec.
+     */
+    void setCompression(BatchCompression compression) {
+        this.compression = compression;
+    }
+
+    BatchCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return how many bytes the batch takes up at most once encoded
+     */
+    int encodeLength() {
+        return FrameCodec.maxEncodeLength(encodedLength, msgs.size(), frameVersion);
+    }
+
+    /**
+     * Write the batch into the buffer, see {@link FrameCodec}.
+     */
+    void write(ByteBuf out) {
+        int length = encodeLength();
+        out.ensureWritable(length);
+        ByteBuffer view = out.nioBuffer(out.writerIndex(), length);
+        int start = view.position();
+        FrameCodec.writeBatch(msgs, frameVersion, view);
+        out.writerIndex(out.writerIndex() + view.position() - start);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.netty.FrameReader;
+import org.apache.storm.messaging.netty.IBatchCodec;
+import org.apache.storm.messaging.netty.SaslNettyServer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Reads the same wire format as the netty transport's MessageDecoder, with the same {@link FrameReader}. Task messages
+ * are passed on as a List of TaskMessage per read, control messages, SASL tokens and codec messages on their own. On
+ * the server side, if the callback can deserialize, task messages are deserialized straight out of the cumulation
+ * buffer and passed on as a List of AddressedTuple.
+ */
+class MessageDecoder extends ByteToMessageDecoder {
+    private final Supplier<IConnectionCallback> callback;
+    private final boolean authRequired;
+    private final FrameReader reader = new FrameReader();
+
+    MessageDecoder() {
+        this(null, false);
+    }
+
+    /**
+     * @param callback the current callback of the server
+     * @param authRequired whether messages may only be deserialized once the channel passed SASL authentication
+     */
+    MessageDecoder(Supplier<IConnectionCallback> callback, boolean authRequired) {
+        this.callback = callback;
+        this.authRequired = authRequired;
+    }
+
+    /**
+     * Read compressed batches with this codec from now on. Called on the event loop while handling the
+     * BatchCodecMessage that negotiated it, before any more frames are decoded.
+     */
+    void setCodec(IBatchCodec codec) {
+        reader.setCodec(codec);
+    }
+
+    private IConnectionCallback directCallback(ChannelHandlerContext ctx) {
+        IConnectionCallback cb = callback == null ? null : callback.get();
+        if (cb == null || !cb.canDeserialize()) {
+            return null;
+        }
+        if (authRequired) {
+            SaslNettyServer saslNettyServer = ctx.channel().attr(SaslStormServerHandler.SASL_NETTY_SERVER).get();
+            if (saslNettyServer == null || !saslNettyServer.isComplete()) {
+                // Leave it to the authorize handler
+                return null;
+            }
+        }
+        return cb;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+        // A view of the readable bytes, not a copy unless the cumulation is made up of several buffers
+        ByteBuffer in = buf.nioBuffer(buf.readerIndex(), buf.readableBytes());
+        int start = in.position();
+        List<Object> ret = new ArrayList<>();
+        // Handlers may change the pipeline on a frame that is not a task message, so it comes by itself and nothing
+        // more is decoded before they saw it
+        Object single = reader.read(in, directCallback(ctx), ret);
+        buf.skipBytes(in.position() - start);
+        if (!ret.isEmpty()) {
+            out.add(ret);
+        } else if (single != null) {
+            out.add(single);
+        }
+    }
+}
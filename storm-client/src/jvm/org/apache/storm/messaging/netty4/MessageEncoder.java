@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.messaging.netty.BatchCompression;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.FrameCodec;
+import org.apache.storm.messaging.netty.SaslMessageToken;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Same wire format as the netty transport's MessageEncoder. Batches and control messages are written into buffers
+ * from the channel's (pooled) allocator, messages that were already encoded are wrapped without copying.
+ */
+@ChannelHandler.Sharable
+class MessageEncoder extends MessageToMessageEncoder<Object> {
+    static final MessageEncoder INSTANCE = new MessageEncoder();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object obj, List<Object> out) throws Exception {
+        if (obj instanceof ControlMessage) {
+            ControlMessage msg = (ControlMessage) obj;
+            ByteBuf buf = ctx.alloc().ioBuffer(msg.encodeLength());
+            buf.writeShort(msg.getCode());
+            out.add(buf);
+        } else if (obj instanceof MessageBatch) {
+            MessageBatch batch = (MessageBatch) obj;
+            BatchCompression compression = batch.getCompression();
+            if (compression != null && compression.accepts(batch.encodeLength())) {
+                out.add(compress(ctx, batch, compression));
+                return;
+            }
+            ByteBuf buf = ctx.alloc().ioBuffer(batch.encodeLength());
+            batch.write(buf);
+            if (compression != null) {
+                compression.sent(buf.readableBytes());
+            }
+            out.add(buf);
+        } else if (obj instanceof EncodedTaskMessages) {
+            EncodedTaskMessages msgs = (EncodedTaskMessages) obj;
+            if (msgs.getFrameVersion() >= 2) {
+                int length = FrameCodec.maxEncodeLengthV2(msgs);
+                ByteBuf buf = ctx.alloc().ioBuffer(length);
+                ByteBuffer view = buf.nioBuffer(0, length);
+                int start = view.position();
+                FrameCodec.writeBatchV2(msgs, view);
+                out.add(buf.writerIndex(view.position() - start));
+            } else {
+                // Already in wire format, the sender releases it once the write completes
+                out.add(Unpooled.wrappedBuffer(msgs.getBuffer()));
+            }
+        } else if (obj instanceof BatchCodecMessage) {
+            byte[] codec = ((BatchCodecMessage) obj).getCodecBytes();
+            ByteBuf buf = ctx.alloc().ioBuffer(6 + codec.length);
+            buf.writeShort(BatchCodecMessage.IDENTIFIER);
+            buf.writeInt(codec.length);
+            buf.writeBytes(codec);
+            out.add(buf);
+        } else if (obj instanceof SaslMessageToken) {
+            byte[] token = ((SaslMessageToken) obj).getSaslToken();
+            int length = token == null ? 0 : token.length;
+            ByteBuf buf = ctx.alloc().ioBuffer(6 + length);
+            buf.writeShort(SaslMessageToken.IDENTIFIER);
+            buf.writeInt(length);
+            if (length > 0) {
+                buf.writeBytes(token);
+            }
+            out.add(buf);
+        } else {
+            throw new RuntimeException("Unsupported encoding of object of class " + obj.getClass().getName());
+        }
+    }
+
+    /**
+     * Encode the batch into a heap buffer and compress it from there into a second one.
+     * @return the compressed batch, or the batch as is if compressing did not make it smaller
+     */
+    private static ByteBuf compress(ChannelHandlerContext ctx, MessageBatch batch, BatchCompression compression) {
+        ByteBuf raw = ctx.alloc().heapBuffer(batch.encodeLength());
+        batch.write(raw);
+        int length = raw.readableBytes();
+        ByteBuf frame = ctx.alloc().heapBuffer(length);
+        int frameLength = compression.compress(raw.array(), raw.arrayOffset() + raw.readerIndex(), length,
+            frame.array(), frame.arrayOffset());
+        if (frameLength < 0) {
+            frame.release();
+            return raw;
+        }
+        raw.release();
+        return frame.writerIndex(frameLength);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.SaslMessageToken;
+import org.apache.storm.messaging.netty.SaslNettyClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side of the SASL handshake, the same exchange as the netty transport's SaslStormClientHandler. Removes
+ * itself from the pipeline once the server says authentication is complete.
+ */
+class SaslStormClientHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(SaslStormClientHandler.class);
+    private static final AttributeKey<SaslNettyClient> SASL_NETTY_CLIENT = AttributeKey.valueOf("saslNettyClient");
+
+    private final Client client;
+    private final String name;
+    private final byte[] token;
+
+    SaslStormClientHandler(Client client) {
+        this.client = client;
+        name = client.name();
+        String secretKey = client.secretKey();
+        token = secretKey == null ? null : secretKey.getBytes();
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        try {
+            SaslNettyClient saslNettyClient = ctx.channel().attr(SASL_NETTY_CLIENT).get();
+            if (saslNettyClient == null) {
+                LOG.debug("Creating saslNettyClient now for channel: {}", ctx.channel());
+                saslNettyClient = new SaslNettyClient(name, token);
+                ctx.channel().attr(SASL_NETTY_CLIENT).set(saslNettyClient);
+            }
+            LOG.debug("Sending SASL_TOKEN_MESSAGE_REQUEST");
+            ctx.writeAndFlush(ControlMessage.SASL_TOKEN_MESSAGE_REQUEST);
+        } catch (Exception e) {
+            LOG.error("Failed to authenticate with server due to error: ", e);
+        }
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        SaslNettyClient saslNettyClient = ctx.channel().attr(SASL_NETTY_CLIENT).get();
+        if (saslNettyClient == null) {
+            throw new Exception("saslNettyClient was unexpectedly null for channel: " + ctx.channel());
+        }
+
+        if (msg == ControlMessage.SASL_COMPLETE_REQUEST) {
+            LOG.debug("Server has sent us the SaslComplete message. Allowing normal work to proceed.");
+            if (!saslNettyClient.isComplete()) {
+                throw new Exception("Server returned a Sasl-complete message, but as far as "
+                    + "we can tell, we are not authenticated yet.");
+            }
+            ctx.pipeline().remove(this);
+            client.channelReady();
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        if (!(msg instanceof SaslMessageToken)) {
+            // Load metrics or back pressure from the server, these do not need authentication
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        // Generate SASL response, we only send it if it is non-null
+        byte[] responseToServer = saslNettyClient.saslResponse((SaslMessageToken) msg);
+        if (responseToServer == null) {
+            LOG.debug("Response to server is null: authentication should now be complete.");
+            if (!saslNettyClient.isComplete()) {
+                throw new Exception("Server response is null, but as far as "
+                    + "we can tell, we are not authenticated yet.");
+            }
+            client.channelReady();
+            return;
+        }
+        ctx.writeAndFlush(new SaslMessageToken(responseToServer));
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.storm.messaging.netty.SaslNettyServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Authorize or deny client requests based on existence and completeness of client's SASL authentication.
+ */
+@ChannelHandler.Sharable
+class SaslStormServerAuthorizeHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(SaslStormServerAuthorizeHandler.class);
+    static final SaslStormServerAuthorizeHandler INSTANCE = new SaslStormServerAuthorizeHandler();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        SaslNettyServer saslNettyServer = ctx.channel().attr(SaslStormServerHandler.SASL_NETTY_SERVER).get();
+        if (saslNettyServer == null || !saslNettyServer.isComplete()) {
+            LOG.warn("This client is *NOT* authorized to perform this action because SASL authentication did "
+                + "not complete: refusing to perform requested action: {}", msg);
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.SaslMessageToken;
+import org.apache.storm.messaging.netty.SaslNettyServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Server side of the SASL handshake, the same exchange as the netty transport's SaslStormServerHandler. Removes
+ * itself from the pipeline once the client is authenticated, the {@link SaslStormServerAuthorizeHandler} behind it
+ * keeps anything else out until then.
+ */
+class SaslStormServerHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(SaslStormServerHandler.class);
+    static final AttributeKey<SaslNettyServer> SASL_NETTY_SERVER = AttributeKey.valueOf("saslNettyServer");
+
+    private final Server server;
+    private final String topologyName;
+    private final byte[] token;
+
+    SaslStormServerHandler(Server server) {
+        this.server = server;
+        topologyName = server.name();
+        String secretKey = server.secretKey();
+        token = secretKey == null ? null : secretKey.getBytes();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg == ControlMessage.SASL_TOKEN_MESSAGE_REQUEST) {
+            SaslNettyServer saslNettyServer = ctx.channel().attr(SASL_NETTY_SERVER).get();
+            if (saslNettyServer == null) {
+                LOG.debug("No saslNettyServer for {} yet; creating now", ctx.channel());
+                try {
+                    saslNettyServer = new SaslNettyServer(topologyName, token);
+                } catch (IOException ioe) {
+                    LOG.error("Error occurred while creating saslNettyServer on server {} for client {}",
+                        ctx.channel().localAddress(), ctx.channel().remoteAddress());
+                    throw ioe;
+                }
+                ctx.channel().attr(SASL_NETTY_SERVER).set(saslNettyServer);
+            }
+            ctx.writeAndFlush(new SaslMessageToken(saslNettyServer.response(new byte[0])));
+            return;
+        }
+
+        if (msg instanceof SaslMessageToken) {
+            SaslNettyServer saslNettyServer = ctx.channel().attr(SASL_NETTY_SERVER).get();
+            if (saslNettyServer == null) {
+                throw new Exception("saslNettyServer was unexpectedly null for channel: " + ctx.channel());
+            }
+            ctx.write(new SaslMessageToken(saslNettyServer.response(((SaslMessageToken) msg).getSaslToken())));
+            if (saslNettyServer.isComplete()) {
+                LOG.debug("SASL authentication is complete for client with username: {}",
+                    saslNettyServer.getUserName());
+                ctx.write(ControlMessage.SASL_COMPLETE_REQUEST);
+                ctx.pipeline().remove(this);
+                ctx.flush();
+                server.authenticated(ctx.channel());
+                return;
+            }
+            ctx.flush();
+            return;
+        }
+
+        // Anything else is refused by the authorize handler if authentication has not completed
+        LOG.warn("Sending upstream an unexpected non-SASL message : {}", msg);
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        server.closeChannel(ctx.channel());
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelMatchers;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.apache.storm.Config;
+import org.apache.storm.grouping.Load;
+import org.apache.storm.messaging.ConnectionWithStatus;
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.messaging.netty.BatchCompression;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.SaslUtils;
+import org.apache.storm.metric.api.IStatefulObject;
+import org.apache.storm.serialization.KryoValuesSerializer;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.utils.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Netty 4 server receiving task messages from the clients of other workers, see {@link Context}.
+ */
+class Server extends ConnectionWithStatus implements IStatefulObject {
+    private static final Logger LOG = LoggerFactory.getLogger(Server.class);
+
+    private final Map<String, Object> topoConf;
+    private final int port;
+    private final ConcurrentHashMap<String, AtomicInteger> messagesEnqueued = new ConcurrentHashMap<>();
+    private final AtomicInteger messagesDequeued = new AtomicInteger(0);
+
+    private final ChannelGroup allChannels = new DefaultChannelGroup("storm-server", GlobalEventExecutor.INSTANCE);
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final KryoValuesSerializer ser;
+    private final int boundPort;
+    private final boolean authRequired;
+    private volatile boolean closing = false;
+    private volatile IConnectionCallback cb = null;
+
+    Server(Map<String, Object> topoConf, int port) {
+        this.topoConf = topoConf;
+        this.port = port;
+        ser = new KryoValuesSerializer(topoConf);
+
+        int bufferSize = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_BUFFER_SIZE));
+        int backlog = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_SOCKET_BACKLOG), 500);
+        int maxWorkers = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_SERVER_WORKER_THREADS));
+        final boolean isNettyAuth = ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_AUTHENTICATION), false);
+        authRequired = isNettyAuth;
+
+        LOG.info("Create Netty4 Server " + nettyName() + ", buffer_size: " + bufferSize + ", maxWorkers: " + maxWorkers);
+        bossGroup = Context.newEventLoopGroup(1, nettyName() + "-boss");
+        workerGroup = Context.newEventLoopGroup(maxWorkers, nettyName() + "-worker");
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+            .group(bossGroup, workerGroup)
+            .channel(Context.serverSocketChannelClass())
+            .option(ChannelOption.SO_BACKLOG, backlog)
+            .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childOption(ChannelOption.SO_RCVBUF, bufferSize)
+            .childOption(ChannelOption.SO_KEEPALIVE, true)
+            .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+            .childHandler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    ChannelPipeline pipeline = ch.pipeline();
+                    pipeline.addLast("decoder", new MessageDecoder(Server.this::getCallback, isNettyAuth));
+                    pipeline.addLast("encoder", MessageEncoder.INSTANCE);
+                    if (isNettyAuth) {
+                        // Authenticate: Removed after authentication completes
+                        pipeline.addLast("saslServerHandler", new SaslStormServerHandler(Server.this));
+                        // Authorize
+                        pipeline.addLast("authorizeServerHandler", SaslStormServerAuthorizeHandler.INSTANCE);
+                    }
+                    pipeline.addLast("handler", new StormServerHandler(Server.this));
+                }
+            });
+
+        // Bind and start to accept incoming connections.
+        Channel channel = bootstrap.bind(new InetSocketAddress(port)).syncUninterruptibly().channel();
+        boundPort = ((InetSocketAddress) channel.localAddress()).getPort();
+        allChannels.add(channel);
+    }
+
+    private void addReceiveCount(String from, int amount) {
+        //This is possibly lossy in the case where a value is deleted
+        // because it has received no messages over the metrics collection
+        // period and new messages are starting to come in.
+        AtomicInteger i = messagesEnqueued.get(from);
+        if (i == null) {
+            i = new AtomicInteger(amount);
+            AtomicInteger prev = messagesEnqueued.putIfAbsent(from, i);
+            if (prev != null) {
+                prev.addAndGet(amount);
+            }
+        } else {
+            i.addAndGet(amount);
+        }
+    }
+
+    /**
+     * enqueue a received message.
+     */
+    void enqueue(List<TaskMessage> msgs, String from) throws InterruptedException {
+        if (null == msgs || msgs.size() == 0 || closing) {
+            return;
+        }
+        addReceiveCount(from, msgs.size());
+        IConnectionCallback callback = cb;
+        if (callback != null) {
+            callback.recv(msgs);
+        }
+    }
+
+    /**
+     * enqueue messages the decoder already deserialized.
+     */
+    void enqueueTuples(List<AddressedTuple> tuples, String from) {
+        if (null == tuples || tuples.size() == 0 || closing) {
+            return;
+        }
+        addReceiveCount(from, tuples.size());
+        cb.recvTuples(tuples);
+    }
+
+    @Override
+    public void registerRecv(IConnectionCallback cb) {
+        this.cb = cb;
+    }
+
+    IConnectionCallback getCallback() {
+        return cb;
+    }
+
+    void channelConnected(Channel channel) {
+        allChannels.add(channel);
+        if (!authRequired) {
+            channel.writeAndFlush(ControlMessage.FRAME_V2_SUPPORTED);
+        }
+    }
+
+    /**
+     * Accept the codec a client asked for if it is the one this topology is configured with, and have the channel's
+     * decoder read compressed batches with it.
+     */
+    void codecRequested(Channel channel, BatchCodecMessage request) {
+        String codec = (String) topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_CODEC);
+        if (codec != null && codec.equals(request.getCodec())) {
+            channel.pipeline().get(MessageDecoder.class).setCodec(BatchCompression.newCodec(codec));
+            channel.writeAndFlush(new BatchCodecMessage(codec));
+        } else {
+            LOG.warn("Not accepting batches compressed with {} from {}", request.getCodec(), channel.remoteAddress());
+            channel.writeAndFlush(new BatchCodecMessage(null));
+        }
+    }
+
+    void authenticated(Channel channel) {
+        // Only now, an earlier client would still be expecting SASL messages
+        channel.writeAndFlush(ControlMessage.FRAME_V2_SUPPORTED);
+    }
+
+    /**
+     * Close the channel without waiting, this is called from the event loop.
+     */
+    void closeChannel(Channel channel) {
+        channel.close();
+        allChannels.remove(channel);
+    }
+
+    @Override
+    public int getPort() {
+        return boundPort;
+    }
+
+    /**
+     * close all channels, and release resources.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closing) {
+            closing = true;
+            allChannels.close().awaitUninterruptibly();
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+        }
+    }
+
+    @Override
+    public synchronized void sendLoadMetrics(Map<Integer, Double> taskToLoad) {
+        sendToClients(taskToLoad);
+    }
+
+    /**
+     * Sent like the load metrics, to the system task, but with a list of the congested tasks in place of the load
+     * map. Synchronized as it can be called from any thread that crosses a receive queue water mark.
+     */
+    @Override
+    public synchronized void sendBackPressureStatus(Collection<Integer> congestedTasks) {
+        sendToClients(new ArrayList<>(congestedTasks));
+    }
+
+    private void sendToClients(Object value) {
+        try {
+            MessageBatch mb = new MessageBatch(1);
+            mb.add(new TaskMessage(-1, ser.serialize(Arrays.asList(value))));
+            allChannels.writeAndFlush(mb, ChannelMatchers.isNonServerChannel());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Map<Integer, Load> getLoad(Collection<Integer> tasks) {
+        throw new RuntimeException("Server connection cannot get load");
+    }
+
+    @Override
+    public void send(int task, byte[] message) {
+        throw new UnsupportedOperationException("Server connection should not send any messages");
+    }
+
+    @Override
+    public void send(Iterator<TaskMessage> msgs) {
+        throw new UnsupportedOperationException("Server connection should not send any messages");
+    }
+
+    private String nettyName() {
+        return "Netty4-server-localhost-" + port;
+    }
+
+    @Override
+    public Status status() {
+        if (closing) {
+            return Status.Closed;
+        }
+        for (Channel channel : allChannels) {
+            if (!channel.isActive()) {
+                return Status.Connecting;
+            }
+        }
+        return Status.Ready;
+    }
+
+    @Override
+    public Object getState() {
+        LOG.debug("Getting metrics for server on port {}", port);
+        HashMap<String, Object> ret = new HashMap<>();
+        ret.put("dequeuedMessages", messagesDequeued.getAndSet(0));
+        HashMap<String, Integer> enqueued = new HashMap<>();
+        Iterator<Map.Entry<String, AtomicInteger>> it = messagesEnqueued.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, AtomicInteger> ent = it.next();
+            //Yes we can delete something that is not 0 because of races, but that is OK for metrics
+            AtomicInteger i = ent.getValue();
+            if (i.get() == 0) {
+                it.remove();
+            } else {
+                enqueued.put(ent.getKey(), i.getAndSet(0));
+            }
+        }
+        ret.put("enqueued", enqueued);
+        return ret;
+    }
+
+    String name() {
+        return (String) topoConf.get(Config.TOPOLOGY_NAME);
+    }
+
+    String secretKey() {
+        return SaslUtils.getSecretKey(topoConf);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Netty4 server listening on port %s", port);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.serialization.KryoValuesDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes the load metrics and back pressure updates the server sends back, and lets the client know when the
+ * channel can take more writes.
+ */
+class StormClientHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(StormClientHandler.class);
+    private final Client client;
+    private final KryoValuesDeserializer des;
+
+    StormClientHandler(Client client, Map<String, Object> conf) {
+        this.client = client;
+        des = new KryoValuesDeserializer(conf);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object message) throws Exception {
+        if (message instanceof ControlMessage) {
+            if (message == ControlMessage.FAILURE_RESPONSE) {
+                LOG.info("failure response:{}", message);
+            } else if (message == ControlMessage.FRAME_V2_SUPPORTED) {
+                client.frameV2Supported(ctx.channel());
+            }
+        } else if (message instanceof BatchCodecMessage) {
+            client.codecNegotiated(ctx.channel(), (BatchCodecMessage) message);
+        } else if (message instanceof List) {
+            //This should be the metrics, and there should only be one of them
+            List<TaskMessage> list = (List<TaskMessage>) message;
+            if (list.size() < 1) {
+                throw new RuntimeException("Didn't see enough load metrics (" + client.getDstAddress() + ") " + list);
+            }
+            TaskMessage tm = list.get(list.size() - 1);
+            if (tm.task() != -1) {
+                throw new RuntimeException("Metrics messages are sent to the system task (" + client.getDstAddress()
+                    + ") " + tm);
+            }
+            List metrics = des.deserialize(tm.message());
+            if (metrics.size() < 1) {
+                throw new RuntimeException("No metrics data in the metrics message (" + client.getDstAddress() + ") "
+                    + metrics);
+            }
+            if (metrics.get(0) instanceof List) {
+                // The tasks on the server that are congested, see Server.sendBackPressureStatus
+                client.setCongestedTasks(new HashSet<>((List<Integer>) metrics.get(0)));
+            } else if (metrics.get(0) instanceof Map) {
+                client.setLoadMetrics((Map<Integer, Double>) metrics.get(0));
+            } else {
+                throw new RuntimeException("The metrics did not have a map in the first slot ("
+                    + client.getDstAddress() + ") " + metrics);
+            }
+        } else {
+            throw new RuntimeException("Don't know how to handle a message of type "
+                + message + " (" + client.getDstAddress() + ")");
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        client.notifyWritabilityChanged(ctx.channel());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (!(cause instanceof ConnectException)) {
+            LOG.info("Connection to " + client.getDstAddress() + " failed:", cause);
+        }
+    }
+}
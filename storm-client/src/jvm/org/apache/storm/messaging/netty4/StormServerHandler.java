@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hands the task messages read from a client connection over to the server.
+ */
+class StormServerHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(StormServerHandler.class);
+    private static final Set<Class> allowedExceptions = new HashSet<>(Arrays.asList(new Class[] {IOException.class}));
+    private final Server server;
+    private String remote;
+
+    StormServerHandler(Server server) {
+        this.server = server;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        remote = String.valueOf(ctx.channel().remoteAddress());
+        server.channelConnected(ctx.channel());
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof BatchCodecMessage) {
+            server.codecRequested(ctx.channel(), (BatchCodecMessage) msg);
+            return;
+        }
+        if (!(msg instanceof List)) {
+            // Control messages other than the SASL ones carry nothing for the server
+            return;
+        }
+        List<?> msgs = (List<?>) msg;
+        if (!msgs.isEmpty() && msgs.get(0) instanceof AddressedTuple) {
+            // Already deserialized by the decoder
+            server.enqueueTuples((List<AddressedTuple>) msgs, remote);
+            return;
+        }
+        try {
+            server.enqueue((List<TaskMessage>) msgs, remote);
+        } catch (InterruptedException e) {
+            LOG.info("failed to enqueue a request message", e);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        try {
+            LOG.error("server errors in handling the request", cause);
+        } catch (Throwable err) {
+            // Doing nothing (probably due to an oom issue) and hoping Utils.handleUncaughtException will handle it
+        }
+        try {
+            Utils.handleUncaughtException(cause, allowedExceptions);
+        } catch (Error error) {
+            LOG.info("Received error in netty thread.. terminating server...");
+            Runtime.getRuntime().exit(1);
+        }
+    }
+}
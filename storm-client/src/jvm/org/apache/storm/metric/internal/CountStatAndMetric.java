@@ -19,20 +19,23 @@ package org.apache.storm.metric.internal;
 
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.storm.metric.api.IMetric;
 
 /**
  * Acts as a Count Metric, but also keeps track of approximate counts
  * for the last 10 mins, 3 hours, 1 day, and all time.
+ *
+ * Counting only touches a striped counter, and the buckets are rotated
+ * by the clock whenever the counts are read, so no timer is involved.
  */
 public class CountStatAndMetric implements IMetric{
-    private final AtomicLong _currentBucket;
-    // All internal state except for the count of the current bucket are
+    //Only ever grows, the current bucket is what was added since _countAtBucketStart
+    private final LongAdder _count;
+    // All internal state except for the striped counter are
     // protected using a lock on this counter
+    private long _countAtBucketStart;
     private long _bucketStart;
 
     //exact variable time, that is added to the current bucket
@@ -56,8 +59,6 @@ public class CountStatAndMetric implements IMetric{
     //all time
     private long _allTime;
 
-    private final TimerTask _task;
-
     /**
      * @param numBuckets the number of buckets to divide the time periods into.
      */
@@ -90,13 +91,8 @@ public class CountStatAndMetric implements IMetric{
         _exactExtra = 0;
 
         _bucketStart = startTime >= 0 ? startTime : System.currentTimeMillis();
-        _currentBucket = new AtomicLong(0);
-        if (startTime < 0) {
-            _task = new Fresher();
-            MetricStatTimer._timer.scheduleAtFixedRate(_task, _tmSize, _tmSize);
-        } else {
-            _task = null;
-        }
+        _count = new LongAdder();
+        _countAtBucketStart = 0;
     }
 
     /**
@@ -105,18 +101,16 @@ public class CountStatAndMetric implements IMetric{
      * @param count number to count
      */
     public void incBy(long count) {
-        _currentBucket.addAndGet(count);
+        _count.add(count);
     }
 
-   
-
     @Override
     public synchronized Object getValueAndReset() {
         return getValueAndReset(System.currentTimeMillis());
     }
 
     synchronized Object getValueAndReset(long now) {
-        long value = _currentBucket.getAndSet(0);
+        long value = takeCurrentBucket();
         long timeSpent = now - _bucketStart;
         long ret = value + _exactExtra;
         _bucketStart = now;
@@ -125,14 +119,31 @@ public class CountStatAndMetric implements IMetric{
         return ret;
     }
 
+    /**
+     * Rotate the buckets if the current one is older than the smallest bucket size.
+     * Every further bucket that went by since, up to the number of buckets, is rotated in empty.
+     */
+    synchronized void rotateIfDue(long now) {
+        if (now - _bucketStart >= _tmSize) {
+            rotateSched(now);
+        }
+    }
+
     synchronized void rotateSched(long now) {
-        long value = _currentBucket.getAndSet(0);
+        long value = takeCurrentBucket();
         long timeSpent = now - _bucketStart;
         _exactExtra += value;
         _bucketStart = now;
         rotateBuckets(value, timeSpent);
     }
 
+    private long takeCurrentBucket() {
+        //Counts added concurrently are either part of this bucket or of the next one, never lost
+        long value = _count.sum() - _countAtBucketStart;
+        _countAtBucketStart += value;
+        return value;
+    }
+
     synchronized void rotateBuckets(long value, long timeSpent) {
         rotate(value, timeSpent, _tmSize, _tmTime, _tmBuckets);
         rotate(value, timeSpent, _thSize, _thTime, _thBuckets);
@@ -143,19 +154,32 @@ public class CountStatAndMetric implements IMetric{
     private synchronized void rotate(long value, long timeSpent, long targetSize, long [] times, long [] buckets) {
         times[0] += timeSpent;
         buckets[0] += value;
+        if (times[0] < targetSize) {
+            return;
+        }
 
+        //After being idle for several buckets, the time past the current bucket went by with nothing counted,
+        // so it gets empty buckets of its own instead of the count being spread over all of it
+        long emptyBuckets = times[0] / targetSize - 1;
+        times[0] -= emptyBuckets * targetSize;
+        shift(times, buckets);
+        for (long i = Math.min(emptyBuckets, buckets.length); i > 0; i--) {
+            times[0] = targetSize;
+            shift(times, buckets);
+        }
+    }
+
+    private static void shift(long [] times, long [] buckets) {
         long currentTime = 0;
         long currentVal = 0;
-        if (times[0] >= targetSize) {
-            for (int i = 0; i < buckets.length; i++) {
-                long tmpTime = times[i];
-                times[i] = currentTime;
-                currentTime = tmpTime;
-
-                long cnt = buckets[i];
-                buckets[i] = currentVal;
-                currentVal = cnt;
-            }
+        for (int i = 0; i < buckets.length; i++) {
+            long tmpTime = times[i];
+            times[i] = currentTime;
+            currentTime = tmpTime;
+
+            long cnt = buckets[i];
+            buckets[i] = currentVal;
+            currentVal = cnt;
         }
     }
 
@@ -167,12 +191,14 @@ public class CountStatAndMetric implements IMetric{
      * ":all-time" for all time
      */
     public synchronized Map<String, Long> getTimeCounts() {
-        return getTimeCounts(System.currentTimeMillis());
+        long now = System.currentTimeMillis();
+        rotateIfDue(now);
+        return getTimeCounts(now);
     }
 
     synchronized Map<String, Long> getTimeCounts(long now) {
         Map<String, Long> ret = new HashMap<>();
-        long value = _currentBucket.get();
+        long value = _count.sum() - _countAtBucketStart;
         long timeSpent = now - _bucketStart;
         ret.put("600", readApproximateTime(value, timeSpent, _tmTime, _tmBuckets, 600 * 1000));
         ret.put("10800", readApproximateTime(value, timeSpent, _thTime, _thBuckets, 10800 * 1000));
@@ -197,15 +223,9 @@ public class CountStatAndMetric implements IMetric{
         return total;
     }
 
+    /**
+     * Nothing to release anymore, the buckets are rotated when they are read.
+     */
     public void close() {
-        if (_task != null) {
-            _task.cancel();
-        }
-    }
-
-    private class Fresher extends TimerTask {
-        public void run () {
-            rotateSched(System.currentTimeMillis());
-        }
     }
 }
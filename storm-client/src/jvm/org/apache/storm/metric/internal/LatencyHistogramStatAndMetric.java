@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.metric.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.storm.metric.api.IMetric;
+
+/**
+ * Acts as a Latency Metric, but records every latency into an HdrHistogram so that
+ * percentiles and not only averages can be reported for the last 10 mins, 3 hours,
+ * 1 day, and all time.
+ *
+ * Recording goes through a {@link Recorder} and never takes a lock.  The recorded values
+ * are moved into the windows by the clock whenever they are read, so no timer is involved.  Each window
+ * is made of two histograms covering half of the window each, and the older one is dropped
+ * when a new half starts, so a window covers between half of and the whole time period.
+ *
+ * Latencies are tracked up to {@link #HIGHEST_TRACKABLE_LATENCY_MS} (larger values are
+ * clamped) with {@link #SIGNIFICANT_DIGITS} significant digits, which takes 16KB per
+ * histogram.  The recorder, the 6 window halves, the all time, since last report and
+ * scratch histograms add up to about 210KB per instance, no matter how many tuples or
+ * streams are recorded.
+ */
+public class LatencyHistogramStatAndMetric implements IMetric {
+    public static final long HIGHEST_TRACKABLE_LATENCY_MS = 60 * 60 * 1000;
+    public static final int SIGNIFICANT_DIGITS = 2;
+    public static final String[] PERCENTILES = {"50", "99", "99.9"};
+
+    private static final String[] WINDOWS = {"600", "10800", "86400"};
+    private static final String ALL_TIME = ":all-time";
+
+    private final Recorder _recorder = new Recorder(HIGHEST_TRACKABLE_LATENCY_MS, SIGNIFICANT_DIGITS);
+
+    // All internal state except for the recorder is protected using the Object Lock
+    private final Histogram _interval = newHistogram();
+    private final Histogram _sinceReport = newHistogram();
+    private final Histogram _allTime = newHistogram();
+    private final long[] _halfSize = new long[WINDOWS.length];
+    private final long[] _halfStart = new long[WINDOWS.length];
+    private final Histogram[] _current = new Histogram[WINDOWS.length];
+    private final Histogram[] _previous = new Histogram[WINDOWS.length];
+
+    public LatencyHistogramStatAndMetric() {
+        this(-1);
+    }
+
+    /**
+     * Constructor
+     * @param startTime if positive the simulated time to start the from.
+     */
+    LatencyHistogramStatAndMetric(long startTime) {
+        long start = startTime >= 0 ? startTime : System.currentTimeMillis();
+        for (int i = 0; i < WINDOWS.length; i++) {
+            _halfSize[i] = Long.parseLong(WINDOWS[i]) * 1000 / 2;
+            _halfStart[i] = start;
+            _current[i] = newHistogram();
+            _previous[i] = newHistogram();
+        }
+    }
+
+    /**
+     * Record a specific latency
+     *
+     * @param latency what we are recording in ms
+     */
+    public void record(long latency) {
+        _recorder.recordValue(Math.max(0, Math.min(latency, HIGHEST_TRACKABLE_LATENCY_MS)));
+    }
+
+    /**
+     * @return a map of percentile to latency for everything recorded since the last call.
+     */
+    @Override
+    public synchronized Object getValueAndReset() {
+        return getValueAndReset(System.currentTimeMillis());
+    }
+
+    synchronized Object getValueAndReset(long now) {
+        drain(now);
+        Map<String, Double> ret = percentiles(_sinceReport);
+        _sinceReport.reset();
+        return ret;
+    }
+
+    synchronized void drain(long now) {
+        for (int i = 0; i < WINDOWS.length; i++) {
+            long timeSpent = now - _halfStart[i];
+            if (timeSpent >= _halfSize[i]) {
+                Histogram tmp = _previous[i];
+                _previous[i] = _current[i];
+                _current[i] = tmp;
+                _current[i].reset();
+                if (timeSpent >= 2 * _halfSize[i]) {
+                    //Nothing was drained for a whole window, so the previous half is stale too
+                    _previous[i].reset();
+                }
+                _halfStart[i] = now;
+            }
+        }
+        _recorder.getIntervalHistogramInto(_interval);
+        if (_interval.getTotalCount() > 0) {
+            for (Histogram h : _current) {
+                h.add(_interval);
+            }
+            _allTime.add(_interval);
+            _sinceReport.add(_interval);
+        }
+    }
+
+    /**
+     * @return a map of time window to a copy of the histogram of latencies for it.
+     * Keys are "600" for last 10 mins
+     * "10800" for the last 3 hours
+     * "86400" for the last day
+     * ":all-time" for all time
+     */
+    public synchronized Map<String, Histogram> getTimeLatHistograms() {
+        return getTimeLatHistograms(System.currentTimeMillis());
+    }
+
+    synchronized Map<String, Histogram> getTimeLatHistograms(long now) {
+        drain(now);
+        Map<String, Histogram> ret = new HashMap<>();
+        for (int i = 0; i < WINDOWS.length; i++) {
+            Histogram h = _previous[i].copy();
+            h.add(_current[i]);
+            ret.put(WINDOWS[i], h);
+        }
+        ret.put(ALL_TIME, _allTime.copy());
+        return ret;
+    }
+
+    /**
+     * @return a map of time window to a map of percentile to latency, with the same
+     * windows as {@link #getTimeLatHistograms()} and the percentiles in {@link #PERCENTILES}.
+     */
+    public synchronized Map<String, Map<String, Double>> getTimeLatPercentiles() {
+        return getTimeLatPercentiles(System.currentTimeMillis());
+    }
+
+    synchronized Map<String, Map<String, Double>> getTimeLatPercentiles(long now) {
+        Map<String, Map<String, Double>> ret = new HashMap<>();
+        for (Map.Entry<String, Histogram> entry : getTimeLatHistograms(now).entrySet()) {
+            ret.put(entry.getKey(), percentiles(entry.getValue()));
+        }
+        return ret;
+    }
+
+    /**
+     * @return a map of time window to the compressed encoding of the histogram for it,
+     * leaving out the windows nothing was recorded in.
+     */
+    public synchronized Map<String, ByteBuffer> getTimeLatHistogramsEncoded() {
+        Map<String, ByteBuffer> ret = new HashMap<>();
+        for (Map.Entry<String, Histogram> entry : getTimeLatHistograms().entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                ret.put(entry.getKey(), encode(entry.getValue()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Nothing to release anymore, the recorded values are drained when they are read.
+     */
+    public void close() {
+    }
+
+    /**
+     * @return a new, empty histogram with the range and precision used for latencies.
+     */
+    public static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_LATENCY_MS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * @return a map of each of {@link #PERCENTILES} to its latency in the histogram.
+     */
+    public static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> ret = new HashMap<>();
+        for (String percentile : PERCENTILES) {
+            ret.put(percentile, (double) histogram.getValueAtPercentile(Double.parseDouble(percentile)));
+        }
+        return ret;
+    }
+
+    /**
+     * Serialize a histogram so that it can be sent and merged with others elsewhere.
+     */
+    public static ByteBuffer encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), length));
+    }
+
+    /**
+     * Deserialize a histogram produced by {@link #encode(Histogram)}, leaving the buffer untouched.
+     */
+    public static Histogram decode(ByteBuffer buffer) throws DataFormatException {
+        return Histogram.decodeFromCompressedByteBuffer(buffer.duplicate(), HIGHEST_TRACKABLE_LATENCY_MS);
+    }
+}
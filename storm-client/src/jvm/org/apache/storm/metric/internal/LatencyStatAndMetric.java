@@ -19,7 +19,7 @@ package org.apache.storm.metric.internal;
 
 import java.util.Map;
 import java.util.HashMap;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.utils.Utils;
@@ -27,18 +27,21 @@ import org.apache.storm.utils.Utils;
 /**
  * Acts as a Latency Metric, but also keeps track of approximate latency
  * for the last 10 mins, 3 hours, 1 day, and all time.
+ *
+ * Recording only touches striped counters, and the buckets are rotated
+ * by the clock whenever the latencies are read, so no timer is involved.
  */
 public class LatencyStatAndMetric implements IMetric {
-    //The current lat and count buckets are protected by a different lock
-    // from the other buckets.  This is to reduce the lock contention
-    // When doing complex calculations.  Never grab the instance object lock
-    // while holding _currentLock to avoid deadlocks
-    private final Object _currentLock = new byte[0];
-    private long _currentLatBucket;
-    private long _currentCountBucket;
+    //These only ever grow, the current buckets are what was added since
+    // _latAtBucketStart and _countAtBucketStart.  A reader can see a latency
+    // without its count for a moment, which is fine for an approximation.
+    private final LongAdder _lat;
+    private final LongAdder _count;
 
-    // All internal state except for the current buckets are
+    // All internal state except for the striped counters are
     // protected using the Object Lock
+    private long _latAtBucketStart;
+    private long _countAtBucketStart;
     private long _bucketStart;
 
     //exact variable time, that is added to the current bucket
@@ -67,8 +70,6 @@ public class LatencyStatAndMetric implements IMetric {
     private long _allTimeLat;
     private long _allTimeCount;
 
-    private final TimerTask _task;
-
     /**
      * @param numBuckets the number of buckets to divide the time periods into.
      */
@@ -106,14 +107,10 @@ public class LatencyStatAndMetric implements IMetric {
         _exactExtraCount = 0;
 
         _bucketStart = startTime >= 0 ? startTime : System.currentTimeMillis();
-        _currentLatBucket = 0;
-        _currentCountBucket = 0;
-        if (startTime < 0) {
-            _task = new Fresher();
-            MetricStatTimer._timer.scheduleAtFixedRate(_task, _tmSize, _tmSize);
-        } else {
-            _task = null;
-        }
+        _lat = new LongAdder();
+        _count = new LongAdder();
+        _latAtBucketStart = 0;
+        _countAtBucketStart = 0;
     }
 
     /**
@@ -122,10 +119,8 @@ public class LatencyStatAndMetric implements IMetric {
      * @param latency what we are recording
      */
     public void record(long latency) {
-        synchronized(_currentLock) {
-            _currentLatBucket += latency;
-            _currentCountBucket++;
-        }
+        _lat.add(latency);
+        _count.increment();
     }
 
     @Override
@@ -134,14 +129,10 @@ public class LatencyStatAndMetric implements IMetric {
     }
 
     synchronized Object getValueAndReset(long now) {
-        long lat;
-        long count;
-        synchronized(_currentLock) {
-            lat = _currentLatBucket;
-            count = _currentCountBucket;
-            _currentLatBucket = 0;
-            _currentCountBucket = 0;
-        }
+        long lat = _lat.sum() - _latAtBucketStart;
+        long count = _count.sum() - _countAtBucketStart;
+        _latAtBucketStart += lat;
+        _countAtBucketStart += count;
 
         long timeSpent = now - _bucketStart;
         long exactExtraCountSum = count + _exactExtraCount;
@@ -154,15 +145,21 @@ public class LatencyStatAndMetric implements IMetric {
         return ret;
     }
 
-    synchronized void rotateSched(long now) {
-        long lat;
-        long count;
-        synchronized(_currentLock) {
-            lat = _currentLatBucket;
-            count = _currentCountBucket;
-            _currentLatBucket = 0;
-            _currentCountBucket = 0;
+    /**
+     * Rotate the buckets if the current one is older than the smallest bucket size.
+     * Every further bucket that went by since, up to the number of buckets, is rotated in empty.
+     */
+    synchronized void rotateIfDue(long now) {
+        if (now - _bucketStart >= _tmSize) {
+            rotateSched(now);
         }
+    }
+
+    synchronized void rotateSched(long now) {
+        long lat = _lat.sum() - _latAtBucketStart;
+        long count = _count.sum() - _countAtBucketStart;
+        _latAtBucketStart += lat;
+        _countAtBucketStart += count;
 
         long timeSpent = now - _bucketStart;
         _exactExtraLat += lat;
@@ -184,24 +181,37 @@ public class LatencyStatAndMetric implements IMetric {
         times[0] += timeSpent;
         latBuckets[0] += lat;
         countBuckets[0] += count;
+        if (times[0] < targetSize) {
+            return;
+        }
+
+        //After being idle for several buckets, the time past the current bucket went by with nothing recorded,
+        // so it gets empty buckets of its own instead of the latencies being spread over all of it
+        long emptyBuckets = times[0] / targetSize - 1;
+        times[0] -= emptyBuckets * targetSize;
+        shift(times, latBuckets, countBuckets);
+        for (long i = Math.min(emptyBuckets, latBuckets.length); i > 0; i--) {
+            times[0] = targetSize;
+            shift(times, latBuckets, countBuckets);
+        }
+    }
 
+    private static void shift(long [] times, long [] latBuckets, long [] countBuckets) {
         long currentTime = 0;
         long currentLat = 0;
         long currentCount = 0;
-        if (times[0] >= targetSize) {
-            for (int i = 0; i < latBuckets.length; i++) {
-                long tmpTime = times[i];
-                times[i] = currentTime;
-                currentTime = tmpTime;
+        for (int i = 0; i < latBuckets.length; i++) {
+            long tmpTime = times[i];
+            times[i] = currentTime;
+            currentTime = tmpTime;
 
-                long lt = latBuckets[i];
-                latBuckets[i] = currentLat;
-                currentLat = lt;
+            long lt = latBuckets[i];
+            latBuckets[i] = currentLat;
+            currentLat = lt;
 
-                long cnt = countBuckets[i];
-                countBuckets[i] = currentCount;
-                currentCount = cnt;
-            }
+            long cnt = countBuckets[i];
+            countBuckets[i] = currentCount;
+            currentCount = cnt;
         }
     }
 
@@ -213,17 +223,15 @@ public class LatencyStatAndMetric implements IMetric {
      * ":all-time" for all time
      */
     public synchronized Map<String, Double> getTimeLatAvg() {
-        return getTimeLatAvg(System.currentTimeMillis());
+        long now = System.currentTimeMillis();
+        rotateIfDue(now);
+        return getTimeLatAvg(now);
     }
 
     synchronized Map<String, Double> getTimeLatAvg(long now) {
         Map<String, Double> ret = new HashMap<>();
-        long lat;
-        long count;
-        synchronized(_currentLock) {
-            lat = _currentLatBucket;
-            count = _currentCountBucket;
-        }
+        long lat = _lat.sum() - _latAtBucketStart;
+        long count = _count.sum() - _countAtBucketStart;
         long timeSpent = now - _bucketStart;
         ret.put("600", readApproximateLatAvg(lat, count, timeSpent, _tmTime, _tmLatBuckets, _tmCountBuckets, 600 * 1000));
         ret.put("10800", readApproximateLatAvg(lat, count, timeSpent, _thTime, _thLatBuckets, _thCountBuckets, 10800 * 1000));
@@ -248,15 +256,9 @@ public class LatencyStatAndMetric implements IMetric {
         return Utils.zeroIfNaNOrInf(((double) totalLat) / totalCount);
     }
 
+    /**
+     * Nothing to release anymore, the buckets are rotated when they are read.
+     */
     public void close() {
-        if (_task != null) {
-            _task.cancel();
-        }
-    }
-
-    private class Fresher extends TimerTask {
-        public void run () {
-            rotateSched(System.currentTimeMillis());
-        }
     }
 }
@@ -17,11 +17,13 @@
  */
 package org.apache.storm.metric.internal;
 
-import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class is a utility to track the rate of something.
+ *
+ * Arrivals only touch a striped counter.  The buckets are rotated by the clock
+ * when the rate is reported, catching up on every bucket that elapsed since.
  */
 public class RateTracker{
     private final int _bucketSizeMillis;
@@ -30,10 +32,10 @@ public class RateTracker{
     private final long[] _bucketTime;
     private final long[] _oldBuckets;
     
-    private final AtomicLong _bucketStart;
-    private final AtomicLong _currentBucket;
-    
-    private final TimerTask _task;
+    private long _bucketStart;
+    //Only ever grows, the current bucket is what arrived since _eventsAtBucketStart
+    private final LongAdder _events;
+    private long _eventsAtBucketStart;
 
     /**
      * @param validTimeWindowInMils events that happened before validTimeWindowInMils are not considered
@@ -62,14 +64,9 @@ public class RateTracker{
         _bucketTime = new long[numBuckets - 1];
         _oldBuckets = new long[numBuckets - 1];
 
-        _bucketStart = new AtomicLong(startTime >= 0 ? startTime : System.currentTimeMillis());
-        _currentBucket = new AtomicLong(0);
-        if (startTime < 0) {
-            _task = new Fresher();
-            MetricStatTimer._timer.scheduleAtFixedRate(_task, _bucketSizeMillis, _bucketSizeMillis);
-        } else {
-            _task = null;
-        }
+        _bucketStart = startTime >= 0 ? startTime : System.currentTimeMillis();
+        _events = new LongAdder();
+        _eventsAtBucketStart = 0;
     }
 
     /**
@@ -78,19 +75,21 @@ public class RateTracker{
      * @param count number of arrivals
      */
     public void notify(long count) {
-        _currentBucket.addAndGet(count);
+        _events.add(count);
     }
 
     /**
      * @return the approximate average rate per second.
      */
     public synchronized double reportRate() {
-        return reportRate(System.currentTimeMillis());
+        long now = System.currentTimeMillis();
+        rotateIfDue(now);
+        return reportRate(now);
     }
 
     synchronized double reportRate(long currentTime) {
-        long duration = Math.max(1l, currentTime - _bucketStart.get());
-        long events = _currentBucket.get();
+        long duration = Math.max(1l, currentTime - _bucketStart);
+        long events = _events.sum() - _eventsAtBucketStart;
         for (int i = 0; i < _oldBuckets.length; i++) {
             events += _oldBuckets[i];
             duration += _bucketTime[i];
@@ -99,9 +98,25 @@ public class RateTracker{
         return events * 1000.0 / duration;
     }
 
+    /**
+     * Nothing to release anymore, the buckets are rotated when the rate is reported.
+     */
     public void close() {
-        if (_task != null) {
-            _task.cancel();
+    }
+
+    /**
+     * Rotate once for every full bucket that elapsed since the current one started.
+     * @param now the current time.
+     */
+    synchronized void rotateIfDue(long now) {
+        long bucketsDue = (now - _bucketStart) / _bucketSizeMillis;
+        if (bucketsDue > _oldBuckets.length + 1) {
+            //Whatever arrived so far falls out of the window anyway, so skip the rotations in between
+            _bucketStart += (bucketsDue - _oldBuckets.length - 1) * _bucketSizeMillis;
+            bucketsDue = _oldBuckets.length + 1;
+        }
+        for (long i = 0; i < bucketsDue; i++) {
+            rotateBuckets(_bucketStart + _bucketSizeMillis);
         }
     }
 
@@ -109,8 +124,8 @@ public class RateTracker{
      * Rotate the buckets a set number of times for testing purposes.
      * @param numToEclipse the number of rotations to perform.
      */
-    final void forceRotate(int numToEclipse, long interval) {
-        long time = _bucketStart.get();
+    final synchronized void forceRotate(int numToEclipse, long interval) {
+        long time = _bucketStart;
         for (int i = 0; i < numToEclipse; i++) {
             time += interval;
             rotateBuckets(time);
@@ -118,8 +133,10 @@ public class RateTracker{
     }
 
     private synchronized void rotateBuckets(long time) {
-        long timeSpent = time - _bucketStart.getAndSet(time); 
-        long currentVal = _currentBucket.getAndSet(0);
+        long timeSpent = time - _bucketStart;
+        _bucketStart = time;
+        long currentVal = _events.sum() - _eventsAtBucketStart;
+        _eventsAtBucketStart += currentVal;
         for (int i = 0; i < _oldBuckets.length; i++) {
             long tmpTime = _bucketTime[i];
             _bucketTime[i] = timeSpent;
@@ -130,10 +147,4 @@ public class RateTracker{
             currentVal = cnt;
         }
     }
-
-    private class Fresher extends TimerTask {
-        public void run () {
-            rotateBuckets(System.currentTimeMillis());
-        }
-    }
 }
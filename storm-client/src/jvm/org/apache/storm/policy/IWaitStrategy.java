@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.policy;
+
+import java.util.Map;
+
+/**
+ * What an executor loop does when it has nothing to do. Spouts and bolts call {@link #idle} once per loop
+ * iteration in which they did no work, with a streak counting the consecutive idle iterations, so an
+ * implementation can back off the longer the executor stays idle.
+ */
+public interface IWaitStrategy {
+
+    enum IdleReason {
+        /** The spout was asked for tuples but emitted none. */
+        NO_EMIT(false),
+        /** The bolt found nothing in its receive queue. */
+        NO_INPUT(false),
+        /** The spout did not ask for tuples because its send queue is full. */
+        SEND_QUEUE_FULL(true),
+        /** The spout did not ask for tuples, or a bolt held off an emit, because back pressure is on. */
+        BACK_PRESSURE(true),
+        /** The spout did not ask for tuples because it has topology.max.spout.pending tuples in flight. */
+        MAX_SPOUT_PENDING(true);
+
+        private final boolean downstream;
+
+        IdleReason(boolean downstream) {
+            this.downstream = downstream;
+        }
+
+        /**
+         * @return true if the executor is waiting for the rest of the topology to catch up, rather than for work.
+         */
+        public boolean isDownstream() {
+            return downstream;
+        }
+    }
+
+    void prepare(Map<String, Object> topoConf);
+
+    /**
+     * Called when an executor loop iteration did no work.
+     * @param streak how many iterations in a row did no work, starting at 1
+     * @param reason why there was no work
+     * @param sendQueuePctFull how full the send queue of the executor is, between 0 and 1
+     * @param pending how many tuples the executor is waiting to hear back about, 0 for bolts
+     */
+    void idle(long streak, IdleReason reason, float sendQueuePctFull, long pending) throws InterruptedException;
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.policy;
+
+import org.apache.storm.spout.ISpoutWaitStrategy;
+import org.apache.storm.utils.ReflectionUtils;
+
+import java.util.Map;
+
+/**
+ * Runs an {@link ISpoutWaitStrategy} as an {@link IWaitStrategy}, so topology.spout.wait.strategy can name
+ * either kind.
+ */
+public class SpoutWaitStrategyAdapter implements IWaitStrategy {
+    private final ISpoutWaitStrategy delegate;
+
+    public SpoutWaitStrategyAdapter(ISpoutWaitStrategy delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Instantiate the wait strategy class named in the config, wrapping it if it is an {@link ISpoutWaitStrategy}.
+     * The returned strategy is not prepared yet.
+     */
+    public static IWaitStrategy make(String className) {
+        Object strategy = ReflectionUtils.newInstance(className);
+        if (strategy instanceof IWaitStrategy) {
+            return (IWaitStrategy) strategy;
+        } else if (strategy instanceof ISpoutWaitStrategy) {
+            return new SpoutWaitStrategyAdapter((ISpoutWaitStrategy) strategy);
+        }
+        throw new IllegalArgumentException(className + " is neither an " + IWaitStrategy.class.getName()
+            + " nor an " + ISpoutWaitStrategy.class.getName());
+    }
+
+    @Override
+    public void prepare(Map<String, Object> topoConf) {
+        delegate.prepare(topoConf);
+    }
+
+    @Override
+    public void idle(long streak, IdleReason reason, float sendQueuePctFull, long pending) {
+        delegate.emptyEmit(streak);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.policy;
+
+import org.apache.storm.Config;
+import org.apache.storm.utils.ObjectReader;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Backs off in three levels as the idle streak grows:
+ *
+ * 1. For the first topology.wait.progressive.level1.count iterations return right away, so the executor loop
+ *    busy spins and picks up new work with no delay.
+ * 2. For the next topology.wait.progressive.level2.count iterations yield the CPU.
+ * 3. After that park for topology.wait.progressive.level3.sleep.millis. If the executor has nothing at all to
+ *    wait for, no tuples in flight and no downstream pressure, the park time keeps doubling up to
+ *    topology.wait.progressive.level3.max.sleep.millis so a fully idle executor costs next to nothing.
+ *
+ * Spinning is skipped when the executor waits on the rest of the topology (back pressure, a full send queue or
+ * max spout pending) or the send queue is at least half full, since that will not clear up within a few spins.
+ */
+public class WaitStrategyProgressive implements IWaitStrategy {
+    private static final float BUSY_SEND_QUEUE_PCT = 0.5f;
+    private static final int MAX_DOUBLINGS = 16;
+
+    private long level1Count;
+    private long level2Count;
+    private long level3SleepNanos;
+    private long maxSleepNanos;
+
+    @Override
+    public void prepare(Map<String, Object> topoConf) {
+        level1Count = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL1_COUNT), 100);
+        level2Count = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL2_COUNT), 1000);
+        level3SleepNanos = TimeUnit.MILLISECONDS.toNanos(
+            ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_SLEEP_MILLIS), 1));
+        maxSleepNanos = Math.max(level3SleepNanos, TimeUnit.MILLISECONDS.toNanos(
+            ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_MAX_SLEEP_MILLIS), 10)));
+    }
+
+    @Override
+    public void idle(long streak, IdleReason reason, float sendQueuePctFull, long pending) throws InterruptedException {
+        boolean downstream = reason.isDownstream() || sendQueuePctFull >= BUSY_SEND_QUEUE_PCT;
+        long spins = downstream ? 0 : level1Count;
+        if (streak <= spins) {
+            return;
+        }
+        if (streak <= spins + level2Count) {
+            Thread.yield();
+            return;
+        }
+        long sleepNanos = level3SleepNanos;
+        if (!downstream && pending == 0) {
+            long parks = streak - spins - level2Count;
+            sleepNanos = Math.min(maxSleepNanos, level3SleepNanos << Math.min(parks - 1, MAX_DOUBLINGS));
+        }
+        if (sleepNanos > 0) {
+            LockSupport.parkNanos(sleepNanos);
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
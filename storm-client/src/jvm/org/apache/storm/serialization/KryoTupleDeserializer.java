@@ -21,7 +21,10 @@ import org.apache.storm.task.GeneralTopologyContext;
 import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TuplePool;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
+import java.nio.ByteBuffer;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -31,23 +34,69 @@ public class KryoTupleDeserializer implements ITupleDeserializer {
     KryoValuesDeserializer _kryo;
     SerializationFactory.IdDictionary _ids;
     Input _kryoInput;
+    ByteBufferInput _directInput;
+    TuplePool _pool;
+    boolean _compact;
     
     public KryoTupleDeserializer(final Map<String, Object> conf, final GeneralTopologyContext context) {
+        this(conf, context, null);
+    }
+
+    /**
+     * @param pool where to take the deserialized tuples from, or null to allocate new ones
+     */
+    public KryoTupleDeserializer(final Map<String, Object> conf, final GeneralTopologyContext context, TuplePool pool) {
         _kryo = new KryoValuesDeserializer(conf);
         _context = context;
         _ids = new SerializationFactory.IdDictionary(context.getRawTopology());
         _kryoInput = new Input(1);
+        _pool = pool;
+        _compact = KryoTupleSerializer.isCompact(conf);
     }        
 
     public Tuple deserialize(byte[] ser) {
+        _kryoInput.setBuffer(ser);
+        return deserialize(_kryoInput);
+    }
+
+    /**
+     * Deserialize the tuple between the position and the limit of the buffer, reading it in place. The position of
+     * the buffer is left unchanged.
+     */
+    public Tuple deserialize(ByteBuffer ser) {
+        if (ser.hasArray()) {
+            _kryoInput.setBuffer(ser.array(), ser.arrayOffset() + ser.position(), ser.remaining());
+            return deserialize(_kryoInput);
+        }
+        if (_directInput == null) {
+            _directInput = new ByteBufferInput();
+        }
+        _directInput.setBuffer(ser.slice());
+        return deserialize(_directInput);
+    }
+
+    private Tuple deserialize(Input input) {
         try {
-            _kryoInput.setBuffer(ser);
-            int taskId = _kryoInput.readInt(true);
-            int streamId = _kryoInput.readInt(true);
+            int taskId = input.readInt(true);
+            int streamId = input.readInt(true);
+            int anchorKind = -1;
+            if (_compact) {
+                anchorKind = streamId & ((1 << MessageId.COMPACT_KIND_BITS) - 1);
+                streamId >>>= MessageId.COMPACT_KIND_BITS;
+            }
             String componentName = _context.getComponentId(taskId);
             String streamName = _ids.getStreamName(componentName, streamId);
-            MessageId id = MessageId.deserialize(_kryoInput);
-            List<Object> values = _kryo.deserializeFrom(_kryoInput);
+            if (_pool != null) {
+                TupleImpl tuple = _pool.acquire();
+                if (_compact) {
+                    tuple.getMessageId().deserializeCompactAnchors(anchorKind, input);
+                } else {
+                    tuple.getMessageId().deserializeAnchors(input);
+                }
+                return tuple.reset(_context, _kryo.deserializeFrom(input), taskId, streamName);
+            }
+            MessageId id = _compact ? MessageId.deserializeCompact(anchorKind, input) : MessageId.deserialize(input);
+            List<Object> values = _kryo.deserializeFrom(input);
             return new TupleImpl(_context, values, taskId, streamName, id);
         } catch(IOException e) {
             throw new RuntimeException(e);
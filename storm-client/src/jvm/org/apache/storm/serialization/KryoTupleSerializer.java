@@ -17,37 +17,66 @@
  */
 package org.apache.storm.serialization;
 
+import org.apache.storm.Config;
 import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.ObjectReader;
 import com.esotericsoftware.kryo.io.Output;
 import java.io.IOException;
 import java.util.Map;
 
 public class KryoTupleSerializer implements ITupleSerializer {
+    static final int COMPACT_VERSION = 2;
+
     KryoValuesSerializer _kryo;
     SerializationFactory.IdDictionary _ids;   
     Output _kryoOut;
+    boolean _compact;
     
     public KryoTupleSerializer(final Map<String, Object> conf, final GeneralTopologyContext context) {
         _kryo = new KryoValuesSerializer(conf);
         _kryoOut = new Output(2000, 2000000000);
         _ids = new SerializationFactory.IdDictionary(context.getRawTopology());
+        _compact = isCompact(conf);
+    }
+
+    /**
+     * @return true if tuples are encoded with the anchor kind packed into the stream id, see
+     *     {@link Config#TOPOLOGY_TUPLE_SERIALIZATION_VERSION}.
+     */
+    static boolean isCompact(Map<String, Object> conf) {
+        return ObjectReader.getInt(conf.get(Config.TOPOLOGY_TUPLE_SERIALIZATION_VERSION), 1) >= COMPACT_VERSION;
     }
 
     public byte[] serialize(Tuple tuple) {
         try {
             
             _kryoOut.clear();
-            _kryoOut.writeInt(tuple.getSourceTask(), true);
-            _kryoOut.writeInt(_ids.getStreamId(tuple.getSourceComponent(), tuple.getSourceStreamId()), true);
-            tuple.getMessageId().serialize(_kryoOut);
-            _kryo.serializeInto(tuple.getValues(), _kryoOut);
+            serialize(tuple, _kryoOut);
             return _kryoOut.toBytes();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Serialize the tuple into the given output at its current position, without copying it out.
+     */
+    public void serialize(Tuple tuple, Output out) throws IOException {
+        out.writeInt(tuple.getSourceTask(), true);
+        int streamId = _ids.getStreamId(tuple.getSourceComponent(), tuple.getSourceStreamId());
+        MessageId id = tuple.getMessageId();
+        if (_compact) {
+            out.writeInt((streamId << MessageId.COMPACT_KIND_BITS) | id.getCompactKind(), true);
+            id.serializeCompact(out);
+        } else {
+            out.writeInt(streamId, true);
+            id.serialize(out);
+        }
+        _kryo.serializeInto(tuple.getValues(), out);
+    }
+
 //    public long crc32(Tuple tuple) {
 //        try {
 //            CRC32OutputStream hasher = new CRC32OutputStream();
@@ -72,6 +72,7 @@ public class SerializationFactory {
         k.register(org.apache.storm.metric.api.IMetricsConsumer.DataPoint.class);
         k.register(org.apache.storm.metric.api.IMetricsConsumer.TaskInfo.class);
         k.register(ConsList.class);
+        k.register(long[].class);
         
         synchronized (loader) {
             for (SerializationRegister sr: loader) {
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.state;
+
+/**
+ * A {@link State} whose {@link #prepareCommit(long)} can be split into a cheap in-memory snapshot and a slower
+ * persist step, so that the persist step can run in the background while the state keeps taking updates.
+ * <p>
+ * Calling {@code snapshot(txid).persist()} must have the same effect as calling {@code prepareCommit(txid)}.
+ * </p>
+ */
+public interface SnapshotState extends State {
+    /**
+     * Captures the updates made since the last prepare as the prepared transaction. This is invoked from the thread
+     * that updates the state and should not do any I/O. Once this returns, reads see the snapshot as prepared and
+     * new updates belong to the next transaction.
+     *
+     * @param txid the transaction id
+     * @return the snapshot, that has to be persisted before the transaction is committed
+     */
+    Snapshot snapshot(long txid);
+
+    /**
+     * The updates of a prepared transaction that are not yet durably saved.
+     */
+    interface Snapshot {
+        /**
+         * Durably saves the snapshot as the prepared transaction. This may be invoked from a thread other than
+         * the one that updates the state; the state is not committed or rolled back until this returns.
+         *
+         * @return the number of bytes written, or -1 if not known
+         */
+        long persist();
+    }
+}
@@ -66,4 +66,20 @@ public class StateFactory {
         }
         return state;
     }
+
+    /**
+     * Release what a state got from its provider, like an open database, once the component is done with it.
+     * States that hold nothing of the kind are left alone.
+     *
+     * @param state the state, may be null
+     */
+    public static void close(State state) {
+        if (state instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) state).close();
+            } catch (Exception ex) {
+                LOG.warn("Got exception while closing the state", ex);
+            }
+        }
+    }
 }
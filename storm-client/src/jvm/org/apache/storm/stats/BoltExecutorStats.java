@@ -22,6 +22,7 @@ import com.google.common.collect.Lists;
 import org.apache.storm.generated.BoltStats;
 import org.apache.storm.generated.ExecutorSpecificStats;
 import org.apache.storm.generated.ExecutorStats;
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.metric.internal.MultiCountStatAndMetric;
 import org.apache.storm.metric.internal.MultiLatencyStatAndMetric;
 
@@ -35,8 +36,19 @@ public class BoltExecutorStats extends CommonStats {
     public static final String EXECUTED = "executed";
     public static final String PROCESS_LATENCIES = "process-latencies";
     public static final String EXECUTE_LATENCIES = "execute-latencies";
+    public static final String PROCESS_LATENCY_HISTOGRAM = "process-latency-histogram";
+    public static final String EXECUTE_LATENCY_HISTOGRAM = "execute-latency-histogram";
+    public static final String[] LATENCY_HISTOGRAM_FIELDS = {PROCESS_LATENCY_HISTOGRAM, EXECUTE_LATENCY_HISTOGRAM};
 
     public BoltExecutorStats(int rate,int numStatBuckets) {
+        this(rate, numStatBuckets, false);
+    }
+
+    /**
+     * @param latencyHistograms whether to also track the latencies in histograms so that
+     *     percentiles are reported, see {@link org.apache.storm.Config#TOPOLOGY_STATS_LATENCY_HISTOGRAMS}.
+     */
+    public BoltExecutorStats(int rate, int numStatBuckets, boolean latencyHistograms) {
         super(rate,numStatBuckets);
 
         this.put(ACKED, new MultiCountStatAndMetric(numStatBuckets));
@@ -44,6 +56,10 @@ public class BoltExecutorStats extends CommonStats {
         this.put(EXECUTED, new MultiCountStatAndMetric(numStatBuckets));
         this.put(PROCESS_LATENCIES, new MultiLatencyStatAndMetric(numStatBuckets));
         this.put(EXECUTE_LATENCIES, new MultiLatencyStatAndMetric(numStatBuckets));
+        if (latencyHistograms) {
+            this.put(PROCESS_LATENCY_HISTOGRAM, new LatencyHistogramStatAndMetric());
+            this.put(EXECUTE_LATENCY_HISTOGRAM, new LatencyHistogramStatAndMetric());
+        }
     }
 
     public MultiCountStatAndMetric getAcked() {
@@ -66,16 +82,38 @@ public class BoltExecutorStats extends CommonStats {
         return (MultiLatencyStatAndMetric) this.get(EXECUTE_LATENCIES);
     }
 
+    /**
+     * @return the process latency histogram, or null if latency histograms are not tracked.
+     */
+    public LatencyHistogramStatAndMetric getProcessLatencyHistogram() {
+        return (LatencyHistogramStatAndMetric) this.get(PROCESS_LATENCY_HISTOGRAM);
+    }
+
+    /**
+     * @return the execute latency histogram, or null if latency histograms are not tracked.
+     */
+    public LatencyHistogramStatAndMetric getExecuteLatencyHistogram() {
+        return (LatencyHistogramStatAndMetric) this.get(EXECUTE_LATENCY_HISTOGRAM);
+    }
+
     public void boltExecuteTuple(String component, String stream, long latencyMs) {
         List key = Lists.newArrayList(component, stream);
         this.getExecuted().incBy(key, this.rate);
         this.getExecuteLatencies().record(key, latencyMs);
+        LatencyHistogramStatAndMetric histogram = this.getExecuteLatencyHistogram();
+        if (histogram != null) {
+            histogram.record(latencyMs);
+        }
     }
 
     public void boltAckedTuple(String component, String stream, long latencyMs) {
         List key = Lists.newArrayList(component, stream);
         this.getAcked().incBy(key, this.rate);
         this.getProcessLatencies().record(key, latencyMs);
+        LatencyHistogramStatAndMetric histogram = this.getProcessLatencyHistogram();
+        if (histogram != null) {
+            histogram.record(latencyMs);
+        }
     }
 
     public void boltFailedTuple(String component, String stream, long latencyMs) {
@@ -100,6 +138,7 @@ public class BoltExecutorStats extends CommonStats {
                 StatsUtil.windowSetConverter(valueStat(EXECUTED), StatsUtil.TO_GSID, StatsUtil.IDENTITY),
                 StatsUtil.windowSetConverter(valueStat(EXECUTE_LATENCIES), StatsUtil.TO_GSID, StatsUtil.IDENTITY));
         ret.set_specific(ExecutorSpecificStats.bolt(boltStats));
+        ret.set_latency_histograms(valueHistograms(LATENCY_HISTOGRAM_FIELDS));
 
         return ret;
     }
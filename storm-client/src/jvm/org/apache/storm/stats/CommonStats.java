@@ -17,10 +17,12 @@
  */
 package org.apache.storm.stats;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.storm.generated.ExecutorStats;
 import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.metric.internal.MultiCountStatAndMetric;
 import org.apache.storm.metric.internal.MultiLatencyStatAndMetric;
 
@@ -81,6 +83,8 @@ public abstract class CommonStats {
             ((MultiCountStatAndMetric) metric).close();
         } else if (metric instanceof MultiLatencyStatAndMetric) {
             ((MultiLatencyStatAndMetric) metric).close();
+        } else if (metric instanceof LatencyHistogramStatAndMetric) {
+            ((LatencyHistogramStatAndMetric) metric).close();
         }
     }
 
@@ -109,6 +113,24 @@ public abstract class CommonStats {
         return null;
     }
 
+    /**
+     * @return { field -> window -> encoded histogram } for the given latency histogram fields
+     * that are tracked, or null if none of them is.
+     */
+    protected Map<String, Map<String, ByteBuffer>> valueHistograms(String[] fields) {
+        Map<String, Map<String, ByteBuffer>> ret = null;
+        for (String field : fields) {
+            IMetric metric = this.get(field);
+            if (metric instanceof LatencyHistogramStatAndMetric) {
+                if (ret == null) {
+                    ret = new HashMap<>();
+                }
+                ret.put(field, ((LatencyHistogramStatAndMetric) metric).getTimeLatHistogramsEncoded());
+            }
+        }
+        return ret;
+    }
+
     public abstract ExecutorStats renderStats();
 
 }
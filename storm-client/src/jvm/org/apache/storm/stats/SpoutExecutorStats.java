@@ -20,6 +20,7 @@ package org.apache.storm.stats;
 import org.apache.storm.generated.ExecutorSpecificStats;
 import org.apache.storm.generated.ExecutorStats;
 import org.apache.storm.generated.SpoutStats;
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.metric.internal.MultiCountStatAndMetric;
 import org.apache.storm.metric.internal.MultiLatencyStatAndMetric;
 
@@ -29,12 +30,25 @@ public class SpoutExecutorStats extends CommonStats {
     public static final String ACKED = "acked";
     public static final String FAILED = "failed";
     public static final String COMPLETE_LATENCIES = "complete-latencies";
+    public static final String COMPLETE_LATENCY_HISTOGRAM = "complete-latency-histogram";
+    public static final String[] LATENCY_HISTOGRAM_FIELDS = {COMPLETE_LATENCY_HISTOGRAM};
 
     public SpoutExecutorStats(int rate,int numStatBuckets) {
+        this(rate, numStatBuckets, false);
+    }
+
+    /**
+     * @param latencyHistograms whether to also track the latencies in histograms so that
+     *     percentiles are reported, see {@link org.apache.storm.Config#TOPOLOGY_STATS_LATENCY_HISTOGRAMS}.
+     */
+    public SpoutExecutorStats(int rate, int numStatBuckets, boolean latencyHistograms) {
         super(rate,numStatBuckets);
         this.put(ACKED, new MultiCountStatAndMetric(numStatBuckets));
         this.put(FAILED, new MultiCountStatAndMetric(numStatBuckets));
         this.put(COMPLETE_LATENCIES, new MultiLatencyStatAndMetric(numStatBuckets));
+        if (latencyHistograms) {
+            this.put(COMPLETE_LATENCY_HISTOGRAM, new LatencyHistogramStatAndMetric());
+        }
     }
 
     public MultiCountStatAndMetric getAcked() {
@@ -49,9 +63,20 @@ public class SpoutExecutorStats extends CommonStats {
         return (MultiLatencyStatAndMetric) this.get(COMPLETE_LATENCIES);
     }
 
+    /**
+     * @return the complete latency histogram, or null if latency histograms are not tracked.
+     */
+    public LatencyHistogramStatAndMetric getCompleteLatencyHistogram() {
+        return (LatencyHistogramStatAndMetric) this.get(COMPLETE_LATENCY_HISTOGRAM);
+    }
+
     public void spoutAckedTuple(String stream, long latencyMs) {
         this.getAcked().incBy(stream, this.rate);
         this.getCompleteLatencies().record(stream, latencyMs);
+        LatencyHistogramStatAndMetric histogram = this.getCompleteLatencyHistogram();
+        if (histogram != null) {
+            histogram.record(latencyMs);
+        }
     }
 
     public void spoutFailedTuple(String stream, long latencyMs) {
@@ -70,6 +95,7 @@ public class SpoutExecutorStats extends CommonStats {
         SpoutStats spoutStats = new SpoutStats(
                 valueStat(ACKED), valueStat(FAILED), valueStat(COMPLETE_LATENCIES));
         ret.set_specific(ExecutorSpecificStats.spout(spoutStats));
+        ret.set_latency_histograms(valueHistograms(LATENCY_HISTOGRAM_FIELDS));
 
         return ret;
     }
@@ -44,12 +44,15 @@ import org.apache.storm.generated.TopologyPageInfo;
 import org.apache.storm.generated.TopologyStats;
 import org.apache.storm.generated.WorkerResources;
 import org.apache.storm.generated.WorkerSummary;
+import org.apache.storm.metric.internal.LatencyHistogramStatAndMetric;
 import org.apache.storm.scheduler.WorkerSlot;
 import org.apache.storm.utils.Utils;
 import org.apache.storm.utils.Time;
+import org.HdrHistogram.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -58,6 +61,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.zip.DataFormatException;
 
 @SuppressWarnings("unchecked")
 public class StatsUtil {
@@ -100,6 +104,9 @@ public class StatsUtil {
     private static final String PROC_LAT_TOTAL = "processLatencyTotal";
     private static final String COMP_LAT_TOTAL = "completeLatencyTotal";
 
+    private static final String LAT_HISTOGRAMS = "latency-histograms";
+    private static final String LAT_PERCENTILES = "latency-percentiles";
+
     private static final String WIN_TO_EMITTED = "window->emitted";
     private static final String WIN_TO_ACKED = "window->acked";
     private static final String WIN_TO_FAILED = "window->failed";
@@ -111,6 +118,8 @@ public class StatsUtil {
     private static final String WIN_TO_COMP_LAT_WGT_AVG = "window->comp-lat-wgt-avg";
     private static final String WIN_TO_EXEC_LAT_WGT_AVG = "window->exec-lat-wgt-avg";
     private static final String WIN_TO_PROC_LAT_WGT_AVG = "window->proc-lat-wgt-avg";
+    private static final String WIN_TO_LAT_HISTOGRAMS = "window->latency-histograms";
+    private static final String WIN_TO_LAT_PERCENTILES = "window->latency-percentiles";
 
     private static final String BOLT_TO_STATS = "bolt-id->stats";
     private static final String SPOUT_TO_STATS = "spout-id->stats";
@@ -222,6 +231,7 @@ public class StatsUtil {
 
         Map stat2win2sid2num = getMapByKey(beat, STATS);
         putKV(ret, CAPACITY, computeAggCapacity(stat2win2sid2num, getByKeyOr0(beat, UPTIME).intValue()));
+        putKV(ret, LAT_PERCENTILES, latencyPercentiles(getMapByKey(stat2win2sid2num, LAT_HISTOGRAMS), window));
 
         // calc cid+sid->input_stats
         Map inputStats = new HashMap();
@@ -279,6 +289,7 @@ public class StatsUtil {
         putKV(ret, NUM_TASKS, getByKey(beat, NUM_TASKS));
 
         Map stat2win2sid2num = getMapByKey(beat, STATS);
+        putKV(ret, LAT_PERCENTILES, latencyPercentiles(getMapByKey(stat2win2sid2num, LAT_HISTOGRAMS), window));
 
         // calc sid->output-stats
         Map outputStats = new HashMap();
@@ -431,6 +442,7 @@ public class StatsUtil {
         putKV(executorStats, HOST, boltStats.get(HOST));
         putKV(executorStats, PORT, boltStats.get(PORT));
         putKV(executorStats, CAPACITY, boltStats.get(CAPACITY));
+        putKV(executorStats, LAT_PERCENTILES, boltStats.get(LAT_PERCENTILES));
 
         putKV(executorStats, EMITTED, sumStreamsLong(boltOut, EMITTED));
         putKV(executorStats, TRANSFERRED, sumStreamsLong(boltOut, TRANSFERRED));
@@ -474,6 +486,7 @@ public class StatsUtil {
         putKV(executorStats, UPTIME, getByKey(spoutStats, UPTIME));
         putKV(executorStats, HOST, getByKey(spoutStats, HOST));
         putKV(executorStats, PORT, getByKey(spoutStats, PORT));
+        putKV(executorStats, LAT_PERCENTILES, getByKey(spoutStats, LAT_PERCENTILES));
 
         putKV(executorStats, EMITTED, sumStreamsLong(spoutOut, EMITTED));
         putKV(executorStats, TRANSFERRED, sumStreamsLong(spoutOut, TRANSFERRED));
@@ -1101,6 +1114,7 @@ public class StatsUtil {
         putKV(initVal, WIN_TO_FAILED, new HashMap());
         putKV(initVal, WIN_TO_EMITTED, new HashMap());
         putKV(initVal, WIN_TO_TRANSFERRED, new HashMap());
+        putKV(initVal, WIN_TO_LAT_HISTOGRAMS, new HashMap());
 
         Map<String, Object> stats = new HashMap();
         putKV(stats, EXECUTOR_STATS, new ArrayList());
@@ -1143,6 +1157,8 @@ public class StatsUtil {
                     getMapByKey(accStats, STATS),
                     aggPreMergeCompPageBolt(beat, window, includeSys)));
         }
+        putKV(ret, WIN_TO_LAT_HISTOGRAMS, mergeLatencyHistograms(
+                getMapByKey(accStats, WIN_TO_LAT_HISTOGRAMS), getMapByKey(getMapByKey(beat, STATS), LAT_HISTOGRAMS)));
         putKV(ret, TYPE, compType);
 
         return ret;
@@ -1173,6 +1189,7 @@ public class StatsUtil {
         putKV(ret, WIN_TO_TRANSFERRED, mapKeyStr(getMapByKey(compStats, WIN_TO_TRANSFERRED)));
         putKV(ret, WIN_TO_ACKED, mapKeyStr(getMapByKey(compStats, WIN_TO_ACKED)));
         putKV(ret, WIN_TO_FAILED, mapKeyStr(getMapByKey(compStats, WIN_TO_FAILED)));
+        putKV(ret, WIN_TO_LAT_PERCENTILES, computeLatencyPercentilesPerWindow(getMapByKey(compStats, WIN_TO_LAT_HISTOGRAMS)));
 
         if (BOLT.equals(compType)) {
             Map inStats = getMapByKey(stats, CID_SID_TO_IN_STATS);
@@ -1456,6 +1473,9 @@ public class StatsUtil {
         putKV(ret, EMITTED, stats.get_emitted());
         putKV(ret, TRANSFERRED, stats.get_transferred());
         putKV(ret, RATE, stats.get_rate());
+        if (stats.is_set_latency_histograms()) {
+            putKV(ret, LAT_HISTOGRAMS, stats.get_latency_histograms());
+        }
 
         if (stats.get_specific().is_set_bolt()) {
             ret.putAll(convertSpecificStats(stats.get_specific().get_bolt()));
@@ -1689,6 +1709,95 @@ public class StatsUtil {
         return ret;
     }
 
+    /**
+     * merge the latency histograms of an executor into the accumulated ones
+     *
+     * @param accHistograms      accumulated histograms, {window -> metric -> histogram}
+     * @param metric2win2encoded histograms of an executor heartbeat, {metric -> window -> encoded histogram}
+     * @return merged histograms, {window -> metric -> histogram}
+     */
+    private static Map<String, Map<String, Histogram>> mergeLatencyHistograms(
+            Map<String, Map<String, Histogram>> accHistograms, Map<String, Map<String, ByteBuffer>> metric2win2encoded) {
+        Map<String, Map<String, Histogram>> ret = accHistograms != null ? accHistograms : new HashMap<String, Map<String, Histogram>>();
+        if (metric2win2encoded == null) {
+            return ret;
+        }
+        for (Map.Entry<String, Map<String, ByteBuffer>> metricEntry : metric2win2encoded.entrySet()) {
+            String metric = metricEntry.getKey();
+            for (Map.Entry<String, ByteBuffer> winEntry : metricEntry.getValue().entrySet()) {
+                Histogram histogram = decodeLatencyHistogram(metric, winEntry.getValue());
+                if (histogram == null) {
+                    continue;
+                }
+                Map<String, Histogram> metric2histogram = ret.get(winEntry.getKey());
+                if (metric2histogram == null) {
+                    metric2histogram = new HashMap<>();
+                    ret.put(winEntry.getKey(), metric2histogram);
+                }
+                Histogram acc = metric2histogram.get(metric);
+                if (acc == null) {
+                    metric2histogram.put(metric, histogram);
+                } else {
+                    acc.add(histogram);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * compute the latency percentiles of every window from the merged histograms
+     *
+     * @param win2metric2histogram {window -> metric -> histogram}
+     * @return {window -> metric -> percentile -> latency ms}
+     */
+    private static Map<String, Map<String, Map<String, Double>>> computeLatencyPercentilesPerWindow(
+            Map<String, Map<String, Histogram>> win2metric2histogram) {
+        Map<String, Map<String, Map<String, Double>>> ret = new HashMap<>();
+        if (win2metric2histogram == null) {
+            return ret;
+        }
+        for (Map.Entry<String, Map<String, Histogram>> winEntry : win2metric2histogram.entrySet()) {
+            Map<String, Map<String, Double>> metric2percentiles = new HashMap<>();
+            for (Map.Entry<String, Histogram> metricEntry : winEntry.getValue().entrySet()) {
+                metric2percentiles.put(metricEntry.getKey(), LatencyHistogramStatAndMetric.percentiles(metricEntry.getValue()));
+            }
+            ret.put(winEntry.getKey(), metric2percentiles);
+        }
+        return ret;
+    }
+
+    /**
+     * compute the latency percentiles of a single executor for the specified window
+     *
+     * @param metric2win2encoded {metric -> window -> encoded histogram}, may be null
+     * @return {metric -> percentile -> latency ms}, or null if no histograms were reported
+     */
+    private static Map<String, Map<String, Double>> latencyPercentiles(
+            Map<String, Map<String, ByteBuffer>> metric2win2encoded, String window) {
+        if (metric2win2encoded == null) {
+            return null;
+        }
+        Map<String, Map<String, Double>> ret = new HashMap<>();
+        for (Map.Entry<String, Map<String, ByteBuffer>> metricEntry : metric2win2encoded.entrySet()) {
+            ByteBuffer encoded = metricEntry.getValue().get(window);
+            Histogram histogram = encoded == null ? null : decodeLatencyHistogram(metricEntry.getKey(), encoded);
+            if (histogram != null) {
+                ret.put(metricEntry.getKey(), LatencyHistogramStatAndMetric.percentiles(histogram));
+            }
+        }
+        return ret;
+    }
+
+    private static Histogram decodeLatencyHistogram(String metric, ByteBuffer encoded) {
+        try {
+            return LatencyHistogramStatAndMetric.decode(encoded);
+        } catch (DataFormatException | RuntimeException e) {
+            LOG.warn("Ignoring malformed {} in executor heartbeat", metric, e);
+            return null;
+        }
+    }
+
     /**
      * convert a List<Long> executor to java List<Integer>
      */
@@ -2108,6 +2217,7 @@ public class StatsUtil {
         commonStats.set_failed(getByKeyOr0(m, FAILED).longValue());
 
         stats.set_common_stats(commonStats);
+        stats.set_latency_percentiles_ms(getMapByKey(m, LAT_PERCENTILES));
         return stats;
     }
 
@@ -2121,6 +2231,7 @@ public class StatsUtil {
         putKV(win2stats, TRANSFERRED, getMapByKey(data, WIN_TO_TRANSFERRED));
         putKV(win2stats, ACKED, getMapByKey(data, WIN_TO_ACKED));
         putKV(win2stats, FAILED, getMapByKey(data, WIN_TO_FAILED));
+        putKV(win2stats, LAT_PERCENTILES, getMapByKey(data, WIN_TO_LAT_PERCENTILES));
 
         String compType = (String) data.get(TYPE);
         if (compType.equals(SPOUT)) {
@@ -2194,6 +2305,7 @@ public class StatsUtil {
         ret.set_emitted(windowSetConverter(getMapByKey(stats, EMITTED), TO_STRING, TO_STRING));
         ret.set_transferred(windowSetConverter(getMapByKey(stats, TRANSFERRED), TO_STRING, TO_STRING));
         ret.set_rate(((Number) getByKey(stats, RATE)).doubleValue());
+        ret.set_latency_histograms(getMapByKey(stats, LAT_HISTOGRAMS));
 
         return ret;
     }
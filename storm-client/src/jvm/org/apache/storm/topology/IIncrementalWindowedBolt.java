@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.topology;
+
+import org.apache.storm.Config;
+import org.apache.storm.streams.operations.CombinerAggregator;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.Map;
+
+/**
+ * A windowed bolt that is handed the aggregate of each window instead of its tuples.
+ * <p>
+ * The tuples are folded into partial aggregates of panes as they arrive, where a pane is the greatest
+ * common divisor of the window length and the sliding interval.  On each slide the partial aggregates
+ * of the panes in the window are merged, so the work per window and the memory are proportional to
+ * the number of panes in a window instead of the number of tuples.  Only count based or processing
+ * time based windows are supported, and the tuples are acked as soon as they are aggregated, so the
+ * emitted results are not anchored to them.
+ * </p>
+ * <p>
+ * The window is configured with {@link Config#TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT} and
+ * {@link Config#TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT}, or with {@link Config#TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS}
+ * and {@link Config#TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS}, in the component configuration. See
+ * {@link org.apache.storm.topology.base.BaseIncrementalWindowedBolt}.
+ * </p>
+ *
+ * @param <A> the type of the partial aggregates
+ * @param <R> the type of the window results
+ */
+public interface IIncrementalWindowedBolt<A, R> extends IComponent {
+    /**
+     * This is similar to the {@link org.apache.storm.task.IBolt#prepare(Map, TopologyContext, OutputCollector)}, the
+     * emitted tuples cannot be anchored as the input tuples are acked once they are aggregated.
+     */
+    void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector);
+
+    /**
+     * The aggregator to fold the tuples into partial aggregates with.  {@link CombinerAggregator#merge(Object, Object)}
+     * must be associative and must not modify its second argument, as the partial aggregate of a pane is merged
+     * into every window that covers it.
+     *
+     * @return the aggregator
+     */
+    CombinerAggregator<Tuple, A, R> getAggregator();
+
+    /**
+     * Process the aggregate of a window and optionally emit new tuples based on it.
+     *
+     * @param result the result of the aggregator for the tuples in the window
+     * @param startTimestamp the start of a time based window, null for count based windows
+     * @param endTimestamp the end of a time based window, null for count based windows
+     */
+    void execute(R result, Long startTimestamp, Long endTimestamp);
+
+    void cleanup();
+}
@@ -43,4 +43,17 @@ public interface IStatefulWindowedBolt<T extends State> extends IStatefulCompone
     default long maxEventsInMemory() {
         return 1_000_000L; // default
     }
+
+    /**
+     * If the window partitions evicted from memory should be spilled to local memory-mapped files and written to
+     * the state only at checkpoints. This is meaningful only if {@link #isPersistent()} is true.
+     * <p>
+     * The default is to add the evicted partitions to the state right away.
+     * </p>
+     *
+     * @return true if the evicted window partitions should be spilled to local disk
+     */
+    default boolean isSpillToDisk() {
+        return false;
+    }
 }
@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.topology;
+
+import org.apache.storm.Config;
+import org.apache.storm.daemon.metrics.BuiltinMetricsUtil;
+import org.apache.storm.metric.api.CountMetric;
+import org.apache.storm.streams.operations.CombinerAggregator;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * An {@link IIncrementalWindowedBolt} wrapper that aggregates the tuples per pane and merges the panes per window.
+ * <p>
+ * Everything runs on the executor thread. Time based windows are fired by the first tuple that comes in after they
+ * ended, and tick tuples make sure that happens when no other tuples come in. Tuples that are stamped inside a window
+ * that was already fired, which can only happen when the clock goes back, are dropped and counted as late.
+ * </p>
+ */
+public class IncrementalWindowedBoltExecutor<A, R> implements IRichBolt {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalWindowedBoltExecutor.class);
+    private static final int TRIGGER_TICK_FREQ_SECS = 1;
+    private final IIncrementalWindowedBolt<A, R> bolt;
+    private transient OutputCollector collector;
+    private transient CombinerAggregator<Tuple, A, R> aggregator;
+    // partial aggregates by the start of their pane
+    private transient TreeMap<Long, A> panes;
+    private transient boolean countBased;
+    // tuples for count based windows and ms for time based windows
+    private transient long windowLength;
+    private transient long slidingInterval;
+    private transient long paneSize;
+    private transient long count;
+    private transient long lastWindowEnd;
+    private transient CountMetric lateTupleMetric;
+
+    public IncrementalWindowedBoltExecutor(IIncrementalWindowedBolt<A, R> bolt) {
+        this.bolt = bolt;
+    }
+
+    @Override
+    public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
+        doPrepare(topoConf, context, collector, System.currentTimeMillis());
+        if (!countBased) {
+            BuiltinMetricsUtil.registerMetric("__late-tuples", lateTupleMetric, topoConf, context);
+        }
+    }
+
+    void doPrepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector, long now) {
+        Objects.requireNonNull(topoConf);
+        Objects.requireNonNull(collector);
+        if (topoConf.containsKey(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT)
+            && topoConf.containsKey(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT)) {
+            countBased = true;
+            windowLength = ((Number) topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT)).longValue();
+            slidingInterval = ((Number) topoConf.get(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT)).longValue();
+        } else if (topoConf.containsKey(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS)
+            && topoConf.containsKey(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS)) {
+            countBased = false;
+            windowLength = ((Number) topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS)).longValue();
+            slidingInterval = ((Number) topoConf.get(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS)).longValue();
+        } else {
+            throw new IllegalArgumentException("Incremental windows need both the window length and the sliding interval"
+                                               + " as a count or both as a duration");
+        }
+        paneSize = gcd(windowLength, slidingInterval);
+        this.collector = collector;
+        aggregator = bolt.getAggregator();
+        panes = new TreeMap<>();
+        count = 0;
+        lateTupleMetric = new CountMetric();
+        lastWindowEnd = now - Math.floorMod(now, slidingInterval);
+        bolt.prepare(topoConf, context, collector);
+        LOG.info("Initialized incremental windows of length {} sliding by {} with panes of {} {}",
+                 windowLength, slidingInterval, paneSize, countBased ? "tuples" : "ms");
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Override
+    public void execute(Tuple input) {
+        long now = System.currentTimeMillis();
+        if (!countBased) {
+            onTrigger(now);
+        }
+        if (TupleUtils.isTick(input)) {
+            return;
+        }
+        add(input, now);
+        collector.ack(input);
+    }
+
+    void add(Tuple input, long now) {
+        if (!countBased && now < lastWindowEnd) {
+            LOG.debug("Received a late tuple {} at {}, the window ending at {} was already fired", input, now, lastWindowEnd);
+            lateTupleMetric.incr();
+            return;
+        }
+        long position = countBased ? count : now;
+        long paneStart = position - Math.floorMod(position, paneSize);
+        A accumulator = panes.get(paneStart);
+        panes.put(paneStart, aggregator.apply(accumulator != null ? accumulator : aggregator.init(), input));
+        if (countBased && ++count % slidingInterval == 0) {
+            fire(count - windowLength, count);
+            evict(count);
+        }
+    }
+
+    /**
+     * Fire every time based window that ended by now.
+     */
+    void onTrigger(long now) {
+        while (lastWindowEnd + slidingInterval <= now) {
+            lastWindowEnd += slidingInterval;
+            fire(lastWindowEnd - windowLength, lastWindowEnd);
+        }
+        evict(lastWindowEnd);
+    }
+
+    private void fire(long start, long end) {
+        A accumulator = null;
+        for (A partial : panes.subMap(start, end).values()) {
+            accumulator = aggregator.merge(accumulator == null ? aggregator.init() : accumulator, partial);
+        }
+        if (accumulator != null) {
+            R result = aggregator.result(accumulator);
+            if (countBased) {
+                bolt.execute(result, null, null);
+            } else {
+                bolt.execute(result, start, end);
+            }
+        }
+    }
+
+    /**
+     * Drop the panes that the window after the one ending at lastEnd does not cover.
+     */
+    private void evict(long lastEnd) {
+        panes.headMap(lastEnd + slidingInterval - windowLength).clear();
+    }
+
+    // for unit tests
+    int getPaneCount() {
+        return panes.size();
+    }
+
+    long getLateTupleCount() {
+        return (Long) lateTupleMetric.getValueAndReset();
+    }
+
+    @Override
+    public void cleanup() {
+        bolt.cleanup();
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        bolt.declareOutputFields(declarer);
+    }
+
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        Map<String, Object> conf = bolt.getComponentConfiguration();
+        if (conf != null && conf.containsKey(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS)) {
+            // the bolt is never handed tuples, so its own ticks are replaced
+            conf = new HashMap<>(conf);
+            conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, TRIGGER_TICK_FREQ_SECS);
+        }
+        return conf;
+    }
+}
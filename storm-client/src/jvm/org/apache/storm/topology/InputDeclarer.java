@@ -162,6 +162,27 @@ public interface InputDeclarer<T extends InputDeclarer> {
      */
     public T partialKeyGrouping(String componentId, String streamId, Fields fields);
 
+    /**
+     * Like a fields grouping, but the tasks are picked with a consistent hash, so when
+     * the number of tasks changes only about 1/N of the keys go to a different task.
+     * @see org.apache.storm.grouping.ConsistentHashGrouping
+     * @param componentId
+     * @param fields
+     * @return
+     */
+    public T consistentHashGrouping(String componentId, Fields fields);
+
+    /**
+     * Like a fields grouping, but the tasks are picked with a consistent hash, so when
+     * the number of tasks changes only about 1/N of the keys go to a different task.
+     * @see org.apache.storm.grouping.ConsistentHashGrouping
+     * @param componentId
+     * @param streamId
+     * @param fields
+     * @return
+     */
+    public T consistentHashGrouping(String componentId, String streamId, Fields fields);
+
     /**
      * A custom stream grouping by implementing the CustomStreamGrouping interface.
      * @param componentId
@@ -18,6 +18,8 @@
 
 package org.apache.storm.topology;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
@@ -27,10 +29,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import org.apache.storm.Config;
+import org.apache.storm.daemon.metrics.BuiltinMetricsUtil;
+import org.apache.storm.state.DefaultStateSerializer;
 import org.apache.storm.state.KeyValueState;
 import org.apache.storm.state.State;
 import org.apache.storm.state.StateFactory;
@@ -41,6 +48,7 @@ import org.apache.storm.tuple.Tuple;
 import org.apache.storm.windowing.DefaultEvictionContext;
 import org.apache.storm.windowing.EventImpl;
 import org.apache.storm.windowing.WindowLifecycleListener;
+import org.apache.storm.windowing.persistence.MappedSegmentStore;
 import org.apache.storm.windowing.persistence.WindowState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +67,12 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
     private transient WindowState<Tuple> state;
     private transient boolean stateInitialized;
     private transient boolean prePrepared;
+    private transient KeyValueState<Long, WindowPartition<Tuple>> windowPartitionsState;
+    private transient KeyValueState<String, Deque<Long>> partitionIdsState;
     private transient KeyValueState<String, Optional<?>> windowSystemState;
+    private transient MappedSegmentStore spillStore;
+    private transient DefaultStateSerializer<WindowPartition<Tuple>> spillSerializer;
+    private transient ExecutorService writeBackExecutor;
 
     public PersistentWindowedBoltExecutor(IStatefulWindowedBolt<T> bolt) {
         super(bolt);
@@ -76,8 +89,20 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
         registrations.add(WindowPartition.class.getName());
         registrations.add(DefaultEvictionContext.class.getName());
         topoConf.put(Config.TOPOLOGY_STATE_KRYO_REGISTER, registrations);
+        if (statefulWindowedBolt.isSpillToDisk()) {
+            File spillDir = new File(new File(new File((String) topoConf.get(Config.STORM_LOCAL_DIR), "window-spill"),
+                context.getStormId()), context.getThisComponentId() + "-" + context.getThisTaskId());
+            spillStore = new MappedSegmentStore(spillDir);
+            spillSerializer = new DefaultStateSerializer<>(topoConf, context);
+        }
+        // writes back the partitions evicted from the cache off the executor thread
+        ThreadFactoryBuilder threadFactory = new ThreadFactoryBuilder()
+            .setNameFormat("window-writeback-" + context.getThisComponentId() + "-" + context.getThisTaskId() + "-%d")
+            .setDaemon(true);
+        writeBackExecutor = Executors.newSingleThreadExecutor(threadFactory.build());
         prepare(topoConf, context, collector, getWindowState(topoConf, context), getPartitionState(topoConf, context),
             getWindowSystemState(topoConf, context));
+        BuiltinMetricsUtil.registerMetric("__window-cache", () -> state.getCacheMetrics(), topoConf, context);
     }
 
     // package access for unit tests
@@ -86,9 +111,11 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
                  KeyValueState<String, Deque<Long>> partitionState,
                  KeyValueState<String, Optional<?>> windowSystemState) {
         outputCollector = collector;
+        this.windowPartitionsState = windowState;
+        this.partitionIdsState = partitionState;
         this.windowSystemState = windowSystemState;
         state = new WindowState<>(windowState, partitionState, windowSystemState, this::getState,
-            statefulWindowedBolt.maxEventsInMemory());
+            statefulWindowedBolt.maxEventsInMemory(), spillStore, spillSerializer, writeBackExecutor);
         doPrepare(topoConf, context, new NoAckOutputCollector(collector), state, true);
         restoreWindowSystemState();
     }
@@ -222,6 +249,28 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
         };
     }
 
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (writeBackExecutor != null) {
+            writeBackExecutor.shutdown();
+            try {
+                if (!writeBackExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    writeBackExecutor.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                writeBackExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spillStore != null) {
+            spillStore.close();
+        }
+        StateFactory.close(windowPartitionsState);
+        StateFactory.close(partitionIdsState);
+        StateFactory.close(windowSystemState);
+    }
+
     private KeyValueState<Long, WindowPartition<Tuple>> getWindowState(Map<String, Object> topoConf, TopologyContext context) {
         String namespace = context.getThisComponentId() + "-" + context.getThisTaskId() + "-window";
         return (KeyValueState<Long, WindowPartition<Tuple>>) StateFactory.getState(namespace, topoConf, context);
@@ -17,22 +17,36 @@
  */
 package org.apache.storm.topology;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.storm.Config;
+import org.apache.storm.IDefaultTicks;
+import org.apache.storm.daemon.metrics.BuiltinMetricsUtil;
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.spout.CheckpointSpout;
+import org.apache.storm.state.SnapshotState;
 import org.apache.storm.state.State;
 import org.apache.storm.state.StateFactory;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.TupleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.storm.spout.CheckPointState.Action;
 import static org.apache.storm.spout.CheckPointState.Action.COMMIT;
@@ -41,15 +55,31 @@ import static org.apache.storm.spout.CheckPointState.Action.PREPARE;
 import static org.apache.storm.spout.CheckPointState.Action.ROLLBACK;
 /**
  * Wraps a {@link IStatefulBolt} and manages the state of the bolt.
+ * <p>
+ * With {@link Config#TOPOLOGY_STATE_CHECKPOINT_ASYNC} enabled and a {@link SnapshotState}, a prepare only takes a
+ * snapshot of the state in the executor thread. The snapshot is persisted by a background thread while the executor
+ * keeps processing tuples. Once it is saved the executor thread acks the checkpoint tuple, the next time it gets a
+ * tuple. If no tick tuple frequency is configured for the bolt, the executor sends it tick tuples to make sure that
+ * happens when no other tuples come in, and those are not handed to the bolt.
+ * </p>
  */
-public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecutor {
+public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecutor implements IDefaultTicks {
     private static final Logger LOG = LoggerFactory.getLogger(StatefulBoltExecutor.class);
+    private static final int CHECKPOINT_TICK_FREQ_SECS = 1;
     private final IStatefulBolt<T> bolt;
     private State state;
     private boolean boltInitialized = false;
     private List<Tuple> pendingTuples = new ArrayList<>();
     private List<Tuple> preparedTuples = new ArrayList<>();
     private AckTrackingOutputCollector collector;
+    private final CheckpointMetric checkpointMetric = new CheckpointMetric();
+    private boolean asyncCheckpoint;
+    private ExecutorService checkpointExecutor;
+    private boolean boltWantsTicks;
+    // The snapshot being saved in the background, and what to do with its checkpoint tuple once it is
+    private Future<PersistResult> pendingPersist;
+    private Tuple pendingCheckpointTuple;
+    private long pendingTxid;
 
     public StatefulBoltExecutor(IStatefulBolt<T> bolt) {
         this.bolt = bolt;
@@ -60,6 +90,7 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
         // get the last successfully committed state from state store
         String namespace = context.getThisComponentId() + "-" + context.getThisTaskId();
         prepare(topoConf, context, collector, StateFactory.getState(namespace, topoConf, context));
+        BuiltinMetricsUtil.registerMetric("__checkpoint", checkpointMetric, topoConf, context);
     }
 
     // package access for unit tests
@@ -68,11 +99,32 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
         this.collector = new AckTrackingOutputCollector(collector);
         bolt.prepare(topoConf, context, this.collector);
         this.state = state;
+        // without a configured frequency the ticks come from getDefaultTickFreqSecs and are only for the checkpoints
+        this.boltWantsTicks = topoConf.get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS) != null;
+        this.asyncCheckpoint = isAsyncCheckpoint(topoConf);
+        if (asyncCheckpoint) {
+            ThreadFactoryBuilder threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("checkpoint-" + context.getThisComponentId() + "-" + context.getThisTaskId() + "-%d")
+                .setDaemon(true);
+            checkpointExecutor = Executors.newSingleThreadExecutor(threadFactory.build());
+        }
     }
 
     @Override
     public void cleanup() {
+        if (checkpointExecutor != null) {
+            checkpointExecutor.shutdown();
+            try {
+                if (!checkpointExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    checkpointExecutor.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                checkpointExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
         bolt.cleanup();
+        StateFactory.close(state);
     }
 
     @Override
@@ -86,14 +138,32 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
         return bolt.getComponentConfiguration();
     }
 
+    @Override
+    public Integer getDefaultTickFreqSecs(Map<String, Object> topoConf) {
+        return isAsyncCheckpoint(topoConf) ? CHECKPOINT_TICK_FREQ_SECS : null;
+    }
+
+    private static boolean isAsyncCheckpoint(Map<String, Object> topoConf) {
+        return ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_STATE_CHECKPOINT_ASYNC), false);
+    }
+
 
     @Override
     protected void handleCheckpoint(Tuple checkpointTuple, Action action, long txid) {
         LOG.debug("handleCheckPoint with tuple {}, action {}, txid {}", checkpointTuple, action, txid);
+        long start = System.nanoTime();
+        awaitPendingPersist();
         if (action == PREPARE) {
             if (boltInitialized) {
                 bolt.prePrepare(txid);
-                state.prepareCommit(txid);
+                if (asyncCheckpoint && state instanceof SnapshotState) {
+                    prepareAsync((SnapshotState) state, checkpointTuple, txid, start);
+                    return;
+                }
+                long bytesWritten = prepareState(txid);
+                long elapsedMs = elapsedMillis(start);
+                checkpointMetric.recordStall(elapsedMs);
+                checkpointMetric.recordCheckpoint(elapsedMs, bytesWritten);
                 preparedTuples.addAll(collector.ackedTuples());
             } else {
                 /*
@@ -138,6 +208,12 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
 
     @Override
     protected void handleTuple(Tuple input) {
+        if (pendingPersist != null && pendingPersist.isDone()) {
+            completePendingPersist();
+        }
+        if (!boltWantsTicks && TupleUtils.isTick(input)) {
+            return;
+        }
         if (boltInitialized) {
             doExecute(input);
         } else {
@@ -150,6 +226,73 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
         bolt.execute(tuple);
     }
 
+    private long prepareState(long txid) {
+        if (state instanceof SnapshotState) {
+            return ((SnapshotState) state).snapshot(txid).persist();
+        }
+        state.prepareCommit(txid);
+        return -1;
+    }
+
+    /*
+     * Snapshots the state and forwards the checkpoint tuple right away, so that the downstream bolts see the
+     * barrier before any tuple of the next transaction. The checkpoint tuple is acked only after the snapshot
+     * is saved, so the commit cannot start before that.
+     */
+    private void prepareAsync(SnapshotState snapshotState, Tuple checkpointTuple, long txid, long start) {
+        SnapshotState.Snapshot snapshot = snapshotState.snapshot(txid);
+        preparedTuples.addAll(collector.ackedTuples());
+        checkpointMetric.recordStall(elapsedMillis(start));
+        collector.emit(CheckpointSpout.CHECKPOINT_STREAM_ID, checkpointTuple, new Values(txid, PREPARE));
+        pendingCheckpointTuple = checkpointTuple;
+        pendingTxid = txid;
+        pendingPersist = checkpointExecutor.submit(() -> {
+            long bytesWritten = snapshot.persist();
+            return new PersistResult(bytesWritten, elapsedMillis(start));
+        });
+    }
+
+    /*
+     * The state cannot be committed, rolled back or prepared again while a snapshot is being saved.
+     */
+    private void awaitPendingPersist() {
+        if (pendingPersist != null) {
+            completePendingPersist();
+        }
+    }
+
+    /*
+     * Acks or fails the checkpoint tuple of the snapshot saved in the background, waiting for it if need be. Only
+     * called from the executor thread, which is the only one allowed to use the collector.
+     */
+    private void completePendingPersist() {
+        Future<PersistResult> persist = pendingPersist;
+        Tuple checkpointTuple = pendingCheckpointTuple;
+        pendingPersist = null;
+        pendingCheckpointTuple = null;
+        try {
+            PersistResult result = persist.get();
+            checkpointMetric.recordCheckpoint(result.elapsedMs, result.bytesWritten);
+            collector.delegate.ack(checkpointTuple);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            LOG.error("Got error while persisting the state for txid {}", pendingTxid, e.getCause());
+            collector.fail(checkpointTuple);
+            collector.reportError(e.getCause());
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    // package access for unit tests
+    CheckpointMetric getCheckpointMetric() {
+        return checkpointMetric;
+    }
+
     private void ack(List<Tuple> tuples) {
         if (!tuples.isEmpty()) {
             LOG.debug("Acking {} tuples", tuples.size());
@@ -170,6 +313,60 @@ public class StatefulBoltExecutor<T extends State> extends BaseStatefulBoltExecu
         }
     }
 
+    private static class PersistResult {
+        private final long bytesWritten;
+        private final long elapsedMs;
+
+        PersistResult(long bytesWritten, long elapsedMs) {
+            this.bytesWritten = bytesWritten;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    /**
+     * Reports the number of prepared checkpoints, their average duration, the average and maximum time the executor
+     * thread was blocked by them and the number of bytes written.
+     */
+    static class CheckpointMetric implements IMetric {
+        private long count;
+        private long durationMs;
+        private long stallCount;
+        private long stallMs;
+        private long maxStallMs;
+        private long bytesWritten;
+
+        synchronized void recordStall(long elapsedMs) {
+            stallCount++;
+            stallMs += elapsedMs;
+            maxStallMs = Math.max(maxStallMs, elapsedMs);
+        }
+
+        synchronized void recordCheckpoint(long elapsedMs, long bytes) {
+            count++;
+            durationMs += elapsedMs;
+            if (bytes > 0) {
+                bytesWritten += bytes;
+            }
+        }
+
+        @Override
+        public synchronized Object getValueAndReset() {
+            Map<String, Object> ret = new HashMap<>();
+            ret.put("count", count);
+            ret.put("duration-ms-avg", count > 0 ? (double) durationMs / count : 0.0);
+            ret.put("stall-ms-avg", stallCount > 0 ? (double) stallMs / stallCount : 0.0);
+            ret.put("stall-ms-max", maxStallMs);
+            ret.put("bytes-written", bytesWritten);
+            count = 0;
+            durationMs = 0;
+            stallCount = 0;
+            stallMs = 0;
+            maxStallMs = 0;
+            bytesWritten = 0;
+            return ret;
+        }
+    }
+
     private static class AckTrackingOutputCollector extends AnchoringOutputCollector {
         private final OutputCollector delegate;
         private final Queue<Tuple> ackedTuples;
@@ -128,6 +128,12 @@ public class StatefulWindowedBoltExecutor<T extends State> extends WindowedBoltE
         }
     }
 
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        StateFactory.close(streamState);
+    }
+
     private void clearRecoveryState(TaskStream stream) {
         recoveryStates.remove(stream);
         if (!isRecovering()) {
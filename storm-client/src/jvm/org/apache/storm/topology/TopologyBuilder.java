@@ -28,6 +28,7 @@ import org.apache.storm.generated.SpoutSpec;
 import org.apache.storm.generated.StateSpoutSpec;
 import org.apache.storm.generated.StormTopology;
 import org.apache.storm.generated.SharedMemory;
+import org.apache.storm.grouping.ConsistentHashGrouping;
 import org.apache.storm.grouping.CustomStreamGrouping;
 import org.apache.storm.grouping.PartialKeyGrouping;
 import org.apache.storm.hooks.IWorkerHook;
@@ -262,6 +263,35 @@ public class TopologyBuilder {
         return setBolt(id, new WindowedBoltExecutor(bolt), parallelism_hint);
     }
 
+    /**
+     * Define a new bolt in this topology. This defines an incremental windowed bolt, the tuples are aggregated
+     * as they come in and the {@link IIncrementalWindowedBolt#execute(Object, Long, Long)} method is triggered
+     * for each window interval with the aggregate of the window.
+     *
+     * @param id the id of this component. This id is referenced by other components that want to consume this bolt's outputs.
+     * @param bolt the incremental windowed bolt
+     * @return use the returned object to declare the inputs to this component
+     * @throws IllegalArgumentException if {@code parallelism_hint} is not positive
+     */
+    public BoltDeclarer setBolt(String id, IIncrementalWindowedBolt<?, ?> bolt) throws IllegalArgumentException {
+        return setBolt(id, bolt, null);
+    }
+
+    /**
+     * Define a new bolt in this topology. This defines an incremental windowed bolt, the tuples are aggregated
+     * as they come in and the {@link IIncrementalWindowedBolt#execute(Object, Long, Long)} method is triggered
+     * for each window interval with the aggregate of the window.
+     *
+     * @param id the id of this component. This id is referenced by other components that want to consume this bolt's outputs.
+     * @param bolt the incremental windowed bolt
+     * @param parallelism_hint the number of tasks that should be assigned to execute this bolt. Each task will run on a thread in a process somwehere around the cluster.
+     * @return use the returned object to declare the inputs to this component
+     * @throws IllegalArgumentException if {@code parallelism_hint} is not positive
+     */
+    public BoltDeclarer setBolt(String id, IIncrementalWindowedBolt<?, ?> bolt, Number parallelism_hint) throws IllegalArgumentException {
+        return setBolt(id, new IncrementalWindowedBoltExecutor<>(bolt), parallelism_hint);
+    }
+
     /**
      * Define a new bolt in this topology. This defines a stateful bolt, that requires its
      * state (of computation) to be saved. When this bolt is initialized, the {@link IStatefulBolt#initState(State)} method
@@ -679,6 +709,16 @@ public class TopologyBuilder {
             return customGrouping(componentId, streamId, new PartialKeyGrouping(fields));
         }
 
+        @Override
+        public BoltDeclarer consistentHashGrouping(String componentId, Fields fields) {
+            return customGrouping(componentId, new ConsistentHashGrouping(fields));
+        }
+
+        @Override
+        public BoltDeclarer consistentHashGrouping(String componentId, String streamId, Fields fields) {
+            return customGrouping(componentId, streamId, new ConsistentHashGrouping(fields));
+        }
+
         @Override
         public BoltDeclarer customGrouping(String componentId, CustomStreamGrouping grouping) {
             return customGrouping(componentId, Utils.DEFAULT_STREAM_ID, grouping);
@@ -25,6 +25,7 @@ import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.windowing.CountEvictionPolicy;
 import org.apache.storm.windowing.CountTriggerPolicy;
@@ -308,6 +309,10 @@ public class WindowedBoltExecutor implements IRichBolt {
 
     @Override
     public void execute(Tuple input) {
+        if (input instanceof TupleImpl) {
+            // Expired tuples are handed to the bolt after they were acked, so they cannot go back to a tuple pool
+            ((TupleImpl) input).unpool();
+        }
         if (isTupleTs()) {
             long ts = timestampExtractor.extractTimestamp(input);
             if (waterMarkEventGenerator.track(input.getSourceGlobalStreamId(), ts)) {
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.topology.base;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.IIncrementalWindowedBolt;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseWindowedBolt.Count;
+import org.apache.storm.topology.base.BaseWindowedBolt.Duration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class for {@link IIncrementalWindowedBolt}s. Only the window configurations the incremental windows
+ * support are offered, that is a count based or a time duration based window and sliding interval.
+ *
+ * @param <A> the type of the partial aggregates
+ * @param <R> the type of the window results
+ */
+public abstract class BaseIncrementalWindowedBolt<A, R> implements IIncrementalWindowedBolt<A, R> {
+    protected final transient Map<String, Object> windowConfiguration;
+
+    protected BaseIncrementalWindowedBolt() {
+        windowConfiguration = new HashMap<>();
+    }
+
+    private static int checkPositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive [" + value + "]");
+        }
+        return value;
+    }
+
+    /**
+     * Tuple count based sliding window configuration.
+     *
+     * @param windowLength    the number of tuples in the window
+     * @param slidingInterval the number of tuples after which the window slides
+     */
+    public BaseIncrementalWindowedBolt<A, R> withWindow(Count windowLength, Count slidingInterval) {
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, checkPositive(windowLength.value, "Window length"));
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT, checkPositive(slidingInterval.value, "Sliding interval"));
+        return this;
+    }
+
+    /**
+     * Time duration based sliding window configuration.
+     *
+     * @param windowLength    the time duration of the window
+     * @param slidingInterval the time duration after which the window slides
+     */
+    public BaseIncrementalWindowedBolt<A, R> withWindow(Duration windowLength, Duration slidingInterval) {
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, checkPositive(windowLength.value, "Window length"));
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS,
+                                checkPositive(slidingInterval.value, "Sliding interval"));
+        return this;
+    }
+
+    /**
+     * A count based tumbling window.
+     *
+     * @param count the number of tuples after which the window tumbles
+     */
+    public BaseIncrementalWindowedBolt<A, R> withTumblingWindow(Count count) {
+        return withWindow(count, count);
+    }
+
+    /**
+     * A time duration based tumbling window.
+     *
+     * @param duration the time duration after which the window tumbles
+     */
+    public BaseIncrementalWindowedBolt<A, R> withTumblingWindow(Duration duration) {
+        return withWindow(duration, duration);
+    }
+
+    @Override
+    public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
+        // NOOP
+    }
+
+    @Override
+    public void cleanup() {
+        // NOOP
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        // NOOP
+    }
+
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        return windowConfiguration;
+    }
+}
@@ -29,6 +29,7 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
 
     // max number of window events in memory
     private long maxEventsInMemory;
+    private boolean spillToDisk;
 
     /**
      * {@inheritDoc}
@@ -180,11 +181,26 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
         return this;
     }
 
+    /**
+     * If set, the window partitions that are evicted from memory are spilled to memory-mapped files under the
+     * {@code storm.local.dir} of the worker and written to the backend state at the next checkpoint, instead of
+     * being added to the backend state right away. This is meaningful only if {@link #withPersistence()} is also set.
+     */
+    public BaseStatefulWindowedBolt<T> withSpillToDisk() {
+        spillToDisk = true;
+        return this;
+    }
+
     @Override
     public boolean isPersistent() {
         return persistent;
     }
 
+    @Override
+    public boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
     @Override
     public long maxEventsInMemory() {
         return maxEventsInMemory > 0 ? maxEventsInMemory : IStatefulWindowedBolt.super.maxEventsInMemory();
@@ -22,6 +22,7 @@ import org.apache.storm.generated.GlobalStreamId;
 import org.apache.storm.generated.Grouping;
 import org.apache.storm.generated.SharedMemory;
 import org.apache.storm.generated.StormTopology;
+import org.apache.storm.grouping.ConsistentHashGrouping;
 import org.apache.storm.grouping.CustomStreamGrouping;
 import org.apache.storm.grouping.PartialKeyGrouping;
 import org.apache.storm.topology.BaseConfigurationDeclarer;
@@ -689,6 +690,16 @@ public class TridentTopologyBuilder {
             return customGrouping(componentId, streamId, new PartialKeyGrouping(fields));
         }
 
+        @Override
+        public BoltDeclarer consistentHashGrouping(String componentId, Fields fields) {
+            return customGrouping(componentId, new ConsistentHashGrouping(fields));
+        }
+
+        @Override
+        public BoltDeclarer consistentHashGrouping(String componentId, String streamId, Fields fields) {
+            return customGrouping(componentId, streamId, new ConsistentHashGrouping(fields));
+        }
+
         @Override
         public BoltDeclarer customGrouping(final String component, final CustomStreamGrouping grouping) {
             addDeclaration(new InputDeclaration() {
@@ -20,21 +20,42 @@ package org.apache.storm.tuple;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 
+/**
+ * The anchors of a tuple: for each tuple tree it belongs to, the root id of that tree and the XOR of the edge ids of
+ * this tuple within it. Most tuples are either unanchored or belong to a single tree, so those are kept in an empty
+ * or singleton map instead of a HashMap. Only ids that are made from a map passed in, or that belong to a pooled
+ * tuple, can be changed.
+ */
 public class MessageId {
+    /**
+     * Kinds of anchor lists in the compact encoding, which the caller packs into a header of its own so the anchor
+     * count only needs to be written when there is more than one anchor.
+     */
+    public static final int COMPACT_UNANCHORED = 0;
+    public static final int COMPACT_SINGLE_ROOT = 1;
+    public static final int COMPACT_MULTI_ROOT = 2;
+    public static final int COMPACT_KIND_BITS = 2;
+
+    private static final MessageId UNANCHORED = new MessageId(Collections.<Long, Long>emptyMap());
+
     private Map<Long, Long> _anchorsToIds;
     
     public static long generateId(Random rand) {
         return rand.nextLong();
     }
 
+    /**
+     * @return an id without anchors. It is shared, so its anchors cannot be changed.
+     */
     public static MessageId makeUnanchored() {
-        return makeId(new HashMap<Long, Long>());
+        return UNANCHORED;
     }
         
     public static MessageId makeId(Map<Long, Long> anchorsToIds) {
@@ -42,9 +63,7 @@ public class MessageId {
     }
         
     public static MessageId makeRootId(long id, long val) {
-        Map<Long, Long> anchorsToIds = new HashMap<>();
-        anchorsToIds.put(id, val);
-        return new MessageId(anchorsToIds);
+        return new MessageId(Collections.singletonMap(id, val));
     }
     
     protected MessageId(Map<Long, Long> anchorsToIds) {
@@ -76,18 +95,88 @@ public class MessageId {
 
     public void serialize(Output out) throws IOException {
         out.writeInt(_anchorsToIds.size(), true);
+        writeAnchors(out);
+    }
+
+    public static MessageId deserialize(Input in) throws IOException {
+        return readAnchors(in, in.readInt(true));
+    }
+
+    /**
+     * Replace the anchors of this id with the ones read from in, so the id of a pooled tuple can be reused.
+     */
+    public void deserializeAnchors(Input in) throws IOException {
+        readAnchorsInto(in, in.readInt(true));
+    }
+
+    /**
+     * @return which kind of anchor list {@link #serializeCompact} writes for this id.
+     */
+    public int getCompactKind() {
+        int size = _anchorsToIds.size();
+        return size <= 1 ? size : COMPACT_MULTI_ROOT;
+    }
+
+    /**
+     * Write the anchors in the compact encoding. The kind from {@link #getCompactKind} must be written before,
+     * as it is needed to read them back.
+     */
+    public void serializeCompact(Output out) throws IOException {
+        if (_anchorsToIds.size() > 1) {
+            out.writeInt(_anchorsToIds.size(), true);
+        }
+        writeAnchors(out);
+    }
+
+    public static MessageId deserializeCompact(int kind, Input in) throws IOException {
+        return readAnchors(in, compactCount(kind, in));
+    }
+
+    /**
+     * Like {@link #deserializeAnchors}, for the compact encoding.
+     */
+    public void deserializeCompactAnchors(int kind, Input in) throws IOException {
+        readAnchorsInto(in, compactCount(kind, in));
+    }
+
+    private static int compactCount(int kind, Input in) {
+        switch (kind) {
+            case COMPACT_UNANCHORED:
+                return 0;
+            case COMPACT_SINGLE_ROOT:
+                return 1;
+            case COMPACT_MULTI_ROOT:
+                return in.readInt(true);
+            default:
+                throw new IllegalArgumentException("Unknown kind of anchors " + kind);
+        }
+    }
+
+    private void writeAnchors(Output out) {
         for(Entry<Long, Long> anchorToId: _anchorsToIds.entrySet()) {
             out.writeLong(anchorToId.getKey());
             out.writeLong(anchorToId.getValue());
         }
     }
 
-    public static MessageId deserialize(Input in) throws IOException {
-        int numAnchors = in.readInt(true);
+    private static MessageId readAnchors(Input in, int numAnchors) {
+        if (numAnchors == 0) {
+            return UNANCHORED;
+        }
+        if (numAnchors == 1) {
+            return makeRootId(in.readLong(), in.readLong());
+        }
         Map<Long, Long> anchorsToIds = new HashMap<>();
         for(int i=0; i<numAnchors; i++) {
             anchorsToIds.put(in.readLong(), in.readLong());
         }
         return new MessageId(anchorsToIds);
     }
+
+    private void readAnchorsInto(Input in, int numAnchors) {
+        _anchorsToIds.clear();
+        for(int i=0; i<numAnchors; i++) {
+            _anchorsToIds.put(in.readLong(), in.readLong());
+        }
+    }
 }
@@ -17,43 +17,74 @@
  */
 package org.apache.storm.tuple;
 
+import java.util.AbstractList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.storm.generated.GlobalStreamId;
 import org.apache.storm.task.GeneralTopologyContext;
 
 public class TupleImpl implements Tuple {
-    private final List<Object> values;
-    private final int taskId;
-    private final String streamId;
-    private final GeneralTopologyContext context;
-    private final MessageId id;
+    private static final AtomicIntegerFieldUpdater<TupleImpl> RELEASE_STATE =
+        AtomicIntegerFieldUpdater.newUpdater(TupleImpl.class, "releaseState");
+    private static final int EXECUTED = 1;
+    private static final int ACKED = 2;
+    private static final int RELEASED = EXECUTED | ACKED;
+    private static final int UNPOOLED = 4;
+
+    private List<Object> values;
+    private int taskId;
+    private String streamId;
+    private GeneralTopologyContext context;
+    private MessageId id;
     private Long _processSampleStartTime;
     private Long _executeSampleStartTime;
     private long _outAckVal = 0;
-    
+    // Only set for tuples from a TuplePool, see TuplePool for who releases them when
+    private final TuplePool pool;
+    private volatile int releaseState;
+    private boolean poisoned;
+    private AddressedTuple addressed;
+
     public TupleImpl(Tuple t) {
         this.values = t.getValues();
         this.taskId = t.getSourceTask();
         this.streamId = t.getSourceStreamId();
-        this.id = t.getMessageId();
         this.context = t.getContext();
+        this.id = t.getMessageId();
+        this.pool = null;
         if (t instanceof TupleImpl) {
             TupleImpl ti = (TupleImpl) t;
             this._processSampleStartTime = ti._processSampleStartTime;
             this._executeSampleStartTime = ti._executeSampleStartTime;
             this._outAckVal = ti._outAckVal;
+            if (ti.isPooled()) {
+                // The id of a pooled tuple is cleared once it goes back to the pool
+                this.id = MessageId.makeId(new HashMap<>(id.getAnchorsToIds()));
+            }
         }
     }
 
     public TupleImpl(GeneralTopologyContext context, List<Object> values, int taskId, String streamId, MessageId id) {
+        this.pool = null;
+        this.id = id;
+        init(context, values, taskId, streamId);
+    }
+
+    TupleImpl(TuplePool pool) {
+        this.pool = pool;
+        this.id = MessageId.makeId(new HashMap<>());
+        this.releaseState = RELEASED;
+    }
+
+    private void init(GeneralTopologyContext context, List<Object> values, int taskId, String streamId) {
         this.values = Collections.unmodifiableList(values);
         this.taskId = taskId;
         this.streamId = streamId;
-        this.id = id;
         this.context = context;
-        
+
         String componentId = context.getComponentId(taskId);
         Fields schema = context.getComponentOutputFields(componentId, streamId);
         if(values.size()!=schema.size()) {
@@ -68,6 +99,123 @@ public class TupleImpl implements Tuple {
         this(context, values, taskId, streamId, MessageId.makeUnanchored());
     }
     
+    /**
+     * Fill in a tuple just taken from a {@link TuplePool}. Its message id starts out without anchors; put them into
+     * getMessageId().getAnchorsToIds() before the tuple is handed on.
+     */
+    public TupleImpl reset(GeneralTopologyContext context, List<Object> values, int taskId, String streamId) {
+        init(context, values, taskId, streamId);
+        _processSampleStartTime = null;
+        _executeSampleStartTime = null;
+        _outAckVal = 0;
+        releaseState = 0;
+        return this;
+    }
+
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * @return this tuple addressed to dest. Pooled tuples hand out the same instance for as long as dest stays the
+     *     same, which it usually does.
+     */
+    public AddressedTuple addressedTo(int dest) {
+        if (pool == null) {
+            return new AddressedTuple(dest, this);
+        }
+        AddressedTuple ret = addressed;
+        if (ret == null || ret.dest != dest) {
+            ret = new AddressedTuple(dest, this);
+            addressed = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * The bolt returned from execute for this tuple. A pooled tuple goes back to its pool once it is also acked or
+     * failed.
+     */
+    public void markExecuted() {
+        if (pool != null) {
+            releaseOnce(EXECUTED);
+        }
+    }
+
+    /**
+     * The tuple was acked or failed. A pooled tuple goes back to its pool once execute also returned.
+     */
+    public void markAcked() {
+        if (pool != null) {
+            releaseOnce(ACKED);
+        }
+    }
+
+    /**
+     * Hand a pooled tuple back to its pool right away, for tuples nobody acks. No-op for other tuples.
+     */
+    public void release() {
+        if (pool != null) {
+            releaseOnce(RELEASED);
+        }
+    }
+
+    /**
+     * Keep this tuple out of its pool for good, for bolts that still use tuples after they acked them. No-op for
+     * tuples that are not pooled.
+     */
+    public void unpool() {
+        if (pool != null) {
+            while (true) {
+                int state = releaseState;
+                if (RELEASE_STATE.compareAndSet(this, state, state | UNPOOLED)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void releaseOnce(int flags) {
+        while (true) {
+            int state = releaseState;
+            if ((state & flags) == flags) {
+                if (state == RELEASED && pool.isDebug()) {
+                    throw new IllegalStateException("Tuple released twice: " + values);
+                }
+                return;
+            }
+            int next = state | flags;
+            if (RELEASE_STATE.compareAndSet(this, state, next)) {
+                if (next == RELEASED) {
+                    pool.release(this);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop what the tuple refers to, so the pool does not hold on to user objects. In debug mode the tuple is never
+     * reused; it is poisoned instead so any later use of it throws.
+     */
+    void recycle(boolean debug) {
+        if (debug) {
+            values = new ReleasedValues(toString());
+            poisoned = true;
+        } else {
+            values = null;
+            context = null;
+            streamId = null;
+            id.getAnchorsToIds().clear();
+        }
+    }
+
+    private void checkNotReleased() {
+        if (poisoned) {
+            throw new IllegalStateException("Tuple used after it was released to the pool: " + values);
+        }
+    }
+
     public void setProcessSampleStartTime(long ms) {
         _processSampleStartTime = ms;
     }
@@ -240,21 +388,25 @@ public class TupleImpl implements Tuple {
 
     @Override
     public int getSourceTask() {
+        checkNotReleased();
         return taskId;
     }
 
     @Override
     public String getSourceStreamId() {
+        checkNotReleased();
         return streamId;
     }
 
     @Override
     public MessageId getMessageId() {
+        checkNotReleased();
         return id;
     }
     
     @Override
     public GeneralTopologyContext getContext() {
+        checkNotReleased();
         return context;
     }
     
@@ -272,4 +424,27 @@ public class TupleImpl implements Tuple {
     public int hashCode() {
         return System.identityHashCode(this);
     }
+
+    private static class ReleasedValues extends AbstractList<Object> {
+        private final String tuple;
+
+        ReleasedValues(String tuple) {
+            this.tuple = tuple;
+        }
+
+        @Override
+        public Object get(int index) {
+            throw new IllegalStateException("Tuple used after it was released to the pool: " + tuple);
+        }
+
+        @Override
+        public int size() {
+            throw new IllegalStateException("Tuple used after it was released to the pool: " + tuple);
+        }
+
+        @Override
+        public String toString() {
+            return tuple;
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.tuple;
+
+import org.apache.storm.Config;
+import org.apache.storm.utils.ObjectReader;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles {@link TupleImpl} objects, along with their message id and anchor map, so steady state emitting and
+ * receiving allocates next to no tuples. Turned on with {@link Config#TOPOLOGY_TUPLE_POOLING}.
+ *
+ * A pooled tuple has exactly one owner at a time, and goes back to the pool it came from once the last owner is done:
+ *
+ * 1. The executor that acquires a tuple owns it until it hands it to the transfer for a single destination task.
+ * 2. For a task in another worker, the executor send thread releases the tuple as soon as it is serialized.
+ * 3. For a task in this worker, the receiving executor owns it. Bolts release it once execute returned and the tuple
+ *    was acked or failed, in whichever order that happens. System tuples and tuples received by spouts are released
+ *    as soon as they are handled.
+ *
+ * So a bolt must not touch a tuple, including anchoring to it, after it returned from execute and acked or failed
+ * the tuple. Bolts that keep tuples around, for example to ack them later, are fine as long as they stop using each
+ * tuple once they ack it. Bolts that use tuples after acking them, like windowed bolts do, call
+ * {@link TupleImpl#unpool} to keep them out of the pool. A tuple that is never acked is never released, and just left
+ * to the GC.
+ *
+ * In debug mode, {@link Config#TOPOLOGY_TUPLE_POOLING_DEBUG}, released tuples are never reused. They are poisoned
+ * instead, so that any later use of one, or releasing it again, throws an IllegalStateException.
+ */
+public class TuplePool {
+    private final ArrayBlockingQueue<TupleImpl> free;
+    private final boolean debug;
+    private final AtomicLong allocated = new AtomicLong(0);
+    private final AtomicLong acquired = new AtomicLong(0);
+
+    public TuplePool(int maxPooled, boolean debug) {
+        this.free = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+        this.debug = debug;
+    }
+
+    /**
+     * @return a new pool as configured in topoConf, or null if tuple pooling is turned off.
+     */
+    public static TuplePool make(Map<String, Object> topoConf) {
+        if (!ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_TUPLE_POOLING), false)) {
+            return null;
+        }
+        return new TuplePool(ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_TUPLE_POOL_SIZE), 1024),
+            ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_TUPLE_POOLING_DEBUG), false));
+    }
+
+    /**
+     * @return a tuple with an empty message id, to be filled in with {@link TupleImpl#reset}.
+     */
+    public TupleImpl acquire() {
+        acquired.incrementAndGet();
+        TupleImpl tuple = free.poll();
+        if (tuple == null) {
+            allocated.incrementAndGet();
+            return new TupleImpl(this);
+        }
+        return tuple;
+    }
+
+    void release(TupleImpl tuple) {
+        tuple.recycle(debug);
+        if (!debug) {
+            free.offer(tuple);
+        }
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * @return how many tuples had to be allocated because none were free.
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public int getPooled() {
+        return free.size();
+    }
+}
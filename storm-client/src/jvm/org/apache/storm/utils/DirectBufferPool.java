@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of fixed size direct buffers. Direct buffers are expensive to allocate and are only freed by the GC,
+ * so buffers are handed back once they are no longer needed. At most maxPooled buffers are kept around; if more
+ * are needed at the same time they are allocated on demand and left to the GC when released.
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final AtomicLong allocated = new AtomicLong(0);
+    private final AtomicLong acquired = new AtomicLong(0);
+
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * @return a cleared buffer of bufferSize bytes.
+     */
+    public ByteBuffer acquire() {
+        acquired.incrementAndGet();
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hand a buffer back to the pool. The caller must not touch the buffer afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return how many buffers had to be allocated because none were free.
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public int getPooled() {
+        return free.size();
+    }
+}
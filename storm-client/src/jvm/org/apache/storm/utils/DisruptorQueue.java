@@ -32,7 +32,6 @@ import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.ProducerType;
 
 import org.apache.storm.Config;
-import org.apache.storm.metric.api.IStatefulObject;
 import org.apache.storm.metric.internal.RateTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +57,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * A single consumer queue that uses the LMAX Disruptor. They key to the performance is
  * the ability to catch up to the producer by processing tuples in batches.
  */
-public class DisruptorQueue implements IStatefulObject {
+public class DisruptorQueue implements ISingleConsumerQueue {
     private static final Logger LOG = LoggerFactory.getLogger(DisruptorQueue.class);    
     private static final Object INTERRUPT = new Object();
     private static final String PREFIX = "disruptor-";
@@ -318,7 +317,7 @@ public class DisruptorQueue implements IStatefulObject {
     /**
      * This inner class provides methods to access the metrics of the disruptor queue.
      */
-    public class QueueMetrics {
+    public class QueueMetrics implements ISingleConsumerQueue.Metrics {
         private final RateTracker _rateTracker = new RateTracker(10000, 10);
 
         public long writePos() {
@@ -580,6 +579,14 @@ public class DisruptorQueue implements IStatefulObject {
         batcher.flush(false);
     }
 
+    /**
+     * Batches are pushed to the ring buffer by the shared flusher pool, so there is nothing to do here.
+     */
+    @Override
+    public void flush() {
+        //NOOP
+    }
+
     @Override
     public Object getState() {
         return _metrics.getState();
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import com.lmax.disruptor.EventHandler;
+import org.apache.storm.metric.api.IStatefulObject;
+
+/**
+ * The contract shared by the executor receive/send queues and the worker transfer queue.
+ * Any number of threads may publish, but only a single thread may consume.
+ *
+ * @see DisruptorQueue
+ * @see MpscBatchQueue
+ */
+public interface ISingleConsumerQueue extends IStatefulObject {
+
+    String getName();
+
+    boolean isFull();
+
+    /**
+     * Publish an object to the queue. Should never block for an undefined period of time.
+     */
+    void publish(Object obj);
+
+    /**
+     * Push any objects the calling thread has batched up locally to the consumer. Implementations
+     * that flush batches on their own may treat this as a noop.
+     */
+    void flush();
+
+    /**
+     * Consume whatever is currently available without waiting.
+     */
+    void consumeBatch(EventHandler<Object> handler);
+
+    /**
+     * Consume whatever is available, waiting up to the configured read timeout for something to show up.
+     */
+    void consumeBatchWhenAvailable(EventHandler<Object> handler);
+
+    /**
+     * Make the consumer throw out of {@link #consumeBatchWhenAvailable(EventHandler)} once everything
+     * published before this call has been consumed, and release any resources held by the queue.
+     */
+    void haltWithInterrupt();
+
+    void registerBackpressureCallback(DisruptorBackpressureCallback cb);
+
+    ISingleConsumerQueue setHighWaterMark(double highWaterMark);
+
+    ISingleConsumerQueue setLowWaterMark(double lowWaterMark);
+
+    int getHighWaterMark();
+
+    int getLowWaterMark();
+
+    ISingleConsumerQueue setEnableBackpressure(boolean enableBackpressure);
+
+    boolean getThrottleOn();
+
+    Metrics getMetrics();
+
+    /**
+     * Point in time view of the queue occupancy.
+     */
+    interface Metrics {
+        long population();
+
+        long capacity();
+
+        long overflow();
+
+        float pctFull();
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import com.lmax.disruptor.EventHandler;
+
+import org.apache.storm.metric.internal.RateTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, array backed, lock-free single consumer queue.
+ *
+ * Producers claim slots in the ring with a CAS on the producer index, so they never wait on each other. Each
+ * producer thread batches up to inputBatchSize objects locally before claiming slots for the whole batch at once.
+ * There is no background flusher: a partial batch is picked up by the consumer itself, either when the ring runs
+ * dry or at most once every flushInterval ms while the consumer is busy. A consumer with nothing to do parks,
+ * and is woken up by the next producer to publish.
+ */
+public class MpscBatchQueue implements ISingleConsumerQueue {
+    private static final Object INTERRUPT = new Object();
+    private static final String PREFIX = "mpsc-";
+
+    private static final int FREE = 0;
+    private static final int PRODUCER_OWNED = 1;
+    private static final int CONSUMER_OWNED = 2;
+
+    private static final int IDLE_SPINS = 100;
+    private static final int IDLE_YIELDS = 10;
+
+    /**
+     * The objects a single producer thread has published but not yet pushed to the ring. Only the owning
+     * producer appends to it, but the consumer may take the pending objects over when it runs out of work, so
+     * access is handed back and forth with a CAS on owner. The consumer only ever holds it long enough to swap
+     * the pending list for the spare one.
+     */
+    private final class ProducerBatch {
+        private final AtomicInteger owner = new AtomicInteger(FREE);
+        private ArrayList<Object> pending = new ArrayList<>(inputBatchSize);
+        private ArrayList<Object> spare = new ArrayList<>(inputBatchSize);
+        // A hint for the consumer, the real state is guarded by owner
+        private volatile int size = 0;
+
+        private void acquire() {
+            while (!owner.compareAndSet(FREE, PRODUCER_OWNED)) {
+                Thread.yield();
+            }
+        }
+
+        void add(Object obj) {
+            acquire();
+            try {
+                pending.add(obj);
+                batched.increment();
+                if (pending.size() >= inputBatchSize) {
+                    publishPending();
+                }
+                size = pending.size();
+            } finally {
+                owner.set(FREE);
+            }
+        }
+
+        void flush() {
+            if (size == 0) {
+                return;
+            }
+            acquire();
+            try {
+                publishPending();
+                size = pending.size();
+            } finally {
+                owner.set(FREE);
+            }
+        }
+
+        private void publishPending() {
+            int published = tryPublish(pending);
+            if (published == pending.size()) {
+                pending.clear();
+            } else if (published > 0) {
+                pending.subList(0, published).clear();
+            }
+        }
+
+        /**
+         * Called by the consumer. Hands back everything this producer has batched up, along with the producer index
+         * as of the hand-off. Everything this producer pushed to the ring before the hand-off is below that index.
+         */
+        long takePending(List<Object> into) {
+            if (!owner.compareAndSet(FREE, CONSUMER_OWNED)) {
+                return -1;
+            }
+            try {
+                long limit = producerIndex.get();
+                ArrayList<Object> taken = pending;
+                pending = spare;
+                spare = taken;
+                size = 0;
+                into.addAll(taken);
+                taken.clear();
+                return limit;
+            } finally {
+                owner.set(FREE);
+            }
+        }
+    }
+
+    /**
+     * This inner class provides methods to access the metrics of the queue.
+     */
+    public class QueueMetrics implements ISingleConsumerQueue.Metrics {
+        private final RateTracker _rateTracker = new RateTracker(10000, 10);
+
+        public long writePos() {
+            return producerIndex.get();
+        }
+
+        public long readPos() {
+            return consumerIndex.get();
+        }
+
+        @Override
+        public long overflow() {
+            return batched.sum();
+        }
+
+        @Override
+        public long population() {
+            return writePos() - readPos();
+        }
+
+        @Override
+        public long capacity() {
+            return capacity;
+        }
+
+        @Override
+        public float pctFull() {
+            return (1.0F * population() / capacity());
+        }
+
+        public Object getState() {
+            Map state = new HashMap<String, Object>();
+
+            // get readPos then writePos so it's never an under-estimate
+            long rp = readPos();
+            long wp = writePos();
+
+            final long tuplePop = tuplePopulation.get();
+
+            final double arrivalRateInSecs = _rateTracker.reportRate();
+
+            //Assume the queue is stable, in which the arrival rate is equal to the consumption rate.
+            final double sojournTime = tuplePop / Math.max(arrivalRateInSecs, 0.00001) * 1000.0;
+
+            state.put("capacity", capacity());
+            state.put("population", wp - rp);
+            state.put("tuple_population", tuplePop);
+            state.put("write_pos", wp);
+            state.put("read_pos", rp);
+            state.put("arrival_rate_secs", arrivalRateInSecs);
+            state.put("sojourn_time_ms", sojournTime); //element sojourn time in milliseconds
+            state.put("overflow", overflow());
+
+            return state;
+        }
+
+        public void notifyArrivals(long counts) {
+            _rateTracker.notify(counts);
+            tuplePopulation.getAndAdd(counts);
+        }
+
+        public void notifyDepartures(long counts) {
+            tuplePopulation.getAndAdd(-counts);
+        }
+
+        public void close() {
+            _rateTracker.close();
+        }
+    }
+
+    private final AtomicReferenceArray<Object> _buffer;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong(0);
+    // Only ever written by the consumer
+    private final AtomicLong consumerIndex = new AtomicLong(0);
+    private final int inputBatchSize;
+    private final long readTimeoutNanos;
+    private final long flushIntervalNanos;
+    private final ThreadLocal<ProducerBatch> localBatch;
+    private final CopyOnWriteArrayList<ProducerBatch> producerBatches = new CopyOnWriteArrayList<>();
+    private final LongAdder batched = new LongAdder();
+    private final AtomicLong tuplePopulation = new AtomicLong(0);
+    private final QueueMetrics _metrics;
+
+    // Consumer side state
+    private final ArrayList<Object> taken = new ArrayList<>();
+    private long lastBatchSweepNanos = System.nanoTime();
+    private volatile Thread waitingConsumer = null;
+
+    private final String _queueName;
+    private DisruptorBackpressureCallback _cb = null;
+    private int _highWaterMark = 0;
+    private int _lowWaterMark = 0;
+    private boolean _enableBackpressure = false;
+    private volatile boolean _throttleOn = false;
+
+    /**
+     * @param queueName the name of the queue, used for metrics and thread names
+     * @param size the number of slots in the ring, must be a power of 2
+     * @param readTimeout how long in ms {@link #consumeBatchWhenAvailable(EventHandler)} may wait, or 0 to wait forever
+     * @param inputBatchSize how many objects each producer batches up before pushing them to the ring
+     * @param flushInterval the longest time in ms a busy consumer goes without picking up partial batches
+     */
+    public MpscBatchQueue(String queueName, int size, long readTimeout, int inputBatchSize, long flushInterval) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The size of " + queueName + " must be a power of 2, not " + size);
+        }
+        _queueName = PREFIX + queueName;
+        _buffer = new AtomicReferenceArray<>(size);
+        capacity = size;
+        mask = size - 1;
+        readTimeoutNanos = readTimeout <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(readTimeout);
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushInterval, 1));
+        //The batch size can be no larger than half the full queue size.
+        //This is mostly to avoid contention issues.
+        this.inputBatchSize = Math.max(1, Math.min(inputBatchSize, size / 2));
+        localBatch = ThreadLocal.withInitial(() -> {
+            ProducerBatch batch = new ProducerBatch();
+            producerBatches.add(batch);
+            return batch;
+        });
+        _metrics = new QueueMetrics();
+    }
+
+    @Override
+    public String getName() {
+        return _queueName;
+    }
+
+    @Override
+    public boolean isFull() {
+        return (_metrics.population() + batched.sum()) >= capacity;
+    }
+
+    @Override
+    public void publish(Object obj) {
+        localBatch.get().add(obj);
+        if (_enableBackpressure && _cb != null && (_metrics.population() + batched.sum()) >= _highWaterMark) {
+            try {
+                if (!_throttleOn) {
+                    _throttleOn = true;
+                    _cb.highWaterMark();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Exception during calling highWaterMark callback!", e);
+            }
+        }
+        wakeConsumer();
+    }
+
+    @Override
+    public void flush() {
+        localBatch.get().flush();
+        wakeConsumer();
+    }
+
+    @Override
+    public void consumeBatch(EventHandler<Object> handler) {
+        consume(handler);
+    }
+
+    @Override
+    public void consumeBatchWhenAvailable(EventHandler<Object> handler) {
+        if (consume(handler) > 0) {
+            return;
+        }
+        final long deadline = System.nanoTime() + readTimeoutNanos;
+        int idleCount = 0;
+        while (true) {
+            if (idleCount < IDLE_SPINS) {
+                idleCount++;
+            } else if (idleCount < IDLE_SPINS + IDLE_YIELDS) {
+                idleCount++;
+                Thread.yield();
+            } else {
+                waitingConsumer = Thread.currentThread();
+                // Look again after advertising that we are about to park, so a concurrent publish cannot be missed
+                if (isIdle()) {
+                    if (readTimeoutNanos > 0) {
+                        LockSupport.parkNanos(this, Math.max(deadline - System.nanoTime(), 1));
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                waitingConsumer = null;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new RuntimeException(new InterruptedException("Queue processing interrupted"));
+            }
+            if (consume(handler) > 0) {
+                return;
+            }
+            if (readTimeoutNanos > 0 && System.nanoTime() - deadline >= 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void haltWithInterrupt() {
+        flush();
+        ArrayList<Object> interrupt = new ArrayList<>(1);
+        interrupt.add(INTERRUPT);
+        while (tryPublish(interrupt) == 0) {
+            Thread.yield();
+        }
+        wakeConsumer();
+        _metrics.close();
+    }
+
+    @Override
+    public void registerBackpressureCallback(DisruptorBackpressureCallback cb) {
+        this._cb = cb;
+    }
+
+    @Override
+    public Object getState() {
+        return _metrics.getState();
+    }
+
+    @Override
+    public MpscBatchQueue setHighWaterMark(double highWaterMark) {
+        this._highWaterMark = (int) (capacity * highWaterMark);
+        return this;
+    }
+
+    @Override
+    public MpscBatchQueue setLowWaterMark(double lowWaterMark) {
+        this._lowWaterMark = (int) (capacity * lowWaterMark);
+        return this;
+    }
+
+    @Override
+    public int getHighWaterMark() {
+        return this._highWaterMark;
+    }
+
+    @Override
+    public int getLowWaterMark() {
+        return this._lowWaterMark;
+    }
+
+    @Override
+    public MpscBatchQueue setEnableBackpressure(boolean enableBackpressure) {
+        this._enableBackpressure = enableBackpressure;
+        return this;
+    }
+
+    @Override
+    public boolean getThrottleOn() {
+        return _throttleOn;
+    }
+
+    @Override
+    public QueueMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Claim as many slots as are free, up to objs.size(), and fill them with the head of objs.
+     * @return the number of objects published
+     */
+    private int tryPublish(List<Object> objs) {
+        int size = objs.size();
+        if (size == 0) {
+            return 0;
+        }
+        long start;
+        int claimed;
+        do {
+            start = producerIndex.get();
+            claimed = (int) Math.min(size, capacity - (start - consumerIndex.get()));
+            if (claimed <= 0) {
+                return 0;
+            }
+        } while (!producerIndex.compareAndSet(start, start + claimed));
+
+        long numberOfTuples = 0;
+        for (int i = 0; i < claimed; i++) {
+            Object obj = objs.get(i);
+            _buffer.lazySet((int) ((start + i) & mask), obj);
+            numberOfTuples += getTupleCount(obj);
+        }
+        if (objs.get(0) != INTERRUPT) {
+            batched.add(-claimed);
+        }
+        _metrics.notifyArrivals(numberOfTuples);
+        return claimed;
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private boolean isIdle() {
+        if (producerIndex.get() != consumerIndex.get()) {
+            return false;
+        }
+        for (ProducerBatch batch : producerBatches) {
+            if (batch.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int consume(EventHandler<Object> handler) {
+        int consumed = drainRing(handler, Long.MAX_VALUE);
+        long now = System.nanoTime();
+        if (consumed == 0 || now - lastBatchSweepNanos >= flushIntervalNanos) {
+            lastBatchSweepNanos = now;
+            consumed += drainProducerBatches(handler);
+        }
+        return consumed;
+    }
+
+    /**
+     * Consume everything in the ring that was claimed below limit.
+     */
+    private int drainRing(EventHandler<Object> handler, long limit) {
+        final long start = consumerIndex.get();
+        final long end = Math.min(producerIndex.get(), limit);
+        for (long curr = start; curr < end; curr++) {
+            int offset = (int) (curr & mask);
+            Object o = _buffer.get(offset);
+            while (o == null) {
+                // The slot was claimed but the producer has not filled it in yet
+                Thread.yield();
+                o = _buffer.get(offset);
+            }
+            _buffer.lazySet(offset, null);
+            consumerIndex.lazySet(curr + 1);
+            deliver(o, curr, curr == end - 1, handler);
+        }
+        return (int) Math.max(0, end - start);
+    }
+
+    /**
+     * Take over whatever the producers have batched up and consume it directly. Anything a producer pushed to the
+     * ring before its batch was taken is older than the batch, so it is consumed first to keep per producer ordering.
+     */
+    private int drainProducerBatches(EventHandler<Object> handler) {
+        int consumed = 0;
+        for (ProducerBatch batch : producerBatches) {
+            if (batch.size == 0) {
+                continue;
+            }
+            long limit = batch.takePending(taken);
+            if (limit < 0 || taken.isEmpty()) {
+                continue;
+            }
+            consumed += drainRing(handler, limit);
+            int size = taken.size();
+            long numberOfTuples = 0;
+            for (Object obj : taken) {
+                numberOfTuples += getTupleCount(obj);
+            }
+            batched.add(-size);
+            _metrics.notifyArrivals(numberOfTuples);
+            try {
+                for (int i = 0; i < size; i++) {
+                    deliver(taken.get(i), consumerIndex.get(), i == size - 1, handler);
+                }
+            } finally {
+                taken.clear();
+            }
+            consumed += size;
+        }
+        return consumed;
+    }
+
+    private void deliver(Object o, long sequence, boolean endOfBatch, EventHandler<Object> handler) {
+        try {
+            if (o == INTERRUPT) {
+                throw new InterruptedException("Queue processing interrupted");
+            }
+            _metrics.notifyDepartures(getTupleCount(o));
+            handler.onEvent(o, sequence, endOfBatch);
+            if (_enableBackpressure && _cb != null && (_metrics.population() + batched.sum()) <= _lowWaterMark) {
+                try {
+                    if (_throttleOn) {
+                        _throttleOn = false;
+                        _cb.lowWaterMark();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Exception during calling lowWaterMark callback!");
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long getTupleCount(Object obj) {
+        //a published object could be an instance of either AddressedTuple, ArrayList<AddressedTuple>, or HashMap<Integer, ArrayList<TaskMessage>>.
+        long tupleCount;
+        if (obj instanceof ArrayList) {
+            tupleCount = ((ArrayList) obj).size();
+        } else if (obj instanceof HashMap) {
+            tupleCount = 0;
+            for (Object value : ((HashMap) obj).values()) {
+                tupleCount += ((ArrayList) value).size();
+            }
+        } else {
+            tupleCount = 1;
+        }
+        return tupleCount;
+    }
+}
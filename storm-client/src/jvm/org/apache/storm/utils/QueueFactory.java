@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.storm.Config;
+
+import java.util.Map;
+
+/**
+ * Creates the executor and worker queues according to {@link Config#TOPOLOGY_QUEUE_IMPLEMENTATION}.
+ */
+public class QueueFactory {
+    public static final String DISRUPTOR = "disruptor";
+    public static final String MPSC = "mpsc";
+
+    public static ISingleConsumerQueue mkQueue(Map<String, Object> topoConf, String queueName, int size) {
+        long waitTimeOutMs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_WAIT_TIMEOUT_MILLIS));
+        int batchSize = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_SIZE));
+        long batchTimeOutMs = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_DISRUPTOR_BATCH_TIMEOUT_MILLIS));
+        String impl = ObjectReader.getString(topoConf.get(Config.TOPOLOGY_QUEUE_IMPLEMENTATION), DISRUPTOR);
+        if (MPSC.equals(impl)) {
+            return new MpscBatchQueue(queueName, size, waitTimeOutMs, batchSize, batchTimeOutMs);
+        } else if (DISRUPTOR.equals(impl)) {
+            return new DisruptorQueue(queueName, ProducerType.MULTI, size, waitTimeOutMs, batchSize, batchTimeOutMs);
+        }
+        throw new IllegalArgumentException("Unknown " + Config.TOPOLOGY_QUEUE_IMPLEMENTATION + " " + impl);
+    }
+}
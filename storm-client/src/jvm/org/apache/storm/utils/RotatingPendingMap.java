@@ -0,0 +1,421 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RotatingMap} specialized for pending tuple trees, keyed by the primitive root id.
+ *
+ * Each bucket is an open addressing (linear probing) table whose columns are kept in parallel primitive arrays:
+ * the ack val (xor of the edge ids), the spout task, the start time, a failed flag and, optionally, an object
+ * attachment. Nothing is allocated per entry, and rotating recycles the expired bucket instead of dropping it, so
+ * once the tables have grown to the steady state number of pending trees the map does not allocate at all.
+ *
+ * Entries are addressed by a handle returned from {@link #find(long)}, {@link #insert(long)} or
+ * {@link #touch(int)}. A handle is only valid until the next call that modifies the map.
+ *
+ * Like RotatingMap, expiring takes between (numBuckets - 1) and numBuckets rotations, and this class is not
+ * thread-safe.
+ */
+public class RotatingPendingMap<V> {
+    public static final int NOT_FOUND = -1;
+    public static final int NO_TASK = -1;
+
+    //this default ensures things expire at most 50% past the expiration time
+    private static final int DEFAULT_NUM_BUCKETS = 3;
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+    private static final int BUCKET_BITS = 4;
+    private static final int BUCKET_MASK = (1 << BUCKET_BITS) - 1;
+
+    public interface ExpiredCallback {
+        /**
+         * Called for each expired entry. The handle may be used to read the columns of the entry until the callback
+         * returns.
+         */
+        void expire(long key, int handle);
+    }
+
+    private final int numBuckets;
+    // The last bucket is a spare that holds the expiring entries while the callback runs
+    private final Bucket[] buckets;
+    private final ExpiredCallback callback;
+    private int newest = 0;
+
+    public RotatingPendingMap(int numBuckets, int initialCapacity, boolean withAttachments, ExpiredCallback callback) {
+        if (numBuckets < 2) {
+            throw new IllegalArgumentException("numBuckets must be >= 2");
+        }
+        if (numBuckets > BUCKET_MASK) {
+            throw new IllegalArgumentException("numBuckets must be <= " + BUCKET_MASK);
+        }
+        this.numBuckets = numBuckets;
+        this.buckets = new Bucket[numBuckets + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(initialCapacity, withAttachments);
+        }
+        this.callback = callback;
+    }
+
+    public RotatingPendingMap(int numBuckets, boolean withAttachments, ExpiredCallback callback) {
+        this(numBuckets, DEFAULT_INITIAL_CAPACITY, withAttachments, callback);
+    }
+
+    public RotatingPendingMap(int numBuckets, boolean withAttachments) {
+        this(numBuckets, withAttachments, null);
+    }
+
+    public RotatingPendingMap(boolean withAttachments) {
+        this(DEFAULT_NUM_BUCKETS, withAttachments);
+    }
+
+    /**
+     * Expire everything in the oldest bucket.
+     * @return the number of expired entries.
+     */
+    public int rotate() {
+        int oldest = (newest + 1) % numBuckets;
+        Bucket dead = buckets[oldest];
+        buckets[oldest] = buckets[numBuckets];
+        buckets[numBuckets] = dead;
+        newest = oldest;
+
+        int expired = dead.size;
+        if (callback != null && expired > 0) {
+            for (int slot = 0; slot < dead.keys.length; slot++) {
+                if (dead.used[slot]) {
+                    callback.expire(dead.keys[slot], handle(numBuckets, slot));
+                }
+            }
+        }
+        dead.clear();
+        return expired;
+    }
+
+    /**
+     * @return the handle of the entry for key, or NOT_FOUND.
+     */
+    public int find(long key) {
+        for (int i = 0; i < numBuckets; i++) {
+            int b = (newest - i + numBuckets) % numBuckets;
+            int slot = buckets[b].indexOf(key);
+            if (slot >= 0) {
+                return handle(b, slot);
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) != NOT_FOUND;
+    }
+
+    /**
+     * Add a fresh entry for key to the newest bucket, replacing any existing entry. All the columns start out
+     * empty: val 0, task NO_TASK, start time 0, not failed and no attachment.
+     * @return the handle of the new entry.
+     */
+    public int insert(long key) {
+        for (int i = 1; i < numBuckets; i++) {
+            Bucket bucket = buckets[(newest - i + numBuckets) % numBuckets];
+            int slot = bucket.indexOf(key);
+            if (slot >= 0) {
+                bucket.removeAt(slot);
+            }
+        }
+        Bucket bucket = buckets[newest];
+        int slot = bucket.indexOf(key);
+        if (slot >= 0) {
+            bucket.reset(slot);
+        } else {
+            slot = bucket.insert(key);
+        }
+        return handle(newest, slot);
+    }
+
+    /**
+     * Move the entry to the newest bucket, so it starts timing out all over again.
+     * @return the new handle of the entry.
+     */
+    public int touch(int handle) {
+        int b = bucketOf(handle);
+        if (b == newest) {
+            return handle;
+        }
+        Bucket from = buckets[b];
+        int fromSlot = slotOf(handle);
+        Bucket to = buckets[newest];
+        int toSlot = to.insert(from.keys[fromSlot]);
+        to.vals[toSlot] = from.vals[fromSlot];
+        to.tasks[toSlot] = from.tasks[fromSlot];
+        to.startTimes[toSlot] = from.startTimes[fromSlot];
+        to.failed[toSlot] = from.failed[fromSlot];
+        if (to.attachments != null) {
+            to.attachments[toSlot] = from.attachments[fromSlot];
+        }
+        from.removeAt(fromSlot);
+        return handle(newest, toSlot);
+    }
+
+    public void remove(int handle) {
+        buckets[bucketOf(handle)].removeAt(slotOf(handle));
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < numBuckets; i++) {
+            size += buckets[i].size;
+        }
+        return size;
+    }
+
+    public long getKey(int handle) {
+        return buckets[bucketOf(handle)].keys[slotOf(handle)];
+    }
+
+    public long getVal(int handle) {
+        return buckets[bucketOf(handle)].vals[slotOf(handle)];
+    }
+
+    public void setVal(int handle, long val) {
+        buckets[bucketOf(handle)].vals[slotOf(handle)] = val;
+    }
+
+    /**
+     * val = val xor value.
+     */
+    public void xorVal(int handle, long value) {
+        buckets[bucketOf(handle)].vals[slotOf(handle)] ^= value;
+    }
+
+    public int getTask(int handle) {
+        return buckets[bucketOf(handle)].tasks[slotOf(handle)];
+    }
+
+    public void setTask(int handle, int task) {
+        buckets[bucketOf(handle)].tasks[slotOf(handle)] = task;
+    }
+
+    public long getStartTime(int handle) {
+        return buckets[bucketOf(handle)].startTimes[slotOf(handle)];
+    }
+
+    public void setStartTime(int handle, long startTime) {
+        buckets[bucketOf(handle)].startTimes[slotOf(handle)] = startTime;
+    }
+
+    public boolean isFailed(int handle) {
+        return buckets[bucketOf(handle)].failed[slotOf(handle)];
+    }
+
+    public void setFailed(int handle, boolean failed) {
+        buckets[bucketOf(handle)].failed[slotOf(handle)] = failed;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getAttachment(int handle) {
+        return (V) buckets[bucketOf(handle)].attachments[slotOf(handle)];
+    }
+
+    public void setAttachment(int handle, V attachment) {
+        buckets[bucketOf(handle)].attachments[slotOf(handle)] = attachment;
+    }
+
+    /**
+     * Convenience for maps that only use the attachment column, same as RotatingMap.put.
+     */
+    public void put(long key, V attachment) {
+        setAttachment(insert(key), attachment);
+    }
+
+    /**
+     * Convenience for maps that only use the attachment column, same as RotatingMap.remove.
+     * @return the attachment of the removed entry, or null if there was none.
+     */
+    public V remove(long key) {
+        int handle = find(key);
+        if (handle == NOT_FOUND) {
+            return null;
+        }
+        V ret = getAttachment(handle);
+        remove(handle);
+        return ret;
+    }
+
+    /**
+     * Move the entry for key, if any, to the newest bucket.
+     * @return true if there was an entry for key.
+     */
+    public boolean refresh(long key) {
+        int handle = find(key);
+        if (handle == NOT_FOUND) {
+            return false;
+        }
+        touch(handle);
+        return true;
+    }
+
+    private static int handle(int bucket, int slot) {
+        return (slot << BUCKET_BITS) | bucket;
+    }
+
+    private static int bucketOf(int handle) {
+        return handle & BUCKET_MASK;
+    }
+
+    private static int slotOf(int handle) {
+        return handle >>> BUCKET_BITS;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Bucket {
+        long[] keys;
+        boolean[] used;
+        long[] vals;
+        int[] tasks;
+        long[] startTimes;
+        boolean[] failed;
+        Object[] attachments;
+        int mask;
+        int size = 0;
+
+        Bucket(int initialCapacity, boolean withAttachments) {
+            int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+            allocate(capacity, withAttachments);
+        }
+
+        private void allocate(int capacity, boolean withAttachments) {
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            vals = new long[capacity];
+            tasks = new int[capacity];
+            Arrays.fill(tasks, NO_TASK);
+            startTimes = new long[capacity];
+            failed = new boolean[capacity];
+            attachments = withAttachments ? new Object[capacity] : null;
+            mask = capacity - 1;
+        }
+
+        int indexOf(long key) {
+            int i = hash(key) & mask;
+            while (used[i]) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Insert a key that is not in the bucket yet.
+         */
+        int insert(long key) {
+            // keep the load factor at or below 1/2
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int i = hash(key) & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            keys[i] = key;
+            size++;
+            return i;
+        }
+
+        void reset(int slot) {
+            vals[slot] = 0;
+            tasks[slot] = NO_TASK;
+            startTimes[slot] = 0;
+            failed[slot] = false;
+            if (attachments != null) {
+                attachments[slot] = null;
+            }
+        }
+
+        /**
+         * Remove by shifting back the entries after the slot, so lookups never need tombstones.
+         */
+        void removeAt(int slot) {
+            int gap = slot;
+            int i = (slot + 1) & mask;
+            while (used[i]) {
+                int ideal = hash(keys[i]) & mask;
+                if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    vals[gap] = vals[i];
+                    tasks[gap] = tasks[i];
+                    startTimes[gap] = startTimes[i];
+                    failed[gap] = failed[i];
+                    if (attachments != null) {
+                        attachments[gap] = attachments[i];
+                    }
+                    gap = i;
+                }
+                i = (i + 1) & mask;
+            }
+            used[gap] = false;
+            reset(gap);
+            size--;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(used, false);
+                Arrays.fill(vals, 0);
+                Arrays.fill(tasks, NO_TASK);
+                Arrays.fill(startTimes, 0);
+                Arrays.fill(failed, false);
+                if (attachments != null) {
+                    Arrays.fill(attachments, null);
+                }
+                size = 0;
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            long[] oldVals = vals;
+            int[] oldTasks = tasks;
+            long[] oldStartTimes = startTimes;
+            boolean[] oldFailed = failed;
+            Object[] oldAttachments = attachments;
+            allocate(oldKeys.length * 2, oldAttachments != null);
+            size = 0;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldUsed[j]) {
+                    int i = insert(oldKeys[j]);
+                    vals[i] = oldVals[j];
+                    tasks[i] = oldTasks[j];
+                    startTimes[i] = oldStartTimes[j];
+                    failed[i] = oldFailed[j];
+                    if (oldAttachments != null) {
+                        attachments[i] = oldAttachments[j];
+                    }
+                }
+            }
+        }
+    }
+}
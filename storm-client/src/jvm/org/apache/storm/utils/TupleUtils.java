@@ -44,7 +44,10 @@ public final class TupleUtils {
         return Math.abs(listHashCode(keys)) % numTasks;
     }
 
-    private static <T> int listHashCode(List<T> alist) {
+    /**
+     * @return the hash of a list of values that fields groupings choose the target task by.
+     */
+    public static <T> int listHashCode(List<T> alist) {
       if (alist == null) {
           return 1;
       } else {
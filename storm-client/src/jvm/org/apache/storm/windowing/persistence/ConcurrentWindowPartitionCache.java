@@ -0,0 +1,599 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.windowing.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.storm.metric.api.IStatefulObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A concurrent {@link WindowPartitionCache} that bounds the total weight of the entries and picks the entries to
+ * evict with a W-TinyLFU style policy.
+ * <p>
+ * Lookups of cached entries do not take a lock; the pin counts are kept in atomics and the accesses are recorded in a
+ * buffer that is replayed when the eviction policy runs. New entries go to a small admission window. When the window
+ * overflows, its oldest un-pinned entries move to the main region and, when the cache is over its maximum weight,
+ * compete with the least recently used entry of the main region based on their estimated access frequency. This keeps
+ * the partitions that are scanned repeatedly in the cache instead of cycling them through it.
+ * </p>
+ * <p>
+ * If a removal executor is set, the {@link RemovalListener} is invoked on it, so that the write-back of evicted
+ * entries does not block the thread that loads a new entry. A key that is loaded again while its removal is still
+ * pending waits for it first, and {@link #cleanUp()} waits for all of the pending removals.
+ * </p>
+ */
+public class ConcurrentWindowPartitionCache<K, V> implements WindowPartitionCache<K, V>, IStatefulObject {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentWindowPartitionCache.class);
+    // the share of the maximum weight for the admission window, in percent
+    private static final int WINDOW_PERCENT = 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 64;
+    private static final int READ_BUFFER_MAX_SIZE = 1024;
+    private static final int RETIRED = -1;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+    private final ConcurrentHashMap<K, CompletableFuture<Void>> pendingRemovals = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final long maximumWeight;
+    private final long windowMaximumWeight;
+    private final Weigher<K, V> weigher;
+    private final RemovalListener<K, V> removalListener;
+    private final Executor removalExecutor;
+    private final CacheLoader<K, V> cacheLoader;
+
+    // guarded by evictionLock
+    private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Node<K, V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    // volatile so that it can be reported without the lock
+    private volatile long totalWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * Computes the weight of a cache entry.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public interface Weigher<K, V> {
+        /**
+         * Returns the weight of the entry. The weight of an entry is computed when it is loaded and again
+         * every time it stops being pinned.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the non-negative weight
+         */
+        long weigh(K key, V value);
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrLoad(key, false);
+    }
+
+    @Override
+    public V pinAndGet(K key) {
+        return getOrLoad(key, true);
+    }
+
+    @Override
+    public boolean unpin(K key) {
+        LOG.debug("unpin '{}'", key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return false;
+        }
+        int pins;
+        do {
+            pins = node.pins.get();
+            if (pins <= 0) {
+                return false;
+            }
+        } while (!node.pins.compareAndSet(pins, pins - 1));
+        if (pins == 1) {
+            // the entry may have grown while it was pinned
+            List<Node<K, V>> removed;
+            evictionLock.lock();
+            try {
+                reweigh(node);
+                removed = evict();
+            } finally {
+                evictionLock.unlock();
+            }
+            notifyRemovals(removed, RemovalCause.REPLACED);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned map is a snapshot of the entries at the time of the call.
+     * </p>
+     */
+    @Override
+    public ConcurrentMap<K, V> asMap() {
+        ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
+        data.forEach((k, node) -> map.put(k, node.value));
+        return map;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        List<Node<K, V>> removed = new ArrayList<>(1);
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                return;
+            }
+            if (node.pins.compareAndSet(0, RETIRED)) {
+                LOG.debug("Invalidating entry '{}'", key);
+                retire(node);
+                removed.add(node);
+            } else {
+                LOG.debug("Entry '{}' is pinned, skipping invalidation", key);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemovals(removed, RemovalCause.EXPLICIT);
+    }
+
+    /**
+     * Waits for the pending removal notifications to complete.
+     */
+    @Override
+    public void cleanUp() {
+        for (Map.Entry<K, CompletableFuture<Void>> entry : pendingRemovals.entrySet()) {
+            awaitRemoval(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the hits, misses, hit rate, evictions and average load latency since the last call,
+     * and the current number and weight of the entries.
+     */
+    @Override
+    public Object getState() {
+        long hitCount = hits.sumThenReset();
+        long missCount = misses.sumThenReset();
+        long loadTime = loadNanos.sumThenReset();
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("hits", hitCount);
+        ret.put("misses", missCount);
+        ret.put("hit-rate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        ret.put("evictions", evictions.sumThenReset());
+        ret.put("load-latency-ms-avg", missCount > 0 ? loadTime / 1_000_000.0 / missCount : 0.0);
+        ret.put("entries", data.size());
+        ret.put("weight", totalWeight);
+        return ret;
+    }
+
+    // Get or load from the cache optionally pinning the entry
+    // so that it wont get evicted from the cache
+    private V getOrLoad(K key, boolean shouldPin) {
+        while (true) {
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                node = load(key, shouldPin);
+                if (node != null) {
+                    return node.value;
+                }
+            } else if (!shouldPin || node.pin()) {
+                hits.increment();
+                recordRead(node);
+                return node.value;
+            }
+            // the entry was evicted before it could be pinned, retry
+        }
+    }
+
+    /*
+     * Loads the entry, returning null if an existing entry was found that could not be pinned.
+     */
+    private Node<K, V> load(K key, boolean shouldPin) {
+        awaitPendingRemoval(key);
+        long start = System.nanoTime();
+        Node<K, V> created = null;
+        Node<K, V> node = data.computeIfAbsent(key, k -> {
+            V val = cacheLoader.load(k);
+            if (val == null) {
+                throw new NullPointerException("Null value for key " + k);
+            }
+            return new Node<>(k, val);
+        });
+        if (shouldPin && !node.pin()) {
+            return null;
+        }
+        if (node.registered) {
+            hits.increment();
+            recordRead(node);
+            return node;
+        }
+        List<Node<K, V>> removed;
+        evictionLock.lock();
+        try {
+            if (!node.registered && node.pins.get() != RETIRED) {
+                created = node;
+                register(node);
+            }
+            removed = evict();
+        } finally {
+            evictionLock.unlock();
+        }
+        if (created != null) {
+            misses.increment();
+            loadNanos.add(System.nanoTime() - start);
+        } else {
+            hits.increment();
+        }
+        notifyRemovals(removed, RemovalCause.REPLACED);
+        return node;
+    }
+
+    private void awaitPendingRemoval(K key) {
+        CompletableFuture<Void> removal = pendingRemovals.get(key);
+        if (removal != null) {
+            LOG.debug("Waiting for the pending removal of '{}'", key);
+            awaitRemoval(key, removal);
+        }
+    }
+
+    // a failed removal stays pending till it is awaited, so that the failure is not lost
+    private void awaitRemoval(K key, CompletableFuture<Void> removal) {
+        try {
+            removal.join();
+        } finally {
+            pendingRemovals.remove(key, removal);
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        if (readBufferSize.get() < READ_BUFFER_MAX_SIZE) {
+            readBuffer.add(node);
+            if (readBufferSize.incrementAndGet() >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+        }
+    }
+
+    // guarded by evictionLock
+    private void drainReadBuffer() {
+        Node<K, V> node;
+        while ((node = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            if (node.registered) {
+                sketch.increment(node.key);
+                // moves the entry to the tail of its access ordered region
+                (node.inMain ? main : window).get(node.key);
+            }
+        }
+    }
+
+    // guarded by evictionLock
+    private void register(Node<K, V> node) {
+        node.weight = weigher.weigh(node.key, node.value);
+        node.registered = true;
+        window.put(node.key, node);
+        windowWeight += node.weight;
+        totalWeight += node.weight;
+        sketch.increment(node.key);
+    }
+
+    // guarded by evictionLock
+    private void reweigh(Node<K, V> node) {
+        if (node.registered) {
+            long weight = weigher.weigh(node.key, node.value);
+            long delta = weight - node.weight;
+            node.weight = weight;
+            totalWeight += delta;
+            if (!node.inMain) {
+                windowWeight += delta;
+            }
+        }
+    }
+
+    /*
+     * Moves the overflow of the window to the main region and evicts entries while the cache is over its maximum
+     * weight. The entries that just left the window are the candidates; the latest candidate stays only if it has
+     * been used more often than the least recently used entry of the main region, which is then evicted instead.
+     */
+    // guarded by evictionLock
+    private List<Node<K, V>> evict() {
+        drainReadBuffer();
+        List<Node<K, V>> candidates = new ArrayList<>();
+        Iterator<Node<K, V>> it = window.values().iterator();
+        while (windowWeight > windowMaximumWeight && it.hasNext()) {
+            Node<K, V> node = it.next();
+            if (node.pins.get() == 0) {
+                it.remove();
+                windowWeight -= node.weight;
+                node.inMain = true;
+                main.put(node.key, node);
+                candidates.add(node);
+            }
+        }
+        List<Node<K, V>> removed = new ArrayList<>();
+        while (totalWeight > maximumWeight) {
+            Node<K, V> candidate = lastUnpinned(candidates);
+            Node<K, V> victim = firstUnpinned(main.values(), candidate);
+            Node<K, V> evictee;
+            if (candidate == null && victim == null) {
+                evictee = firstUnpinned(window.values(), null);
+            } else if (candidate == null) {
+                evictee = victim;
+            } else if (victim == null) {
+                evictee = candidate;
+            } else {
+                evictee = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+            }
+            if (evictee == null) {
+                LOG.debug("All entries are pinned, cannot evict");
+                break;
+            }
+            candidates.remove(evictee);
+            if (evictee.pins.compareAndSet(0, RETIRED)) {
+                LOG.debug("Evicting entry '{}'", evictee.key);
+                retire(evictee);
+                evictions.increment();
+                removed.add(evictee);
+            }
+        }
+        return removed;
+    }
+
+    private Node<K, V> firstUnpinned(Iterable<Node<K, V>> nodes, Node<K, V> excluded) {
+        for (Node<K, V> node : nodes) {
+            if (node.pins.get() == 0 && node != excluded) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private Node<K, V> lastUnpinned(List<Node<K, V>> nodes) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            if (nodes.get(i).pins.get() == 0) {
+                return nodes.get(i);
+            }
+        }
+        return null;
+    }
+
+    // guarded by evictionLock
+    private void retire(Node<K, V> node) {
+        if (node.registered) {
+            (node.inMain ? main : window).remove(node.key);
+            totalWeight -= node.weight;
+            if (!node.inMain) {
+                windowWeight -= node.weight;
+            }
+        }
+        data.remove(node.key, node);
+        if (removalListener != null) {
+            node.removal = new CompletableFuture<>();
+            pendingRemovals.put(node.key, node.removal);
+        }
+    }
+
+    private void notifyRemovals(List<Node<K, V>> nodes, RemovalCause removalCause) {
+        if (removalListener == null) {
+            return;
+        }
+        for (Node<K, V> node : nodes) {
+            Runnable notification = () -> {
+                try {
+                    removalListener.onRemoval(node.key, node.value, removalCause);
+                } catch (Throwable th) {
+                    node.removal.completeExceptionally(th);
+                    throw th;
+                }
+                node.removal.complete(null);
+                pendingRemovals.remove(node.key, node.removal);
+            };
+            if (removalExecutor != null) {
+                removalExecutor.execute(notification);
+            } else {
+                notification.run();
+            }
+        }
+    }
+
+    private ConcurrentWindowPartitionCache(long maximumWeight, Weigher<K, V> weigher, RemovalListener<K, V> removalListener,
+                                           Executor removalExecutor, CacheLoader<K, V> cacheLoader) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be greater than 0");
+        }
+        Objects.requireNonNull(cacheLoader);
+        this.maximumWeight = maximumWeight;
+        this.windowMaximumWeight = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+        this.weigher = weigher != null ? weigher : (k, v) -> 1L;
+        this.removalListener = removalListener;
+        this.removalExecutor = removalExecutor;
+        this.cacheLoader = cacheLoader;
+        // with unit weights the maximum weight is the number of entries
+        this.sketch = new FrequencySketch(weigher == null ? maximumWeight : FrequencySketch.DEFAULT_WIDTH);
+    }
+
+    public static <K, V> ConcurrentWindowPartitionCacheBuilder<K, V> newBuilder() {
+        return new ConcurrentWindowPartitionCacheBuilder<>();
+    }
+
+    public static class ConcurrentWindowPartitionCacheBuilder<K, V> implements WindowPartitionCache.Builder<K, V> {
+        private long maximumWeight;
+        private Weigher<K, V> weigher;
+        private RemovalListener<K, V> removalListener;
+        private Executor removalExecutor;
+
+        /**
+         * The maximum number of entries, for a cache where each entry weighs one.
+         */
+        public ConcurrentWindowPartitionCacheBuilder<K, V> maximumSize(long size) {
+            maximumWeight = size;
+            weigher = null;
+            return this;
+        }
+
+        public ConcurrentWindowPartitionCacheBuilder<K, V> maximumWeight(long weight, Weigher<K, V> weigher) {
+            this.maximumWeight = weight;
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        public ConcurrentWindowPartitionCacheBuilder<K, V> removalListener(RemovalListener<K, V> listener) {
+            removalListener = listener;
+            return this;
+        }
+
+        /**
+         * The executor to invoke the {@link RemovalListener} on. By default it is invoked by the thread that
+         * caused the removal.
+         */
+        public ConcurrentWindowPartitionCacheBuilder<K, V> removalExecutor(Executor executor) {
+            removalExecutor = executor;
+            return this;
+        }
+
+        public ConcurrentWindowPartitionCache<K, V> build(CacheLoader<K, V> loader) {
+            return new ConcurrentWindowPartitionCache<>(maximumWeight, weigher, removalListener, removalExecutor, loader);
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final AtomicInteger pins = new AtomicInteger();
+        // guarded by evictionLock, volatile so that it can be checked without the lock
+        private volatile boolean registered;
+        private boolean inMain;
+        private long weight;
+        // set when the entry is removed, guarded by evictionLock
+        private CompletableFuture<Void> removal;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        // fails if the entry was evicted or invalidated
+        private boolean pin() {
+            int pins;
+            do {
+                pins = this.pins.get();
+                if (pins == RETIRED) {
+                    return false;
+                }
+            } while (!this.pins.compareAndSet(pins, pins + 1));
+            return true;
+        }
+    }
+
+    /*
+     * A count-min sketch of the access frequency with four rows of counters that saturate at 15. All the counters
+     * are halved after a number of increments, so that the frequencies reflect the recent accesses.
+     */
+    private static final class FrequencySketch {
+        private static final int DEFAULT_WIDTH = 1024;
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f};
+
+        private final int[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(long expectedEntries) {
+            int width = Integer.highestOneBit((int) Math.min(Math.max(expectedEntries, 16), 1 << 20) - 1) << 1;
+            table = new int[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        private void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int[] row : table) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            // the murmur3 finalizer, so that the rows are independent
+            int h = (hash + SEEDS[i]) * 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
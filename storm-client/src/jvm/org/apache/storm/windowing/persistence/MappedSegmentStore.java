@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.windowing.persistence;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local, append-only store of binary values keyed by a long id, backed by memory-mapped segment files.
+ * <p>
+ * Values are appended to the active segment and an in-memory index maps each id to the segment and offset of its
+ * latest value. When the active segment is full it is sealed and a new one is started. Sealed segments without live
+ * values are deleted and sealed segments that are mostly dead are compacted into the active segment.
+ * </p>
+ * <p>
+ * The store only lives as long as its owner; any segment files found in the directory when it is created are
+ * removed. The operations are thread safe.
+ * </p>
+ */
+public class MappedSegmentStore implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSegmentStore.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    // sealed segments with less than 1/COMPACTION_RATIO of their capacity live get compacted
+    private static final int COMPACTION_RATIO = 4;
+
+    private final File dir;
+    private final int segmentSize;
+    private final Map<Long, Location> index = new HashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSegmentId;
+
+    public MappedSegmentStore(File dir) {
+        this(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a store in the given directory.
+     *
+     * @param dir the directory for the segment files
+     * @param segmentSize the size of a segment file in bytes
+     */
+    public MappedSegmentStore(File dir, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive, was " + segmentSize);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new RuntimeException("Could not create directory " + dir);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        deleteSegmentFiles();
+    }
+
+    /**
+     * Stores the value for the id, replacing any previous value.
+     *
+     * @param id the id
+     * @param value the value
+     */
+    public synchronized void put(long id, byte[] value) {
+        Segment current = active;
+        append(id, value);
+        if (current != null && current != active) {
+            compactSealedSegments();
+        }
+    }
+
+    /**
+     * Returns the value stored for the id.
+     *
+     * @param id the id
+     * @return a copy of the value, or null if there is no value for the id
+     */
+    public synchronized byte[] get(long id) {
+        Location location = index.get(id);
+        return location == null ? null : read(location);
+    }
+
+    /**
+     * Removes the value stored for the id.
+     *
+     * @param id the id
+     * @return true if there was a value for the id
+     */
+    public synchronized boolean remove(long id) {
+        Location location = index.remove(id);
+        if (location != null) {
+            release(location);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the values and their segment files.
+     */
+    public synchronized void clear() {
+        index.clear();
+        for (Segment segment : new ArrayList<>(segments)) {
+            deleteSegment(segment);
+        }
+        active = null;
+    }
+
+    /**
+     * Returns the number of ids that have a value.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    // package access for unit tests
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        clear();
+    }
+
+    private void append(long id, byte[] value) {
+        if (active == null || active.buffer.remaining() < value.length) {
+            active = newSegment(Math.max(segmentSize, value.length));
+        }
+        int offset = active.buffer.position();
+        active.buffer.put(value);
+        active.liveBytes += value.length;
+        Location previous = index.put(id, new Location(active, offset, value.length));
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    private byte[] read(Location location) {
+        byte[] value = new byte[location.length];
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.position(location.offset);
+        buffer.get(value);
+        return value;
+    }
+
+    private void release(Location location) {
+        Segment segment = location.segment;
+        segment.liveBytes -= location.length;
+        if (segment.liveBytes == 0 && segment != active) {
+            deleteSegment(segment);
+        }
+    }
+
+    /*
+     * Moves the live values of the sealed segments that are mostly dead into the active segment,
+     * as long as they fit, so that the space of the sealed segment can be reclaimed.
+     */
+    private void compactSealedSegments() {
+        for (Segment segment : new ArrayList<>(segments)) {
+            if (segment == active) {
+                continue;
+            }
+            if (segment.liveBytes == 0) {
+                deleteSegment(segment);
+            } else if (segment.liveBytes < segment.capacity / COMPACTION_RATIO
+                && segment.liveBytes <= active.buffer.remaining()) {
+                LOG.debug("Compacting segment {} with {} live bytes", segment.file, segment.liveBytes);
+                for (Map.Entry<Long, Location> entry : new ArrayList<>(index.entrySet())) {
+                    if (entry.getValue().segment == segment) {
+                        append(entry.getKey(), read(entry.getValue()));
+                    }
+                }
+            }
+        }
+    }
+
+    private Segment newSegment(int capacity) {
+        File file = new File(dir, SEGMENT_PREFIX + nextSegmentId++);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            Segment segment = new Segment(file, buffer, capacity);
+            segments.add(segment);
+            LOG.debug("Created segment {} of {} bytes", file, capacity);
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create segment " + file, e);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment);
+        if (segment == active) {
+            active = null;
+        }
+        // the pages are released once the buffer is garbage collected
+        if (!segment.file.delete()) {
+            LOG.warn("Could not delete segment {}", segment.file);
+        }
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    LOG.warn("Could not delete stale segment {}", file);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int liveBytes;
+
+        private Segment(File file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
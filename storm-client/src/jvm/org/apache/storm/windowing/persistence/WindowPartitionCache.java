@@ -67,6 +67,12 @@ public interface WindowPartitionCache<K, V> {
      */
     void invalidate(K key);
 
+    /**
+     * Perform the pending maintenance of the cache, such as the removal notifications that are still in progress.
+     */
+    default void cleanUp() {
+    }
+
     /**
      * The reason why an enrty got evicted from the cache.
      */
@@ -27,22 +27,41 @@ import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
+import org.apache.storm.metric.api.IStatefulObject;
 import org.apache.storm.state.KeyValueState;
+import org.apache.storm.state.Serializer;
 import org.apache.storm.windowing.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A wrapper around the window related states that are checkpointed.
+ * <p>
+ * If a {@link MappedSegmentStore} is given, the modified partitions that are evicted from the cache are spilled to
+ * it instead of being added to the window partitions state, and are loaded back from it. The partitions spilled since
+ * the last checkpoint are written to the window partitions state when the state is prepared for commit. A partition
+ * is removed from the spill store once it is loaded back or written to the state, so the store never holds an older
+ * copy of a partition than the cache or the state.
+ * </p>
+ * <p>
+ * The key value states are not thread safe. Evicted partitions are written back on the removal executor, if one is
+ * given, and loaded on whichever thread needs them, so every access to the states goes through one lock. The
+ * write-backs are queued, and prepare and rollback run the ones still queued themselves, so that a partition
+ * evicted before a checkpoint is always part of it.
+ * </p>
  */
 public class WindowState<T> extends AbstractCollection<Event<T>> {
     private static final Logger LOG = LoggerFactory.getLogger(WindowState.class);
@@ -64,12 +83,38 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
     private final WindowPartitionLock windowPartitionsLock = new WindowPartitionLock();
     private final long maxEventsInMemory;
     private Set<Long> iteratorPins = new HashSet<>();
+    private final MappedSegmentStore spillStore;
+    private final Serializer<WindowPartition<T>> spillSerializer;
+    private final Executor removalExecutor;
+    // ids of the partitions spilled since the last checkpoint
+    private final Set<Long> spilledPartitionIds = ConcurrentHashMap.newKeySet();
+    // guards the key value states and the spill store, taken before the partition locks
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Queue<Runnable> pendingWriteBacks = new ConcurrentLinkedQueue<>();
 
     public WindowState(KeyValueState<Long, WindowPartition<T>> windowPartitionsState,
                 KeyValueState<String, Deque<Long>> partitionIdsState,
                 KeyValueState<String, Optional<?>> windowSystemState,
                 Supplier<Map<String, Optional<?>>> windowSystemStateSupplier,
                 long maxEventsInMemory) {
+        this(windowPartitionsState, partitionIdsState, windowSystemState, windowSystemStateSupplier, maxEventsInMemory,
+            null, null, null);
+    }
+
+    public WindowState(KeyValueState<Long, WindowPartition<T>> windowPartitionsState,
+                KeyValueState<String, Deque<Long>> partitionIdsState,
+                KeyValueState<String, Optional<?>> windowSystemState,
+                Supplier<Map<String, Optional<?>>> windowSystemStateSupplier,
+                long maxEventsInMemory,
+                MappedSegmentStore spillStore,
+                Serializer<WindowPartition<T>> spillSerializer,
+                Executor removalExecutor) {
+        if (spillStore != null) {
+            Objects.requireNonNull(spillSerializer, "Null spill serializer");
+        }
+        this.spillStore = spillStore;
+        this.spillSerializer = spillSerializer;
+        this.removalExecutor = removalExecutor;
         this.windowPartitionsState = windowPartitionsState;
         this.partitionIdsState = partitionIdsState;
         this.windowSystemState = windowSystemState;
@@ -174,10 +219,26 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
      * @param txid the transaction id
      */
     public void prepareCommit(long txid) {
-        flush();
-        partitionIdsState.prepareCommit(txid);
-        windowPartitionsState.prepareCommit(txid);
-        windowSystemState.prepareCommit(txid);
+        // complete the write-backs of the evicted partitions, failing the checkpoint if one of them failed
+        cache.cleanUp();
+        List<Long> pidsToInvalidate;
+        stateLock.lock();
+        try {
+            // and the ones queued since
+            runPendingWriteBacks();
+            pidsToInvalidate = flush();
+            partitionIdsState.prepareCommit(txid);
+            windowPartitionsState.prepareCommit(txid);
+            windowSystemState.prepareCommit(txid);
+        } finally {
+            stateLock.unlock();
+        }
+        // invalidate without the state lock, a load waiting for it could be holding up the cache
+        // if the partition is pinned before we could invalidate,
+        // it will get invalidated in the next flush or when the entry gets evicted from the cache.
+        for (Long pid : pidsToInvalidate) {
+            cache.invalidate(pid);
+        }
     }
 
     /**
@@ -186,9 +247,14 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
      * @param txid the transaction id
      */
     public void commit(long txid) {
-        partitionIdsState.commit(txid);
-        windowPartitionsState.commit(txid);
-        windowSystemState.commit(txid);
+        stateLock.lock();
+        try {
+            partitionIdsState.commit(txid);
+            windowPartitionsState.commit(txid);
+            windowSystemState.commit(txid);
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     /**
@@ -197,12 +263,28 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
      * @param reInit if the members should be synced with the values from the state.
      */
     public void rollback(boolean reInit) {
-        partitionIdsState.rollback();
-        windowPartitionsState.rollback();
-        windowSystemState.rollback();
-        // re-init cache and partitions
-        if (reInit) {
-            init();
+        try {
+            // so that the pending write-backs do not land after the rollback
+            cache.cleanUp();
+        } catch (RuntimeException ex) {
+            LOG.warn("Ignoring failed write-back of evicted partitions during rollback", ex);
+        }
+        stateLock.lock();
+        try {
+            runPendingWriteBacks();
+            partitionIdsState.rollback();
+            windowPartitionsState.rollback();
+            windowSystemState.rollback();
+            // re-init cache and partitions
+            if (reInit) {
+                if (spillStore != null) {
+                    spillStore.clear();
+                    spilledPartitionIds.clear();
+                }
+                init();
+            }
+        } finally {
+            stateLock.unlock();
         }
     }
 
@@ -221,33 +303,55 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
         latestPartition = cache.pinAndGet(latestPartitionId);
     }
 
+    /**
+     * Returns the metrics of the partition cache.
+     *
+     * @return the metrics
+     */
+    public Object getCacheMetrics() {
+        return cache instanceof IStatefulObject ? ((IStatefulObject) cache).getState() : Collections.emptyMap();
+    }
+
     private void initCache() {
-        long size = maxEventsInMemory / MAX_PARTITION_EVENTS;
         LOG.info("maxEventsInMemory: {}, partition size: {}, number of partitions: {}",
-            maxEventsInMemory, MAX_PARTITION_EVENTS, size);
-        cache = SimpleWindowPartitionCache.<Long, WindowPartition<T>>newBuilder()
-            .maximumSize(size)
+            maxEventsInMemory, MAX_PARTITION_EVENTS, maxEventsInMemory / MAX_PARTITION_EVENTS);
+        // the partitions are weighed by their events, the latest partition by the events it can hold
+        cache = ConcurrentWindowPartitionCache.<Long, WindowPartition<T>>newBuilder()
+            .maximumWeight(maxEventsInMemory,
+                (pid, p) -> pid == latestPartitionId ? Math.max(p.size(), MAX_PARTITION_EVENTS) : p.size())
+            .removalExecutor(removalExecutor != null ? this::queueWriteBack : null)
             .removalListener(new WindowPartitionCache.RemovalListener<Long, WindowPartition<T>>() {
                 @Override
                 public void onRemoval(Long pid, WindowPartition<T> p, WindowPartitionCache.RemovalCause removalCause) {
                     Objects.requireNonNull(pid, "Null partition id");
                     Objects.requireNonNull(p, "Null window partition");
                     LOG.debug("onRemoval for id '{}', WindowPartition '{}'", pid, p);
+                    // serialized before taking the lock, so that loads and checkpoints are not held up by it
+                    boolean spill = spillStore != null && p.isModified() && !(p.isEmpty() && pid != latestPartitionId);
+                    byte[] spilled = spill ? spillSerializer.serialize(p) : null;
+                    stateLock.lock();
                     try {
                         windowPartitionsLock.lock(pid);
                         if (p.isEmpty() && pid != latestPartitionId) {
                             // if the empty partition was not invalidated by flush, but evicted from cache
                             if (removalCause != WindowPartitionCache.RemovalCause.EXPLICIT) {
                                 deletePartition(pid);
-                                windowPartitionsState.delete(pid);
+                                deletePartitionState(pid);
                             }
                         } else if (p.isModified()) {
-                            windowPartitionsState.put(pid, p);
+                            if (spillStore != null) {
+                                LOG.debug("Spilling partition {}", pid);
+                                spillStore.put(pid, spilled != null ? spilled : spillSerializer.serialize(p));
+                                spilledPartitionIds.add(pid);
+                            } else {
+                                windowPartitionsState.put(pid, p);
+                            }
                         } else {
                             LOG.debug("WindowPartition '{}' is not modified", pid);
                         }
                     } finally {
                         windowPartitionsLock.unlock(pid);
+                        stateLock.unlock();
                     }
                 }
             }).build(new WindowPartitionCache.CacheLoader<Long, WindowPartition<T>>() {
@@ -255,16 +359,92 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
                 public WindowPartition<T> load(Long id) {
                     LOG.debug("Load partition: {}", id);
                     // load from state
+                    stateLock.lock();
                     try {
                         windowPartitionsLock.lock(id);
-                        return windowPartitionsState.get(id, new WindowPartition<>(id));
+                        WindowPartition<T> spilled = loadSpilledPartition(id);
+                        return spilled != null ? spilled : windowPartitionsState.get(id, new WindowPartition<>(id));
                     } finally {
                         windowPartitionsLock.unlock(id);
+                        stateLock.unlock();
                     }
                 }
             });
     }
 
+    private WindowPartition<T> loadSpilledPartition(long id) {
+        if (spillStore == null) {
+            return null;
+        }
+        byte[] bytes = spillStore.get(id);
+        if (bytes == null) {
+            return null;
+        }
+        WindowPartition<T> partition = spillSerializer.deserialize(bytes);
+        // not yet written to the state, so it is written from the cache on the next flush
+        if (spilledPartitionIds.remove(id)) {
+            partition.setModified();
+        }
+        // the cache has the partition now, a copy left behind would be loaded instead of later changes
+        spillStore.remove(id);
+        return partition;
+    }
+
+    private void queueWriteBack(Runnable writeBack) {
+        pendingWriteBacks.add(writeBack);
+        removalExecutor.execute(this::runPendingWriteBacks);
+    }
+
+    /*
+     * Runs the queued write-backs of evicted partitions, on the removal executor or in prepareCommit and rollback.
+     */
+    private void runPendingWriteBacks() {
+        stateLock.lock();
+        try {
+            Runnable writeBack;
+            while ((writeBack = pendingWriteBacks.poll()) != null) {
+                try {
+                    writeBack.run();
+                } catch (RuntimeException ex) {
+                    // kept by the cache, cache.cleanUp() throws it
+                    LOG.debug("Write-back of an evicted partition failed", ex);
+                }
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    private void deletePartitionState(long pid) {
+        windowPartitionsState.delete(pid);
+        if (spillStore != null) {
+            spillStore.remove(pid);
+            spilledPartitionIds.remove(pid);
+        }
+    }
+
+    /*
+     * Writes the partitions that were spilled since the last checkpoint and are not in the cache to the state.
+     */
+    private void flushSpilledPartitions() {
+        Iterator<Long> it = spilledPartitionIds.iterator();
+        while (it.hasNext()) {
+            long pid = it.next();
+            try {
+                windowPartitionsLock.lock(pid);
+                byte[] bytes = spillStore.get(pid);
+                if (bytes != null) {
+                    LOG.debug("Updating spilled partition {}", pid);
+                    windowPartitionsState.put(pid, spillSerializer.deserialize(bytes));
+                    spillStore.remove(pid);
+                }
+                it.remove();
+            } finally {
+                windowPartitionsLock.unlock(pid);
+            }
+        }
+    }
+
     private void deletePartition(long pid) {
         LOG.debug("Delete partition: {}", pid);
         try {
@@ -277,12 +457,14 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
     }
 
     private long getNextPartitionId() {
+        stateLock.lock();
         try {
             partitionIdsLock.lock();
             partitionIds.add(++latestPartitionId);
             partitionIdsState.put(PARTITION_IDS_KEY, partitionIds);
         } finally {
             partitionIdsLock.unlock();
+            stateLock.unlock();
         }
         return latestPartitionId;
     }
@@ -291,17 +473,24 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
         return cache.pinAndGet(id);
     }
 
-    private void flush() {
+    /*
+     * Writes the modified partitions to the state, with the state lock held.
+     * Returns the ids of the empty partitions to invalidate.
+     */
+    private List<Long> flush() {
         LOG.debug("Flushing modified partitions");
+        if (spillStore != null) {
+            flushSpilledPartitions();
+        }
+        List<Long> pidsToInvalidate = new ArrayList<>();
         cache.asMap().forEach((pid, p) -> {
-            Long pidToInvalidate = null;
             try {
                 windowPartitionsLock.lock(pid);
                 if (p.isEmpty() && pid != latestPartitionId) {
                     LOG.debug("Invalidating empty partition {}", pid);
                     deletePartition(pid);
-                    windowPartitionsState.delete(pid);
-                    pidToInvalidate = pid;
+                    deletePartitionState(pid);
+                    pidsToInvalidate.add(pid);
                 } else if (p.isModified()) {
                     LOG.debug("Updating modified partition {}", pid);
                     p.clearModified();
@@ -310,17 +499,12 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
             } finally {
                 windowPartitionsLock.unlock(pid);
             }
-            // invalidate after releasing the lock
-            // if the parition is pinned before we could invalidate,
-            // it will get invalidated in the next flush or when the entry gets evicted from the cache.
-            if (pidToInvalidate != null) {
-                cache.invalidate(pidToInvalidate);
-            }
         });
         Map<String, Optional<?>> state = windowSystemStateSupplier.get();
         for (Map.Entry<String, Optional<?>> entry: state.entrySet()) {
             windowSystemState.put(entry.getKey(), entry.getValue());
         }
+        return pidsToInvalidate;
     }
 
     private static class WindowPartitionLock {
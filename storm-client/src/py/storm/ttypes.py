@@ -4076,6 +4076,7 @@ class ExecutorStats:
    - transferred
    - specific
    - rate
+   - latency_histograms
   """
 
   thrift_spec = (
@@ -4084,13 +4085,15 @@ class ExecutorStats:
     (2, TType.MAP, 'transferred', (TType.STRING,None,TType.MAP,(TType.STRING,None,TType.I64,None)), None, ), # 2
     (3, TType.STRUCT, 'specific', (ExecutorSpecificStats, ExecutorSpecificStats.thrift_spec), None, ), # 3
     (4, TType.DOUBLE, 'rate', None, None, ), # 4
+    (5, TType.MAP, 'latency_histograms', (TType.STRING,None,TType.MAP,(TType.STRING,None,TType.STRING,None)), None, ), # 5
   )
 
-  def __init__(self, emitted=None, transferred=None, specific=None, rate=None,):
+  def __init__(self, emitted=None, transferred=None, specific=None, rate=None, latency_histograms=None,):
     self.emitted = emitted
     self.transferred = transferred
     self.specific = specific
     self.rate = rate
+    self.latency_histograms = latency_histograms
 
   def read(self, iprot):
     if iprot.__class__ == TBinaryProtocol.TBinaryProtocolAccelerated and isinstance(iprot.trans, TTransport.CReadableTransport) and self.thrift_spec is not None and fastbinary is not None:
@@ -4146,6 +4149,23 @@ class ExecutorStats:
           self.rate = iprot.readDouble()
         else:
           iprot.skip(ftype)
+      elif fid == 5:
+        if ftype == TType.MAP:
+          self.latency_histograms = {}
+          (_ktype1901, _vtype1902, _size1900 ) = iprot.readMapBegin()
+          for _i1904 in xrange(_size1900):
+            _key1905 = iprot.readString().decode('utf-8')
+            _val1906 = {}
+            (_ktype1908, _vtype1909, _size1907 ) = iprot.readMapBegin()
+            for _i1911 in xrange(_size1907):
+              _key1912 = iprot.readString().decode('utf-8')
+              _val1913 = iprot.readString()
+              _val1906[_key1912] = _val1913
+            iprot.readMapEnd()
+            self.latency_histograms[_key1905] = _val1906
+          iprot.readMapEnd()
+        else:
+          iprot.skip(ftype)
       else:
         iprot.skip(ftype)
       iprot.readFieldEnd()
@@ -4188,6 +4208,18 @@ class ExecutorStats:
       oprot.writeFieldBegin('rate', TType.DOUBLE, 4)
       oprot.writeDouble(self.rate)
       oprot.writeFieldEnd()
+    if self.latency_histograms is not None:
+      oprot.writeFieldBegin('latency_histograms', TType.MAP, 5)
+      oprot.writeMapBegin(TType.STRING, TType.MAP, len(self.latency_histograms))
+      for kiter1920,viter1921 in self.latency_histograms.items():
+        oprot.writeString(kiter1920.encode('utf-8'))
+        oprot.writeMapBegin(TType.STRING, TType.STRING, len(viter1921))
+        for kiter1922,viter1923 in viter1921.items():
+          oprot.writeString(kiter1922.encode('utf-8'))
+          oprot.writeString(viter1923)
+        oprot.writeMapEnd()
+      oprot.writeMapEnd()
+      oprot.writeFieldEnd()
     oprot.writeFieldStop()
     oprot.writeStructEnd()
 
@@ -4209,6 +4241,7 @@ class ExecutorStats:
     value = (value * 31) ^ hash(self.transferred)
     value = (value * 31) ^ hash(self.specific)
     value = (value * 31) ^ hash(self.rate)
+    value = (value * 31) ^ hash(self.latency_histograms)
     return value
 
   def __repr__(self):
@@ -5767,6 +5800,7 @@ class ComponentAggregateStats:
    - common_stats
    - specific_stats
    - last_error
+   - latency_percentiles_ms
   """
 
   thrift_spec = (
@@ -5775,13 +5809,15 @@ class ComponentAggregateStats:
     (2, TType.STRUCT, 'common_stats', (CommonAggregateStats, CommonAggregateStats.thrift_spec), None, ), # 2
     (3, TType.STRUCT, 'specific_stats', (SpecificAggregateStats, SpecificAggregateStats.thrift_spec), None, ), # 3
     (4, TType.STRUCT, 'last_error', (ErrorInfo, ErrorInfo.thrift_spec), None, ), # 4
+    (5, TType.MAP, 'latency_percentiles_ms', (TType.STRING,None,TType.MAP,(TType.STRING,None,TType.DOUBLE,None)), None, ), # 5
   )
 
-  def __init__(self, type=None, common_stats=None, specific_stats=None, last_error=None,):
+  def __init__(self, type=None, common_stats=None, specific_stats=None, last_error=None, latency_percentiles_ms=None,):
     self.type = type
     self.common_stats = common_stats
     self.specific_stats = specific_stats
     self.last_error = last_error
+    self.latency_percentiles_ms = latency_percentiles_ms
 
   def read(self, iprot):
     if iprot.__class__ == TBinaryProtocol.TBinaryProtocolAccelerated and isinstance(iprot.trans, TTransport.CReadableTransport) and self.thrift_spec is not None and fastbinary is not None:
@@ -5815,6 +5851,23 @@ class ComponentAggregateStats:
           self.last_error.read(iprot)
         else:
           iprot.skip(ftype)
+      elif fid == 5:
+        if ftype == TType.MAP:
+          self.latency_percentiles_ms = {}
+          (_ktype1941, _vtype1942, _size1940 ) = iprot.readMapBegin()
+          for _i1944 in xrange(_size1940):
+            _key1945 = iprot.readString().decode('utf-8')
+            _val1946 = {}
+            (_ktype1948, _vtype1949, _size1947 ) = iprot.readMapBegin()
+            for _i1951 in xrange(_size1947):
+              _key1952 = iprot.readString().decode('utf-8')
+              _val1953 = iprot.readDouble()
+              _val1946[_key1952] = _val1953
+            iprot.readMapEnd()
+            self.latency_percentiles_ms[_key1945] = _val1946
+          iprot.readMapEnd()
+        else:
+          iprot.skip(ftype)
       else:
         iprot.skip(ftype)
       iprot.readFieldEnd()
@@ -5841,6 +5894,18 @@ class ComponentAggregateStats:
       oprot.writeFieldBegin('last_error', TType.STRUCT, 4)
       self.last_error.write(oprot)
       oprot.writeFieldEnd()
+    if self.latency_percentiles_ms is not None:
+      oprot.writeFieldBegin('latency_percentiles_ms', TType.MAP, 5)
+      oprot.writeMapBegin(TType.STRING, TType.MAP, len(self.latency_percentiles_ms))
+      for kiter1960,viter1961 in self.latency_percentiles_ms.items():
+        oprot.writeString(kiter1960.encode('utf-8'))
+        oprot.writeMapBegin(TType.STRING, TType.DOUBLE, len(viter1961))
+        for kiter1962,viter1963 in viter1961.items():
+          oprot.writeString(kiter1962.encode('utf-8'))
+          oprot.writeDouble(viter1963)
+        oprot.writeMapEnd()
+      oprot.writeMapEnd()
+      oprot.writeFieldEnd()
     oprot.writeFieldStop()
     oprot.writeStructEnd()
 
@@ -5854,6 +5919,7 @@ class ComponentAggregateStats:
     value = (value * 31) ^ hash(self.common_stats)
     value = (value * 31) ^ hash(self.specific_stats)
     value = (value * 31) ^ hash(self.last_error)
+    value = (value * 31) ^ hash(self.latency_percentiles_ms)
     return value
 
   def __repr__(self):
@@ -241,6 +241,7 @@ struct ExecutorStats {
   2: required map<string, map<string, i64>> transferred;
   3: required ExecutorSpecificStats specific;
   4: required double rate;
+  5: optional map<string, map<string, binary>> latency_histograms; // metric -> window -> compressed HdrHistogram
 }
 
 struct ExecutorInfo {
@@ -318,6 +319,7 @@ struct ComponentAggregateStats {
 2: optional CommonAggregateStats common_stats;
 3: optional SpecificAggregateStats specific_stats;
 4: optional ErrorInfo last_error;
+5: optional map<string, map<string, double>> latency_percentiles_ms; // metric -> percentile -> ms
 }
 
 struct TopologyStats {
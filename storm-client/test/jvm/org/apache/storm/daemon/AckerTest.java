@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.daemon;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.storm.daemon.Acker.ACKER_BATCH_STREAM_ID;
+import static org.apache.storm.daemon.Acker.BATCH_ACK;
+import static org.apache.storm.daemon.Acker.BATCH_FAIL;
+import static org.apache.storm.daemon.Acker.BATCH_RECORD_SIZE;
+import static org.apache.storm.daemon.Acker.BATCH_RESET_TIMEOUT;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the batched protocol of {@link Acker}
+ */
+public class AckerTest {
+    private static final int SPOUT_TASK = 7;
+    private static final int OTHER_SPOUT_TASK = 8;
+
+    private Acker acker;
+    private OutputCollector mockCollector;
+
+    @Before
+    public void setUp() {
+        mockCollector = mock(OutputCollector.class);
+        acker = new Acker();
+        acker.prepare(new HashMap<String, Object>(), null, mockCollector);
+    }
+
+    private static Tuple batch(long... records) {
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.getSourceStreamId()).thenReturn(ACKER_BATCH_STREAM_ID);
+        when(tuple.getSourceComponent()).thenReturn("bolt");
+        when(tuple.getValue(0)).thenReturn(records);
+        return tuple;
+    }
+
+    private long[] reply(int spoutTask) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(mockCollector).emitDirect(eq(spoutTask), eq(ACKER_BATCH_STREAM_ID), captor.capture());
+        return (long[]) captor.getValue().get(0);
+    }
+
+    private static void assertReply(long[] records, int index, long root, long code) {
+        assertEquals(root, records[index * BATCH_RECORD_SIZE]);
+        assertEquals(code, records[index * BATCH_RECORD_SIZE + 2]);
+    }
+
+    @Test
+    public void testInitAckAndFailForSameRootInOneBatch() {
+        Tuple input = batch(
+            1L, 0x0F, SPOUT_TASK,
+            1L, 0x0F, BATCH_ACK,
+            2L, 0x30, SPOUT_TASK,
+            2L, 0x10, BATCH_ACK,
+            2L, 0, BATCH_FAIL,
+            // the bolt's ack may overtake the spout's init
+            3L, 0x44, BATCH_ACK,
+            3L, 0x44, SPOUT_TASK,
+            // still pending, no reply
+            4L, 0x01, SPOUT_TASK,
+            4L, 0x02, BATCH_ACK);
+        acker.execute(input);
+
+        long[] records = reply(SPOUT_TASK);
+        assertEquals(3 * BATCH_RECORD_SIZE, records.length);
+        assertReply(records, 0, 1L, BATCH_ACK);
+        assertReply(records, 1, 2L, BATCH_FAIL);
+        assertReply(records, 2, 3L, BATCH_ACK);
+        verify(mockCollector).ack(input);
+
+        // the rest of the tree for root 4 completes in a later batch
+        acker.execute(batch(4L, 0x03, BATCH_ACK));
+        verify(mockCollector, times(2)).emitDirect(eq(SPOUT_TASK), eq(ACKER_BATCH_STREAM_ID), any(List.class));
+    }
+
+    @Test
+    public void testResetTimeoutRepliesWithoutCompleting() {
+        acker.execute(batch(1L, 0x0F, SPOUT_TASK, 1L, 0, BATCH_RESET_TIMEOUT));
+        assertReply(reply(SPOUT_TASK), 0, 1L, BATCH_RESET_TIMEOUT);
+
+        acker.execute(batch(1L, 0x0F, BATCH_ACK));
+        verify(mockCollector, times(2)).emitDirect(eq(SPOUT_TASK), eq(ACKER_BATCH_STREAM_ID), any(List.class));
+    }
+
+    @Test
+    public void testRepliesFanOutToSpoutTasks() {
+        acker.execute(batch(
+            1L, 0x0F, SPOUT_TASK,
+            2L, 0x0F, OTHER_SPOUT_TASK,
+            1L, 0x0F, BATCH_ACK,
+            2L, 0x0F, BATCH_ACK,
+            3L, 0x0F, SPOUT_TASK,
+            3L, 0, BATCH_FAIL));
+
+        long[] first = reply(SPOUT_TASK);
+        assertEquals(2 * BATCH_RECORD_SIZE, first.length);
+        assertReply(first, 0, 1L, BATCH_ACK);
+        assertReply(first, 1, 3L, BATCH_FAIL);
+
+        long[] other = reply(OTHER_SPOUT_TASK);
+        assertEquals(BATCH_RECORD_SIZE, other.length);
+        assertReply(other, 0, 2L, BATCH_ACK);
+
+        // replies are not sent again with the next batch
+        acker.execute(batch(4L, 0x0F, SPOUT_TASK));
+        verify(mockCollector, times(2)).emitDirect(anyInt(), anyString(), any(List.class));
+    }
+
+    @Test
+    public void testUnknownCodeIsSkipped() {
+        Tuple input = batch(1L, 0x0F, -100, 2L, 0x0F, SPOUT_TASK, 2L, 0x0F, BATCH_ACK);
+        acker.execute(input);
+        long[] records = reply(SPOUT_TASK);
+        assertEquals(BATCH_RECORD_SIZE, records.length);
+        assertReply(records, 0, 2L, BATCH_ACK);
+        verify(mockCollector, never()).emitDirect(anyInt(), eq(Acker.ACKER_ACK_STREAM_ID), any(List.class));
+        verify(mockCollector).ack(input);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.daemon.worker;
+
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.ISingleConsumerQueue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link LocalTaskQueues}
+ */
+public class LocalTaskQueuesTest {
+    private ISingleConsumerQueue first;
+    private ISingleConsumerQueue second;
+    private ISingleConsumerQueue third;
+    private LocalTaskQueues queues;
+
+    @Before
+    public void setUp() {
+        first = mock(ISingleConsumerQueue.class);
+        second = mock(ISingleConsumerQueue.class);
+        third = mock(ISingleConsumerQueue.class);
+        // task ids that do not start at 0, with a gap at task 7
+        Map<List<Long>, ISingleConsumerQueue> executors = new HashMap<>();
+        executors.put(Arrays.asList(9L, 11L), third);
+        executors.put(Arrays.asList(5L, 6L), first);
+        executors.put(Arrays.asList(8L, 8L), second);
+        queues = new LocalTaskQueues(executors);
+    }
+
+    private static AddressedTuple tuple(int dest) {
+        return new AddressedTuple(dest, mock(Tuple.class));
+    }
+
+    @Test
+    public void testGet() {
+        assertSame(first, queues.get(5));
+        assertSame(first, queues.get(6));
+        assertSame(second, queues.get(8));
+        assertSame(third, queues.get(9));
+        assertSame(third, queues.get(11));
+    }
+
+    @Test
+    public void testGetUnknownTask() {
+        assertNull(queues.get(0));
+        assertNull(queues.get(4));
+        assertNull(queues.get(7));
+        assertNull(queues.get(12));
+        assertNull(queues.get(-1));
+        assertNull(queues.get(Integer.MAX_VALUE));
+        assertNull(new LocalTaskQueues(Collections.emptyMap()).get(0));
+    }
+
+    @Test
+    public void testPublishGroupsByQueue() {
+        AddressedTuple t5 = tuple(5);
+        AddressedTuple t11 = tuple(11);
+        AddressedTuple t6 = tuple(6);
+        AddressedTuple t9 = tuple(9);
+        queues.publish(Arrays.asList(t5, t11, t6, t9));
+        verify(first).publish(Arrays.asList(t5, t6));
+        verify(third).publish(Arrays.asList(t11, t9));
+        verify(second, never()).publish(any());
+    }
+
+    @Test
+    public void testPublishDropsUnknownTasks() {
+        AddressedTuple t8 = tuple(8);
+        queues.publish(Arrays.asList(tuple(7), t8, tuple(4), tuple(100)));
+        verify(second).publish(Collections.singletonList(t8));
+        verify(first, never()).publish(any());
+        verify(third, never()).publish(any());
+    }
+}
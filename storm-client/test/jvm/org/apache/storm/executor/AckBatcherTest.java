@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor;
+
+import org.apache.storm.Thrift;
+import org.apache.storm.daemon.Acker;
+import org.apache.storm.daemon.GrouperFactory;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Time;
+import org.apache.storm.utils.Time.SimulatedTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AckBatcher}
+ */
+public class AckBatcherTest {
+    private static final int SPOUT_TASK = 1;
+    private static final List<Integer> ACKER_TASKS = Arrays.asList(10, 11, 12, 13);
+
+    private Executor mockExecutor;
+    private ExecutorTransfer mockTransfer;
+
+    @Before
+    public void setUp() {
+        WorkerTopologyContext mockContext = mock(WorkerTopologyContext.class);
+        // not sorted, the batcher has to sort them the way the fields grouping sees them
+        when(mockContext.getComponentTasks(Acker.ACKER_COMPONENT_ID)).thenReturn(Arrays.asList(13, 10, 12, 11));
+        when(mockContext.getComponentId(SPOUT_TASK)).thenReturn("spout");
+        when(mockContext.getComponentOutputFields("spout", Acker.ACKER_BATCH_STREAM_ID)).thenReturn(new Fields("batch"));
+        mockTransfer = mock(ExecutorTransfer.class);
+        mockExecutor = mock(Executor.class);
+        when(mockExecutor.getWorkerTopologyContext()).thenReturn(mockContext);
+        when(mockExecutor.getExecutorTransfer()).thenReturn(mockTransfer);
+    }
+
+    @Test
+    public void testAckerTaskIndexMatchesFieldsGrouping() {
+        GrouperFactory.FieldsGrouper grouper = new GrouperFactory.FieldsGrouper(new Fields("id", "ack-val"),
+            Thrift.prepareFieldsGrouping(Collections.singletonList("id")));
+        grouper.prepare(null, null, ACKER_TASKS);
+        long[] roots = {0L, 1L, -1L, 42L, Long.MAX_VALUE, Long.MIN_VALUE, 0x5DEECE66DL, -8070450532247928832L};
+        for (long root : roots) {
+            int expected = grouper.chooseTasks(SPOUT_TASK, new Values(root, 0L)).get(0);
+            assertEquals("root " + root, expected, (int) ACKER_TASKS.get(Acker.ackerTaskIndex(root, ACKER_TASKS.size())));
+
+            AckBatcher batcher = new AckBatcher(mockExecutor, SPOUT_TASK, 1, 60000);
+            batcher.add(root, 1L, Acker.BATCH_ACK);
+            verify(mockTransfer).transfer(eq(expected), any(Tuple.class));
+            reset(mockTransfer);
+        }
+    }
+
+    @Test
+    public void testBatchRoundTrip() {
+        long root = 42L;
+        int acker = ACKER_TASKS.get(Acker.ackerTaskIndex(root, ACKER_TASKS.size()));
+        AckBatcher batcher = new AckBatcher(mockExecutor, SPOUT_TASK, 10, 60000);
+        batcher.add(root, 5L, 7);
+        batcher.add(root, 5L, Acker.BATCH_ACK);
+        verify(mockTransfer, never()).transfer(anyInt(), any(Tuple.class));
+        batcher.flush();
+
+        ArgumentCaptor<Tuple> sent = ArgumentCaptor.forClass(Tuple.class);
+        verify(mockTransfer).transfer(eq(acker), sent.capture());
+        Tuple tuple = sent.getValue();
+        assertEquals(Acker.ACKER_BATCH_STREAM_ID, tuple.getSourceStreamId());
+        assertEquals(SPOUT_TASK, tuple.getSourceTask());
+        assertArrayEquals(new long[]{root, 5L, 7, root, 5L, Acker.BATCH_ACK}, (long[]) tuple.getValue(0));
+
+        // the acker decodes the same batch and replies to the spout task from the init entry
+        OutputCollector mockCollector = mock(OutputCollector.class);
+        Acker ackerBolt = new Acker();
+        ackerBolt.prepare(new HashMap<String, Object>(), null, mockCollector);
+        ackerBolt.execute(tuple);
+        ArgumentCaptor<List> reply = ArgumentCaptor.forClass(List.class);
+        verify(mockCollector).emitDirect(eq(7), eq(Acker.ACKER_BATCH_STREAM_ID), reply.capture());
+        long[] records = (long[]) reply.getValue().get(0);
+        assertEquals(Acker.BATCH_RECORD_SIZE, records.length);
+        assertEquals(root, records[0]);
+        assertEquals(Acker.BATCH_ACK, records[2]);
+        verify(mockCollector).ack(tuple);
+    }
+
+    @Test
+    public void testFullBatchIsSent() {
+        long root = 7L;
+        int acker = ACKER_TASKS.get(Acker.ackerTaskIndex(root, ACKER_TASKS.size()));
+        AckBatcher batcher = new AckBatcher(mockExecutor, SPOUT_TASK, 2, 60000);
+        batcher.add(root, 1L, Acker.BATCH_ACK);
+        verify(mockTransfer, never()).transfer(anyInt(), any(Tuple.class));
+        batcher.add(root, 2L, Acker.BATCH_ACK);
+        ArgumentCaptor<Tuple> sent = ArgumentCaptor.forClass(Tuple.class);
+        verify(mockTransfer).transfer(eq(acker), sent.capture());
+        assertArrayEquals(new long[]{root, 1L, Acker.BATCH_ACK, root, 2L, Acker.BATCH_ACK},
+            (long[]) sent.getValue().getValue(0));
+    }
+
+    @Test
+    public void testFlushExpiredSendsPartialBatch() {
+        try (SimulatedTime t = new SimulatedTime()) {
+            long root = 42L;
+            int acker = ACKER_TASKS.get(Acker.ackerTaskIndex(root, ACKER_TASKS.size()));
+            AckBatcher batcher = new AckBatcher(mockExecutor, SPOUT_TASK, 10, 100);
+            batcher.add(root, 3L, Acker.BATCH_ACK);
+
+            Time.advanceTime(99);
+            batcher.flushExpired();
+            verify(mockTransfer, never()).transfer(anyInt(), any(Tuple.class));
+
+            Time.advanceTime(1);
+            batcher.flushExpired();
+            ArgumentCaptor<Tuple> sent = ArgumentCaptor.forClass(Tuple.class);
+            verify(mockTransfer).transfer(eq(acker), sent.capture());
+            assertArrayEquals(new long[]{root, 3L, Acker.BATCH_ACK}, (long[]) sent.getValue().getValue(0));
+
+            // nothing left to send
+            batcher.flushExpired();
+            verify(mockTransfer).transfer(anyInt(), any(Tuple.class));
+        }
+    }
+}
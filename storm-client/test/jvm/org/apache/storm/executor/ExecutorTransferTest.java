@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor;
+
+import org.apache.storm.Config;
+import org.apache.storm.daemon.worker.WorkerState;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.ISingleConsumerQueue;
+import org.apache.storm.utils.Utils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the local short circuit in {@link ExecutorTransfer}
+ */
+public class ExecutorTransferTest {
+    private static final int LOCAL_TASK = 3;
+    private static final int OTHER_LOCAL_TASK = 4;
+    private static final int REMOTE_TASK = 9;
+
+    private WorkerState workerData;
+    private ISingleConsumerQueue sendQueue;
+    private ISingleConsumerQueue receiveQueue;
+    private ISingleConsumerQueue otherReceiveQueue;
+
+    @Before
+    public void setUp() {
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getRawTopology()).thenReturn(new StormTopology(new HashMap<>(), new HashMap<>(), new HashMap<>()));
+        sendQueue = mock(ISingleConsumerQueue.class);
+        receiveQueue = mock(ISingleConsumerQueue.class);
+        otherReceiveQueue = mock(ISingleConsumerQueue.class);
+        workerData = mock(WorkerState.class);
+        when(workerData.getWorkerTopologyContext()).thenReturn(context);
+        when(workerData.getLocalReceiveQueue(LOCAL_TASK)).thenReturn(receiveQueue);
+        when(workerData.getLocalReceiveQueue(OTHER_LOCAL_TASK)).thenReturn(otherReceiveQueue);
+    }
+
+    private ExecutorTransfer transfer(boolean shortCircuit) {
+        Map<String, Object> conf = Utils.readDefaultConfig();
+        conf.put(Config.TOPOLOGY_TRANSFER_LOCAL_SHORT_CIRCUIT, shortCircuit);
+        return new ExecutorTransfer(workerData, sendQueue, conf);
+    }
+
+    @Test
+    public void testShortCircuitPublishesToReceiveQueue() {
+        Tuple tuple = mock(Tuple.class);
+        transfer(true).transfer(LOCAL_TASK, tuple);
+        ArgumentCaptor<AddressedTuple> published = ArgumentCaptor.forClass(AddressedTuple.class);
+        verify(receiveQueue).publish(published.capture());
+        assertEquals(LOCAL_TASK, published.getValue().getDest());
+        assertSame(tuple, published.getValue().getTuple());
+        verify(sendQueue, never()).publish(any());
+    }
+
+    @Test
+    public void testShortCircuitSendsRemoteTasksThroughSendQueue() {
+        transfer(true).transfer(REMOTE_TASK, mock(Tuple.class));
+        verify(sendQueue).publish(any(AddressedTuple.class));
+        verify(receiveQueue, never()).publish(any());
+    }
+
+    @Test
+    public void testWithoutShortCircuit() {
+        transfer(false).transfer(LOCAL_TASK, mock(Tuple.class));
+        verify(sendQueue).publish(any(AddressedTuple.class));
+        verify(receiveQueue, never()).publish(any());
+    }
+
+    @Test
+    public void testShortCircuitIgnoredWhenTryingToSerialize() {
+        when(workerData.isTrySerializeLocal()).thenReturn(true);
+        transfer(true).transfer(LOCAL_TASK, mock(Tuple.class));
+        verify(sendQueue).publish(any(AddressedTuple.class));
+        verify(receiveQueue, never()).publish(any());
+    }
+
+    @Test
+    public void testIsFullCoversShortCircuitQueues() {
+        ExecutorTransfer transfer = transfer(true);
+        when(otherReceiveQueue.isFull()).thenReturn(true);
+        assertFalse(transfer.isFull());
+
+        when(sendQueue.isFull()).thenReturn(true);
+        assertTrue(transfer.isFull());
+        when(sendQueue.isFull()).thenReturn(false);
+
+        transfer.transfer(LOCAL_TASK, mock(Tuple.class));
+        assertFalse(transfer.isFull());
+        when(receiveQueue.isFull()).thenReturn(true);
+        assertTrue(transfer.isFull());
+        when(receiveQueue.isFull()).thenReturn(false);
+        assertFalse(transfer.isFull());
+
+        // the full queue of another local task counts once this executor publishes to it
+        transfer.transfer(OTHER_LOCAL_TASK, mock(Tuple.class));
+        transfer.transfer(LOCAL_TASK, mock(Tuple.class));
+        assertTrue(transfer.isFull());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor.bolt;
+
+import org.apache.storm.Config;
+import org.apache.storm.daemon.Task;
+import org.apache.storm.daemon.worker.WorkerState;
+import org.apache.storm.executor.ExecutorTransfer;
+import org.apache.storm.policy.IWaitStrategy;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the fine grained backpressure in {@link BoltOutputCollectorImpl}
+ */
+public class BoltOutputCollectorImplTest {
+    private static final int DEST_TASK = 2;
+    private final List<Object> values = Collections.singletonList("value");
+    private BoltExecutor executor;
+    private WorkerState workerData;
+    private ExecutorTransfer transfer;
+    private IWaitStrategy waitStrategy;
+    private Task task;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Mockito.mock(BoltExecutor.class);
+        workerData = Mockito.mock(WorkerState.class);
+        transfer = Mockito.mock(ExecutorTransfer.class);
+        waitStrategy = Mockito.mock(IWaitStrategy.class);
+        task = Mockito.mock(Task.class);
+        WorkerTopologyContext context = Mockito.mock(WorkerTopologyContext.class);
+        Mockito.when(context.getComponentId(1)).thenReturn("bolt");
+        Mockito.when(context.getComponentOutputFields("bolt", "default")).thenReturn(new Fields("value"));
+        Mockito.when(workerData.isFineGrainedBackpressure()).thenReturn(true);
+        Mockito.when(executor.getWorkerData()).thenReturn(workerData);
+        Mockito.when(executor.getWorkerTopologyContext()).thenReturn(context);
+        Mockito.when(executor.getExecutorTransfer()).thenReturn(transfer);
+        Mockito.when(executor.getBackPressureWaitStrategy()).thenReturn(waitStrategy);
+        Mockito.when(task.getOutgoingTasks("default", values)).thenReturn(Collections.singletonList(DEST_TASK));
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(1);
+            return null;
+        }).when(waitStrategy).idle(Mockito.anyLong(), Mockito.any(), Mockito.anyFloat(), Mockito.anyLong());
+    }
+
+    private BoltOutputCollectorImpl collector(int maxWaitMs) {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BACKPRESSURE_FINE_GRAINED_MAX_WAIT_MILLIS, maxWaitMs);
+        Mockito.when(executor.getStormConf()).thenReturn(conf);
+        return new BoltOutputCollectorImpl(executor, task, 1, new Random(), false, false);
+    }
+
+    @Test
+    public void testEmitWithoutCongestionDoesNotWait() throws Exception {
+        collector(60000).emit("default", null, values);
+        Mockito.verify(transfer).transfer(Mockito.eq(DEST_TASK), Mockito.any(Tuple.class));
+        Mockito.verify(waitStrategy, Mockito.never())
+            .idle(Mockito.anyLong(), Mockito.any(), Mockito.anyFloat(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testEmitWaitsUntilDownstreamClears() throws Exception {
+        Mockito.when(workerData.isCongested(DEST_TASK)).thenReturn(true, true, true, false);
+        collector(60000).emit("default", null, values);
+        Mockito.verify(waitStrategy, Mockito.times(2))
+            .idle(Mockito.anyLong(), Mockito.eq(IWaitStrategy.IdleReason.BACK_PRESSURE), Mockito.anyFloat(), Mockito.anyLong());
+        Mockito.verify(transfer).transfer(Mockito.eq(DEST_TASK), Mockito.any(Tuple.class));
+    }
+
+    @Test
+    public void testEmitWaitIsBounded() throws Exception {
+        Mockito.when(workerData.isCongested(DEST_TASK)).thenReturn(true);
+        long start = System.currentTimeMillis();
+        collector(50).emit("default", null, values);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited " + elapsed + "ms", elapsed >= 50 && elapsed < 5000);
+        Mockito.verify(transfer).transfer(Mockito.eq(DEST_TASK), Mockito.any(Tuple.class));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.executor.spout;
+
+import org.apache.storm.daemon.worker.WorkerState;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpoutExecutor}
+ */
+public class SpoutExecutorTest {
+
+    @Test
+    public void testDownstreamCongestionIsCachedByVersion() {
+        WorkerState workerData = Mockito.mock(WorkerState.class);
+        SpoutExecutor.DownstreamCongestion congestion = new SpoutExecutor.DownstreamCongestion(workerData, new int[]{2, 5});
+        Mockito.when(workerData.getCongestionVersion()).thenReturn(1L);
+        Mockito.when(workerData.isCongested(5)).thenReturn(true);
+        assertTrue(congestion.isCongested());
+        Mockito.verify(workerData).isCongested(5);
+
+        // the same version does not look at the tasks again
+        Mockito.when(workerData.isCongested(5)).thenReturn(false);
+        assertTrue(congestion.isCongested());
+        Mockito.verify(workerData, Mockito.times(1)).isCongested(5);
+
+        Mockito.when(workerData.getCongestionVersion()).thenReturn(2L);
+        assertFalse(congestion.isCongested());
+        Mockito.verify(workerData, Mockito.times(2)).isCongested(2);
+        Mockito.verify(workerData, Mockito.times(2)).isCongested(5);
+
+        Mockito.when(workerData.getCongestionVersion()).thenReturn(3L);
+        Mockito.when(workerData.isCongested(2)).thenReturn(true);
+        assertTrue(congestion.isCongested());
+    }
+}
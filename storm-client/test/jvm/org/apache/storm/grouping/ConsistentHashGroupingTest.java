@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.grouping;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+
+import com.google.common.collect.Lists;
+
+public class ConsistentHashGroupingTest {
+    private static ConsistentHashGrouping prepare(List<Integer> targetTasks) {
+        ConsistentHashGrouping grouping = new ConsistentHashGrouping(new Fields("key"));
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getComponentOutputFields(any(GlobalStreamId.class))).thenReturn(new Fields("key", "value"));
+        grouping.prepare(context, mock(GlobalStreamId.class), targetTasks);
+        return grouping;
+    }
+
+    @Test
+    public void testChooseTasks() {
+        ConsistentHashGrouping grouping = prepare(Lists.newArrayList(0, 1, 2, 3, 4, 5));
+        List<Integer> choice1 = grouping.chooseTasks(0, new Values("key1", 1));
+        assertThat(choice1.size(), is(1));
+        List<Integer> choice2 = grouping.chooseTasks(0, new Values("key1", 2));
+        assertThat(choice2, is(choice1));
+    }
+
+    @Test
+    public void testAddingATaskOnlyMovesKeysToIt() {
+        List<Integer> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(i);
+        }
+        ConsistentHashGrouping before = prepare(tasks);
+        List<Integer> moreTasks = new ArrayList<>(tasks);
+        moreTasks.add(10);
+        ConsistentHashGrouping after = prepare(moreTasks);
+
+        int numKeys = 10000;
+        int moved = 0;
+        for (int i = 0; i < numKeys; i++) {
+            Values values = new Values("key" + i, i);
+            int oldTask = before.chooseTasks(0, values).get(0);
+            int newTask = after.chooseTasks(0, values).get(0);
+            if (oldTask != newTask) {
+                assertEquals(10, newTask);
+                moved++;
+            }
+        }
+        //About 1/11 of the keys should move, a fields grouping moves about 10/11 of them
+        assertTrue("moved " + moved, moved > numKeys / 11 / 2 && moved < numKeys / 11 * 2);
+    }
+
+    @Test
+    public void testJumpConsistentHashIsBalanced() {
+        int numBuckets = 7;
+        int[] counts = new int[numBuckets];
+        for (int i = 0; i < 70000; i++) {
+            counts[ConsistentHashGrouping.jumpConsistentHash(i, numBuckets)]++;
+        }
+        for (int count : counts) {
+            assertTrue("count " + count, count > 9000 && count < 11000);
+        }
+        assertEquals(0, ConsistentHashGrouping.jumpConsistentHash(42, 1));
+    }
+}
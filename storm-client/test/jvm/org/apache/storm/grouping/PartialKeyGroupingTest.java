@@ -22,7 +22,9 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -32,6 +34,7 @@ import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Values;
 
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 
 public class PartialKeyGroupingTest {
     @Test
@@ -63,4 +66,33 @@ public class PartialKeyGroupingTest {
         assertThat(choice3, is(not(choice2)));
         assertThat(choice3, is(choice1));
     }
+
+    @Test
+    public void testMurmur3MatchesHashingTheBytes() {
+        Random rand = new Random(42);
+        for (int length = 0; length < 10; length++) {
+            int[] data = new int[length];
+            ByteBuffer bytes = ByteBuffer.allocate(length * 4);
+            for (int i = 0; i < length; i++) {
+                data[i] = rand.nextInt();
+                bytes.putInt(data[i]);
+            }
+            for (int seed : new int[] {13, 17}) {
+                assertEquals(Hashing.murmur3_128(seed).hashBytes(bytes.array()).asLong(),
+                    PartialKeyGrouping.murmur3(data, seed));
+            }
+        }
+    }
+
+    @Test
+    public void testChooseTasksDoesNotAllocateNewLists() {
+        PartialKeyGrouping pkg = new PartialKeyGrouping(new Fields("test"));
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getComponentOutputFields(any(GlobalStreamId.class))).thenReturn(new Fields("other", "test"));
+        pkg.prepare(context, mock(GlobalStreamId.class), Lists.newArrayList(0, 1, 2, 3, 4, 5));
+        List<Integer> choice1 = pkg.chooseTasks(0, new Values("a", "key1"));
+        pkg.chooseTasks(0, new Values("b", "key1"));
+        List<Integer> choice3 = pkg.chooseTasks(0, new Values("c", "key1"));
+        assertSame(choice1, choice3);
+    }
 }
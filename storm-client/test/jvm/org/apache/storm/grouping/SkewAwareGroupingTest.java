@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.grouping;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+
+import com.google.common.collect.Lists;
+
+public class SkewAwareGroupingTest {
+    private static final List<Integer> TASKS = Lists.newArrayList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    private static SkewAwareGrouping prepare(SkewAwareGrouping grouping) {
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getComponentOutputFields(any(GlobalStreamId.class))).thenReturn(new Fields("key", "value"));
+        grouping.prepare(context, mock(GlobalStreamId.class), TASKS);
+        return grouping;
+    }
+
+    /**
+     * Send numTuples tuples, every other one with the key "hot" and the rest with distinct keys.
+     * @return the tasks the hot key was sent to.
+     */
+    private static Set<Integer> sendSkewed(SkewAwareGrouping grouping, int numTuples) {
+        Set<Integer> hotTasks = new HashSet<>();
+        for (int i = 0; i < numTuples; i++) {
+            if (i % 2 == 0) {
+                hotTasks.addAll(grouping.chooseTasks(0, new Values("hot", i)));
+            } else {
+                grouping.chooseTasks(0, new Values("cold" + i, i));
+            }
+        }
+        return hotTasks;
+    }
+
+    @Test
+    public void testColdKeysGoToOneTask() {
+        SkewAwareGrouping grouping = prepare(new SkewAwareGrouping(new Fields("key")));
+        sendSkewed(grouping, 10000);
+        List<Integer> choice1 = grouping.chooseTasks(0, new Values("cold", 1));
+        assertThat(choice1.size(), is(1));
+        for (int i = 0; i < 100; i++) {
+            grouping.chooseTasks(0, new Values("other" + i, i));
+            assertThat(grouping.chooseTasks(0, new Values("cold", i)), is(choice1));
+        }
+    }
+
+    @Test
+    public void testNoKeyIsHotBeforeEnoughTuples() {
+        SkewAwareGrouping grouping = prepare(new SkewAwareGrouping(new Fields("key")));
+        Set<Integer> tasks = new HashSet<>();
+        for (int i = 1; i < SkewAwareGrouping.MIN_HOT_SAMPLE; i++) {
+            tasks.addAll(grouping.chooseTasks(0, new Values("first", i)));
+        }
+        assertEquals(1, tasks.size());
+        for (int i = 0; i < 100; i++) {
+            tasks.addAll(grouping.chooseTasks(0, new Values("first", i)));
+        }
+        assertTrue("tasks " + tasks, tasks.size() > 1);
+    }
+
+    @Test
+    public void testHotKeyIsSpreadOverAllTasks() {
+        SkewAwareGrouping grouping = prepare(new SkewAwareGrouping(new Fields("key")));
+        Set<Integer> hotTasks = sendSkewed(grouping, 100000);
+        assertEquals(TASKS.size(), hotTasks.size());
+        Map<String, Double> state = (Map<String, Double>) grouping.getState();
+        //On a single task the hot key alone would be 5 times the average
+        assertTrue("imbalance " + state, state.get("load-imbalance") < 0.1);
+        assertEquals(0.5, state.get("hot-key-fraction"), 0.01);
+    }
+
+    @Test
+    public void testHotKeyIsSpreadOverDChoices() {
+        SkewAwareGrouping grouping = prepare(new SkewAwareGrouping(new Fields("key"), 3));
+        Set<Integer> hotTasks = sendSkewed(grouping, 100000);
+        assertTrue("tasks " + hotTasks, hotTasks.size() > 1 && hotTasks.size() <= 3);
+    }
+
+    @Test
+    public void testHotKeyAvoidsLoadedTasks() {
+        SkewAwareGrouping grouping = prepare(new SkewAwareGrouping(new Fields("key")));
+        Map<Integer, Double> local = new HashMap<>();
+        for (Integer task : TASKS) {
+            local.put(task, task == 0 ? 1.0 : 0.0);
+        }
+        LoadMapping loadMapping = new LoadMapping();
+        loadMapping.setLocal(local);
+        grouping.refreshLoad(loadMapping);
+
+        int[] counts = new int[TASKS.size()];
+        for (int i = 0; i < 100000; i++) {
+            counts[grouping.chooseTasks(0, new Values("hot", i)).get(0)]++;
+        }
+        //Task 0 reports twice the load, so it should get about half the tuples of the others
+        assertTrue("task 0 got " + counts[0], counts[0] < counts[1] * 0.75);
+    }
+}
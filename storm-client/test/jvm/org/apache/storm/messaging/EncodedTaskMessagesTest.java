@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.utils.DirectBufferPool;
+import org.junit.Test;
+
+public class EncodedTaskMessagesTest {
+
+    @Test
+    public void testRoundTrip() {
+        DirectBufferPool pool = new DirectBufferPool(64, 2);
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), pool.acquire(), pool);
+        assertTrue(msgs.add(1, new byte[]{1, 2, 3}));
+        assertTrue(msgs.add(7, new byte[0]));
+        msgs.seal();
+
+        assertEquals(2, msgs.size());
+        assertEquals(2 * EncodedTaskMessages.HEADER_SIZE + 3, msgs.getBuffer().remaining());
+        Iterator<TaskMessage> it = msgs.toTaskMessages();
+        TaskMessage first = it.next();
+        assertEquals(1, first.task());
+        assertArrayEquals(new byte[]{1, 2, 3}, first.message());
+        TaskMessage second = it.next();
+        assertEquals(7, second.task());
+        assertEquals(0, second.message().length);
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testFullBufferIsLeftUntouched() {
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), ByteBuffer.allocate(16), null);
+        assertTrue(msgs.add(1, new byte[8]));
+        assertFalse(msgs.add(2, new byte[8]));
+        msgs.seal();
+        assertEquals(1, msgs.size());
+        assertEquals(EncodedTaskMessages.HEADER_SIZE + 8, msgs.getBuffer().remaining());
+    }
+
+    @Test
+    public void testBuffersAreReused() {
+        DirectBufferPool pool = new DirectBufferPool(64, 2);
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), pool.acquire(), pool);
+        msgs.add(1, new byte[]{1});
+        msgs.seal();
+        msgs.release();
+
+        ByteBuffer reused = pool.acquire();
+        assertEquals(1, pool.getAllocated());
+        assertEquals(0, reused.position());
+        assertEquals(64, reused.limit());
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.local;
+
+import org.apache.storm.messaging.IConnection;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link Context}
+ */
+public class ContextTest {
+
+    @Test
+    public void testCongestedTasksReachClients() {
+        Context context = new Context();
+        IConnection server = context.bind("congestion-topology", 6700);
+        IConnection client = context.connect("congestion-topology", "localhost", 6700);
+        AtomicInteger changes = new AtomicInteger();
+        client.setCongestionListener(changes::incrementAndGet);
+        try {
+            server.sendBackPressureStatus(Arrays.asList(3, 4));
+            assertEquals(new HashSet<>(Arrays.asList(3, 4)), client.getCongestedTasks());
+            assertEquals(1, changes.get());
+
+            // the status is re-sent periodically, the listener only hears about changes
+            server.sendBackPressureStatus(Arrays.asList(4, 3));
+            assertEquals(1, changes.get());
+
+            server.sendBackPressureStatus(Collections.emptyList());
+            assertEquals(Collections.emptySet(), client.getCongestedTasks());
+            assertEquals(2, changes.get());
+        } finally {
+            client.close();
+        }
+        server.sendBackPressureStatus(Collections.singletonList(5));
+        assertEquals(2, changes.get());
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.messaging.TaskMessage;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+public class FrameCodecTest {
+
+    private static ByteBuffer encode(List<TaskMessage> msgs, int frameVersion) {
+        int v1Length = ControlMessage.EOB_MESSAGE.encodeLength();
+        for (TaskMessage msg : msgs) {
+            v1Length += FrameCodec.V1_HEADER_SIZE + (msg.message() == null ? 0 : msg.message().length);
+        }
+        ByteBuffer out = ByteBuffer.allocate(FrameCodec.maxEncodeLength(v1Length, msgs.size(), frameVersion));
+        FrameCodec.writeBatch(msgs, frameVersion, out);
+        out.flip();
+        return out;
+    }
+
+    @Test
+    public void testRoundTripAcrossPartialReads() {
+        List<TaskMessage> msgs = Arrays.asList(new TaskMessage(100000, new byte[]{1, 2, 3}), new TaskMessage(0, null));
+        ByteBuffer v2 = encode(msgs, 2);
+        ByteBuffer v1 = encode(Arrays.asList(new TaskMessage(5, new byte[]{6})), 1);
+        ByteBuffer in = ByteBuffer.allocate(v2.remaining() + v1.remaining());
+        in.put(v2).put(v1).flip();
+
+        FrameReader reader = new FrameReader();
+        List<Object> ret = new ArrayList<>();
+        // Split inside the varint length of the first message
+        ByteBuffer part = in.duplicate();
+        part.limit(5);
+        assertNull(reader.read(part, null, ret));
+        assertTrue(ret.isEmpty());
+        assertEquals(2, part.position());
+
+        in.position(part.position());
+        assertNull(reader.read(in, null, ret));
+        assertFalse(in.hasRemaining());
+        assertEquals(3, ret.size());
+        assertEquals(100000, ((TaskMessage) ret.get(0)).task());
+        assertArrayEquals(new byte[]{1, 2, 3}, ((TaskMessage) ret.get(0)).message());
+        assertEquals(0, ((TaskMessage) ret.get(1)).task());
+        assertNull(((TaskMessage) ret.get(1)).message());
+        assertEquals(5, ((TaskMessage) ret.get(2)).task());
+    }
+
+    @Test
+    public void testOtherFramesComeByThemselves() {
+        ByteBuffer batch = encode(Arrays.asList(new TaskMessage(1, new byte[]{1})), 1);
+        ByteBuffer in = ByteBuffer.allocate(batch.remaining() + 2);
+        in.put(batch).putShort(ControlMessage.CLOSE_MESSAGE.getCode()).flip();
+
+        FrameReader reader = new FrameReader();
+        List<Object> ret = new ArrayList<>();
+        assertNull(reader.read(in, null, ret));
+        assertEquals(1, ret.size());
+        assertEquals(2, in.remaining());
+        ret.clear();
+        assertSame(ControlMessage.CLOSE_MESSAGE, reader.read(in, null, ret));
+        assertTrue(ret.isEmpty());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void testTranscodeEncodedMessages() {
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), ByteBuffer.allocate(64), null);
+        assertTrue(msgs.add(3, new byte[]{4, 5}));
+        assertTrue(msgs.add(9, new byte[0]));
+        msgs.seal();
+        ByteBuffer out = ByteBuffer.allocate(FrameCodec.maxEncodeLengthV2(msgs));
+        FrameCodec.writeBatchV2(msgs, out);
+        out.flip();
+        assertEquals(encode(Arrays.asList(new TaskMessage(3, new byte[]{4, 5}), new TaskMessage(9, null)), 2), out);
+        // The buffer itself is left as it was
+        assertEquals(3, msgs.getBuffer().getShort());
+    }
+
+    @Test
+    public void testMessageBatchUsesTheSameEncoding() throws Exception {
+        List<TaskMessage> msgs = Arrays.asList(new TaskMessage(3, new byte[]{4, 5}), new TaskMessage(40000, null));
+        MessageBatch batch = new MessageBatch(1024);
+        batch.setFrameVersion(2);
+        for (TaskMessage msg : msgs) {
+            batch.add(msg);
+        }
+        ChannelBuffer buf = batch.buffer();
+        assertEquals(encode(msgs, 2), buf.toByteBuffer());
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.storm.messaging.TaskMessage;
+import org.junit.Test;
+
+public class ResendBufferTest {
+
+    private static List<TaskMessage> drain(ResendBuffer buffer) {
+        List<TaskMessage> ret = new ArrayList<>();
+        buffer.drainTo(ret::add);
+        return ret;
+    }
+
+    @Test
+    public void testKeepsOrderAcrossMemoryAndFile() {
+        // Room for two messages of 4 bytes in memory
+        ResendBuffer buffer = new ResendBuffer(20, 1024, null);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.add(new TaskMessage(100000 + i, new byte[]{(byte) i, 0, 0, 0})));
+        }
+        assertTrue(buffer.add(new TaskMessage(7, null)));
+        assertEquals(6, buffer.size());
+        assertEquals(5 * 10 + 6, buffer.bytes());
+
+        List<TaskMessage> msgs = drain(buffer);
+        assertEquals(6, msgs.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(100000 + i, msgs.get(i).task());
+            assertArrayEquals(new byte[]{(byte) i, 0, 0, 0}, msgs.get(i).message());
+        }
+        assertEquals(7, msgs.get(5).task());
+        assertNull(msgs.get(5).message());
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.bytes());
+
+        // The file is reused after draining
+        assertTrue(buffer.add(new TaskMessage(1, new byte[16])));
+        assertEquals(1, drain(buffer).size());
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        ResendBuffer buffer = new ResendBuffer(10, 0, null);
+        assertTrue(buffer.add(new TaskMessage(1, new byte[4])));
+        assertFalse(buffer.add(new TaskMessage(2, new byte[1])));
+        assertEquals(1, buffer.size());
+
+        buffer = new ResendBuffer(0, 12, null);
+        assertTrue(buffer.add(new TaskMessage(1, new byte[4])));
+        assertFalse(buffer.add(new TaskMessage(2, null)));
+        assertEquals(1, buffer.clear());
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.add(new TaskMessage(2, null)));
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.messaging.EncodedTaskMessages;
+import org.apache.storm.messaging.IConnectionCallback;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.messaging.netty.BatchCodecMessage;
+import org.apache.storm.messaging.netty.BatchCompression;
+import org.apache.storm.messaging.netty.ControlMessage;
+import org.apache.storm.messaging.netty.DeflateBatchCodec;
+import org.apache.storm.messaging.netty.SaslMessageToken;
+import org.apache.storm.tuple.AddressedTuple;
+import org.junit.Test;
+
+public class MessageCodecTest {
+
+    private static EmbeddedChannel channel() {
+        return new EmbeddedChannel(new MessageDecoder(), MessageEncoder.INSTANCE);
+    }
+
+    @Test
+    public void testBatchRoundTripAcrossPartialReads() {
+        EmbeddedChannel channel = channel();
+        MessageBatch batch = new MessageBatch(1024);
+        batch.add(new TaskMessage(1, new byte[]{1, 2, 3}));
+        batch.add(new TaskMessage(7, null));
+        assertTrue(channel.writeOutbound(batch));
+        ByteBuf encoded = channel.readOutbound();
+        assertEquals(batch.encodeLength(), encoded.readableBytes());
+
+        // Only part of the first message
+        assertFalse(channel.writeInbound(encoded.readRetainedSlice(5)));
+        assertTrue(channel.writeInbound(encoded));
+        List<TaskMessage> msgs = channel.readInbound();
+        assertEquals(2, msgs.size());
+        assertEquals(1, msgs.get(0).task());
+        assertArrayEquals(new byte[]{1, 2, 3}, msgs.get(0).message());
+        assertEquals(7, msgs.get(1).task());
+        assertNull(msgs.get(1).message());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    public void testEncodedMessagesAreWrittenAsIs() {
+        EmbeddedChannel channel = channel();
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), ByteBuffer.allocate(64), null);
+        assertTrue(msgs.add(3, new byte[]{4, 5}));
+        msgs.seal();
+        assertTrue(channel.writeOutbound(msgs));
+        ByteBuf encoded = channel.readOutbound();
+        assertEquals(EncodedTaskMessages.HEADER_SIZE + 2, encoded.readableBytes());
+
+        assertTrue(channel.writeInbound(encoded));
+        List<TaskMessage> decoded = channel.readInbound();
+        assertEquals(1, decoded.size());
+        assertEquals(3, decoded.get(0).task());
+        assertArrayEquals(new byte[]{4, 5}, decoded.get(0).message());
+    }
+
+    @Test
+    public void testEncodedMessagesAreTranscodedForFrameV2() {
+        EmbeddedChannel channel = channel();
+        EncodedTaskMessages msgs = new EncodedTaskMessages(new NodeInfo(), ByteBuffer.allocate(64), null);
+        assertTrue(msgs.add(3, new byte[]{4, 5}));
+        assertTrue(msgs.add(9, new byte[0]));
+        msgs.seal();
+        msgs.setFrameVersion(2);
+        assertTrue(channel.writeOutbound(msgs));
+        ByteBuf encoded = channel.readOutbound();
+        assertEquals(ControlMessage.BATCH_V2.getCode(), encoded.getShort(0));
+
+        assertTrue(channel.writeInbound(encoded));
+        List<TaskMessage> decoded = channel.readInbound();
+        assertEquals(2, decoded.size());
+        assertEquals(3, decoded.get(0).task());
+        assertArrayEquals(new byte[]{4, 5}, decoded.get(0).message());
+        assertEquals(9, decoded.get(1).task());
+        assertNull(decoded.get(1).message());
+    }
+
+    @Test
+    public void testDeserializesInPlace() {
+        final List<byte[]> payloads = new ArrayList<>();
+        IConnectionCallback cb = new IConnectionCallback() {
+            @Override
+            public void recv(List<TaskMessage> batch) {
+                fail("Messages should have been deserialized in place");
+            }
+
+            @Override
+            public boolean canDeserialize() {
+                return true;
+            }
+
+            @Override
+            public AddressedTuple deserialize(int task, ByteBuffer payload) {
+                byte[] read = new byte[payload.remaining()];
+                payload.duplicate().get(read);
+                payloads.add(read);
+                return new AddressedTuple(task, null);
+            }
+        };
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(() -> cb, false), MessageEncoder.INSTANCE);
+        MessageBatch batch = new MessageBatch(1024);
+        batch.add(new TaskMessage(1, new byte[]{1, 2, 3}));
+        batch.add(new TaskMessage(2, new byte[]{4}));
+        assertTrue(channel.writeOutbound(batch));
+
+        assertTrue(channel.writeInbound(channel.readOutbound()));
+        List<AddressedTuple> tuples = channel.readInbound();
+        assertEquals(2, tuples.size());
+        assertEquals(1, tuples.get(0).getDest());
+        assertEquals(2, tuples.get(1).getDest());
+        assertArrayEquals(new byte[]{1, 2, 3}, payloads.get(0));
+        assertArrayEquals(new byte[]{4}, payloads.get(1));
+    }
+
+    @Test
+    public void testFrameV2RoundTripWithWideTaskIds() {
+        EmbeddedChannel channel = channel();
+        MessageBatch batch = new MessageBatch(1024);
+        batch.setFrameVersion(2);
+        batch.add(new TaskMessage(100000, new byte[]{1, 2, 3}));
+        batch.add(new TaskMessage(0, null));
+        MessageBatch v1 = new MessageBatch(1024);
+        v1.add(new TaskMessage(5, new byte[]{6}));
+        assertTrue(channel.writeOutbound(batch, v1));
+        ByteBuf encoded = channel.readOutbound();
+        assertTrue(encoded.readableBytes() <= batch.encodeLength());
+        ByteBuf encodedV1 = channel.readOutbound();
+
+        // Split inside the varint length of the first message
+        assertFalse(channel.writeInbound(encoded.readRetainedSlice(5)));
+        assertTrue(channel.writeInbound(encoded, encodedV1));
+        List<TaskMessage> msgs = channel.readInbound();
+        assertEquals(2, msgs.size());
+        assertEquals(100000, msgs.get(0).task());
+        assertArrayEquals(new byte[]{1, 2, 3}, msgs.get(0).message());
+        assertEquals(0, msgs.get(1).task());
+        assertNull(msgs.get(1).message());
+        msgs = channel.readInbound();
+        assertEquals(1, msgs.size());
+        assertEquals(5, msgs.get(0).task());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFrameV1RejectsWideTaskIds() {
+        MessageBatch batch = new MessageBatch(1024);
+        batch.add(new TaskMessage(100000, new byte[]{1}));
+        batch.write(Unpooled.buffer(batch.encodeLength()));
+    }
+
+    @Test
+    public void testCompressedBatchRoundTrip() {
+        EmbeddedChannel channel = channel();
+        channel.pipeline().get(MessageDecoder.class).setCodec(new DeflateBatchCodec());
+        BatchCompression compression = new BatchCompression(DeflateBatchCodec.class.getName(), 1024);
+        MessageBatch batch = new MessageBatch(1 << 20);
+        batch.setFrameVersion(2);
+        batch.setCompression(compression);
+        byte[] payload = new byte[1000];
+        Arrays.fill(payload, (byte) 'a');
+        for (int i = 0; i < 10; i++) {
+            batch.add(new TaskMessage(100000 + i, payload));
+        }
+        // Below the threshold, sent as is
+        MessageBatch small = new MessageBatch(1 << 20);
+        small.setCompression(compression);
+        small.add(new TaskMessage(3, new byte[]{1}));
+        assertTrue(channel.writeOutbound(batch, small));
+        ByteBuf encoded = channel.readOutbound();
+        assertEquals(ControlMessage.COMPRESSED_BATCH.getCode(), encoded.getShort(0));
+        assertTrue(encoded.readableBytes() < payload.length);
+        ByteBuf encodedSmall = channel.readOutbound();
+
+        assertFalse(channel.writeInbound(encoded.readRetainedSlice(20)));
+        assertTrue(channel.writeInbound(encoded, encodedSmall));
+        List<TaskMessage> msgs = channel.readInbound();
+        assertEquals(10, msgs.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(100000 + i, msgs.get(i).task());
+            assertArrayEquals(payload, msgs.get(i).message());
+        }
+        msgs = channel.readInbound();
+        assertEquals(1, msgs.size());
+        assertEquals(3, msgs.get(0).task());
+
+        Map<String, Object> state = compression.getState();
+        assertEquals(1L, state.get("compressedBatches"));
+        assertTrue((Double) state.get("compressionRatio") > 1.0);
+    }
+
+    @Test
+    public void testBatchCodecMessages() {
+        EmbeddedChannel channel = channel();
+        assertTrue(channel.writeOutbound(new BatchCodecMessage("some.Codec"), new BatchCodecMessage(null)));
+        assertTrue(channel.writeInbound(channel.readOutbound(), channel.readOutbound()));
+        assertEquals("some.Codec", ((BatchCodecMessage) channel.readInbound()).getCodec());
+        assertNull(((BatchCodecMessage) channel.readInbound()).getCodec());
+    }
+
+    @Test
+    public void testControlMessagesAndSaslTokens() {
+        EmbeddedChannel channel = channel();
+        assertTrue(channel.writeOutbound(ControlMessage.SASL_TOKEN_MESSAGE_REQUEST,
+            new SaslMessageToken(new byte[]{9, 8})));
+        ByteBuf request = channel.readOutbound();
+        ByteBuf token = channel.readOutbound();
+        assertEquals(ControlMessage.SASL_TOKEN_MESSAGE_REQUEST.getCode(), request.getShort(0));
+
+        assertTrue(channel.writeInbound(request, token));
+        assertSame(ControlMessage.SASL_TOKEN_MESSAGE_REQUEST, channel.readInbound());
+        SaslMessageToken decoded = channel.readInbound();
+        assertArrayEquals(new byte[]{9, 8}, decoded.getSaslToken());
+    }
+}
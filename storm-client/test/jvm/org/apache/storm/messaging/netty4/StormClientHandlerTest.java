@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.messaging.netty4;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.serialization.KryoValuesSerializer;
+import org.apache.storm.utils.Utils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link StormClientHandler} and the congestion status kept by {@link Client}
+ */
+public class StormClientHandlerTest {
+    private final Map<String, Object> conf = Utils.readDefaultConfig();
+
+    private TaskMessage systemMessage(Object metric) throws Exception {
+        return new TaskMessage(-1, new KryoValuesSerializer(conf).serialize(Arrays.asList(metric)));
+    }
+
+    @Test
+    public void testCongestedTasksReachClient() throws Exception {
+        Client client = Mockito.mock(Client.class);
+        EmbeddedChannel channel = new EmbeddedChannel(new StormClientHandler(client, conf));
+        channel.writeInbound(Collections.singletonList(systemMessage(new ArrayList<>(Arrays.asList(3, 4)))));
+        Mockito.verify(client).setCongestedTasks(new HashSet<>(Arrays.asList(3, 4)));
+        Mockito.verify(client, Mockito.never()).setLoadMetrics(Mockito.any());
+
+        Map<Integer, Double> load = new HashMap<>();
+        load.put(3, 0.5);
+        channel.writeInbound(Collections.singletonList(systemMessage(load)));
+        Mockito.verify(client).setLoadMetrics(load);
+    }
+
+    @Test
+    public void testClientReportsCongestionChanges() {
+        Client client = Mockito.mock(Client.class, Mockito.CALLS_REAL_METHODS);
+        AtomicInteger changes = new AtomicInteger();
+        client.setCongestionListener(changes::incrementAndGet);
+        client.setCongestedTasks(new HashSet<>(Arrays.asList(3, 4)));
+        assertEquals(new HashSet<>(Arrays.asList(3, 4)), client.getCongestedTasks());
+        assertEquals(1, changes.get());
+        client.setCongestedTasks(new HashSet<>(Arrays.asList(4, 3)));
+        assertEquals(1, changes.get());
+        client.setCongestedTasks(Collections.emptySet());
+        assertEquals(Collections.emptySet(), client.getCongestedTasks());
+        assertEquals(2, changes.get());
+    }
+}
@@ -83,4 +83,54 @@ public class CountStatAndMetricTest extends TestCase {
         expected.put(":all-time", val);
         assertEquals(expected, count.getTimeCounts(time));
     }
+
+    @Test
+    public void testRotateIfDue() {
+        long time = 0l;
+        CountStatAndMetric count = new CountStatAndMetric(10, time);
+        count.incBy(10);
+        time += THIRTY_SEC;
+        //Not a full bucket yet, so nothing moves
+        count.rotateIfDue(time);
+        count.incBy(10);
+        time = TEN_MIN;
+        count.rotateIfDue(time);
+
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("600", 20l);
+        expected.put("10800", 20l);
+        expected.put("86400", 20l);
+        expected.put(":all-time", 20l);
+        assertEquals(expected, count.getTimeCounts(time));
+        //The rotation does not lose what was counted since the last report
+        assertEquals(20l, ((Long)count.getValueAndReset(time)).longValue());
+        assertEquals(expected, count.getTimeCounts(time));
+    }
+
+    @Test
+    public void testRotateIfDueAfterSeveralIdleBuckets() {
+        long time = 0l;
+        CountStatAndMetric count = new CountStatAndMetric(10, time);
+        count.incBy(100);
+        //Read before anything is due
+        time = 4 * 60 * 1000;
+
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("600", 100l);
+        expected.put("10800", 100l);
+        expected.put("86400", 100l);
+        expected.put(":all-time", 100l);
+        assertEquals(expected, count.getTimeCounts(time));
+
+        //Idle for longer than the 10 min window, so the count has to be gone from it and not spread over the idle time
+        time = 2 * TEN_MIN;
+        count.rotateIfDue(time);
+        expected.put("600", 0l);
+        assertEquals(expected, count.getTimeCounts(time));
+
+        time = 2 * THREE_HOUR;
+        count.rotateIfDue(time);
+        expected.put("10800", 0l);
+        assertEquals(expected, count.getTimeCounts(time));
+    }
 }
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.metric.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+import junit.framework.TestCase;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for LatencyHistogramStatAndMetric
+ */
+public class LatencyHistogramStatAndMetricTest extends TestCase {
+    final long FIVE_MIN = 5 * 60 * 1000;
+    final long TEN_MIN = 10 * 60 * 1000;
+
+    @Test
+    public void testPercentilesPerWindow() {
+        long time = 0L;
+        LatencyHistogramStatAndMetric lat = new LatencyHistogramStatAndMetric(time);
+        for (int i = 1; i <= 100; i++) {
+            lat.record(i);
+        }
+
+        Map<String, Map<String, Double>> found = lat.getTimeLatPercentiles(time);
+        assertEquals(4, found.size());
+        for (Map<String, Double> percentiles : found.values()) {
+            assertEquals(50.0, percentiles.get("50"), 0.01);
+            assertEquals(99.0, percentiles.get("99"), 0.01);
+            assertEquals(100.0, percentiles.get("99.9"), 0.01);
+        }
+
+        time += FIVE_MIN;
+        lat.drain(time);
+        for (int i = 0; i < 100; i++) {
+            lat.record(1000);
+        }
+        time += FIVE_MIN;
+        found = lat.getTimeLatPercentiles(time);
+        //the 10 min window has dropped the first half, the others still have all of it
+        assertEquals(1000.0, found.get("600").get("50"), 10.0);
+        assertEquals(100.0, found.get("10800").get("50"), 0.01);
+        assertEquals(1000.0, found.get("10800").get("99"), 10.0);
+        assertEquals(100.0, found.get(":all-time").get("50"), 0.01);
+
+        time += TEN_MIN;
+        found = lat.getTimeLatPercentiles(time);
+        assertEquals(0.0, found.get("600").get("99"), 0.01);
+        assertEquals(1000.0, found.get("86400").get("99"), 10.0);
+    }
+
+    @Test
+    public void testValueAndResetAndClamping() {
+        long time = 0L;
+        LatencyHistogramStatAndMetric lat = new LatencyHistogramStatAndMetric(time);
+        lat.record(-5);
+        lat.record(Long.MAX_VALUE);
+        Map<String, Double> found = (Map<String, Double>) lat.getValueAndReset(time);
+        assertEquals(0.0, found.get("50"), 0.01);
+        assertEquals(LatencyHistogramStatAndMetric.HIGHEST_TRACKABLE_LATENCY_MS,
+            found.get("99.9"), LatencyHistogramStatAndMetric.HIGHEST_TRACKABLE_LATENCY_MS * 0.01);
+
+        found = (Map<String, Double>) lat.getValueAndReset(time + 1);
+        assertEquals(0.0, found.get("99.9"), 0.01);
+    }
+
+    @Test
+    public void testEncodedHistogramsMerge() throws Exception {
+        LatencyHistogramStatAndMetric first = new LatencyHistogramStatAndMetric(0);
+        LatencyHistogramStatAndMetric second = new LatencyHistogramStatAndMetric(0);
+        for (int i = 0; i < 99; i++) {
+            first.record(10);
+        }
+        second.record(200);
+
+        ByteBuffer firstEncoded = LatencyHistogramStatAndMetric.encode(first.getTimeLatHistograms(0).get("600"));
+        ByteBuffer secondEncoded = LatencyHistogramStatAndMetric.encode(second.getTimeLatHistograms(0).get("600"));
+        Histogram merged = LatencyHistogramStatAndMetric.decode(firstEncoded);
+        merged.add(LatencyHistogramStatAndMetric.decode(secondEncoded));
+        //decoding leaves the buffer as it was so it can be read again
+        assertEquals(99, LatencyHistogramStatAndMetric.decode(firstEncoded).getTotalCount());
+
+        assertEquals(100, merged.getTotalCount());
+        Map<String, Double> percentiles = LatencyHistogramStatAndMetric.percentiles(merged);
+        assertEquals(10.0, percentiles.get("99"), 0.01);
+        assertEquals(200.0, percentiles.get("99.9"), 0.01);
+    }
+}
@@ -80,4 +80,32 @@ public class LatencyStatAndMetricTest extends TestCase {
         assertEquals(expected, found.get("86400").doubleValue(), 0.01);
         assertEquals(expected, found.get(":all-time").doubleValue(), 0.01);
     }
+
+    @Test
+    public void testRotateIfDueAfterSeveralIdleBuckets() {
+        long time = 0l;
+        LatencyStatAndMetric lat = new LatencyStatAndMetric(10, time);
+        lat.record(100);
+        //Read before anything is due
+        time = 4 * 60 * 1000;
+
+        Map<String, Double> found = lat.getTimeLatAvg(time);
+        assertEquals(100.0, found.get("600").doubleValue(), 0.01);
+        assertEquals(100.0, found.get("10800").doubleValue(), 0.01);
+
+        //Idle for longer than the 10 min window, so nothing recorded is left in it
+        time = 2 * TEN_MIN;
+        lat.rotateIfDue(time);
+        found = lat.getTimeLatAvg(time);
+        assertEquals(0.0, found.get("600").doubleValue(), 0.01);
+        assertEquals(100.0, found.get("10800").doubleValue(), 0.01);
+        assertEquals(100.0, found.get("86400").doubleValue(), 0.01);
+        assertEquals(100.0, found.get(":all-time").doubleValue(), 0.01);
+
+        time = 2 * THREE_HOUR;
+        lat.rotateIfDue(time);
+        found = lat.getTimeLatAvg(time);
+        assertEquals(0.0, found.get("10800").doubleValue(), 0.01);
+        assertEquals(100.0, found.get("86400").doubleValue(), 0.01);
+    }
 }
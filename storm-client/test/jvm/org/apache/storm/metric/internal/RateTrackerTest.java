@@ -91,4 +91,28 @@ public class RateTrackerTest extends TestCase {
 
         assertEquals(r1, r2, 0.00001);
     }
+
+    @Test
+    public void testRotateIfDueCatchesUp() {
+        RateTracker lazy = new RateTracker(10000, 10, 0);
+        RateTracker forced = new RateTracker(10000, 10, 0);
+        lazy.notify(10);
+        forced.notify(10);
+        lazy.rotateIfDue(500);
+        assertEquals(20.0, lazy.reportRate(500), 0.00001);
+
+        lazy.rotateIfDue(3500);
+        forced.forceRotate(3, 1000);
+        assertEquals(forced.reportRate(3500), lazy.reportRate(3500), 0.00001);
+    }
+
+    @Test
+    public void testRotateIfDueAfterIdle() {
+        RateTracker rt = new RateTracker(10000, 10, 0);
+        rt.notify(10);
+        rt.rotateIfDue(100000);
+        assertEquals(0.0, rt.reportRate(100000), 0.00001);
+        rt.notify(10);
+        assertEquals(10 * 1000.0 / 9500, rt.reportRate(100500), 0.00001);
+    }
 }
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.policy;
+
+import org.apache.storm.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class WaitStrategyProgressiveTest {
+    private WaitStrategyProgressive strategy;
+
+    @Before
+    public void setUp() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL1_COUNT, 2);
+        conf.put(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL2_COUNT, 2);
+        conf.put(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_SLEEP_MILLIS, 1);
+        conf.put(Config.TOPOLOGY_WAIT_PROGRESSIVE_LEVEL3_MAX_SLEEP_MILLIS, 1);
+        strategy = new WaitStrategyProgressive();
+        strategy.prepare(conf);
+    }
+
+    @After
+    public void tearDown() {
+        // Do not leak the interrupt into other tests
+        Thread.interrupted();
+    }
+
+    // Only the sleeping level notices an interrupt, which tells the levels apart without relying on timing
+
+    @Test
+    public void testSpinsThenYieldsThenSleeps() throws Exception {
+        Thread.currentThread().interrupt();
+        for (long streak = 1; streak <= 4; streak++) {
+            strategy.idle(streak, IWaitStrategy.IdleReason.NO_EMIT, 0.0f, 0);
+        }
+        assertSleeps(5, IWaitStrategy.IdleReason.NO_EMIT, 0.0f);
+    }
+
+    @Test
+    public void testSkipsSpinningWhenWaitingOnDownstream() throws Exception {
+        Thread.currentThread().interrupt();
+        strategy.idle(2, IWaitStrategy.IdleReason.MAX_SPOUT_PENDING, 0.0f, 10);
+        assertSleeps(3, IWaitStrategy.IdleReason.MAX_SPOUT_PENDING, 0.0f);
+        Thread.currentThread().interrupt();
+        assertSleeps(3, IWaitStrategy.IdleReason.NO_EMIT, 0.9f);
+    }
+
+    private void assertSleeps(long streak, IWaitStrategy.IdleReason reason, float sendQueuePctFull) {
+        try {
+            strategy.idle(streak, reason, sendQueuePctFull, 0);
+            fail("Expected streak " + streak + " to sleep");
+        } catch (InterruptedException e) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+}
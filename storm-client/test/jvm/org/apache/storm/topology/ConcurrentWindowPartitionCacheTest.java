@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.storm.utils.Utils;
+import org.apache.storm.windowing.persistence.ConcurrentWindowPartitionCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ConcurrentWindowPartitionCache}.
+ */
+public class ConcurrentWindowPartitionCacheTest {
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuildInvalid1() throws Exception {
+        ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+            .maximumSize(0)
+            .build(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuildInvalid2() throws Exception {
+        ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+            .maximumWeight(-1, (key, val) -> val)
+            .build(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testBuildInvalid3() throws Exception {
+        ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+            .maximumSize(1)
+            .build(null);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        List<Integer> removed = new ArrayList<>();
+        List<Integer> loaded = new ArrayList<>();
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(2)
+                .removalListener((key, val, removalCause) -> removed.add(key))
+                .build(key -> {
+                    loaded.add(key);
+                    return key;
+                });
+
+        cache.get(1);
+        cache.get(2);
+        cache.get(3);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), loaded);
+        // 2 is not used more often than 1, so it is not admitted
+        Assert.assertEquals(Collections.singletonList(2), removed);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGetNull() throws Exception {
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(2)
+                .build(key -> null);
+
+        cache.get(1);
+    }
+
+    @Test
+    public void testPinAndGet() throws Exception {
+        List<Integer> removed = new ArrayList<>();
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(1)
+                .removalListener((key, val, removalCause) -> removed.add(key))
+                .build(key -> key);
+
+        cache.get(1);
+        cache.pinAndGet(2);
+        Assert.assertEquals(Collections.singletonList(1), removed);
+        cache.get(3);
+        // the pinned entry stays even though the cache is over its maximum size
+        Assert.assertEquals(Arrays.asList(1, 3), removed);
+        Assert.assertEquals(Collections.singletonMap(2, 2), cache.asMap());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        List<Integer> removed = new ArrayList<>();
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(1)
+                .removalListener((key, val, removalCause) -> removed.add(key))
+                .build(key -> key);
+
+        cache.pinAndGet(1);
+        cache.invalidate(1);
+        Assert.assertEquals(Collections.emptyList(), removed);
+        Assert.assertEquals(Collections.singletonMap(1, 1), cache.asMap());
+
+        Assert.assertTrue(cache.unpin(1));
+        Assert.assertFalse(cache.unpin(1));
+        cache.invalidate(1);
+        Assert.assertEquals(Collections.singletonList(1), removed);
+        Assert.assertTrue(cache.asMap().isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentGet() throws Exception {
+        List<Integer> loaded = new CopyOnWriteArrayList<>();
+        ConcurrentWindowPartitionCache<Integer, Object> cache =
+            ConcurrentWindowPartitionCache.<Integer, Object>newBuilder()
+                .maximumSize(1)
+                .build(key -> {
+                    Utils.sleep(1000);
+                    loaded.add(key);
+                    return new Object();
+                });
+
+        FutureTask<Object> ft1 = new FutureTask<>(() -> cache.pinAndGet(1));
+        FutureTask<Object> ft2 = new FutureTask<>(() -> cache.pinAndGet(1));
+        Thread t1 = new Thread(ft1);
+        Thread t2 = new Thread(ft2);
+        t1.start();
+        t2.start();
+        t1.join();
+        t2.join();
+
+        Assert.assertEquals(Collections.singletonList(1), loaded);
+        Assert.assertEquals(ft1.get(), ft2.get());
+        // pinned twice
+        Assert.assertTrue(cache.unpin(1));
+        Assert.assertTrue(cache.unpin(1));
+        Assert.assertFalse(cache.unpin(1));
+    }
+
+    @Test
+    public void testConcurrentUnpin() throws Exception {
+        ConcurrentWindowPartitionCache<Integer, Object> cache =
+            ConcurrentWindowPartitionCache.<Integer, Object>newBuilder()
+                .maximumSize(1)
+                .build(key -> new Object());
+
+        cache.pinAndGet(1);
+        FutureTask<Boolean> ft1 = new FutureTask<>(() -> cache.unpin(1));
+        FutureTask<Boolean> ft2 = new FutureTask<>(() -> cache.unpin(1));
+        Thread t1 = new Thread(ft1);
+        Thread t2 = new Thread(ft2);
+        t1.start();
+        t2.start();
+        t1.join();
+        t2.join();
+
+        Assert.assertTrue(ft1.get() || ft2.get());
+        Assert.assertFalse(ft1.get() && ft2.get());
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        List<Integer> removed = new ArrayList<>();
+        ConcurrentWindowPartitionCache<Integer, AtomicInteger> cache =
+            ConcurrentWindowPartitionCache.<Integer, AtomicInteger>newBuilder()
+                .maximumWeight(10, (key, val) -> val.get())
+                .removalListener((key, val, removalCause) -> removed.add(key))
+                .build(AtomicInteger::new);
+
+        cache.pinAndGet(1);
+        cache.get(4);
+        Assert.assertTrue(removed.isEmpty());
+        // the pinned entry grows past the maximum weight
+        cache.get(1).set(7);
+        Assert.assertTrue(removed.isEmpty());
+        cache.unpin(1);
+        // 1 is used more often than 4
+        Assert.assertEquals(Collections.singletonList(4), removed);
+        Assert.assertEquals(Collections.singleton(1), cache.asMap().keySet());
+        Assert.assertEquals(7L, ((Map<?, ?>) cache.getState()).get("weight"));
+    }
+
+    @Test
+    public void testFrequentEntriesAreRetained() throws Exception {
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(100)
+                .build(key -> key);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        for (int j = 0; j < 5; j++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get(i);
+            }
+        }
+        // makes the frequently used entries the least recently used ones
+        for (int i = 10; i < 100; i++) {
+            cache.get(i);
+        }
+        // a scan of entries that are used once
+        for (int i = 100; i < 200; i++) {
+            cache.get(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue("Missing entry " + i, cache.asMap().containsKey(i));
+        }
+        Assert.assertTrue(cache.asMap().size() <= 100);
+    }
+
+    @Test(timeout = 10000)
+    public void testRemovalExecutor() throws Exception {
+        List<Integer> removed = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(1)
+                .removalListener((key, val, removalCause) -> {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    removed.add(key);
+                })
+                .removalExecutor(executor)
+                .build(key -> key);
+
+        cache.get(1);
+        cache.get(2);
+        // the removal does not block the load
+        Assert.assertTrue(removed.isEmpty());
+        latch.countDown();
+        cache.cleanUp();
+        Assert.assertEquals(Collections.singletonList(1), removed);
+    }
+
+    @Test(expected = CompletionException.class, timeout = 10000)
+    public void testRemovalExecutorFailure() throws Exception {
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(1)
+                .removalListener((key, val, removalCause) -> {
+                    throw new IllegalStateException("write-back failed");
+                })
+                .removalExecutor(executor)
+                .build(key -> key);
+
+        cache.get(1);
+        cache.get(2);
+        cache.cleanUp();
+    }
+
+    @Test
+    public void testGetState() throws Exception {
+        ConcurrentWindowPartitionCache<Integer, Integer> cache =
+            ConcurrentWindowPartitionCache.<Integer, Integer>newBuilder()
+                .maximumSize(10)
+                .build(key -> key);
+
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        Map<?, ?> state = (Map<?, ?>) cache.getState();
+        Assert.assertEquals(1L, state.get("hits"));
+        Assert.assertEquals(2L, state.get("misses"));
+        Assert.assertEquals(1.0 / 3, (double) state.get("hit-rate"), 0.001);
+        Assert.assertEquals(0L, state.get("evictions"));
+        Assert.assertEquals(2, state.get("entries"));
+        Assert.assertEquals(2L, state.get("weight"));
+        // the counters are reset
+        Assert.assertEquals(0L, ((Map<?, ?>) cache.getState()).get("hits"));
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.topology;
+
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.streams.operations.CombinerAggregator;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.base.BaseIncrementalWindowedBolt;
+import org.apache.storm.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link IncrementalWindowedBoltExecutor}
+ */
+public class IncrementalWindowedBoltExecutorTest {
+    private TestSumBolt bolt;
+    private IncrementalWindowedBoltExecutor<Long, Long> executor;
+    private OutputCollector collector;
+
+    private static class TestSumBolt extends BaseIncrementalWindowedBolt<Long, Long> {
+        List<Long> results = new ArrayList<>();
+        List<Long> startTimestamps = new ArrayList<>();
+        List<Long> endTimestamps = new ArrayList<>();
+
+        @Override
+        public CombinerAggregator<Tuple, Long, Long> getAggregator() {
+            return CombinerAggregator.of(0L, (sum, tuple) -> sum + tuple.getLong(0), (sum1, sum2) -> sum1 + sum2);
+        }
+
+        @Override
+        public void execute(Long result, Long startTimestamp, Long endTimestamp) {
+            results.add(result);
+            startTimestamps.add(startTimestamp);
+            endTimestamps.add(endTimestamp);
+        }
+    }
+
+    private Tuple getTuple(long value) {
+        Tuple tuple = Mockito.mock(Tuple.class);
+        Mockito.when(tuple.getLong(0)).thenReturn(value);
+        return tuple;
+    }
+
+    @Before
+    public void setUp() {
+        bolt = new TestSumBolt();
+        executor = new IncrementalWindowedBoltExecutor<>(bolt);
+        collector = Mockito.mock(OutputCollector.class);
+    }
+
+    @Test
+    public void testCountWindow() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 6);
+        conf.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT, 4);
+        executor.prepare(conf, Mockito.mock(TopologyContext.class), collector);
+        for (long i = 1; i <= 12; i++) {
+            executor.execute(getTuple(i));
+        }
+        // 1..4, 3..8 and 7..12
+        assertEquals(Arrays.asList(10L, 33L, 57L), bolt.results);
+        assertEquals(Arrays.asList(null, null, null), bolt.startTimestamps);
+        // panes are 2 tuples long, only the last one is needed for the next window
+        assertEquals(1, executor.getPaneCount());
+        Mockito.verify(collector, Mockito.times(12)).ack(Mockito.any(Tuple.class));
+    }
+
+    @Test
+    public void testTimeWindow() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, 30);
+        conf.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS, 10);
+        executor.doPrepare(conf, Mockito.mock(TopologyContext.class), collector, 1000);
+        executor.add(getTuple(1), 1001);
+        executor.add(getTuple(2), 1005);
+        executor.onTrigger(1010);
+        executor.add(getTuple(3), 1012);
+        executor.add(getTuple(4), 1025);
+        executor.onTrigger(1030);
+        assertEquals(2, executor.getPaneCount());
+        executor.onTrigger(1060);
+        assertEquals(0, executor.getPaneCount());
+
+        // the window ending at 1060 is empty and is not fired
+        assertEquals(Arrays.asList(3L, 6L, 10L, 7L, 4L), bolt.results);
+        assertEquals(Arrays.asList(980L, 990L, 1000L, 1010L, 1020L), bolt.startTimestamps);
+        assertEquals(Arrays.asList(1010L, 1020L, 1030L, 1040L, 1050L), bolt.endTimestamps);
+    }
+
+    @Test
+    public void testLateTupleIsDropped() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, 20);
+        conf.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS, 10);
+        executor.doPrepare(conf, Mockito.mock(TopologyContext.class), collector, 1000);
+        executor.add(getTuple(1), 1001);
+        executor.onTrigger(1010);
+        // the clock went back into the window that was just fired
+        executor.add(getTuple(2), 1008);
+        executor.add(getTuple(3), 1012);
+        executor.onTrigger(1020);
+        assertEquals(Arrays.asList(1L, 4L), bolt.results);
+        assertEquals(1, executor.getLateTupleCount());
+    }
+
+    @Test
+    public void testTickTriggersTimeWindow() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, 20);
+        conf.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS, 10);
+        executor.doPrepare(conf, Mockito.mock(TopologyContext.class), collector, System.currentTimeMillis() - 100);
+        executor.add(getTuple(5), System.currentTimeMillis() - 100);
+        Tuple tick = Mockito.mock(Tuple.class);
+        Mockito.when(tick.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        Mockito.when(tick.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+        executor.execute(tick);
+        assertEquals(Arrays.asList(5L, 5L), bolt.results);
+        Mockito.verify(collector, Mockito.never()).ack(Mockito.any(Tuple.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedWindowIsRejected() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, 30);
+        conf.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT, 10);
+        executor.doPrepare(conf, Mockito.mock(TopologyContext.class), collector, 1000);
+    }
+}
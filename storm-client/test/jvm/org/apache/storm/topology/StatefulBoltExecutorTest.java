@@ -17,10 +17,13 @@
  */
 package org.apache.storm.topology;
 
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
 import org.apache.storm.generated.GlobalStreamId;
 import org.apache.storm.generated.Grouping;
 import org.apache.storm.spout.CheckpointSpout;
 import org.apache.storm.state.KeyValueState;
+import org.apache.storm.state.SnapshotState;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
@@ -30,10 +33,15 @@ import org.mockito.Mockito;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import static org.apache.storm.spout.CheckPointState.Action.*;
 import static org.apache.storm.spout.CheckpointSpout.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -166,4 +174,95 @@ public class StatefulBoltExecutorTest {
         Mockito.verify(mockBolt, Mockito.times(2)).execute(mockTuple);
         Mockito.verify(mockOutputCollector, Mockito.times(1)).ack(mockTuple);
     }
+
+    @Test
+    public void testAsyncPrepareAndCommit() throws Exception {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_STATE_CHECKPOINT_ASYNC, true);
+        SnapshotState snapshotState = Mockito.mock(SnapshotState.class, Mockito.withSettings().extraInterfaces(KeyValueState.class));
+        CountDownLatch persistStarted = new CountDownLatch(1);
+        CountDownLatch releasePersist = new CountDownLatch(1);
+        Mockito.when(snapshotState.snapshot(100)).thenReturn(() -> {
+            persistStarted.countDown();
+            try {
+                releasePersist.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 42;
+        });
+        StatefulBoltExecutor<KeyValueState<String, String>> asyncExecutor = new StatefulBoltExecutor<>(mockBolt);
+        asyncExecutor.prepare(conf, mockTopologyContext, mockOutputCollector, snapshotState);
+
+        Mockito.when(mockTuple.getSourceStreamId()).thenReturn("default");
+        Mockito.when(mockCheckpointTuple.getSourceStreamId()).thenReturn(CheckpointSpout.CHECKPOINT_STREAM_ID);
+        Mockito.when(mockCheckpointTuple.getValueByField(CHECKPOINT_FIELD_ACTION)).thenReturn(INITSTATE);
+        Mockito.when(mockCheckpointTuple.getLongByField(CHECKPOINT_FIELD_TXID)).thenReturn(new Long(0));
+        asyncExecutor.execute(mockCheckpointTuple);
+        Mockito.verify(mockOutputCollector, Mockito.times(1)).ack(mockCheckpointTuple);
+
+        Mockito.when(mockCheckpointTuple.getValueByField(CHECKPOINT_FIELD_ACTION)).thenReturn(PREPARE);
+        Mockito.when(mockCheckpointTuple.getLongByField(CHECKPOINT_FIELD_TXID)).thenReturn(new Long(100));
+        asyncExecutor.execute(mockCheckpointTuple);
+        persistStarted.await();
+        // tuples are processed while the snapshot is being saved, the checkpoint tuple is not acked yet
+        asyncExecutor.execute(mockTuple);
+        Mockito.verify(mockBolt, Mockito.times(1)).execute(mockTuple);
+        Mockito.verify(mockOutputCollector, Mockito.times(1)).ack(mockCheckpointTuple);
+
+        // once saved, the checkpoint tuple is acked from the executor thread, a tick is enough to get it done
+        List<Thread> ackThreads = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> ackThreads.add(Thread.currentThread()))
+            .when(mockOutputCollector).ack(mockCheckpointTuple);
+        Tuple mockTickTuple = Mockito.mock(Tuple.class);
+        Mockito.when(mockTickTuple.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        Mockito.when(mockTickTuple.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+        releasePersist.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ackThreads.isEmpty() && System.currentTimeMillis() < deadline) {
+            asyncExecutor.execute(mockTickTuple);
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList(Thread.currentThread()), ackThreads);
+        Mockito.verify(mockBolt, Mockito.never()).execute(mockTickTuple);
+        Mockito.verify(snapshotState, Mockito.never()).prepareCommit(Mockito.anyLong());
+
+        Mockito.when(mockCheckpointTuple.getValueByField(CHECKPOINT_FIELD_ACTION)).thenReturn(COMMIT);
+        asyncExecutor.execute(mockCheckpointTuple);
+        Mockito.verify(snapshotState, Mockito.times(1)).commit(100);
+        assertEquals(2, ackThreads.size());
+
+        Map<String, Object> metric = (Map<String, Object>) asyncExecutor.getCheckpointMetric().getValueAndReset();
+        assertEquals(1L, metric.get("count"));
+        assertEquals(42L, metric.get("bytes-written"));
+        asyncExecutor.cleanup();
+    }
+
+    @Test
+    public void testConfiguredTicksReachBolt() throws Exception {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_STATE_CHECKPOINT_ASYNC, true);
+        // set at the topology level, the bolt does not ask for ticks in its own configuration
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, 5);
+        StatefulBoltExecutor<KeyValueState<String, String>> tickExecutor = new StatefulBoltExecutor<>(mockBolt);
+        tickExecutor.prepare(conf, mockTopologyContext, mockOutputCollector, mockState);
+        Mockito.when(mockCheckpointTuple.getSourceStreamId()).thenReturn(CheckpointSpout.CHECKPOINT_STREAM_ID);
+        Mockito.when(mockCheckpointTuple.getValueByField(CHECKPOINT_FIELD_ACTION)).thenReturn(INITSTATE);
+        Mockito.when(mockCheckpointTuple.getLongByField(CHECKPOINT_FIELD_TXID)).thenReturn(new Long(0));
+        tickExecutor.execute(mockCheckpointTuple);
+        Tuple mockTickTuple = Mockito.mock(Tuple.class);
+        Mockito.when(mockTickTuple.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        Mockito.when(mockTickTuple.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+        tickExecutor.execute(mockTickTuple);
+        Mockito.verify(mockBolt, Mockito.times(1)).execute(mockTickTuple);
+    }
+
+    @Test
+    public void testDefaultTicksOnlyForAsyncCheckpoint() throws Exception {
+        assertNull(executor.getComponentConfiguration());
+        assertNull(executor.getDefaultTickFreqSecs(new HashMap<>()));
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_STATE_CHECKPOINT_ASYNC, true);
+        assertEquals(Integer.valueOf(1), executor.getDefaultTickFreqSecs(conf));
+    }
 }
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.tuple;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageIdTest {
+
+    private static MessageId multiRoot() {
+        Map<Long, Long> anchorsToIds = new HashMap<>();
+        anchorsToIds.put(1L, -1L);
+        anchorsToIds.put(Long.MAX_VALUE, Long.MIN_VALUE);
+        anchorsToIds.put(3L, 4L);
+        return MessageId.makeId(anchorsToIds);
+    }
+
+    private static MessageId roundTrip(MessageId id, boolean compact) throws Exception {
+        Output out = new Output(128);
+        if (compact) {
+            out.writeInt(id.getCompactKind(), true);
+            id.serializeCompact(out);
+        } else {
+            id.serialize(out);
+        }
+        Input in = new Input(out.toBytes());
+        MessageId ret = compact ? MessageId.deserializeCompact(in.readInt(true), in) : MessageId.deserialize(in);
+        Assert.assertEquals(0, in.limit() - in.position());
+        return ret;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MessageId[] ids = {MessageId.makeUnanchored(), MessageId.makeRootId(42L, 7L), multiRoot()};
+        for (MessageId id : ids) {
+            Assert.assertEquals(id, roundTrip(id, false));
+            Assert.assertEquals(id, roundTrip(id, true));
+        }
+    }
+
+    @Test
+    public void testCompactKind() {
+        Assert.assertEquals(MessageId.COMPACT_UNANCHORED, MessageId.makeUnanchored().getCompactKind());
+        Assert.assertEquals(MessageId.COMPACT_SINGLE_ROOT, MessageId.makeRootId(42L, 7L).getCompactKind());
+        Assert.assertEquals(MessageId.COMPACT_MULTI_ROOT, multiRoot().getCompactKind());
+    }
+
+    @Test
+    public void testCompactLeavesOutCount() throws Exception {
+        Output out = new Output(128);
+        MessageId.makeRootId(42L, 7L).serializeCompact(out);
+        Assert.assertEquals(16, out.position());
+    }
+
+    @Test
+    public void testDeserializeIntoPooledId() throws Exception {
+        Output out = new Output(128);
+        multiRoot().serializeCompact(out);
+        MessageId pooled = MessageId.makeId(new HashMap<>());
+        pooled.getAnchorsToIds().put(5L, 6L);
+        pooled.deserializeCompactAnchors(MessageId.COMPACT_MULTI_ROOT, new Input(out.toBytes()));
+        Assert.assertEquals(multiRoot(), pooled);
+    }
+}
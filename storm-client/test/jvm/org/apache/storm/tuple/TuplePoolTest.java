@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.tuple;
+
+import java.util.Arrays;
+
+import org.apache.storm.task.GeneralTopologyContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TuplePoolTest {
+    private static final GeneralTopologyContext CONTEXT = new GeneralTopologyContext(null, null, null, null, null, null) {
+        @Override
+        public String getComponentId(int taskId) {
+            return "component";
+        }
+
+        @Override
+        public Fields getComponentOutputFields(String componentId, String streamId) {
+            return new Fields("word", "count");
+        }
+    };
+
+    private static TupleImpl emit(TuplePool pool, String word, long root) {
+        TupleImpl tuple = pool.acquire();
+        tuple.getMessageId().getAnchorsToIds().put(root, 1L);
+        return tuple.reset(CONTEXT, Arrays.asList(word, 1), 1, "default");
+    }
+
+    @Test
+    public void testReusedOnceExecutedAndAcked() {
+        TuplePool pool = new TuplePool(4, false);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        Assert.assertEquals("foo", tuple.getString(0));
+
+        tuple.markAcked();
+        Assert.assertEquals(0, pool.getPooled());
+        tuple.markExecuted();
+        Assert.assertEquals(1, pool.getPooled());
+
+        TupleImpl reused = emit(pool, "bar", 43L);
+        Assert.assertSame(tuple, reused);
+        Assert.assertEquals("bar", reused.getString(0));
+        Assert.assertEquals(1, reused.getMessageId().getAnchorsToIds().size());
+        Assert.assertEquals(Long.valueOf(1L), reused.getMessageId().getAnchorsToIds().get(43L));
+        Assert.assertEquals(0, reused.getAckVal());
+        Assert.assertEquals(1, pool.getAllocated());
+        Assert.assertEquals(2, pool.getAcquired());
+    }
+
+    @Test
+    public void testNotReusedUntilAcked() {
+        TuplePool pool = new TuplePool(4, false);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        tuple.markExecuted();
+        Assert.assertNotSame(tuple, emit(pool, "bar", 43L));
+        Assert.assertEquals("foo", tuple.getString(0));
+    }
+
+    @Test
+    public void testUnpooledNeverReused() {
+        TuplePool pool = new TuplePool(4, false);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        tuple.unpool();
+        tuple.markExecuted();
+        tuple.markAcked();
+        tuple.release();
+        Assert.assertEquals(0, pool.getPooled());
+        Assert.assertEquals("foo", tuple.getString(0));
+    }
+
+    @Test
+    public void testAddressedTupleCachedPerDestination() {
+        TuplePool pool = new TuplePool(4, false);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        AddressedTuple addressed = tuple.addressedTo(5);
+        Assert.assertSame(addressed, tuple.addressedTo(5));
+        Assert.assertEquals(6, tuple.addressedTo(6).getDest());
+        Assert.assertSame(tuple, addressed.getTuple());
+    }
+
+    @Test
+    public void testCopyDoesNotShareMessageId() {
+        TuplePool pool = new TuplePool(4, false);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        TupleImpl copy = new TupleImpl(tuple);
+        tuple.release();
+        Assert.assertEquals(Long.valueOf(1L), copy.getMessageId().getAnchorsToIds().get(42L));
+        Assert.assertEquals("foo", copy.getString(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDebugDetectsUseAfterRelease() {
+        TuplePool pool = new TuplePool(4, true);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        tuple.release();
+        Assert.assertNotSame(tuple, emit(pool, "bar", 43L));
+        tuple.getString(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDebugDetectsAckAfterRelease() {
+        TuplePool pool = new TuplePool(4, true);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        tuple.markExecuted();
+        tuple.markAcked();
+        tuple.getMessageId();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDebugDetectsDoubleRelease() {
+        TuplePool pool = new TuplePool(4, true);
+        TupleImpl tuple = emit(pool, "foo", 42L);
+        tuple.release();
+        tuple.release();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.lmax.disruptor.EventHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class MpscBatchQueueTest extends TestCase {
+
+    private final static int TIMEOUT = 5000; // MS
+    private final static int PRODUCER_NUM = 4;
+
+    @Test
+    public void testFirstMessageFirst() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            MpscBatchQueue queue = new MpscBatchQueue("firstMessageOrder", 16, 0L, 1, 1L);
+
+            queue.publish("FIRST");
+
+            Runnable producer = new IncProducer(queue, i + 100);
+
+            final AtomicReference<Object> result = new AtomicReference<>();
+            Runnable consumer = new Consumer(queue, new EventHandler<Object>() {
+                private boolean head = true;
+
+                @Override
+                public void onEvent(Object obj, long sequence, boolean endOfBatch)
+                        throws Exception {
+                    if (head) {
+                        head = false;
+                        result.set(obj);
+                    }
+                }
+            });
+
+            run(producer, consumer, queue, 10, PRODUCER_NUM);
+            Assert.assertEquals("We expect to receive first published message first, but received " + result.get(),
+                    "FIRST", result.get());
+        }
+    }
+
+    @Test
+    public void testInOrder() throws InterruptedException {
+        checkInOrder(1);
+    }
+
+    @Test
+    public void testInOrderBatch() throws InterruptedException {
+        checkInOrder(10);
+    }
+
+    @Test
+    public void testPartialBatchIsConsumed() throws InterruptedException {
+        MpscBatchQueue queue = new MpscBatchQueue("partialBatch", 1024, 0L, 100, 1L);
+        final AtomicLong received = new AtomicLong(0);
+        Runnable consumer = new Consumer(queue, new EventHandler<Object>() {
+            @Override
+            public void onEvent(Object obj, long sequence, boolean endOfBatch) throws Exception {
+                received.incrementAndGet();
+            }
+        });
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        // Far fewer than the batch size, and nothing else will ever be published
+        for (int i = 0; i < 5; i++) {
+            queue.publish(i);
+        }
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (received.get() < 5 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(5, received.get());
+        Assert.assertEquals(0, queue.getMetrics().overflow());
+
+        queue.haltWithInterrupt();
+        consumerThread.join(TIMEOUT);
+        assertFalse("consumer is still alive", consumerThread.isAlive());
+    }
+
+    private void checkInOrder(int batchSize) throws InterruptedException {
+        // The first message seen out of order, if any
+        final AtomicReference<String> outOfOrder = new AtomicReference<>();
+
+        MpscBatchQueue queue = new MpscBatchQueue("consumerHang", 1024, 0L, batchSize, 1L);
+        Runnable producer = new IncProducer(queue, 1024 * 1024);
+        Runnable consumer = new Consumer(queue, new EventHandler<Object>() {
+            long _expected = 0;
+
+            @Override
+            public void onEvent(Object obj, long sequence, boolean endOfBatch)
+                    throws Exception {
+                if (_expected != ((Number) obj).longValue()) {
+                    outOfOrder.compareAndSet(null, "expected " + _expected + " but got " + obj);
+                }
+                _expected++;
+            }
+        });
+
+        run(producer, consumer, queue, 1000, 1);
+        Assert.assertNull("Messages delivered out of order, " + outOfOrder.get(), outOfOrder.get());
+    }
+
+    private void run(Runnable producer, Runnable consumer, ISingleConsumerQueue queue, int sleepMs, int producerNum)
+            throws InterruptedException {
+
+        Thread[] producerThreads = new Thread[producerNum];
+        for (int i = 0; i < producerNum; i++) {
+            producerThreads[i] = new Thread(producer);
+            producerThreads[i].start();
+        }
+
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+        Thread.sleep(sleepMs);
+        for (int i = 0; i < producerNum; i++) {
+            producerThreads[i].interrupt();
+        }
+
+        for (int i = 0; i < producerNum; i++) {
+            producerThreads[i].join(TIMEOUT);
+            assertFalse("producer " + i + " is still alive", producerThreads[i].isAlive());
+        }
+        queue.haltWithInterrupt();
+        consumerThread.join(TIMEOUT);
+        assertFalse("consumer is still alive", consumerThread.isAlive());
+    }
+
+    private static class IncProducer implements Runnable {
+        private ISingleConsumerQueue queue;
+        private long _max;
+
+        IncProducer(ISingleConsumerQueue queue, long max) {
+            this.queue = queue;
+            this._max = max;
+        }
+
+        @Override
+        public void run() {
+            for (long i = 0; i < _max && !(Thread.currentThread().isInterrupted()); i++) {
+                queue.publish(i);
+            }
+        }
+    }
+
+    private static class Consumer implements Runnable {
+        private EventHandler handler;
+        private ISingleConsumerQueue queue;
+
+        Consumer(ISingleConsumerQueue queue, EventHandler handler) {
+            this.handler = handler;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    queue.consumeBatchWhenAvailable(handler);
+                }
+            } catch (RuntimeException e) {
+                //break
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class RotatingPendingMapTest {
+
+    @Test
+    public void testColumns() {
+        RotatingPendingMap<String> map = new RotatingPendingMap<>(3, true);
+        assertEquals(RotatingPendingMap.NOT_FOUND, map.find(42L));
+
+        int handle = map.insert(42L);
+        assertEquals(0L, map.getVal(handle));
+        assertEquals(RotatingPendingMap.NO_TASK, map.getTask(handle));
+        assertFalse(map.isFailed(handle));
+        assertNull(map.getAttachment(handle));
+
+        map.setVal(handle, 5L);
+        map.xorVal(handle, 3L);
+        map.setTask(handle, 7);
+        map.setStartTime(handle, 1000L);
+        map.setFailed(handle, true);
+        map.setAttachment(handle, "info");
+
+        handle = map.find(42L);
+        assertEquals(42L, map.getKey(handle));
+        assertEquals(6L, map.getVal(handle));
+        assertEquals(7, map.getTask(handle));
+        assertEquals(1000L, map.getStartTime(handle));
+        assertTrue(map.isFailed(handle));
+        assertEquals("info", map.getAttachment(handle));
+        assertEquals(1, map.size());
+
+        map.remove(handle);
+        assertFalse(map.containsKey(42L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testExpiresLikeRotatingMap() {
+        final List<Long> expired = new ArrayList<>();
+        final List<String> expiredAttachments = new ArrayList<>();
+        final List<RotatingPendingMap<String>> holder = new ArrayList<>();
+        RotatingPendingMap<String> map = new RotatingPendingMap<>(3, true, new RotatingPendingMap.ExpiredCallback() {
+            @Override
+            public void expire(long key, int handle) {
+                expired.add(key);
+                expiredAttachments.add(holder.get(0).getAttachment(handle));
+            }
+        });
+        holder.add(map);
+
+        map.put(1L, "one");
+        map.rotate();
+        map.put(2L, "two");
+        map.rotate();
+        assertTrue(expired.isEmpty());
+        // Moving 1 to the newest bucket saves it from the next rotation
+        assertTrue(map.refresh(1L));
+        assertEquals(0, map.rotate());
+        assertEquals(1, map.rotate());
+        assertEquals(2L, (long) expired.get(0));
+        assertEquals("two", expiredAttachments.get(0));
+        assertEquals("one", map.remove(1L));
+        assertNull(map.remove(1L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testTouchKeepsColumns() {
+        RotatingPendingMap<Void> map = new RotatingPendingMap<>(2, false);
+        int handle = map.insert(9L);
+        map.setVal(handle, 11L);
+        map.setTask(handle, 3);
+        map.rotate();
+        map.touch(map.find(9L));
+        assertEquals(0, map.rotate());
+        handle = map.find(9L);
+        assertEquals(11L, map.getVal(handle));
+        assertEquals(3, map.getTask(handle));
+    }
+
+    @Test
+    public void testManyKeys() {
+        RotatingPendingMap<Void> map = new RotatingPendingMap<>(3, 16, false, null);
+        Map<Long, Long> expected = new HashMap<>();
+        Random rand = new Random(12345);
+        for (int i = 0; i < 100000; i++) {
+            long key = rand.nextInt(20000);
+            int op = rand.nextInt(3);
+            if (op == 0) {
+                map.setVal(map.insert(key), i);
+                expected.put(key, (long) i);
+            } else if (op == 1) {
+                int handle = map.find(key);
+                if (handle != RotatingPendingMap.NOT_FOUND) {
+                    map.remove(handle);
+                }
+                expected.remove(key);
+            } else {
+                int handle = map.find(key);
+                if (handle != RotatingPendingMap.NOT_FOUND) {
+                    map.touch(handle);
+                }
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            int handle = map.find(entry.getKey());
+            assertNotEquals(RotatingPendingMap.NOT_FOUND, handle);
+            assertEquals((long) entry.getValue(), map.getVal(handle));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.storm.windowing.persistence;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Unit tests for {@link MappedSegmentStore}
+ */
+public class MappedSegmentStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        MappedSegmentStore store = new MappedSegmentStore(folder.getRoot(), 16);
+        store.put(1, new byte[]{1, 2, 3});
+        store.put(2, new byte[]{4, 5});
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, store.get(1));
+        Assert.assertArrayEquals(new byte[]{4, 5}, store.get(2));
+        Assert.assertNull(store.get(3));
+
+        store.put(1, new byte[]{6});
+        Assert.assertArrayEquals(new byte[]{6}, store.get(1));
+        Assert.assertTrue(store.remove(2));
+        Assert.assertFalse(store.remove(2));
+        Assert.assertNull(store.get(2));
+        Assert.assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testValueLargerThanSegment() throws Exception {
+        MappedSegmentStore store = new MappedSegmentStore(folder.getRoot(), 16);
+        byte[] value = new byte[100];
+        value[99] = 1;
+        store.put(1, value);
+        store.put(2, new byte[]{2});
+        Assert.assertArrayEquals(value, store.get(1));
+        Assert.assertArrayEquals(new byte[]{2}, store.get(2));
+        store.close();
+    }
+
+    @Test
+    public void testDeadSegmentsAreReclaimed() throws Exception {
+        File dir = folder.getRoot();
+        MappedSegmentStore store = new MappedSegmentStore(dir, 16);
+        // overwrite the same ids many times, each segment holds two values
+        for (int i = 0; i < 1000; i++) {
+            store.put(i % 2, new byte[]{(byte) i, 0, 0, 0, 0, 0, 0, 0});
+        }
+        Assert.assertArrayEquals(new byte[]{(byte) 998, 0, 0, 0, 0, 0, 0, 0}, store.get(0));
+        Assert.assertArrayEquals(new byte[]{(byte) 999, 0, 0, 0, 0, 0, 0, 0}, store.get(1));
+        Assert.assertTrue(store.segmentCount() <= 2);
+        Assert.assertEquals(store.segmentCount(), dir.list().length);
+
+        store.clear();
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(0, dir.list().length);
+        store.close();
+    }
+
+    @Test
+    public void testStaleSegmentsAreRemoved() throws Exception {
+        File dir = folder.getRoot();
+        MappedSegmentStore store = new MappedSegmentStore(dir, 16);
+        store.put(1, new byte[]{1});
+        store = new MappedSegmentStore(dir, 16);
+        Assert.assertNull(store.get(1));
+        Assert.assertEquals(0, dir.list().length);
+        store.close();
+    }
+}
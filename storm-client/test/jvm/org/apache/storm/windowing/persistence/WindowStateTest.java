@@ -18,12 +18,15 @@
 
 package org.apache.storm.windowing.persistence;
 
+import org.apache.storm.state.DefaultStateSerializer;
 import org.apache.storm.state.KeyValueState;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.windowing.Event;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -42,6 +45,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 
 import static org.mockito.AdditionalAnswers.returnsArgAt;
@@ -51,6 +55,8 @@ import static org.mockito.AdditionalAnswers.returnsArgAt;
  */
 @RunWith(MockitoJUnitRunner.class)
 public class WindowStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Mock
     private KeyValueState<Long, WindowState.WindowPartition<Integer>> windowState;
@@ -206,6 +212,128 @@ public class WindowStateTest {
         Assert.assertFalse(partitionMap.containsKey(9L));
     }
 
+    @Test
+    public void testSpillToDisk() throws Exception {
+        Mockito.when(partitionIdsState.get(Mockito.any(), Mockito.any())).then(returnsArgAt(1));
+        Mockito.when(windowState.get(Mockito.any(), Mockito.any())).then(returnsArgAt(1));
+        Mockito.when(supplier.get()).thenReturn(Collections.emptyMap());
+
+        MappedSegmentStore spillStore = new MappedSegmentStore(folder.getRoot(), 64 * 1024);
+        WindowState<Integer> ws = new WindowState<>(windowState, partitionIdsState, systemState,
+            supplier, 10 * WindowState.MAX_PARTITION_EVENTS, spillStore, new DefaultStateSerializer<>(), null);
+
+        long partitions = 15;
+        long numEvents = partitions * WindowState.MAX_PARTITION_EVENTS;
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < numEvents; i++) {
+            expected.add(i);
+            ws.add(new SerializableEvent(i));
+        }
+        // 5 partitions evicted to the spill store, none written to the window state yet
+        Assert.assertEquals(5, spillStore.size());
+        Mockito.verify(windowState, Mockito.never()).put(Mockito.any(), Mockito.any());
+
+        // spilled partitions are loaded back
+        List<Integer> actual = new ArrayList<>();
+        ws.iterator().forEachRemaining(e -> actual.add(e.get()));
+        Assert.assertEquals(expected, actual);
+
+        // every partition is written to the window state on prepare
+        ws.prepareCommit(1);
+        Mockito.verify(windowState, Mockito.atLeastOnce()).put(longCaptor.capture(), windowValuesCaptor.capture());
+        Map<Long, WindowState.WindowPartition<Integer>> written = new TreeMap<>();
+        for (int i = 0; i < longCaptor.getAllValues().size(); i++) {
+            written.put(longCaptor.getAllValues().get(i), windowValuesCaptor.getAllValues().get(i));
+        }
+        Assert.assertEquals(partitions, written.size());
+        actual.clear();
+        written.values().forEach(wp -> wp.forEach(e -> actual.add(e.get())));
+        Assert.assertEquals(expected, actual);
+        spillStore.close();
+    }
+
+    @Test
+    public void testReloadAfterCheckpointIgnoresSpilledCopy() throws Exception {
+        Map<Long, WindowState.WindowPartition<Integer>> partitionMap = new HashMap<>();
+        Mockito.when(partitionIdsState.get(Mockito.any(), Mockito.any())).then(returnsArgAt(1));
+        Mockito.when(windowState.get(Mockito.any(), Mockito.any())).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                WindowState.WindowPartition<Integer> stored = partitionMap.get(args[0]);
+                return stored != null ? stored : args[1];
+            }
+        });
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                partitionMap.put((long) args[0], (WindowState.WindowPartition<Integer>) args[1]);
+                return null;
+            }
+        }).when(windowState).put(Mockito.any(), Mockito.any());
+        Mockito.when(supplier.get()).thenReturn(Collections.emptyMap());
+
+        MappedSegmentStore spillStore = new MappedSegmentStore(folder.getRoot(), 64 * 1024);
+        WindowState<Integer> ws = new WindowState<>(windowState, partitionIdsState, systemState,
+            supplier, 10 * WindowState.MAX_PARTITION_EVENTS, spillStore, new DefaultStateSerializer<>(), null);
+
+        long numEvents = 15 * WindowState.MAX_PARTITION_EVENTS;
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < numEvents; i++) {
+            expected.add(i);
+            ws.add(new SerializableEvent(i));
+        }
+        Assert.assertEquals(5, spillStore.size());
+
+        // load the first partition back from the spill store and modify it
+        Iterator<Event<Integer>> it = ws.iterator();
+        for (int i = 0; i < 10; i++) {
+            it.next();
+            it.remove();
+            expected.remove(0);
+        }
+        ws.clearIteratorPins();
+
+        // the checkpoint writes every partition to the state, nothing is left in the spill store
+        ws.prepareCommit(1);
+        Assert.assertEquals(0, spillStore.size());
+        Assert.assertEquals(WindowState.MAX_PARTITION_EVENTS - 10, partitionMap.get(0L).size());
+
+        // evict the first partition again and load it back
+        for (long i = numEvents; i < numEvents + 20 * WindowState.MAX_PARTITION_EVENTS; i++) {
+            expected.add((int) i);
+            ws.add(new SerializableEvent((int) i));
+        }
+        List<Integer> actual = new ArrayList<>();
+        ws.iterator().forEachRemaining(e -> actual.add(e.get()));
+        Assert.assertEquals(expected, actual);
+        spillStore.close();
+    }
+
+    private static class SerializableEvent implements Event<Integer> {
+        private final int value;
+
+        SerializableEvent(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return 0;
+        }
+
+        @Override
+        public Integer get() {
+            return value;
+        }
+
+        @Override
+        public boolean isWatermark() {
+            return false;
+        }
+    }
+
     private Event<Integer> getEvent(int i) {
         return getEvent(i, 0);
     }
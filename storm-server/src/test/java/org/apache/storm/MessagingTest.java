@@ -35,9 +35,18 @@ public class MessagingTest {
 
     @Test
     public void testLocalTransport() throws Exception {
+        runTopology("org.apache.storm.messaging.netty.Context");
+    }
+
+    @Test
+    public void testNetty4Transport() throws Exception {
+        runTopology("org.apache.storm.messaging.netty4.Context");
+    }
+
+    private void runTopology(String transport) throws Exception {
         Config topoConf = new Config();
         topoConf.put(Config.TOPOLOGY_WORKERS, 2);
-        topoConf.put(Config.STORM_MESSAGING_TRANSPORT , "org.apache.storm.messaging.netty.Context");
+        topoConf.put(Config.STORM_MESSAGING_TRANSPORT , transport);
 
         try (ILocalCluster cluster = new LocalCluster.Builder().withSimulatedTime()
                     .withSupervisors(1).withPortsPerSupervisor(2)